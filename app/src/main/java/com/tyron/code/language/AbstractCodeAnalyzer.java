@@ -9,18 +9,15 @@ import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.editor.Editor;
 
 import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Lexer;
 import org.antlr.v4.runtime.Token;
-import org.apache.commons.io.input.CharSequenceReader;
 
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import io.github.rosemoe.sora.lang.analysis.StyleReceiver;
+import io.github.rosemoe.sora.lang.diagnostic.DiagnosticRegion;
 import io.github.rosemoe.sora.lang.styling.MappedSpans;
 import io.github.rosemoe.sora.lang.styling.Styles;
 import io.github.rosemoe.sora.text.CharPosition;
@@ -29,12 +26,24 @@ import io.github.rosemoe.sora.widget.schemes.EditorColorScheme;
 
 public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T> {
 
+    /**
+     * The diagnostics are marked on this many lines above and below the visible lines, so
+     * the document only has to be analyzed again when the editor scrolls past them
+     */
+    private static final int MARKED_LINES_MARGIN = 200;
+
     private final Map<Integer, Integer> mColorMap = new HashMap<>();
+    private final IncrementalLexer mLexer = new IncrementalLexer(this::getLexer);
 
     private StyleReceiver mReceiver;
     private Token mPreviousToken;
     private Styles mLastStyles;
-    protected List<DiagnosticWrapper> mDiagnostics = new ArrayList<>();
+    private volatile RangeMarkerTree<DiagnosticWrapper> mDiagnostics = new RangeMarkerTree<>();
+
+    private volatile int mFirstVisibleLine;
+    private volatile int mLastVisibleLine;
+    private volatile int mFirstMarkedLine;
+    private volatile int mLastMarkedLine = -1;
 
     public AbstractCodeAnalyzer() {
         setup();
@@ -49,11 +58,13 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
 
     @Override
     public void insert(CharPosition start, CharPosition end, CharSequence insertedContent) {
+        DiagnosticSpanMapUpdater.shiftDiagnosticsOnInsert(mDiagnostics, start, end);
         rerunWithBg();
     }
 
     @Override
     public void delete(CharPosition start, CharPosition end, CharSequence deletedContent) {
+        DiagnosticSpanMapUpdater.shiftDiagnosticsOnDelete(mDiagnostics, start, end);
         rerunWithBg();
     }
 
@@ -64,7 +75,28 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
 
     @Override
     public void setDiagnostics(Editor editor, List<DiagnosticWrapper> diagnostics) {
-        mDiagnostics = diagnostics;
+        mDiagnostics = DiagnosticSpanMapUpdater.createTree(diagnostics);
+        rerunWithoutBg();
+    }
+
+    /**
+     * Called when the editor scrolls, the document is analyzed again if the visible lines
+     * are past the lines the diagnostics have been marked on
+     */
+    public void setVisibleLines(int firstLine, int lastLine) {
+        mFirstVisibleLine = firstLine;
+        mLastVisibleLine = lastLine;
+        if (firstLine < mFirstMarkedLine || lastLine > mLastMarkedLine) {
+            rerunWithoutBg();
+        }
+    }
+
+    /**
+     * @return The diagnostics that overlap the given offsets, e.g. the visible part of the
+     * editor, with their positions shifted by the edits made since they were set
+     */
+    protected List<DiagnosticWrapper> getDiagnostics(int from, int to) {
+        return DiagnosticSpanMapUpdater.getDiagnostics(mDiagnostics, from, to);
     }
 
     public void setup() {
@@ -119,53 +151,100 @@ public abstract class AbstractCodeAnalyzer<T> extends DiagnosticAnalyzeManager<T
         }
         beforeAnalyze();
 
-        MappedSpans.Builder result = new MappedSpans.Builder(1024);
+        // only the tokens around the edit are lexed again, the spans are rebuilt from all the
+        // tokens as the subclasses may look at any of them and the editor owns the old spans
+        List<Token> tokens = mLexer.tokenize(text, delegate::isCancelled);
+        if (tokens == null) {
+            return styles;
+        }
 
-        try {
-            Lexer lexer = getLexer(CharStreams.fromReader(new CharSequenceReader(text)));
-            while (!delegate.isCancelled()) {
-                Token token = lexer.nextToken();
-                if (token == null) {
-                    break;
-                }
-                if (token.getType() == Token.EOF) {
-                    break;
-                }
-
-                boolean skip = onNextToken(token, styles, result);
-                if (skip) {
-                    mPreviousToken = token;
-                    continue;
-                }
-
-                Integer id = getColor(token.getType());
-                if (id == null) {
-                    id = EditorColorScheme.TEXT_NORMAL;
-                }
-                result.addIfNeeded(token.getLine() - 1, token.getCharPositionInLine(), id);
+        MappedSpans.Builder result = new MappedSpans.Builder(1024);
+        mPreviousToken = null;
+        for (Token token : tokens) {
+            if (delegate.isCancelled()) {
+                break;
+            }
 
+            boolean skip = onNextToken(token, styles, result);
+            if (skip) {
                 mPreviousToken = token;
+                continue;
             }
 
-            if (mPreviousToken != null) {
-                result.determine(mPreviousToken.getLine() - 1);
+            Integer id = getColor(token.getType());
+            if (id == null) {
+                id = EditorColorScheme.TEXT_NORMAL;
             }
+            result.addIfNeeded(token.getLine() - 1, token.getCharPositionInLine(), id);
 
-            styles.spans = result.build();
-            styles.finishBuilding();
-            afterAnalyze(text, styles, result);
+            mPreviousToken = token;
+        }
 
-            if (mShouldAnalyzeInBg) {
-                analyzeInBackground(text);
-            }
-        } catch (IOException e) {
-            // ignored
+        if (mPreviousToken != null) {
+            result.determine(mPreviousToken.getLine() - 1);
+        }
+
+        styles.spans = result.build();
+        markDiagnostics(new TokenLines(text, tokens), styles);
+        styles.finishBuilding();
+        afterAnalyze(text, styles, result);
+
+        if (mShouldAnalyzeInBg) {
+            analyzeInBackground(text);
         }
 
         mLastStyles = styles;
         return styles;
     }
 
+    /**
+     * Marks the regions of the diagnostics around the visible lines on the spans. The
+     * diagnostics are queried from the tree so their positions include the edits made since
+     * they were set.
+     */
+    private void markDiagnostics(TokenLines lines, Styles styles) {
+        int firstLine = Math.max(0, mFirstVisibleLine - MARKED_LINES_MARGIN);
+        int lastLine = mLastVisibleLine + MARKED_LINES_MARGIN;
+        mFirstMarkedLine = firstLine;
+        mLastMarkedLine = lastLine;
+
+        List<DiagnosticWrapper> diagnostics = getDiagnostics(lines.getLineStart(firstLine),
+                lines.getLineStart(lastLine + 1));
+        for (DiagnosticWrapper diagnostic : diagnostics) {
+            int start = (int) Math.min(diagnostic.getStartPosition(), lines.length());
+            int end = (int) Math.min(diagnostic.getEndPosition(), lines.length());
+            int startLine = lines.getLine(start);
+            int endLine = lines.getLine(end);
+            int startColumn = start - lines.getLineStart(startLine);
+            int endColumn = end - lines.getLineStart(endLine);
+            // the editor can not mark an empty region
+            if (startLine == endLine && startColumn == endColumn) {
+                endColumn++;
+            }
+            try {
+                HighlightUtil.markProblemRegion(styles, getSeverity(diagnostic), startLine,
+                        startColumn, endLine, endColumn);
+            } catch (IndexOutOfBoundsException e) {
+                // the spans have not been built up to the line of the diagnostic
+            }
+        }
+    }
+
+    private static short getSeverity(DiagnosticWrapper diagnostic) {
+        if (diagnostic.getKind() == null) {
+            return DiagnosticRegion.SEVERITY_NONE;
+        }
+        switch (diagnostic.getKind()) {
+            case ERROR:
+                return DiagnosticRegion.SEVERITY_ERROR;
+            case MANDATORY_WARNING:
+            case WARNING:
+                return DiagnosticRegion.SEVERITY_WARNING;
+            default:
+                return DiagnosticRegion.SEVERITY_NONE;
+        }
+    }
+
     @Nullable
     protected Styles getLastStyles() {
         return mLastStyles;
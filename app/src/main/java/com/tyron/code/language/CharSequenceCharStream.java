@@ -0,0 +1,98 @@
+package com.tyron.code.language;
+
+import androidx.annotation.NonNull;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+/**
+ * A {@link CharStream} that reads directly from a {@link CharSequence} without copying it.
+ *
+ * Unlike the streams created by {@link org.antlr.v4.runtime.CharStreams}, indexes are in
+ * UTF-16 chars rather than code points so they match the columns of the editor.
+ */
+public class CharSequenceCharStream implements CharStream {
+
+    private CharSequence mText;
+    private int mIndex;
+
+    public CharSequenceCharStream(@NonNull CharSequence text) {
+        mText = text;
+    }
+
+    /**
+     * Replaces the text of this stream and moves back to the start. Tokens created from this
+     * stream read their text from the new contents.
+     */
+    public void setText(@NonNull CharSequence text) {
+        mText = text;
+        mIndex = 0;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = Math.max(0, interval.a);
+        int stop = Math.min(mText.length() - 1, interval.b);
+        if (start > stop) {
+            return "";
+        }
+        return mText.subSequence(start, stop + 1).toString();
+    }
+
+    @Override
+    public void consume() {
+        if (mIndex >= mText.length()) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        mIndex++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int index = i > 0 ? mIndex + i - 1 : mIndex + i;
+        if (index < 0 || index >= mText.length()) {
+            return IntStream.EOF;
+        }
+        return mText.charAt(index);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+
+    }
+
+    @Override
+    public int index() {
+        return mIndex;
+    }
+
+    @Override
+    public void seek(int index) {
+        mIndex = Math.min(index, mText.length());
+    }
+
+    @Override
+    public int size() {
+        return mText.length();
+    }
+
+    @Override
+    public String getSourceName() {
+        return UNKNOWN_SOURCE_NAME;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mText.toString();
+    }
+}
@@ -2,81 +2,93 @@ package com.tyron.code.language;
 
 import com.tyron.builder.model.DiagnosticWrapper;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
 
 import io.github.rosemoe.sora.text.CharPosition;
-import io.github.rosemoe.sora.text.ContentReference;
 
+/**
+ * Keeps the positions of diagnostics in sync with the edits made to the document. The
+ * positions are stored in a {@link RangeMarkerTree} and only written back to the
+ * {@link DiagnosticWrapper} when it is queried, so an edit does not visit every diagnostic.
+ */
 public class DiagnosticSpanMapUpdater {
 
-    public static void shiftDiagnosticsOnSingleLineInsert(List<DiagnosticWrapper> diagnostics,
-                                                          ContentReference ref,
-                                                          CharPosition start,
-                                                          CharPosition end) {
-        int length = end.index - start.index;
+    public static RangeMarkerTree<DiagnosticWrapper> createTree(List<DiagnosticWrapper> diagnostics) {
+        RangeMarkerTree<DiagnosticWrapper> tree = new RangeMarkerTree<>();
         for (DiagnosticWrapper diagnostic : diagnostics) {
             if (!isValid(diagnostic)) {
                 continue;
             }
-            // diagnostic is located before the insertion index, its not included
-            if (diagnostic.getEndPosition() <= end.index) {
-                continue;
-            }
-            diagnostic.setStartPosition(diagnostic.getStartPosition() + length);
-            diagnostic.setEndPosition(diagnostic.getEndPosition() + length);
+            tree.add((int) diagnostic.getStartPosition(), (int) diagnostic.getEndPosition(),
+                    diagnostic);
         }
+        return tree;
     }
 
-    public static void shiftDiagnosticsOnSingleLineDelete(List<DiagnosticWrapper> diagnostics,
-                                                          ContentReference ref,
-                                                          CharPosition start,
-                                                          CharPosition end) {
-        int length = end.index - start.index;
-        for (DiagnosticWrapper diagnostic : diagnostics) {
-            if (!isValid(diagnostic)) {
+    /**
+     * @return The diagnostics of a {@link com.tyron.diagnostics.DiagnosticProvider} as
+     * {@link DiagnosticWrapper}s that can be passed to {@link #createTree(List)}
+     */
+    public static List<DiagnosticWrapper> toDiagnosticWrappers(
+            List<? extends Diagnostic<?>> diagnostics) {
+        List<DiagnosticWrapper> result = new ArrayList<>(diagnostics.size());
+        for (Diagnostic<?> diagnostic : diagnostics) {
+            if (diagnostic instanceof DiagnosticWrapper) {
+                result.add((DiagnosticWrapper) diagnostic);
                 continue;
             }
-            if (diagnostic.getStartPosition() > start.index) {
-                diagnostic.setStartPosition(diagnostic.getStartPosition() - length);
-            }
-            if (diagnostic.getEndPosition() > end.index) {
-                diagnostic.setEndPosition(diagnostic.getEndPosition() - length);
+            DiagnosticWrapper wrapper = new DiagnosticWrapper();
+            wrapper.setCode(diagnostic.getCode());
+            Object source = diagnostic.getSource();
+            if (source instanceof File) {
+                wrapper.setSource((File) source);
+            } else if (source instanceof FileObject &&
+                       "file".equals(((FileObject) source).toUri().getScheme())) {
+                wrapper.setSource(new File(((FileObject) source).toUri()));
             }
+            wrapper.setKind(diagnostic.getKind());
+            wrapper.setPosition(diagnostic.getPosition());
+            wrapper.setStartPosition(diagnostic.getStartPosition());
+            wrapper.setEndPosition(diagnostic.getEndPosition());
+            wrapper.setLineNumber(diagnostic.getLineNumber());
+            wrapper.setColumnNumber(diagnostic.getColumnNumber());
+            wrapper.setMessage(diagnostic.getMessage(Locale.getDefault()));
+            wrapper.setExtra(diagnostic);
+            result.add(wrapper);
         }
+        return result;
     }
 
-    public static void shiftDiagnosticsOnMultiLineDelete(List<DiagnosticWrapper> diagnostics,
-                                                         ContentReference ref,
-                                                         CharPosition start,
-                                                         CharPosition end) {
-        int length = end.index - start.index;
-        for (DiagnosticWrapper diagnostic : diagnostics) {
-            if (!isValid(diagnostic)) {
-                continue;
-            }
-            if (diagnostic.getStartPosition() < end.index) {
-                continue;
-            }
-            diagnostic.setStartPosition(diagnostic.getStartPosition() - length);
-            diagnostic.setEndPosition(diagnostic.getEndPosition() - length);
-        }
+    public static void shiftDiagnosticsOnInsert(RangeMarkerTree<DiagnosticWrapper> diagnostics,
+                                                CharPosition start,
+                                                CharPosition end) {
+        diagnostics.insert(start.index, end.index - start.index);
     }
 
-    public static void shiftDiagnosticsOnMultiLineInsert(List<DiagnosticWrapper> diagnostics,
-                                                         ContentReference ref,
-                                                         CharPosition start,
-                                                         CharPosition end) {
-        int length = end.index - start.index;
-        for (DiagnosticWrapper diagnostic : diagnostics) {
-            if (!isValid(diagnostic)) {
-                continue;
-            }
-            if (diagnostic.getEndPosition() < end.index) {
-                continue;
-            }
-            diagnostic.setStartPosition(diagnostic.getStartPosition() + length);
-            diagnostic.setEndPosition(diagnostic.getEndPosition() + length);
-        }
+    public static void shiftDiagnosticsOnDelete(RangeMarkerTree<DiagnosticWrapper> diagnostics,
+                                                CharPosition start,
+                                                CharPosition end) {
+        diagnostics.delete(start.index, end.index);
+    }
+
+    /**
+     * @return The diagnostics that overlap the given offsets, with their positions updated
+     */
+    public static List<DiagnosticWrapper> getDiagnostics(
+            RangeMarkerTree<DiagnosticWrapper> diagnostics, int from, int to) {
+        List<DiagnosticWrapper> result = new ArrayList<>();
+        diagnostics.query(from, to, (start, end, diagnostic) -> {
+            diagnostic.setStartPosition(start);
+            diagnostic.setEndPosition(end);
+            result.add(diagnostic);
+        });
+        return result;
     }
 
     public static boolean isValid(DiagnosticWrapper d) {
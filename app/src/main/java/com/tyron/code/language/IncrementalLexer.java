@@ -0,0 +1,292 @@
+package com.tyron.code.language;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Lexes a document with an ANTLR lexer and keeps the tokens, so that after an edit only the
+ * tokens around the edit have to be lexed again.
+ *
+ * The mode and mode stack of the lexer are recorded before every token. After an edit,
+ * lexing resumes from the first token of the line before the first changed line with the
+ * state recorded for it, and stops as soon as the lexer reaches a token at the start of a
+ * line after the edit in the same state as the token that was there before. The tokens
+ * after that point are reused with their positions shifted.
+ *
+ * The changed region is found by comparing the new text with the previous one, so any
+ * number of edits may happen between two calls.
+ */
+public class IncrementalLexer {
+
+    private final Function<CharStream, Lexer> mLexerFactory;
+    private final CharSequenceCharStream mStream = new CharSequenceCharStream("");
+
+    @Nullable
+    private String mText;
+    private List<Token> mTokens = Collections.emptyList();
+    private List<LexerState> mStates = Collections.emptyList();
+    private int mLexedTokenCount;
+
+    /**
+     * @param lexerFactory Creates a lexer over the given stream. Only the mode and mode stack
+     *                     of the lexer are restored when resuming, so the lexer should not
+     *                     keep any other state between tokens.
+     */
+    public IncrementalLexer(@NonNull Function<CharStream, Lexer> lexerFactory) {
+        mLexerFactory = lexerFactory;
+    }
+
+    /**
+     * @param text The new contents of the document, it is copied so the caller may reuse it
+     * @param cancelled Checked before every token
+     * @return The tokens of the document excluding EOF, or null if cancelled. The tokens are
+     * reused by the next call so they should not be kept.
+     */
+    @Nullable
+    public List<Token> tokenize(@NonNull CharSequence text, @NonNull BooleanSupplier cancelled) {
+        String newText = text.toString();
+        String oldText = mText;
+        if (newText.equals(oldText)) {
+            mLexedTokenCount = 0;
+            return mTokens;
+        }
+
+        int resumeIndex = 0;
+        int unchangedStart = newText.length();
+        int delta = 0;
+        if (oldText != null && !mTokens.isEmpty()) {
+            int prefix = getCommonPrefix(oldText, newText);
+            int suffix = getCommonSuffix(oldText, newText, prefix);
+            resumeIndex = getResumeIndex(prefix);
+            unchangedStart = newText.length() - suffix;
+            delta = newText.length() - oldText.length();
+        }
+
+        mStream.setText(newText);
+        Lexer lexer = mLexerFactory.apply(mStream);
+        Token previous = null;
+        if (resumeIndex > 0) {
+            Token resume = mTokens.get(resumeIndex);
+            mStream.seek(resume.getStartIndex());
+            lexer.setLine(resume.getLine());
+            lexer.setCharPositionInLine(resume.getCharPositionInLine());
+            mStates.get(resumeIndex).restore(lexer);
+            previous = mTokens.get(resumeIndex - 1);
+        }
+
+        List<Token> lexed = new ArrayList<>();
+        List<LexerState> lexedStates = new ArrayList<>();
+        LexerState state = null;
+        int resyncIndex = -1;
+        int lineDelta = 0;
+        while (true) {
+            if (cancelled.getAsBoolean()) {
+                // the cached tokens read their text from the stream
+                mStream.setText(oldText != null ? oldText : "");
+                return null;
+            }
+
+            state = LexerState.capture(lexer, state);
+            Token token = lexer.nextToken();
+            if (token == null || token.getType() == Token.EOF) {
+                break;
+            }
+
+            if (token.getStartIndex() >= unchangedStart && startsLine(token, previous)) {
+                int index = findToken(token.getStartIndex() - delta, resumeIndex);
+                if (index != -1 && isSynchronized(token, state, index)) {
+                    resyncIndex = index;
+                    lineDelta = token.getLine() - mTokens.get(index).getLine();
+                    break;
+                }
+            }
+
+            lexed.add(token);
+            lexedStates.add(state);
+            previous = token;
+        }
+        mLexedTokenCount = lexed.size();
+
+        int reused = resyncIndex == -1 ? 0 : mTokens.size() - resyncIndex;
+        List<Token> tokens = new ArrayList<>(resumeIndex + lexed.size() + reused);
+        List<LexerState> states = new ArrayList<>(tokens.size());
+        tokens.addAll(mTokens.subList(0, resumeIndex));
+        states.addAll(mStates.subList(0, resumeIndex));
+        tokens.addAll(lexed);
+        states.addAll(lexedStates);
+        if (resyncIndex != -1) {
+            for (int i = resyncIndex; i < mTokens.size(); i++) {
+                CommonToken token = (CommonToken) mTokens.get(i);
+                token.setStartIndex(token.getStartIndex() + delta);
+                token.setStopIndex(token.getStopIndex() + delta);
+                token.setLine(token.getLine() + lineDelta);
+                tokens.add(token);
+            }
+            states.addAll(mStates.subList(resyncIndex, mStates.size()));
+        }
+
+        mText = newText;
+        mTokens = tokens;
+        mStates = states;
+        return tokens;
+    }
+
+    /**
+     * @return The number of tokens the lexer produced in the last call to
+     * {@link #tokenize(CharSequence, BooleanSupplier)}
+     */
+    @VisibleForTesting
+    public int getLexedTokenCount() {
+        return mLexedTokenCount;
+    }
+
+    /**
+     * Lexing resumes from the first token of the line before the last token that ends before
+     * the change, as the lexer may have looked ahead past the end of that token.
+     */
+    private int getResumeIndex(int changeStart) {
+        int low = 0;
+        int high = mTokens.size() - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mTokens.get(mid).getStopIndex() < changeStart) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (last == -1) {
+            return 0;
+        }
+
+        int line = mTokens.get(last).getLine() - 1;
+        low = 0;
+        high = last;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTokens.get(mid).getLine() < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The index of the previous token that started at the given index, or -1
+     */
+    private int findToken(int startIndex, int from) {
+        int low = from;
+        int high = mTokens.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = mTokens.get(mid).getStartIndex();
+            if (start < startIndex) {
+                low = mid + 1;
+            } else if (start > startIndex) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isSynchronized(Token token, LexerState state, int index) {
+        Token old = mTokens.get(index);
+        return old instanceof CommonToken &&
+               old.getType() == token.getType() &&
+               old.getCharPositionInLine() == token.getCharPositionInLine() &&
+               state.equals(mStates.get(index));
+    }
+
+    /**
+     * @return Whether no token spans over the start of the line of the given token
+     */
+    private static boolean startsLine(Token token, @Nullable Token previous) {
+        int lineStart = token.getStartIndex() - token.getCharPositionInLine();
+        return previous == null || previous.getStopIndex() < lineStart;
+    }
+
+    private static int getCommonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int getCommonSuffix(String a, String b, int prefix) {
+        int max = Math.min(a.length(), b.length()) - prefix;
+        int i = 0;
+        while (i < max && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static final class LexerState {
+
+        private final int mMode;
+        private final int[] mModeStack;
+
+        private LexerState(int mode, int[] modeStack) {
+            mMode = mode;
+            mModeStack = modeStack;
+        }
+
+        /**
+         * @return The state of the lexer, or the previous state if it is the same
+         */
+        static LexerState capture(Lexer lexer, @Nullable LexerState previous) {
+            int[] modeStack = lexer._modeStack.toArray();
+            if (previous != null && previous.mMode == lexer._mode &&
+                Arrays.equals(previous.mModeStack, modeStack)) {
+                return previous;
+            }
+            return new LexerState(lexer._mode, modeStack);
+        }
+
+        void restore(Lexer lexer) {
+            lexer._mode = mMode;
+            lexer._modeStack.clear();
+            for (int mode : mModeStack) {
+                lexer._modeStack.push(mode);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LexerState)) {
+                return false;
+            }
+            LexerState that = (LexerState) o;
+            return mMode == that.mMode && Arrays.equals(mModeStack, that.mModeStack);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mMode + Arrays.hashCode(mModeStack);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.tyron.code.language;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Random;
+
+/**
+ * Stores ranges of offsets in a document, such as diagnostics, so that they can be shifted
+ * when the document is edited without visiting every range.
+ *
+ * The ranges are kept in a treap ordered by their start offset. An edit shifts the subtree
+ * of ranges after it lazily in O(log n), only the ranges that overlap the edit are visited
+ * one by one. Each node also keeps the largest end offset in its subtree so that the ranges
+ * overlapping a region, e.g. the visible part of the editor, can be found without visiting
+ * the others.
+ */
+public class RangeMarkerTree<T> {
+
+    public interface Visitor<T> {
+        void visit(int start, int end, T value);
+    }
+
+    private static final class Node<T> {
+        final T value;
+        final int priority;
+
+        int start;
+        int end;
+        int maxEnd;
+        /** The offset that has not been added to the children yet */
+        int lazy;
+
+        Node<T> left;
+        Node<T> right;
+
+        Node(T value, int start, int end, int priority) {
+            this.value = value;
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+            this.priority = priority;
+        }
+    }
+
+    private static final class Split<T> {
+        Node<T> left;
+        Node<T> right;
+    }
+
+    private final Random mRandom = new Random();
+    private Node<T> mRoot;
+    private int mSize;
+
+    public synchronized void add(int start, int end, @NonNull T value) {
+        Node<T> node = new Node<>(value, start, Math.max(start, end), mRandom.nextInt());
+        Split<T> split = split(mRoot, start);
+        mRoot = merge(merge(split.left, node), split.right);
+        mSize++;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void clear() {
+        mRoot = null;
+        mSize = 0;
+    }
+
+    /**
+     * Shifts the ranges after an insertion. Ranges that start at the offset are moved, ranges
+     * that contain it are extended.
+     */
+    public synchronized void insert(int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        Split<T> split = split(mRoot, offset);
+        apply(split.right, length);
+        extendEnds(split.left, offset, length);
+        mRoot = merge(split.left, split.right);
+    }
+
+    /**
+     * Shifts the ranges after the deletion of the text between the given offsets. Offsets
+     * inside the deleted text are moved to its start, ranges that were entirely deleted are
+     * kept as empty ranges.
+     */
+    public synchronized void delete(int start, int end) {
+        if (end <= start) {
+            return;
+        }
+        Split<T> before = split(mRoot, start);
+        Split<T> after = split(before.right, end);
+        apply(after.right, start - end);
+        clampDeleted(after.left, start, end);
+        clampEnds(before.left, start, end);
+        mRoot = merge(merge(before.left, after.left), after.right);
+    }
+
+    /**
+     * Visits the ranges that overlap the given offsets, both inclusive, in order of their
+     * start offset.
+     */
+    public synchronized void query(int from, int to, @NonNull Visitor<T> visitor) {
+        query(mRoot, from, to, visitor);
+    }
+
+    public synchronized void forEach(@NonNull Visitor<T> visitor) {
+        query(mRoot, Integer.MIN_VALUE, Integer.MAX_VALUE, visitor);
+    }
+
+    private void query(@Nullable Node<T> node, int from, int to, Visitor<T> visitor) {
+        if (node == null || node.maxEnd < from) {
+            return;
+        }
+        push(node);
+        query(node.left, from, to, visitor);
+        if (node.start > to) {
+            return;
+        }
+        if (node.end >= from) {
+            visitor.visit(node.start, node.end, node.value);
+        }
+        query(node.right, from, to, visitor);
+    }
+
+    private void extendEnds(@Nullable Node<T> node, int offset, int length) {
+        if (node == null || node.maxEnd <= offset) {
+            return;
+        }
+        push(node);
+        if (node.end > offset) {
+            node.end += length;
+        }
+        extendEnds(node.left, offset, length);
+        extendEnds(node.right, offset, length);
+        update(node);
+    }
+
+    private void clampDeleted(@Nullable Node<T> node, int start, int end) {
+        if (node == null) {
+            return;
+        }
+        push(node);
+        node.start = start;
+        node.end = map(node.end, start, end);
+        clampDeleted(node.left, start, end);
+        clampDeleted(node.right, start, end);
+        update(node);
+    }
+
+    private void clampEnds(@Nullable Node<T> node, int start, int end) {
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        push(node);
+        node.end = map(node.end, start, end);
+        clampEnds(node.left, start, end);
+        clampEnds(node.right, start, end);
+        update(node);
+    }
+
+    private static int map(int offset, int start, int end) {
+        if (offset <= start) {
+            return offset;
+        }
+        if (offset >= end) {
+            return offset - (end - start);
+        }
+        return start;
+    }
+
+    /**
+     * Splits the tree into the nodes that start before the key and the rest
+     */
+    private Split<T> split(@Nullable Node<T> node, int key) {
+        if (node == null) {
+            return new Split<>();
+        }
+        push(node);
+        Split<T> split;
+        if (node.start < key) {
+            split = split(node.right, key);
+            node.right = split.left;
+            split.left = node;
+        } else {
+            split = split(node.left, key);
+            node.left = split.right;
+            split.right = node;
+        }
+        update(node);
+        return split;
+    }
+
+    private Node<T> merge(@Nullable Node<T> left, @Nullable Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            push(left);
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        push(right);
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static <T> void apply(@Nullable Node<T> node, int delta) {
+        if (node == null) {
+            return;
+        }
+        node.start += delta;
+        node.end += delta;
+        node.maxEnd += delta;
+        node.lazy += delta;
+    }
+
+    private static <T> void push(Node<T> node) {
+        if (node.lazy != 0) {
+            apply(node.left, node.lazy);
+            apply(node.right, node.lazy);
+            node.lazy = 0;
+        }
+    }
+
+    private static <T> void update(Node<T> node) {
+        int maxEnd = node.end;
+        if (node.left != null) {
+            maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        }
+        if (node.right != null) {
+            maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        }
+        node.maxEnd = maxEnd;
+    }
+}
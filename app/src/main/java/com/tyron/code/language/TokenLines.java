@@ -0,0 +1,121 @@
+package com.tyron.code.language;
+
+import androidx.annotation.NonNull;
+
+import org.antlr.v4.runtime.Token;
+
+import java.util.List;
+
+/**
+ * Maps offsets of a document to lines with the line and column the lexer recorded for each
+ * token, so only the text between an offset and the token before it is scanned instead of
+ * the whole document. Lines are separated by '\n' like the lexer counts them, and are 0
+ * based.
+ */
+class TokenLines {
+
+    private final CharSequence mText;
+    private final List<Token> mTokens;
+
+    /**
+     * @param tokens The tokens of the text ordered by their offset, e.g. from
+     *               {@link IncrementalLexer#tokenize}
+     */
+    TokenLines(@NonNull CharSequence text, @NonNull List<Token> tokens) {
+        mText = text;
+        mTokens = tokens;
+    }
+
+    /**
+     * @return The line of the given offset, offsets past the end of the text are on the last
+     * line
+     */
+    int getLine(int offset) {
+        offset = Math.min(offset, mText.length());
+        int index = findTokenBefore(offset);
+        int line = 0;
+        int from = 0;
+        if (index != -1) {
+            Token token = mTokens.get(index);
+            line = token.getLine() - 1;
+            from = token.getStartIndex();
+        }
+        for (int i = from; i < offset; i++) {
+            if (mText.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return The offset of the start of the given line, or the length of the text if it
+     * has fewer lines
+     */
+    int getLineStart(int line) {
+        int index = findTokenOnOrBeforeLine(line);
+        int current = 0;
+        int offset = 0;
+        if (index != -1) {
+            Token token = mTokens.get(index);
+            current = token.getLine() - 1;
+            offset = token.getStartIndex() - token.getCharPositionInLine();
+            if (current == line) {
+                return offset;
+            }
+            offset = token.getStartIndex();
+        }
+        while (current < line) {
+            if (offset >= mText.length()) {
+                return mText.length();
+            }
+            if (mText.charAt(offset) == '\n') {
+                current++;
+            }
+            offset++;
+        }
+        return offset;
+    }
+
+    int length() {
+        return mText.length();
+    }
+
+    /**
+     * @return The index of the last token that starts at or before the offset, or -1
+     */
+    private int findTokenBefore(int offset) {
+        int low = 0;
+        int high = mTokens.size() - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mTokens.get(mid).getStartIndex() <= offset) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return The index of the last token that starts on or before the given line, or -1
+     */
+    private int findTokenOnOrBeforeLine(int line) {
+        int low = 0;
+        int high = mTokens.size() - 1;
+        int last = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mTokens.get(mid).getLine() - 1 <= line) {
+                last = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return last;
+    }
+}
@@ -12,9 +12,9 @@ import com.tyron.code.language.CompletionItemWrapper;
 import com.tyron.code.language.EditorFormatter;
 import com.tyron.code.language.LanguageManager;
 import com.tyron.completion.CompletionParameters;
-import com.tyron.completion.java.JavaCompletionProvider;
 import com.tyron.completion.java.compiler.services.NBLog;
 import com.tyron.completion.java.parse.CompilationInfo;
+import com.tyron.completion.main.CompletionEngine;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.editor.Editor;
 import com.tyron.language.api.CodeAssistLanguage;
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -156,12 +157,19 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
                 .setContents(content.getReference().toString())
                 .setPrefix(prefix)
                 .build();
-        JavaCompletionProvider provider = new JavaCompletionProvider();
-        CompletionList list = provider.complete(parameters);
-
         publisher.setUpdateThreshold(0);
-        publisher.addItems(list.getItems().stream().map(CompletionItemWrapper::new)
-                .collect(Collectors.toList()));
+
+        // show the items of each part of the completion as soon as they are ready
+        AtomicBoolean published = new AtomicBoolean();
+        CompletionList list = CompletionEngine.getInstance().complete(parameters, partial -> {
+            published.set(true);
+            publisher.addItems(partial.getItems().stream().map(CompletionItemWrapper::new)
+                    .collect(Collectors.toList()));
+        });
+        if (!published.get()) {
+            publisher.addItems(list.getItems().stream().map(CompletionItemWrapper::new)
+                    .collect(Collectors.toList()));
+        }
     }
 
     @Override
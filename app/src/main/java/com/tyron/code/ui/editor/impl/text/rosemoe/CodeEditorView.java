@@ -12,6 +12,7 @@ import com.google.common.collect.ImmutableSet;
 import com.tyron.actions.DataContext;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
+import com.tyron.code.language.DiagnosticAnalyzeManager;
 import com.tyron.code.language.xml.LanguageXML;
 import com.tyron.code.ui.editor.CodeAssistCompletionWindow;
 import com.tyron.code.ui.editor.EditorViewModel;
@@ -37,6 +38,7 @@ import java.util.Set;
 import java.util.function.Consumer;
 
 import io.github.rosemoe.sora.lang.Language;
+import io.github.rosemoe.sora.lang.analysis.AnalyzeManager;
 import io.github.rosemoe.sora.text.Cursor;
 import io.github.rosemoe.sora.text.TextUtils;
 import io.github.rosemoe.sora.widget.CodeEditor;
@@ -136,6 +138,11 @@ public class CodeEditorView extends CodeEditor implements Editor {
     @Override
     public void setDiagnostics(List<DiagnosticWrapper> diagnostics) {
         mDiagnostics = diagnostics;
+
+        AnalyzeManager manager = getEditorLanguage().getAnalyzeManager();
+        if (manager instanceof DiagnosticAnalyzeManager) {
+            ((DiagnosticAnalyzeManager<?>) manager).setDiagnostics(this, diagnostics);
+        }
     }
 
     public void setDiagnosticsListener(Consumer<List<DiagnosticWrapper>> listener) {
@@ -18,12 +18,15 @@ import com.tyron.actions.ActionPlaces;
 import com.tyron.actions.CommonDataKeys;
 import com.tyron.actions.DataContext;
 import com.tyron.actions.util.DataContextUtils;
+import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 import com.tyron.code.ApplicationLoader;
 import com.tyron.code.R;
 import com.tyron.code.event.EventManager;
 import com.tyron.code.event.PerformShortcutEvent;
+import com.tyron.code.language.AbstractCodeAnalyzer;
+import com.tyron.code.language.DiagnosticSpanMapUpdater;
 import com.tyron.code.language.LanguageManager;
 import com.tyron.code.language.java.JavaLanguage;
 import com.tyron.code.ui.editor.CodeAssistCompletionAdapter;
@@ -61,8 +64,10 @@ import io.github.rosemoe.sora.event.EditorKeyEvent;
 import io.github.rosemoe.sora.event.Event;
 import io.github.rosemoe.sora.event.InterceptTarget;
 import io.github.rosemoe.sora.event.LongPressEvent;
+import io.github.rosemoe.sora.event.ScrollEvent;
 import io.github.rosemoe.sora.lang.EmptyLanguage;
 import io.github.rosemoe.sora.lang.Language;
+import io.github.rosemoe.sora.lang.analysis.AnalyzeManager;
 import io.github.rosemoe.sora.lang.diagnostic.DiagnosticRegion;
 import io.github.rosemoe.sora.lang.diagnostic.DiagnosticsContainer;
 import io.github.rosemoe.sora.text.Cursor;
@@ -125,6 +130,7 @@ public class RosemoeEditorFacade {
 
         Objects.requireNonNull(editor.getDiagnostics()).reset();
 
+        List<DiagnosticWrapper> wrappers = new ArrayList<>();
         ServiceLoader<DiagnosticProvider> providers = ServiceLoader.load(DiagnosticProvider.class);
         for (DiagnosticProvider provider : providers) {
             List<? extends Diagnostic<?>> diagnostics =
@@ -147,7 +153,9 @@ public class RosemoeEditorFacade {
                             (int) it.getEndPosition(),
                             severitySupplier.apply(it.getKind())))
                     .forEach(Objects.requireNonNull(editor.getDiagnostics())::addDiagnostic);
+            wrappers.addAll(DiagnosticSpanMapUpdater.toDiagnosticWrappers(diagnostics));
         }
+        editor.setDiagnostics(wrappers);
     }
 
     @SuppressLint("ClickableViewAccessibility")
@@ -248,6 +256,13 @@ public class RosemoeEditorFacade {
                 }
             }
         });
+        editor.subscribeEvent(ScrollEvent.class, (event, unsubscribe) -> {
+            AnalyzeManager manager = editor.getEditorLanguage().getAnalyzeManager();
+            if (manager instanceof AbstractCodeAnalyzer) {
+                ((AbstractCodeAnalyzer<?>) manager).setVisibleLines(editor.getFirstVisibleLine(),
+                        editor.getLastVisibleLine());
+            }
+        });
         editor.subscribeEvent(ContentChangeEvent.class,
                 (event, unsubscribe) -> ProgressManager.getInstance()
                         .runNonCancelableAsync(() -> DebouncerStore.DEFAULT.registerOrGetDebouncer(
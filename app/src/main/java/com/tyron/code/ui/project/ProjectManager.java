@@ -36,6 +36,8 @@ import com.tyron.code.ui.editor.log.AppLogFragment;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.common.logging.IdeLog;
 import com.tyron.common.util.DebouncerStore;
+import com.tyron.completion.java.JavaCompilerProvider;
+import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.completion.java.compiler.Parser;
 import com.tyron.completion.java.parse.CompilationInfo;
 import com.tyron.completion.java.provider.CompletionEngine;
@@ -159,12 +161,14 @@ public class ProjectManager {
         };
         mCurrentProject.getEventManager().subscribeEvent(FileDeletedEvent.class, (event, u) -> {
             modifiedEventConsumer.accept(event.getDeletedFile());
+            invalidateJavaFile(event.getDeletedFile());
 
             mCurrentProject.getEventManager().dispatchEvent(new XmlReparsedEvent(event.getDeletedFile()));
         });
         // listen for newly created files and notify the resources repository
         mCurrentProject.getEventManager().subscribeEvent(FileCreatedEvent.class, (event, u) -> {
             modifiedEventConsumer.accept(event.getFile());
+            invalidateJavaFile(event.getFile());
         });
         mCurrentProject.getEventManager().subscribeEvent(XmlReparsedEvent.class,
                 (event, unsubscribe) -> DebouncerStore.DEFAULT.registerOrGetDebouncer("ResourceInjector").debounce(300, () -> ProgressManager.getInstance().runNonCancelableAsync(() -> {
@@ -352,6 +356,25 @@ public class ProjectManager {
      * When the file is opened in the editor, its contents will be re-parsed with method bodies
      * included.
      */
+    /**
+     * Notifies the java compiler that a file has been created or deleted, the compiler only
+     * learns about changes made in the editor on its own.
+     */
+    private void invalidateJavaFile(File file) {
+        if (!file.getName().endsWith(".java")) {
+            return;
+        }
+        Module module = mCurrentProject.getModule(file);
+        if (!(module instanceof JavaModule)) {
+            return;
+        }
+        JavaCompilerService compiler =
+                JavaCompilerProvider.get(mCurrentProject, (JavaModule) module);
+        if (compiler != null) {
+            compiler.invalidate(file.toPath());
+        }
+    }
+
     private void indexModule(Module module) throws IOException {
         module.open();
         module.index();
@@ -0,0 +1,134 @@
+package com.tyron.code.language;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.tyron.builder.model.DiagnosticWrapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+
+import io.github.rosemoe.sora.text.CharPosition;
+
+/**
+ * Follows the diagnostics of a provider from the tree they are set in to the spans they are
+ * marked on, through the edits made after they were computed.
+ */
+public class DiagnosticSpanMapUpdaterTest {
+
+    @Test
+    public void testProviderDiagnosticsAreWrapped() {
+        DiagnosticWrapper wrapper = create(0, 1);
+        Diagnostic<?> other = new TestDiagnostic(4, 9);
+
+        List<DiagnosticWrapper> wrappers =
+                DiagnosticSpanMapUpdater.toDiagnosticWrappers(Arrays.asList(wrapper, other));
+        assertSame(wrapper, wrappers.get(0));
+        assertEquals(4, wrappers.get(1).getStartPosition());
+        assertEquals(9, wrappers.get(1).getEndPosition());
+        assertEquals(Diagnostic.Kind.ERROR, wrappers.get(1).getKind());
+        assertEquals("message", wrappers.get(1).getMessage(Locale.ROOT));
+    }
+
+    @Test
+    public void testEditsShiftTheQueriedDiagnostics() {
+        DiagnosticWrapper first = create(0, 5);
+        DiagnosticWrapper second = create(20, 25);
+        DiagnosticWrapper third = create(40, 50);
+        DiagnosticWrapper invalid = create(-1, -1);
+        RangeMarkerTree<DiagnosticWrapper> tree = DiagnosticSpanMapUpdater.createTree(
+                Arrays.asList(first, second, invalid, third));
+        assertEquals(3, tree.size());
+
+        DiagnosticSpanMapUpdater.shiftDiagnosticsOnInsert(tree, position(10), position(14));
+        DiagnosticSpanMapUpdater.shiftDiagnosticsOnDelete(tree, position(30), position(34));
+
+        // only the diagnostics overlapping the queried offsets are updated
+        assertEquals(Arrays.asList(second),
+                DiagnosticSpanMapUpdater.getDiagnostics(tree, 10, 30));
+        assertEquals(24, second.getStartPosition());
+        assertEquals(29, second.getEndPosition());
+        assertEquals(40, third.getStartPosition());
+
+        assertEquals(Arrays.asList(first, second, third),
+                DiagnosticSpanMapUpdater.getDiagnostics(tree, 0, 100));
+        assertEquals(0, first.getStartPosition());
+        assertEquals(40, third.getStartPosition());
+        assertEquals(50, third.getEndPosition());
+    }
+
+    private static DiagnosticWrapper create(long start, long end) {
+        DiagnosticWrapper wrapper = new DiagnosticWrapper();
+        wrapper.setStartPosition(start);
+        wrapper.setEndPosition(end);
+        return wrapper;
+    }
+
+    private static CharPosition position(int index) {
+        CharPosition position = new CharPosition();
+        position.index = index;
+        return position;
+    }
+
+    private static class TestDiagnostic implements Diagnostic<Object> {
+
+        private final long mStart;
+        private final long mEnd;
+
+        TestDiagnostic(long start, long end) {
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.ERROR;
+        }
+
+        @Override
+        public Object getSource() {
+            return null;
+        }
+
+        @Override
+        public long getPosition() {
+            return mStart;
+        }
+
+        @Override
+        public long getStartPosition() {
+            return mStart;
+        }
+
+        @Override
+        public long getEndPosition() {
+            return mEnd;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return NOPOS;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return NOPOS;
+        }
+
+        @Override
+        public String getCode() {
+            return null;
+        }
+
+        @Override
+        public String getMessage(Locale locale) {
+            return "message";
+        }
+    }
+}
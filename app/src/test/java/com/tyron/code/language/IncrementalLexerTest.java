@@ -0,0 +1,149 @@
+package com.tyron.code.language;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.code.language.json.JSONLexer;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Applies random edits to a document and checks that the incremental tokens are the same as
+ * the tokens of lexing the whole document again.
+ */
+public class IncrementalLexerTest {
+
+    /**
+     * Fragments that are inserted by the random edits, they open and close strings, escapes
+     * and lines so the lexer has to resume and resynchronize in the middle of them
+     */
+    private static final String[] FRAGMENTS = {
+            "{", "}", "[", "]", ":", ",", "\"", "\\", "\\\"", "\\u00e9", "\n", "\r\n", " ",
+            "\t", "true", "false", "null", "-12.5e3", "0", "\"key\"", "\"value\": 1,\n", "#"
+    };
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(1);
+        for (int document = 0; document < 20; document++) {
+            IncrementalLexer lexer = new IncrementalLexer(IncrementalLexerTest::createLexer);
+            StringBuilder text = new StringBuilder(createDocument(random, 20 + random.nextInt(30)));
+            assertTokens(text, lexer.tokenize(text, () -> false));
+
+            for (int edit = 0; edit < 200; edit++) {
+                // several edits may happen between two calls
+                int edits = 1 + random.nextInt(3);
+                for (int i = 0; i < edits; i++) {
+                    edit(random, text);
+                }
+                assertTokens(text, lexer.tokenize(text, () -> false));
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyTheEditedLinesAreLexed() {
+        StringBuilder text = new StringBuilder(createDocument(new Random(2), 1000));
+        IncrementalLexer lexer = new IncrementalLexer(IncrementalLexerTest::createLexer);
+        List<Token> tokens = lexer.tokenize(text, () -> false);
+        assertNotNull(tokens);
+        assertEquals(tokens.size(), lexer.getLexedTokenCount());
+
+        int middle = text.indexOf("\n", text.length() / 2) + 1;
+        text.insert(middle, "\"inserted\": [1, 2, 3],\n");
+        tokens = lexer.tokenize(text, () -> false);
+        assertTokens(text, tokens);
+        assertTrue(String.valueOf(lexer.getLexedTokenCount()),
+                lexer.getLexedTokenCount() < 50);
+
+        lexer.tokenize(text, () -> false);
+        assertEquals(0, lexer.getLexedTokenCount());
+    }
+
+    @Test
+    public void testCancelledKeepsThePreviousTokens() {
+        StringBuilder text = new StringBuilder(createDocument(new Random(3), 50));
+        IncrementalLexer lexer = new IncrementalLexer(IncrementalLexerTest::createLexer);
+        assertTokens(text, lexer.tokenize(text, () -> false));
+
+        String previous = text.toString();
+        text.insert(text.length() / 2, "\"unterminated\n");
+        assertNull(lexer.tokenize(text, () -> true));
+
+        text.setLength(0);
+        text.append(previous).append("\n[]");
+        assertTokens(text, lexer.tokenize(text, () -> false));
+    }
+
+    private static void assertTokens(CharSequence text, List<Token> actual) {
+        assertNotNull(actual);
+        List<? extends Token> expected = createLexer(new CharSequenceCharStream(text.toString()))
+                .getAllTokens();
+        assertEquals(text.toString(), describe(expected), describe(actual));
+    }
+
+    private static List<String> describe(List<? extends Token> tokens) {
+        List<String> descriptions = new ArrayList<>(tokens.size());
+        for (Token token : tokens) {
+            descriptions.add(token.getType() + " " + token.getStartIndex() + ":" +
+                             token.getStopIndex() + " " + token.getLine() + ":" +
+                             token.getCharPositionInLine() + " " + token.getText());
+        }
+        return descriptions;
+    }
+
+    private static Lexer createLexer(CharStream stream) {
+        Lexer lexer = new JSONLexer(stream);
+        // the random edits produce invalid documents
+        lexer.removeErrorListeners();
+        return lexer;
+    }
+
+    private static String createDocument(Random random, int entries) {
+        StringBuilder builder = new StringBuilder("{\n");
+        for (int i = 0; i < entries; i++) {
+            builder.append("  \"key").append(i).append("\": ");
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.append("\"a \\\"quoted\\\" value\"");
+                    break;
+                case 1:
+                    builder.append(random.nextInt(1000) - 500).append('.').append(random.nextInt(10));
+                    break;
+                case 2:
+                    builder.append("[true, false, null]");
+                    break;
+                default:
+                    builder.append("{\"nested\": \"\\u00e9\"}");
+                    break;
+            }
+            builder.append(i < entries - 1 ? ",\n" : "\n");
+        }
+        return builder.append("}\n").toString();
+    }
+
+    private static void edit(Random random, StringBuilder text) {
+        int start = random.nextInt(text.length() + 1);
+        int end = Math.min(text.length(), start + random.nextInt(8));
+        switch (random.nextInt(3)) {
+            case 0:
+                text.insert(start, FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                break;
+            case 1:
+                text.delete(start, end);
+                break;
+            default:
+                text.replace(start, end, FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                break;
+        }
+    }
+}
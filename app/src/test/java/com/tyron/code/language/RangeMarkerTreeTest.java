@@ -0,0 +1,158 @@
+package com.tyron.code.language;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class RangeMarkerTreeTest {
+
+    @Test
+    public void testInsertShiftsTheRangesAfterIt() {
+        RangeMarkerTree<String> tree = new RangeMarkerTree<>();
+        tree.add(0, 5, "before");
+        tree.add(10, 20, "containing");
+        tree.add(15, 15, "at");
+        tree.add(30, 40, "after");
+
+        tree.insert(15, 3);
+        assertEquals(Arrays.asList("before 0:5", "containing 10:23", "at 18:18", "after 33:43"),
+                describeAll(tree));
+
+        // a range that ends at the offset is not extended
+        tree.insert(5, 2);
+        assertEquals(Arrays.asList("before 0:5", "containing 12:25", "at 20:20", "after 35:45"),
+                describeAll(tree));
+    }
+
+    @Test
+    public void testDeleteShiftsTheRangesAfterIt() {
+        RangeMarkerTree<String> tree = new RangeMarkerTree<>();
+        tree.add(0, 5, "before");
+        tree.add(2, 12, "overlappingStart");
+        tree.add(8, 20, "overlappingEnd");
+        tree.add(30, 40, "after");
+
+        tree.delete(4, 10);
+        assertEquals(Arrays.asList("before 0:4", "overlappingStart 2:6", "overlappingEnd 4:14",
+                "after 24:34"), describeAll(tree));
+    }
+
+    @Test
+    public void testDeletionCoveringARangeKeepsItEmpty() {
+        RangeMarkerTree<String> tree = new RangeMarkerTree<>();
+        tree.add(10, 15, "deleted");
+        tree.add(20, 25, "after");
+
+        tree.delete(5, 18);
+        assertEquals(Arrays.asList("deleted 5:5", "after 7:12"), describeAll(tree));
+        assertEquals(2, tree.size());
+
+        // the empty range is still found at the offset of the deletion
+        assertEquals(Collections.singletonList("deleted 5:5"), describe(tree, 5, 5));
+    }
+
+    @Test
+    public void testQueryReturnsTheOverlappingRanges() {
+        RangeMarkerTree<String> tree = new RangeMarkerTree<>();
+        tree.add(0, 100, "long");
+        tree.add(10, 20, "first");
+        tree.add(30, 40, "second");
+        tree.add(50, 50, "empty");
+
+        assertEquals(Arrays.asList("long 0:100", "first 10:20"), describe(tree, 15, 25));
+        assertEquals(Arrays.asList("long 0:100", "first 10:20", "second 30:40"),
+                describe(tree, 20, 30));
+        assertEquals(Arrays.asList("long 0:100", "empty 50:50"), describe(tree, 45, 50));
+        assertEquals(Collections.emptyList(), describe(tree, 101, 200));
+    }
+
+    @Test
+    public void testRandomEditsMatchAList() {
+        Random random = new Random(1);
+        for (int run = 0; run < 50; run++) {
+            RangeMarkerTree<Integer> tree = new RangeMarkerTree<>();
+            List<int[]> expected = new ArrayList<>();
+            int length = 1000;
+            for (int i = 0; i < 100; i++) {
+                int start = random.nextInt(length);
+                int end = start + random.nextInt(50);
+                tree.add(start, end, i);
+                expected.add(new int[]{start, end, i});
+            }
+
+            for (int edit = 0; edit < 200; edit++) {
+                int offset = random.nextInt(length + 1);
+                if (random.nextBoolean()) {
+                    int inserted = 1 + random.nextInt(20);
+                    tree.insert(offset, inserted);
+                    for (int[] range : expected) {
+                        if (range[0] >= offset) {
+                            range[0] += inserted;
+                            range[1] += inserted;
+                        } else if (range[1] > offset) {
+                            range[1] += inserted;
+                        }
+                    }
+                    length += inserted;
+                } else {
+                    int end = Math.min(length, offset + random.nextInt(30));
+                    tree.delete(offset, end);
+                    for (int[] range : expected) {
+                        range[0] = map(range[0], offset, end);
+                        range[1] = map(range[1], offset, end);
+                    }
+                    length -= end - offset;
+                }
+
+                int from = random.nextInt(length + 1);
+                int to = from + random.nextInt(100);
+                List<String> overlapping = new ArrayList<>();
+                for (int[] range : expected) {
+                    if (range[1] >= from && range[0] <= to) {
+                        overlapping.add(range[2] + " " + range[0] + ":" + range[1]);
+                    }
+                }
+                assertEquals(sorted(overlapping), sorted(describe(tree, from, to)));
+            }
+            assertEquals(expected.size(), tree.size());
+        }
+    }
+
+    private static int map(int offset, int start, int end) {
+        if (offset <= start) {
+            return offset;
+        }
+        return offset >= end ? offset - (end - start) : start;
+    }
+
+    private static <T> List<String> describeAll(RangeMarkerTree<T> tree) {
+        List<String> ranges = new ArrayList<>();
+        tree.forEach((start, end, value) -> ranges.add(value + " " + start + ":" + end));
+        return ranges;
+    }
+
+    private static <T> List<String> describe(RangeMarkerTree<T> tree, int from, int to) {
+        List<String> ranges = new ArrayList<>();
+        int[] previousStart = {Integer.MIN_VALUE};
+        tree.query(from, to, (start, end, value) -> {
+            // the ranges are visited in order of their start offset
+            assertTrue(start >= previousStart[0]);
+            previousStart[0] = start;
+            ranges.add(value + " " + start + ":" + end);
+        });
+        return ranges;
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<>(list);
+        Collections.sort(copy);
+        return copy;
+    }
+}
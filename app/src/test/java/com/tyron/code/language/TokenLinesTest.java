@@ -0,0 +1,70 @@
+package com.tyron.code.language;
+
+import static org.junit.Assert.assertEquals;
+
+import com.tyron.code.language.json.JSONLexer;
+
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the lines found from the tokens against the lines found by scanning the whole text.
+ */
+public class TokenLinesTest {
+
+    private static final String[] FRAGMENTS = {
+            "{", "}", "[", "]", ":", ",", "\"key\"", "\"value\"", "1", "true", "\n", "\n\n",
+            "  ", "\t", "\n  \n"
+    };
+
+    @Test
+    public void testRandomDocuments() {
+        Random random = new Random(1);
+        for (int document = 0; document < 50; document++) {
+            StringBuilder text = new StringBuilder();
+            int fragments = random.nextInt(200);
+            for (int i = 0; i < fragments; i++) {
+                text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertLines(text.toString());
+        }
+    }
+
+    @Test
+    public void testDocumentWithoutTokens() {
+        assertLines("");
+        assertLines("\n\n  \n");
+    }
+
+    private static void assertLines(String text) {
+        Lexer lexer = new JSONLexer(new CharSequenceCharStream(text));
+        lexer.removeErrorListeners();
+        TokenLines lines = new TokenLines(text, new ArrayList<>(lexer.getAllTokens()));
+
+        List<Integer> lineStarts = new ArrayList<>();
+        lineStarts.add(0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineStarts.add(i + 1);
+            }
+        }
+
+        int line = 0;
+        for (int offset = 0; offset <= text.length(); offset++) {
+            while (line + 1 < lineStarts.size() && lineStarts.get(line + 1) <= offset) {
+                line++;
+            }
+            assertEquals(text + " at " + offset, line, lines.getLine(offset));
+        }
+        for (int i = 0; i < lineStarts.size(); i++) {
+            assertEquals(text + " line " + i, (int) lineStarts.get(i), lines.getLineStart(i));
+        }
+        assertEquals(text.length(), lines.getLineStart(lineStarts.size()));
+        assertEquals(lineStarts.size() - 1, lines.getLine(text.length() + 10));
+    }
+}
@@ -79,6 +79,13 @@ public class Aapt2Jni {
      */
     @SuppressWarnings({"unused", "SameParameterValue"})
     private void log(int level, String path, long line, String message) {
+        mDiagnostics.add(createDiagnostic(level, path, line, message));
+    }
+
+    private static DiagnosticWrapper createDiagnostic(int level,
+                                                      String path,
+                                                      long line,
+                                                      String message) {
         DiagnosticWrapper wrapper = new DiagnosticWrapper();
         switch (level) {
             case LOG_LEVEL_ERROR:
@@ -103,7 +110,7 @@ public class Aapt2Jni {
             wrapper.setStartLine((int) line);
         }
         wrapper.setMessage(message);
-        mDiagnostics.add(wrapper);
+        return wrapper;
     }
 
     private void clearLogs() {
@@ -128,7 +135,31 @@ public class Aapt2Jni {
 
         args.add(0, "compile");
         args.add(0, getBinary());
-        return executeBinary(args, instance);
+        return executeBinary(args, instance.mDiagnostics);
+    }
+
+    /**
+     * Compile resources with Aapt2 without using the shared logs returned by
+     * {@link #getLogs()}, so multiple invocations can run at the same time.
+     *
+     * @param args the arguments to pass to aapt2
+     * @param logs the list where the diagnostics of this invocation are added to
+     * @return exit code, non zero if theres an error
+     */
+    public static int compile(List<String> args, List<DiagnosticWrapper> logs) {
+        Aapt2Jni instance = Aapt2Jni.getInstance();
+
+        // aapt2 has failed to load, fail early
+        if (instance.mFailureString != null) {
+            logs.add(createDiagnostic(LOG_LEVEL_ERROR, null, -1, instance.mFailureString));
+            return -1;
+        }
+
+        List<String> commands = new ArrayList<>(args.size() + 2);
+        commands.add(getBinary());
+        commands.add("compile");
+        commands.addAll(args);
+        return executeBinary(commands, logs);
     }
 
     public static int link(List<String> args) {
@@ -144,7 +175,7 @@ public class Aapt2Jni {
         args.add(0, "link");
         args.add(0, getBinary());
 
-        return executeBinary(args, instance);
+        return executeBinary(args, instance.mDiagnostics);
     }
 
     private static File sAapt2Binary;
@@ -185,7 +216,7 @@ public class Aapt2Jni {
         return BuildModule.getContext().getApplicationInfo().nativeLibraryDir + "/libaapt2.so";
     }
 
-    private static int executeBinary(List<String> args, Aapt2Jni logger) {
+    private static int executeBinary(List<String> args, List<DiagnosticWrapper> diagnostics) {
         BinaryExecutor binaryExecutor = new BinaryExecutor();
         binaryExecutor.setCommands(args);
         String execute = binaryExecutor.execute();
@@ -226,9 +257,10 @@ public class Aapt2Jni {
                 message = line;
             }
 
-            logger.log(getLogLevel(level), path, getLineNumber(lineNumber), message);
+            diagnostics.add(createDiagnostic(getLogLevel(level), path, getLineNumber(lineNumber),
+                    message));
         }
-        return logger.mDiagnostics.stream().anyMatch(it -> it.getKind() == Diagnostic.Kind.ERROR) ? 1 : 0;
+        return diagnostics.stream().anyMatch(it -> it.getKind() == Diagnostic.Kind.ERROR) ? 1 : 0;
     }
 
     public static List<DiagnosticWrapper> getLogs() {
@@ -13,6 +13,8 @@ public class BuildModule {
     private static Context sApplicationContext;
     private static File sAndroidJar;
     private static File sLambdaStubs;
+    private static File sDexCacheDirectory;
+    private static File sResourceCacheDirectory;
 
     public static void initialize(Context applicationContext) {
             sApplicationContext = applicationContext.getApplicationContext();
@@ -52,6 +54,44 @@ public class BuildModule {
         return sLambdaStubs;
     }
 
+    /**
+     * @return The directory where dexed libraries are shared across projects, or null if
+     * the module has not been initialized
+     */
+    public static File getDexCacheDirectory() {
+        if (sDexCacheDirectory == null) {
+            Context context = BuildModule.getContext();
+            if (context == null) {
+                return null;
+            }
+            sDexCacheDirectory = new File(context.getCacheDir(), "dexed-libraries");
+        }
+        return sDexCacheDirectory;
+    }
+
+    public static void setDexCacheDirectory(File directory) {
+        sDexCacheDirectory = directory;
+    }
+
+    /**
+     * @return The directory where compiled library resources are shared across projects, or
+     * null if the module has not been initialized
+     */
+    public static File getResourceCacheDirectory() {
+        if (sResourceCacheDirectory == null) {
+            Context context = BuildModule.getContext();
+            if (context == null) {
+                return null;
+            }
+            sResourceCacheDirectory = new File(context.getCacheDir(), "compiled-resources");
+        }
+        return sResourceCacheDirectory;
+    }
+
+    public static void setResourceCacheDirectory(File directory) {
+        sResourceCacheDirectory = directory;
+    }
+
     public static void setAndroidJar(@NonNull File jar) {
         sAndroidJar = jar;
     }
@@ -0,0 +1,57 @@
+package com.tyron.builder.compiler;
+
+/**
+ * The intermediate results of a build that tasks read and write. They are used by
+ * {@link BuilderImpl} to find the tasks that do not depend on each other so they can run
+ * concurrently.
+ */
+public enum BuildArtifact {
+
+    /**
+     * The library jars and their extracted contents
+     */
+    LIBRARIES,
+
+    /**
+     * The merged AndroidManifest.xml
+     */
+    MANIFEST,
+
+    /**
+     * The resource files of the module, including the ones generated into its res directory
+     */
+    RESOURCE_SOURCES,
+
+    /**
+     * The compiled and linked resources and R.txt
+     */
+    COMPILED_RESOURCES,
+
+    /**
+     * The R.java of the module
+     */
+    R_SOURCES,
+
+    /**
+     * The R.java of the libraries
+     */
+    LIBRARY_R_SOURCES,
+
+    /**
+     * The generated view binding classes
+     */
+    VIEW_BINDING_SOURCES,
+
+    /**
+     * The java source files of the module
+     */
+    JAVA_SOURCES,
+
+    KOTLIN_CLASSES,
+
+    JAVA_CLASSES,
+
+    DEX,
+
+    APK
+}
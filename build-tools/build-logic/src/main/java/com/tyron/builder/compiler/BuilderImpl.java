@@ -12,16 +12,40 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
+    private static final int POOL_SIZE =
+            Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(POOL_SIZE,
+            r -> {
+                Thread thread = new Thread(r, "BuildTask");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private final Handler mMainHandler;
     private final Project mProject;
     private final T mModule;
     private final ILogger mLogger;
     private final List<Task<? super T>> mTasksRan;
+    private final List<TaskExecution> mTimeline = new CopyOnWriteArrayList<>();
     private TaskListener mTaskListener;
 
     public BuilderImpl(Project project, T module, ILogger logger) {
@@ -29,7 +53,7 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         mModule = module;
         mLogger = logger;
         mMainHandler = new Handler(Looper.getMainLooper());
-        mTasksRan = new ArrayList<>();
+        mTasksRan = new CopyOnWriteArrayList<>();
     }
 
     @NonNull
@@ -54,32 +78,278 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         }
     }
 
+    /**
+     * Runs the tasks of the given build type. A task starts as soon as all the tasks before
+     * it that it depends on have finished, see {@link #getDependencies(List)}, so tasks that
+     * do not depend on each other run concurrently on a bounded pool of threads.
+     *
+     * If a task fails, no more tasks are started and the exception of the first failed task is
+     * thrown after the running tasks have finished.
+     */
     @Override
     public final void build(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
+        mTimeline.clear();
         List<Task<? super T>> tasks = getTasks(type);
-        for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
-            Task<? super T> task = tasks.get(i);
-            final float current = i;
-            getLogger().info("Running " + task.getName());
+        int count = tasks.size();
+        List<Set<Integer>> dependencies = getDependencies(tasks);
+
+        List<List<Integer>> dependents = new ArrayList<>(count);
+        int[] remaining = new int[count];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < count; i++) {
+            dependents.add(new ArrayList<>());
+        }
+        for (int i = 0; i < count; i++) {
+            remaining[i] = dependencies.get(i).size();
+            for (int dependency : dependencies.get(i)) {
+                dependents.get(dependency).add(i);
+            }
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        TaskHistory history = TaskHistory.get(mModule);
+        CompletionService<TaskResult> completionService =
+                new ExecutorCompletionService<>(sExecutor);
+        long buildStart = System.currentTimeMillis();
+        int running = 0;
+        int finished = 0;
+        TaskResult failure = null;
+        while (true) {
+            while (failure == null && !ready.isEmpty()) {
+                int index = ready.poll();
+                Task<? super T> task = tasks.get(index);
+                int progress = (int) ((finished / (float) count) * 100f);
+                getLogger().info("Running " + task.getName());
+                mMainHandler.post(() -> updateProgress(task.getName(), "Task started", progress));
+                completionService.submit(() -> runTask(index, task, type, history, buildStart));
+                running++;
+            }
+            if (running == 0) {
+                break;
+            }
+
+            TaskResult result;
             try {
-                mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
-                        (int) ((current / (float) tasks.size()) * 100f)));
-                task.prepare(type);
-                task.run();
-            } catch (Throwable e) {
-                if (e instanceof OutOfMemoryError) {
-                    tasks.clear();
-                    mTasksRan.clear();
-                    throw new CompilationFailedException("Builder ran out of memory", e);
+                result = completionService.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompilationFailedException("Build was interrupted", e);
+            } catch (ExecutionException e) {
+                // runTask catches everything
+                throw new CompilationFailedException("Build task failed", e.getCause());
+            }
+            running--;
+
+            if (result.error != null) {
+                if (failure == null) {
+                    failure = result;
+                }
+                continue;
+            }
+            finished++;
+            mTasksRan.add(tasks.get(result.index));
+            for (int dependent : dependents.get(result.index)) {
+                if (--remaining[dependent] == 0) {
+                    ready.add(dependent);
                 }
-                task.clean();
-                mTasksRan.forEach(Task::clean);
-                throw e;
             }
-            mTasksRan.add(task);
+        }
+        logTimeline();
+
+        if (failure != null) {
+            Throwable e = failure.error;
+            if (e instanceof OutOfMemoryError) {
+                tasks.clear();
+                mTasksRan.clear();
+                throw new CompilationFailedException("Builder ran out of memory", e);
+            }
+            tasks.get(failure.index).clean();
+            mTasksRan.forEach(Task::clean);
+            saveCaches();
+            if (e instanceof CompilationFailedException) {
+                throw (CompilationFailedException) e;
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            throw new CompilationFailedException(e.getMessage(), e);
         }
         mTasksRan.forEach(Task::clean);
+        saveCaches();
+    }
+
+    private TaskResult runTask(int index,
+                               Task<? super T> task,
+                               BuildType type,
+                               TaskHistory history,
+                               long buildStart) {
+        long start = System.currentTimeMillis();
+        boolean skipped = false;
+        Throwable error = null;
+        try {
+            task.setTaskListener((name, message, progress) -> mMainHandler.post(
+                    () -> updateProgress(name, message, progress)));
+            task.prepare(type);
+            if (history.isUpToDate(task)) {
+                skipped = true;
+                getLogger().info(task.getName() + " is up to date");
+            } else {
+                task.run();
+                history.record(task);
+            }
+        } catch (Throwable e) {
+            error = e;
+        }
+        long end = System.currentTimeMillis();
+        mTimeline.add(new TaskExecution(task.getName(), Thread.currentThread().getName(),
+                start - buildStart, end - start, skipped, error != null));
+        return new TaskResult(index, error);
+    }
+
+    /**
+     * Finds the tasks each task has to wait for. A task depends on an earlier task if it
+     * reads what the earlier task writes, writes what the earlier task reads or writes the
+     * same artifact. A task that does not declare its artifacts depends on all the tasks
+     * before it and all the tasks after it depend on it, like in a sequential build.
+     *
+     * @return The indexes of the tasks that each task depends on
+     */
+    @VisibleForTesting
+    static <T extends Module> List<Set<Integer>> getDependencies(List<Task<? super T>> tasks) {
+        List<Set<Integer>> dependencies = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            Task<? super T> task = tasks.get(i);
+            Set<Integer> taskDependencies = new HashSet<>();
+            for (int j = 0; j < i; j++) {
+                if (dependsOn(task, tasks.get(j))) {
+                    taskDependencies.add(j);
+                }
+            }
+            dependencies.add(taskDependencies);
+        }
+        return dependencies;
+    }
+
+    private static boolean dependsOn(Task<?> task, Task<?> earlier) {
+        Set<BuildArtifact> inputs = task.getInputs();
+        Set<BuildArtifact> outputs = task.getOutputs();
+        Set<BuildArtifact> earlierInputs = earlier.getInputs();
+        Set<BuildArtifact> earlierOutputs = earlier.getOutputs();
+        if (inputs == null || outputs == null || earlierInputs == null || earlierOutputs == null) {
+            return true;
+        }
+        return !Collections.disjoint(inputs, earlierOutputs) ||
+               !Collections.disjoint(outputs, earlierInputs) ||
+               !Collections.disjoint(outputs, earlierOutputs);
+    }
+
+    private void logTimeline() {
+        List<TaskExecution> timeline = getTimeline();
+        StringBuilder builder = new StringBuilder("Task timeline:");
+        for (TaskExecution execution : timeline) {
+            builder.append('\n').append(execution);
+        }
+        getLogger().debug(builder.toString());
+    }
+
+    /**
+     * @return When and where each task of the last build ran, ordered by their start time
+     */
+    public List<TaskExecution> getTimeline() {
+        List<TaskExecution> timeline = new ArrayList<>(mTimeline);
+        timeline.sort(Comparator.comparingLong(TaskExecution::getStart));
+        return timeline;
+    }
+
+    /**
+     * Persists the incremental state of the tasks so the next build after a restart does not
+     * have to start from scratch. Failing to do so should not fail the build.
+     */
+    private void saveCaches() {
+        try {
+            mModule.saveCaches();
+            TaskHistory.get(mModule).write();
+        } catch (IOException e) {
+            getLogger().warning("Unable to save build caches: " + e.getMessage());
+        }
+    }
+
+    private static class TaskResult {
+        final int index;
+        final Throwable error;
+
+        TaskResult(int index, Throwable error) {
+            this.index = index;
+            this.error = error;
+        }
+    }
+
+    public static class TaskExecution {
+
+        private final String mName;
+        private final String mThread;
+        private final long mStart;
+        private final long mDuration;
+        private final boolean mSkipped;
+        private final boolean mFailed;
+
+        public TaskExecution(String name,
+                             String thread,
+                             long start,
+                             long duration,
+                             boolean skipped,
+                             boolean failed) {
+            mName = name;
+            mThread = thread;
+            mStart = start;
+            mDuration = duration;
+            mSkipped = skipped;
+            mFailed = failed;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getThread() {
+            return mThread;
+        }
+
+        /**
+         * @return The time in milliseconds the task has started after the build has started
+         */
+        public long getStart() {
+            return mStart;
+        }
+
+        public long getDuration() {
+            return mDuration;
+        }
+
+        public boolean isSkipped() {
+            return mSkipped;
+        }
+
+        public boolean isFailed() {
+            return mFailed;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            String state = mFailed ? " FAILED" : mSkipped ? " UP-TO-DATE" : "";
+            return String.format(Locale.ROOT, "%6d ms +%6d ms  %s [%s]%s", mStart, mDuration,
+                    mName, mThread, state);
+        }
     }
 
     public abstract List<Task<? super T>> getTasks(BuildType type);
@@ -2,6 +2,7 @@ package com.tyron.builder.compiler;
 
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
 import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
+import com.tyron.builder.compiler.incremental.resource.IncrementalAapt2Task;
 import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -70,6 +71,10 @@ public class CleanTask extends Task<AndroidModule> {
                 .clear();
         getModule().getCache(MergeSymbolsTask.CACHE_KEY, new Cache<>())
                 .clear();
+        getModule().getCache(IncrementalAapt2Task.CACHE_KEY, new Cache<>())
+                .clear();
+        getModule().putUserData(IncrementalJavaTask.DEPENDENCY_GRAPH_KEY, null);
+        TaskHistory.get(getModule()).clear();
     }
     private void cleanClasses() {
 
@@ -0,0 +1,88 @@
+package com.tyron.builder.compiler;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for the cache directories that are shared between projects, such as the dexed
+ * libraries and the compiled library resources.
+ *
+ * Each entry of a cache is a file or a directory written by a single build. An entry is first
+ * written under a name starting with {@link #TEMP_PREFIX} and then moved into place, the
+ * entries that are used are touched so the ones that have not been used for the longest time
+ * are deleted first when the cache grows over its limit.
+ */
+public class SharedCacheDirectory {
+
+    /**
+     * The prefix of the entries that are still being written
+     */
+    public static final String TEMP_PREFIX = ".tmp-";
+
+    /**
+     * Temporary entries older than this are left over by a build that did not finish
+     */
+    private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private SharedCacheDirectory() {
+
+    }
+
+    /**
+     * Marks the entry as used, the entries that have not been used for the longest time are
+     * pruned first
+     */
+    public static void touch(File entry) {
+        //noinspection ResultOfMethodCallIgnored
+        entry.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes the entries of the cache that have not been used for the longest time until the
+     * size of the cache is at most maxSize, and the temporary entries left over by builds
+     * that did not finish.
+     */
+    public static void prune(File cacheDirectory, long maxSize) throws IOException {
+        File[] children = cacheDirectory.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<File> entries = new ArrayList<>();
+        Map<File, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (File child : children) {
+            if (child.getName().startsWith(TEMP_PREFIX)) {
+                if (now - child.lastModified() > STALE_TEMP_MILLIS) {
+                    FileUtils.deleteQuietly(child);
+                }
+                continue;
+            }
+            long size = FileUtils.sizeOf(child);
+            sizes.put(child, size);
+            entries.add(child);
+            total += size;
+        }
+        if (total <= maxSize) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+            FileUtils.forceDelete(entry);
+            total -= sizes.get(entry);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.tyron.builder.compiler;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Set;
 
 /**
  *
@@ -15,6 +20,7 @@ public abstract class Task<T extends Module> {
     private final Project mProject;
     private final T mModule;
     private final ILogger mLogger;
+    private Builder.TaskListener mTaskListener;
 
     public Task(Project project, T module, ILogger logger) {
         mProject = project;
@@ -39,6 +45,25 @@ public abstract class Task<T extends Module> {
         return mModule;
     }
 
+    /**
+     * Set by the builder running this task, the listener may be called from any thread
+     */
+    void setTaskListener(Builder.TaskListener taskListener) {
+        mTaskListener = taskListener;
+    }
+
+    /**
+     * Reports the progress of a long running step of this task
+     *
+     * @param message The message to display
+     * @param progress The progress of this task, from 0 to 100
+     */
+    protected void updateProgress(String message, int progress) {
+        if (mTaskListener != null) {
+            mTaskListener.onTaskStarted(getName(), message, progress);
+        }
+    }
+
     /**
      * Called by {@link ApkBuilder} to display the name of the task to the logs
      */
@@ -57,6 +82,43 @@ public abstract class Task<T extends Module> {
      */
     public abstract void run() throws IOException, CompilationFailedException;
 
+    /**
+     * @return The artifacts this task reads, or null if it may read anything. A task that
+     * does not declare both its inputs and outputs runs after all the tasks before it and
+     * before all the tasks after it.
+     */
+    @Nullable
+    public Set<BuildArtifact> getInputs() {
+        return null;
+    }
+
+    /**
+     * @return The artifacts this task writes, or null if it may write anything
+     */
+    @Nullable
+    public Set<BuildArtifact> getOutputs() {
+        return null;
+    }
+
+    /**
+     * Called after {@link #prepare(BuildType)}. If a task declares both its input and output
+     * files, it is skipped when none of them has changed since it last ran successfully.
+     *
+     * @return The files and directories this task reads, or null to always run this task
+     */
+    @Nullable
+    public List<File> getInputFiles() {
+        return null;
+    }
+
+    /**
+     * @return The files and directories this task writes, or null to always run this task
+     */
+    @Nullable
+    public List<File> getOutputFiles() {
+        return null;
+    }
+
     /**
      * Called after the compilation has finished successfully on every tasks
      */
@@ -0,0 +1,171 @@
+package com.tyron.builder.compiler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.project.api.Module;
+
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the state of the input and output files of each task after it last ran
+ * successfully, so it can be skipped when none of them have changed.
+ */
+public class TaskHistory {
+
+    private static final Key<TaskHistory> HISTORY_KEY = Key.create("taskHistory");
+
+    private static final int MAGIC = 0x54485354;
+    private static final int VERSION = 1;
+
+    @NonNull
+    public static synchronized TaskHistory get(@NonNull Module module) {
+        TaskHistory history = module.getUserData(HISTORY_KEY);
+        if (history == null) {
+            history = new TaskHistory(
+                    new File(module.getBuildDirectory(), "intermediate/caches/taskHistory.bin"));
+            history.read();
+            module.putUserData(HISTORY_KEY, history);
+        }
+        return history;
+    }
+
+    private final File mFile;
+    private final Map<String, String> mFingerprints = new ConcurrentHashMap<>();
+
+    private TaskHistory(File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return Whether the task has run with the same input and output files before
+     */
+    public boolean isUpToDate(@NonNull Task<?> task) {
+        String previous = mFingerprints.get(getKey(task));
+        return previous != null && previous.equals(fingerprint(task));
+    }
+
+    /**
+     * Records the state of the files of a task that has finished successfully
+     */
+    public void record(@NonNull Task<?> task) {
+        String fingerprint = fingerprint(task);
+        if (fingerprint == null) {
+            mFingerprints.remove(getKey(task));
+        } else {
+            mFingerprints.put(getKey(task), fingerprint);
+        }
+    }
+
+    public void clear() {
+        mFingerprints.clear();
+    }
+
+    public void write() throws IOException {
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        File temp = new File(parent, mFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Map<String, String> fingerprints = new HashMap<>(mFingerprints);
+            out.writeInt(fingerprints.size());
+            for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        }
+        Files.move(temp.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void read() {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(mFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                mFingerprints.put(in.readUTF(), in.readUTF());
+            }
+        } catch (NoSuchFileException e) {
+            // first build
+        } catch (IOException e) {
+            mFingerprints.clear();
+        }
+    }
+
+    private static String getKey(Task<?> task) {
+        return task.getClass().getName() + ':' + task.getName();
+    }
+
+    /**
+     * @return A hash of the paths, sizes and modification times of the input and output files
+     * of the task, or null if the task does not declare them
+     */
+    @Nullable
+    private static String fingerprint(Task<?> task) {
+        List<File> inputs = task.getInputFiles();
+        List<File> outputs = task.getOutputFiles();
+        if (inputs == null || outputs == null) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(inputs.size());
+        for (File input : inputs) {
+            hash(hasher, input);
+        }
+        hasher.putInt(outputs.size());
+        for (File output : outputs) {
+            hash(hasher, output);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void hash(Hasher hasher, File file) {
+        hasher.putUnencodedChars(file.getAbsolutePath());
+        if (!file.exists()) {
+            hasher.putLong(-1);
+            return;
+        }
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            List<File> sorted = children == null
+                    ? new ArrayList<>()
+                    : new ArrayList<>(Arrays.asList(children));
+            sorted.sort(Comparator.comparing(File::getName));
+            hasher.putInt(sorted.size());
+            for (File child : sorted) {
+                hash(hasher, child);
+            }
+            return;
+        }
+        hasher.putLong(file.length());
+        hasher.putLong(file.lastModified());
+    }
+}
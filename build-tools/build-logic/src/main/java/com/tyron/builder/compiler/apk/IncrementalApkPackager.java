@@ -0,0 +1,749 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.sdklib.build.ApkBuilder;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes an unsigned APK and keeps it up to date across builds by only writing the entries
+ * that have changed.
+ *
+ * The layout of the previous APK and a fingerprint of the source of each entry are kept in a
+ * state file. Entries that are unchanged stay where they are, changed and new entries are
+ * appended after the last unchanged entry followed by a new central directory. The space
+ * left by removed entries is covered by virtual entries, local headers that are not part of
+ * the central directory, so the APK can still be read sequentially. When that space grows
+ * too large the APK is written again from scratch.
+ *
+ * Stored entries are aligned to 4 bytes like zipalign does.
+ */
+public class IncrementalApkPackager implements Closeable {
+
+    public static class DuplicateEntryException extends IOException {
+
+        private final String mArchivePath;
+        private final String mFile1;
+        private final String mFile2;
+
+        public DuplicateEntryException(String archivePath, String file1, String file2) {
+            super("Duplicate entry " + archivePath);
+            mArchivePath = archivePath;
+            mFile1 = file1;
+            mFile2 = file2;
+        }
+
+        public String getArchivePath() {
+            return mArchivePath;
+        }
+
+        public String getFile1() {
+            return mFile1;
+        }
+
+        public String getFile2() {
+            return mFile2;
+        }
+    }
+
+    public static class Result {
+
+        private final boolean mIncremental;
+        private final int mWrittenEntries;
+        private final int mTotalEntries;
+        private final long mBytesWritten;
+        private final long mApkSize;
+
+        Result(boolean incremental,
+               int writtenEntries,
+               int totalEntries,
+               long bytesWritten,
+               long apkSize) {
+            mIncremental = incremental;
+            mWrittenEntries = writtenEntries;
+            mTotalEntries = totalEntries;
+            mBytesWritten = bytesWritten;
+            mApkSize = apkSize;
+        }
+
+        /**
+         * @return Whether the previous APK was updated instead of written from scratch
+         */
+        public boolean isIncremental() {
+            return mIncremental;
+        }
+
+        public int getWrittenEntries() {
+            return mWrittenEntries;
+        }
+
+        public int getTotalEntries() {
+            return mTotalEntries;
+        }
+
+        public long getBytesWritten() {
+            return mBytesWritten;
+        }
+
+        public long getApkSize() {
+            return mApkSize;
+        }
+    }
+
+    private static final int STATE_MAGIC = 0x41504b53;
+    private static final int STATE_VERSION = 1;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int MAX_ENTRIES = 0xffff;
+
+    /**
+     * The extra field zipalign uses to pad the local header of stored entries
+     */
+    private static final int ALIGNMENT_EXTRA_ID = 0xd935;
+    private static final int ALIGNMENT_EXTRA_MIN_SIZE = 6;
+    private static final int ALIGNMENT = 4;
+
+    /**
+     * 1980-01-01 00:00, a fixed time so the same inputs always produce the same APK
+     */
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private final File mApk;
+    private final File mStateFile;
+    private final Map<String, Source> mSources = new LinkedHashMap<>();
+    private final Map<File, ZipFile> mZipFiles = new HashMap<>();
+
+    private long mBytesWritten;
+
+    /**
+     * @param apk The APK to write, its previous contents are reused if it was written by
+     *            this class
+     * @param stateFile Where to store the layout of the APK for the next build
+     */
+    public IncrementalApkPackager(@NonNull File apk, @NonNull File stateFile) {
+        mApk = apk;
+        mStateFile = stateFile;
+    }
+
+    /**
+     * Adds a file to the APK, compressed
+     */
+    public void addFile(@NonNull File file, @NonNull String archivePath) throws IOException {
+        add(new FileSource(archivePath, file, true));
+    }
+
+    /**
+     * Adds the entries of a zip file to the APK without recompressing them
+     *
+     * @param filter Which entries to add, by their path in the zip file
+     */
+    public void addZipFile(@NonNull File zip, @NonNull Predicate<String> filter)
+            throws IOException {
+        ZipFile zipFile = getZipFile(zip);
+        Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+        while (entries.hasMoreElements()) {
+            ZipArchiveEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && filter.test(entry.getName())) {
+                add(new ZipEntrySource(entry.getName(), zip, entry));
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources of a library jar, skipping class files and the files that
+     * {@link ApkBuilder#addResourcesFromJar(File)} would skip.
+     */
+    public void addResourcesFromJar(@NonNull File jar) throws IOException {
+        addZipFile(jar, IncrementalApkPackager::isJavaResource);
+    }
+
+    /**
+     * Adds the native libraries in the ABI directories of the given folder, e.g.
+     * jni/arm64-v8a/libfoo.so is added as lib/arm64-v8a/libfoo.so
+     */
+    public void addNativeLibraries(@NonNull File folder) throws IOException {
+        File[] abis = folder.listFiles(File::isDirectory);
+        if (abis == null) {
+            return;
+        }
+        for (File abi : abis) {
+            File[] libraries = abi.listFiles(file -> file.isFile() &&
+                    file.getName().toLowerCase(Locale.ROOT).endsWith(".so"));
+            if (libraries == null) {
+                continue;
+            }
+            for (File library : libraries) {
+                addFile(library, "lib/" + abi.getName() + "/" + library.getName());
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources in the folder, keeping their relative paths
+     */
+    public void addSourceFolder(@NonNull File folder) throws IOException {
+        addSourceFolder(folder, "");
+    }
+
+    private void addSourceFolder(File folder, String prefix) throws IOException {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (ApkBuilder.checkFolderForPackaging(child.getName())) {
+                    addSourceFolder(child, prefix + child.getName() + "/");
+                }
+            } else if (ApkBuilder.checkFileForPackaging(child.getName())) {
+                addFile(child, prefix + child.getName());
+            }
+        }
+    }
+
+    private void add(Source source) throws DuplicateEntryException {
+        Source existing = mSources.putIfAbsent(source.mArchivePath, source);
+        if (existing != null) {
+            throw new DuplicateEntryException(source.mArchivePath, existing.getOrigin(),
+                    source.getOrigin());
+        }
+    }
+
+    /**
+     * Writes the entries added so far to the APK
+     */
+    public Result write() throws IOException {
+        if (mSources.size() > MAX_ENTRIES) {
+            throw new IOException("Too many entries in APK: " + mSources.size());
+        }
+        mBytesWritten = 0;
+
+        Map<String, Entry> previous = readState();
+        List<Entry> kept = new ArrayList<>();
+        for (Source source : mSources.values()) {
+            Entry entry = previous.get(source.mArchivePath);
+            if (entry != null && entry.mFingerprint.equals(source.getFingerprint())) {
+                kept.add(entry);
+            }
+        }
+        kept.sort(Comparator.comparingLong(entry -> entry.mOffset));
+
+        long end = 0;
+        long gaps = 0;
+        for (Entry entry : kept) {
+            gaps += entry.mOffset - end;
+            end = entry.mOffset + entry.mLength;
+        }
+        boolean incremental = !kept.isEmpty() && gaps <= end / 4;
+        if (incremental && kept.size() == previous.size() && kept.size() == mSources.size()) {
+            // nothing has changed
+            return new Result(true, 0, kept.size(), 0, mApk.length());
+        }
+        if (!incremental) {
+            kept.clear();
+            end = 0;
+        }
+
+        // a crash while writing leaves the APK in an unknown state
+        Files.deleteIfExists(mStateFile.toPath());
+
+        List<Entry> entries = new ArrayList<>(kept);
+        int written = 0;
+        try (RandomAccessFile file = new RandomAccessFile(mApk, "rw")) {
+            if (incremental) {
+                fillGaps(file, kept);
+            }
+
+            long offset = end;
+            Map<String, Entry> keptByPath = new HashMap<>();
+            for (Entry entry : kept) {
+                keptByPath.put(entry.mArchivePath, entry);
+            }
+            for (Source source : mSources.values()) {
+                if (keptByPath.containsKey(source.mArchivePath)) {
+                    continue;
+                }
+                Entry entry = writeEntry(file, offset, source);
+                entries.add(entry);
+                offset += entry.mLength;
+                written++;
+            }
+
+            writeCentralDirectory(file, offset, entries);
+            file.setLength(file.getFilePointer());
+        }
+
+        writeState(entries);
+        return new Result(incremental, written, entries.size(), mBytesWritten, mApk.length());
+    }
+
+    /**
+     * Covers the space between the kept entries with virtual entries
+     */
+    private void fillGaps(RandomAccessFile file, List<Entry> kept) throws IOException {
+        long end = 0;
+        for (Entry entry : kept) {
+            if (entry.mOffset > end) {
+                writeVirtualEntry(file, end, entry.mOffset - end);
+            }
+            end = entry.mOffset + entry.mLength;
+        }
+    }
+
+    /**
+     * Writes a local header without a name that spans the given range, the data of the entry
+     * is whatever was in the range before.
+     */
+    private void writeVirtualEntry(RandomAccessFile file, long offset, long length)
+            throws IOException {
+        // the gap was left by whole entries which have at least a local header
+        long dataLength = length - LOCAL_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        file.seek(offset + LOCAL_HEADER_SIZE);
+        long remaining = dataLength;
+        while (remaining > 0) {
+            int read = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new IOException("Unexpected end of APK");
+            }
+            crc.update(buffer, 0, read);
+            remaining -= read;
+        }
+
+        ByteBuffer header = newBuffer(LOCAL_HEADER_SIZE);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) 10);
+        header.putShort((short) 0);
+        header.putShort((short) ZipEntry.STORED);
+        header.putShort((short) DOS_TIME);
+        header.putShort((short) DOS_DATE);
+        header.putInt((int) crc.getValue());
+        header.putInt((int) dataLength);
+        header.putInt((int) dataLength);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        write(file, offset, header.array());
+    }
+
+    private Entry writeEntry(RandomAccessFile file, long offset, Source source)
+            throws IOException {
+        Data data = source.getData();
+        byte[] name = source.mArchivePath.getBytes(StandardCharsets.UTF_8);
+
+        int extraLength = 0;
+        if (data.mMethod == ZipEntry.STORED) {
+            long dataStart = offset + LOCAL_HEADER_SIZE + name.length + ALIGNMENT_EXTRA_MIN_SIZE;
+            extraLength = ALIGNMENT_EXTRA_MIN_SIZE +
+                          (int) ((ALIGNMENT - dataStart % ALIGNMENT) % ALIGNMENT);
+        }
+
+        ByteBuffer header = newBuffer(LOCAL_HEADER_SIZE + name.length + extraLength);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) getVersionNeeded(data.mMethod));
+        header.putShort((short) FLAG_UTF8);
+        header.putShort((short) data.mMethod);
+        header.putShort((short) DOS_TIME);
+        header.putShort((short) DOS_DATE);
+        header.putInt((int) data.mCrc);
+        header.putInt((int) data.mCompressedSize);
+        header.putInt((int) data.mSize);
+        header.putShort((short) name.length);
+        header.putShort((short) extraLength);
+        header.put(name);
+        if (extraLength > 0) {
+            header.putShort((short) ALIGNMENT_EXTRA_ID);
+            header.putShort((short) (extraLength - 4));
+            header.putShort((short) ALIGNMENT);
+        }
+        write(file, offset, header.array());
+
+        long dataOffset = offset + header.capacity();
+        file.seek(dataOffset);
+        long copied = data.copyTo(file);
+        if (copied != data.mCompressedSize) {
+            throw new IOException("Unexpected size of " + source.mArchivePath);
+        }
+        mBytesWritten += copied;
+
+        return new Entry(source.mArchivePath, source.getFingerprint(), offset,
+                header.capacity() + copied, data.mMethod, data.mCrc, data.mCompressedSize,
+                data.mSize);
+    }
+
+    private void writeCentralDirectory(RandomAccessFile file, long offset, List<Entry> entries)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Entry entry : entries) {
+            byte[] name = entry.mArchivePath.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer header = newBuffer(CENTRAL_HEADER_SIZE + name.length);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) 20);
+            header.putShort((short) getVersionNeeded(entry.mMethod));
+            header.putShort((short) FLAG_UTF8);
+            header.putShort((short) entry.mMethod);
+            header.putShort((short) DOS_TIME);
+            header.putShort((short) DOS_DATE);
+            header.putInt((int) entry.mCrc);
+            header.putInt((int) entry.mCompressedSize);
+            header.putInt((int) entry.mSize);
+            header.putShort((short) name.length);
+            header.putShort((short) 0); // extra
+            header.putShort((short) 0); // comment
+            header.putShort((short) 0); // disk
+            header.putShort((short) 0); // internal attributes
+            header.putInt(0); // external attributes
+            header.putInt((int) entry.mOffset);
+            header.put(name);
+            out.write(header.array());
+        }
+
+        ByteBuffer end = newBuffer(END_OF_CENTRAL_DIRECTORY_SIZE);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entries.size());
+        end.putShort((short) entries.size());
+        end.putInt(out.size());
+        end.putInt((int) offset);
+        end.putShort((short) 0);
+        out.write(end.array());
+
+        write(file, offset, out.toByteArray());
+    }
+
+    private void write(RandomAccessFile file, long offset, byte[] bytes) throws IOException {
+        file.seek(offset);
+        file.write(bytes);
+        mBytesWritten += bytes.length;
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int getVersionNeeded(int method) {
+        return method == ZipEntry.DEFLATED ? 20 : 10;
+    }
+
+    /**
+     * @return The entries of the previous APK, or an empty map if the APK was not written
+     * by this class or has been modified since
+     */
+    private Map<String, Entry> readState() {
+        if (!mApk.exists()) {
+            return Collections.emptyMap();
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(mStateFile.toPath())))) {
+            if (in.readInt() != STATE_MAGIC || in.readInt() != STATE_VERSION) {
+                return Collections.emptyMap();
+            }
+            if (in.readLong() != mApk.length() || in.readLong() != mApk.lastModified()) {
+                return Collections.emptyMap();
+            }
+            int count = in.readInt();
+            Map<String, Entry> entries = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readLong(),
+                        in.readLong(), in.readInt(), in.readLong(), in.readLong(), in.readLong());
+                entries.put(entry.mArchivePath, entry);
+            }
+            return entries;
+        } catch (IOException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private void writeState(List<Entry> entries) throws IOException {
+        File parent = mStateFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(mStateFile.toPath())))) {
+            out.writeInt(STATE_MAGIC);
+            out.writeInt(STATE_VERSION);
+            out.writeLong(mApk.length());
+            out.writeLong(mApk.lastModified());
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.mArchivePath);
+                out.writeUTF(entry.mFingerprint);
+                out.writeLong(entry.mOffset);
+                out.writeLong(entry.mLength);
+                out.writeInt(entry.mMethod);
+                out.writeLong(entry.mCrc);
+                out.writeLong(entry.mCompressedSize);
+                out.writeLong(entry.mSize);
+            }
+        }
+    }
+
+    private ZipFile getZipFile(File zip) throws IOException {
+        ZipFile zipFile = mZipFiles.get(zip);
+        if (zipFile == null) {
+            zipFile = new ZipFile(zip);
+            mZipFiles.put(zip, zipFile);
+        }
+        return zipFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (ZipFile zipFile : mZipFiles.values()) {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        mZipFiles.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @VisibleForTesting
+    static boolean isJavaResource(String archivePath) {
+        if (archivePath.endsWith("/")) {
+            return false;
+        }
+        String[] segments = archivePath.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (!ApkBuilder.checkFolderForPackaging(segments[i])) {
+                return false;
+            }
+        }
+        return ApkBuilder.checkFileForPackaging(segments[segments.length - 1]);
+    }
+
+    /**
+     * The layout of an entry in the APK
+     */
+    private static class Entry {
+        final String mArchivePath;
+        final String mFingerprint;
+        /**
+         * The offset of the local header
+         */
+        final long mOffset;
+        /**
+         * The length of the local header and the data
+         */
+        final long mLength;
+        final int mMethod;
+        final long mCrc;
+        final long mCompressedSize;
+        final long mSize;
+
+        Entry(String archivePath,
+              String fingerprint,
+              long offset,
+              long length,
+              int method,
+              long crc,
+              long compressedSize,
+              long size) {
+            mArchivePath = archivePath;
+            mFingerprint = fingerprint;
+            mOffset = offset;
+            mLength = length;
+            mMethod = method;
+            mCrc = crc;
+            mCompressedSize = compressedSize;
+            mSize = size;
+        }
+    }
+
+    private abstract static class Data {
+        final int mMethod;
+        final long mCrc;
+        final long mCompressedSize;
+        final long mSize;
+
+        Data(int method, long crc, long compressedSize, long size) {
+            mMethod = method;
+            mCrc = crc;
+            mCompressedSize = compressedSize;
+            mSize = size;
+        }
+
+        /**
+         * @return The number of bytes written
+         */
+        abstract long copyTo(RandomAccessFile file) throws IOException;
+    }
+
+    private abstract static class Source {
+        final String mArchivePath;
+
+        Source(String archivePath) {
+            mArchivePath = archivePath;
+        }
+
+        /**
+         * @return A string that changes when the data of the entry changes
+         */
+        abstract String getFingerprint();
+
+        /**
+         * @return Where this entry comes from, for error messages
+         */
+        abstract String getOrigin();
+
+        abstract Data getData() throws IOException;
+    }
+
+    private static class FileSource extends Source {
+        private final File mFile;
+        private final boolean mCompress;
+
+        FileSource(String archivePath, File file, boolean compress) {
+            super(archivePath);
+            mFile = file;
+            mCompress = compress;
+        }
+
+        @Override
+        String getFingerprint() {
+            return "file:" + mFile.getAbsolutePath() + ':' + mFile.length() + ':' +
+                   mFile.lastModified() + ':' + mCompress;
+        }
+
+        @Override
+        String getOrigin() {
+            return mFile.getAbsolutePath();
+        }
+
+        @Override
+        Data getData() throws IOException {
+            byte[] bytes = Files.readAllBytes(mFile.toPath());
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+
+            byte[] data = bytes;
+            int method = ZipEntry.STORED;
+            if (mCompress) {
+                byte[] compressed = deflate(bytes);
+                // keep small files that do not compress well stored, like aapt2 does
+                if (compressed.length < bytes.length) {
+                    data = compressed;
+                    method = ZipEntry.DEFLATED;
+                }
+            }
+            byte[] finalData = data;
+            return new Data(method, crc.getValue(), data.length, bytes.length) {
+                @Override
+                long copyTo(RandomAccessFile file) throws IOException {
+                    file.write(finalData);
+                    return finalData.length;
+                }
+            };
+        }
+
+        private static byte[] deflate(byte[] bytes) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer);
+                    out.write(buffer, 0, length);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private class ZipEntrySource extends Source {
+        private final File mZip;
+        private final ZipArchiveEntry mEntry;
+
+        ZipEntrySource(String archivePath, File zip, ZipArchiveEntry entry) {
+            super(archivePath);
+            mZip = zip;
+            mEntry = entry;
+        }
+
+        @Override
+        String getFingerprint() {
+            return "zip:" + mZip.getAbsolutePath() + ':' + mEntry.getName() + ':' +
+                   mEntry.getMethod() + ':' + mEntry.getCrc() + ':' +
+                   mEntry.getCompressedSize() + ':' + mEntry.getSize();
+        }
+
+        @Override
+        String getOrigin() {
+            return mZip.getAbsolutePath();
+        }
+
+        @Override
+        Data getData() throws IOException {
+            int method = mEntry.getMethod();
+            if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+                throw new IOException("Unsupported compression method " + method + " of " +
+                                      mEntry.getName() + " in " + mZip);
+            }
+            return new Data(method, mEntry.getCrc(), mEntry.getCompressedSize(),
+                    mEntry.getSize()) {
+                @Override
+                long copyTo(RandomAccessFile file) throws IOException {
+                    long copied = 0;
+                    byte[] buffer = new byte[8192];
+                    try (InputStream in = getZipFile(mZip).getRawInputStream(mEntry)) {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            file.write(buffer, 0, read);
+                            copied += read;
+                        }
+                    }
+                    return copied;
+                }
+            };
+        }
+    }
+}
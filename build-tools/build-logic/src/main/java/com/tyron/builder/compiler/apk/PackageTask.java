@@ -6,6 +6,7 @@ import com.android.sdklib.build.ApkBuilder;
 import com.android.sdklib.build.ApkCreationException;
 import com.android.sdklib.build.DuplicateFileException;
 import com.android.sdklib.build.SealedApkException;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -16,7 +17,10 @@ import com.tyron.builder.project.api.AndroidModule;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 public class PackageTask extends Task<AndroidModule> {
 
@@ -51,6 +55,17 @@ public class PackageTask extends Task<AndroidModule> {
         return "Package";
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.DEX, BuildArtifact.COMPILED_RESOURCES,
+                BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -79,8 +94,78 @@ public class PackageTask extends Task<AndroidModule> {
 
     @Override
     public void run() throws IOException, CompilationFailedException {
+        if (mBuildType == BuildType.DEBUG) {
+            packageIncrementally();
+        } else {
+            packageRelease();
+        }
+    }
+
+    /**
+     * Debug builds update the APK of the previous build in place, see
+     * {@link IncrementalApkPackager}
+     */
+    private void packageIncrementally() throws IOException, CompilationFailedException {
+        File stateFile = new File(getModule().getBuildDirectory(),
+                "intermediate/caches/packageState.bin");
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(mApk, stateFile)) {
+            packager.addZipFile(mGeneratedRes, path -> true);
+            packager.addFile(mDexFile, mDexFile.getName());
+
+            int dexCount = 1;
+            for (File extraDex : mDexFiles) {
+                dexCount++;
+                packager.addFile(extraDex, extraDex.getName());
+            }
+
+            for (File library : mLibraries) {
+                packager.addResourcesFromJar(library);
+
+                File parent = library.getParentFile();
+                if (parent != null) {
+                    File jniFolder = new File(parent, "jni");
+                    if (jniFolder.exists() && jniFolder.isDirectory()) {
+                        packager.addNativeLibraries(jniFolder);
+                    }
+                }
+            }
+
+            if (getModule().getNativeLibrariesDirectory().exists()) {
+                packager.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+            }
 
-        int dexCount = 1;
+            // For debug mode, dex files are not merged to save up compile time
+            for (File library : mLibraries) {
+                File parent = library.getParentFile();
+                if (parent != null) {
+                    File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
+                    if (dexFiles != null) {
+                        for (File dexFile : dexFiles) {
+                            dexCount++;
+                            packager.addFile(dexFile, "classes" + dexCount + ".dex");
+                        }
+                    }
+                }
+            }
+
+            File resourcesDir = getModule().getResourcesDir();
+            if (resourcesDir.exists()) {
+                packager.addSourceFolder(resourcesDir);
+            }
+
+            IncrementalApkPackager.Result result = packager.write();
+            getLogger().info(String.format(Locale.ROOT,
+                    "Packaged %s: %d of %d entries written, %d of %d bytes written",
+                    result.isIncremental() ? "incrementally" : "from scratch",
+                    result.getWrittenEntries(), result.getTotalEntries(),
+                    result.getBytesWritten(), result.getApkSize()));
+        } catch (IncrementalApkPackager.DuplicateEntryException e) {
+            throw new CompilationFailedException(getDuplicateMessage(e.getFile1(),
+                    e.getFile2(), e.getArchivePath()));
+        }
+    }
+
+    private void packageRelease() throws IOException, CompilationFailedException {
         try {
             ApkBuilder builder = new ApkBuilder(
                     mApk.getAbsolutePath(),
@@ -90,7 +175,6 @@ public class PackageTask extends Task<AndroidModule> {
                     null);
 
             for (File extraDex : mDexFiles) {
-                dexCount++;
                 builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
             }
 
@@ -110,23 +194,6 @@ public class PackageTask extends Task<AndroidModule> {
                 builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
             }
 
-            if (mBuildType == BuildType.DEBUG) {
-                builder.setDebugMode(true);
-                // For debug mode, dex files are not merged to save up compile time
-                for (File it : getModule().getLibraries()) {
-                    File parent = it.getParentFile();
-                    if (parent != null) {
-                        File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
-                        if (dexFiles != null) {
-                            for (File dexFile : dexFiles) {
-                                dexCount++;
-                                builder.addFile(dexFile, "classes" + dexCount + ".dex");
-                            }
-                        }
-                    }
-                }
-            }
-
             File resourcesDir = getModule().getResourcesDir();
             if (resourcesDir.exists()) {
                 builder.addSourceFolder(resourcesDir);
@@ -136,11 +203,16 @@ public class PackageTask extends Task<AndroidModule> {
         } catch (ApkCreationException | SealedApkException e) {
             throw new CompilationFailedException(e);
         } catch (DuplicateFileException e) {
-            String message = "Duplicate files from two libraries detected. \n";
-            message += "File1: " + e.getFile1() + " \n";
-            message += "File2: " + e.getFile2() + " \n";
-            message += "Archive path: " + e.getArchivePath();
-            throw new CompilationFailedException(message);
+            throw new CompilationFailedException(getDuplicateMessage(e.getFile1(),
+                    e.getFile2(), e.getArchivePath()));
         }
     }
+
+    private static String getDuplicateMessage(Object file1, Object file2, String archivePath) {
+        String message = "Duplicate files from two libraries detected. \n";
+        message += "File1: " + file1 + " \n";
+        message += "File2: " + file2 + " \n";
+        message += "Archive path: " + archivePath;
+        return message;
+    }
 }
@@ -1,6 +1,7 @@
 package com.tyron.builder.compiler.apk;
 
 import com.tyron.builder.compiler.ApkSigner;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -12,6 +13,8 @@ import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class SignTask extends Task<AndroidModule> {
 
@@ -27,6 +30,16 @@ public class SignTask extends Task<AndroidModule> {
         return "Sign";
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.APK);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mInputApk = new File(getModule().getBuildDirectory(), "bin/aligned.apk");
@@ -54,6 +67,9 @@ public class SignTask extends Task<AndroidModule> {
             throw new CompilationFailedException(e);
         }
 
-        FileUtils.forceDelete(mInputApk);
+        // generated.apk is kept so the next debug build can update it incrementally
+        if (mInputApk.getName().equals("aligned.apk")) {
+            FileUtils.forceDelete(mInputApk);
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.tyron.builder.compiler.apk;
 
 import android.content.Context;
 
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -17,7 +18,9 @@ import javax.tools.Diagnostic;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class ZipAlignTask extends Task<AndroidModule> {
 
@@ -34,6 +37,16 @@ public class ZipAlignTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.APK);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.APK);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mApkFile = new File(getModule().getBuildDirectory(), "bin/generated.apk");
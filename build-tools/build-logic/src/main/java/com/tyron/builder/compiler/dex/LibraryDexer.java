@@ -0,0 +1,312 @@
+package com.tyron.builder.compiler.dex;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.tools.r8.CompilationMode;
+import com.android.tools.r8.D8;
+import com.android.tools.r8.D8Command;
+import com.android.tools.r8.DiagnosticsHandler;
+import com.android.tools.r8.OutputMode;
+import com.android.tools.r8.Version;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.compiler.SharedCacheDirectory;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Dexes library jars on a bounded pool of threads.
+ *
+ * The dex files of each jar are stored in a cache directory shared by all projects, keyed by
+ * the hash of the contents of the jar and of the D8 options that change its output: the
+ * contents of the library files, the min sdk, the compilation mode and the version of D8. A
+ * library that has already been dexed, e.g. by another project, is copied from the cache
+ * instead of being dexed again.
+ *
+ * Below {@link #MIN_SDK_NATIVE_INTERFACE_METHODS}, D8 desugars default and static interface
+ * methods and needs the classpath to find the interfaces of the library, the classpath is then
+ * also part of the key. From that version on, the libraries are dexed without a classpath so
+ * their key does not change when another library of the project is added or updated.
+ *
+ * The cache is bounded to {@link #MAX_CACHE_SIZE} bytes, see {@link SharedCacheDirectory}.
+ */
+public class LibraryDexer {
+
+    public interface ProgressListener {
+        /**
+         * Called from a worker thread after a library has been dexed or copied from the cache
+         *
+         * @param library The jar of the library
+         * @param fromCache Whether the dex files were copied from the cache
+         * @param millis The time it took
+         * @param finished The number of libraries that have been processed so far
+         * @param total The number of libraries to process
+         */
+        void onLibraryDexed(File library, boolean fromCache, long millis, int finished, int total);
+    }
+
+    private static final int POOL_SIZE =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static final CompilationMode MODE = CompilationMode.RELEASE;
+
+    /**
+     * The first api level that supports default and static interface methods
+     */
+    private static final int MIN_SDK_NATIVE_INTERFACE_METHODS = 24;
+
+    /**
+     * The maximum total size of the cached dex files
+     */
+    private static final long MAX_CACHE_SIZE = 512L * 1024 * 1024;
+
+    /**
+     * The content hashes of the jars, keyed by their path, size and modification time. The
+     * classpath is the same for every library and rarely changes between builds.
+     */
+    private static final Map<String, String> sFileHashes = new ConcurrentHashMap<>();
+
+    private final DiagnosticsHandler mDiagnosticsHandler;
+    private final List<Path> mLibraryFiles;
+    private final List<Path> mClasspath;
+    private final int mMinSdk;
+    @Nullable
+    private final File mCacheDirectory;
+    private String mConfigurationHash;
+
+    /**
+     * @param libraryFiles The bootstrap classes, e.g. android.jar
+     * @param classpath All the libraries of the project, passed as classpath when the
+     *                  interface methods have to be desugared
+     * @param cacheDirectory The shared cache directory, dex files are not cached if null
+     */
+    public LibraryDexer(DiagnosticsHandler diagnosticsHandler,
+                        List<Path> libraryFiles,
+                        List<File> classpath,
+                        int minSdk,
+                        @Nullable File cacheDirectory) {
+        mDiagnosticsHandler = diagnosticsHandler;
+        mLibraryFiles = libraryFiles;
+        mClasspath = minSdk < MIN_SDK_NATIVE_INTERFACE_METHODS
+                ? classpath.stream().map(File::toPath).collect(Collectors.toList())
+                : Collections.emptyList();
+        mMinSdk = minSdk;
+        mCacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Dexes the given jars, the dex files of each jar are written next to it.
+     *
+     * @throws com.android.tools.r8.CompilationFailedException if a library has failed to dex,
+     * the other libraries that have not started yet are not dexed
+     */
+    public void dex(@NonNull List<File> libraries, @Nullable ProgressListener listener)
+            throws com.android.tools.r8.CompilationFailedException {
+        if (libraries.isEmpty()) {
+            return;
+        }
+
+        int total = libraries.size();
+        AtomicInteger finished = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(POOL_SIZE, total), r -> {
+            Thread thread = new Thread(r, "LibraryDexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(total);
+            for (File library : libraries) {
+                futures.add(executor.submit(() -> {
+                    long start = System.currentTimeMillis();
+                    boolean fromCache = dex(library);
+                    long millis = System.currentTimeMillis() - start;
+                    if (listener != null) {
+                        listener.onLibraryDexed(library, fromCache, millis,
+                                finished.incrementAndGet(), total);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    executor.shutdownNow();
+                    Throwable cause = e.getCause();
+                    if (cause instanceof com.android.tools.r8.CompilationFailedException) {
+                        throw (com.android.tools.r8.CompilationFailedException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (mCacheDirectory != null) {
+            try {
+                SharedCacheDirectory.prune(mCacheDirectory, MAX_CACHE_SIZE);
+            } catch (IOException e) {
+                // the cache stays usable, pruning is retried the next time a library is dexed
+            }
+        }
+    }
+
+    /**
+     * @return Whether the dex files were copied from the cache
+     */
+    private boolean dex(File library) throws IOException,
+            com.android.tools.r8.CompilationFailedException {
+        File outputDirectory = library.getParentFile();
+        if (mCacheDirectory == null) {
+            runD8(library, outputDirectory);
+            return false;
+        }
+
+        File cached = new File(mCacheDirectory, getCacheKey(library));
+        if (cached.isDirectory()) {
+            try {
+                copyDexFiles(cached, outputDirectory);
+                SharedCacheDirectory.touch(cached);
+                return true;
+            } catch (IOException e) {
+                if (cached.isDirectory()) {
+                    throw e;
+                }
+                // pruned by another build in the meantime
+            }
+        }
+
+        File temp = Files.createTempDirectory(ensureCacheDirectory().toPath(),
+                SharedCacheDirectory.TEMP_PREFIX + cached.getName()).toFile();
+        try {
+            runD8(library, temp);
+            moveToCache(temp, cached);
+        } finally {
+            if (temp.exists()) {
+                FileUtils.deleteDirectory(temp);
+            }
+        }
+        copyDexFiles(cached, outputDirectory);
+        return false;
+    }
+
+    private void runD8(File library, File outputDirectory)
+            throws com.android.tools.r8.CompilationFailedException {
+        D8Command command = D8Command.builder(mDiagnosticsHandler)
+                .addLibraryFiles(mLibraryFiles)
+                .addClasspathFiles(mClasspath)
+                .addProgramFiles(library.toPath())
+                .setMode(MODE)
+                .setMinApiLevel(mMinSdk)
+                .setOutput(outputDirectory.toPath(), OutputMode.DexIndexed)
+                .build();
+        D8.run(command);
+    }
+
+    private File ensureCacheDirectory() throws IOException {
+        if (!mCacheDirectory.exists() && !mCacheDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + mCacheDirectory);
+        }
+        return mCacheDirectory;
+    }
+
+    /**
+     * Moves the dexed library into the cache, another project may have dexed the same library
+     * in the meantime in which case its result is kept.
+     */
+    private void moveToCache(File temp, File cached) throws IOException {
+        try {
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // dexed concurrently
+        } catch (AtomicMoveNotSupportedException e) {
+            if (!cached.exists()) {
+                FileUtils.moveDirectory(temp, cached);
+            }
+        } catch (IOException e) {
+            if (!cached.isDirectory()) {
+                throw e;
+            }
+        }
+    }
+
+    private static void copyDexFiles(File from, File to) throws IOException {
+        File[] dexFiles = from.listFiles(file -> file.getName().endsWith(".dex"));
+        if (dexFiles == null) {
+            throw new IOException("Unable to list " + from);
+        }
+        for (File dexFile : dexFiles) {
+            FileUtils.copyFileToDirectory(dexFile, to);
+        }
+    }
+
+    @VisibleForTesting
+    String getCacheKey(File library) throws IOException {
+        return hash(library) + "-" + getConfigurationHash();
+    }
+
+    /**
+     * @return A hash of the D8 options that change the dex files of a library
+     */
+    private synchronized String getConfigurationHash() throws IOException {
+        if (mConfigurationHash == null) {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            hasher.putUnencodedChars(Version.getVersionString());
+            hasher.putInt(mMinSdk);
+            hasher.putUnencodedChars(MODE.name());
+            // desugaring is enabled by default and depends on the library files, and on the
+            // classpath when it is used
+            for (List<Path> paths : Arrays.asList(mLibraryFiles, mClasspath)) {
+                hasher.putInt(paths.size());
+                for (Path path : paths) {
+                    hasher.putUnencodedChars(hash(path.toFile()));
+                }
+            }
+            mConfigurationHash = hasher.hash().toString();
+        }
+        return mConfigurationHash;
+    }
+
+    private static String hash(File file) throws IOException {
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        String hash = sFileHashes.get(key);
+        if (hash == null) {
+            hash = com.google.common.io.Files.asByteSource(file)
+                    .hash(Hashing.murmur3_128())
+                    .toString();
+            sFileHashes.put(key, hash);
+        }
+        return hash;
+    }
+}
@@ -5,6 +5,7 @@ import com.android.tools.r8.OutputMode;
 import com.android.tools.r8.R8;
 import com.android.tools.r8.R8Command;
 import com.android.tools.r8.origin.Origin;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -18,7 +19,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class R8Task extends Task<AndroidModule> {
@@ -34,6 +37,17 @@ public class R8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.JAVA_CLASSES, BuildArtifact.KOTLIN_CLASSES,
+                BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.DEX);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -2,6 +2,7 @@ package com.tyron.builder.compiler.firebase;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -19,9 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
 
@@ -57,6 +60,16 @@ public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.noneOf(BuildArtifact.class);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.RESOURCE_SOURCES);
+    }
+
     private File mConfigFile;
 
     @Override
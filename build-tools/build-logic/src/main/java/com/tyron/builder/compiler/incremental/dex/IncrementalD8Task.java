@@ -5,10 +5,13 @@ import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.dex.LibraryDexer;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.CodeAssistLibrary;
@@ -16,6 +19,7 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.CacheJournal;
 
 import org.apache.commons.io.FileUtils;
 
@@ -25,8 +29,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class IncrementalD8Task extends Task<AndroidModule> {
@@ -34,7 +40,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     private static final String TAG = IncrementalD8Task.class.getSimpleName();
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("dexCache");
+            new CacheHolder.CacheKey<>("dexCache", CacheJournal.STRING, CacheJournal.FILE_LIST);
 
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
@@ -55,6 +61,17 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.JAVA_CLASSES, BuildArtifact.KOTLIN_CLASSES,
+                BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.DEX);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mBuildType = type;
@@ -72,8 +89,9 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                 new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(
                 new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        Set<Path> classFiles = new HashSet<>(mClassFiles);
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
+            if (!classFiles.contains(key.file)) {
                 File file = mDexCache.get(key.file, "dex").iterator().next();
                 deleteAllFiles(file, ".dex");
                 mDexCache.remove(key.file, "dex");
@@ -81,12 +99,25 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         }
 
         for (Path file : mClassFiles) {
-            if (mDexCache.needs(file, "dex")) {
+            if (mDexCache.needs(file, "dex") || !hasDexFiles(file)) {
                 mFilesToCompile.add(file);
             }
         }
     }
 
+    /**
+     * The cache may have been restored from disk, make sure the outputs have not been
+     * deleted since then.
+     */
+    private boolean hasDexFiles(Path file) {
+        for (File dexFile : mDexCache.get(file, "dex")) {
+            if (!dexFile.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void run() throws IOException, CompilationFailedException {
         if (mBuildType == BuildType.RELEASE || mBuildType == BuildType.AAB) {
@@ -194,13 +225,15 @@ public class IncrementalD8Task extends Task<AndroidModule> {
     }
 
     /**
-     * Ensures that all libraries of the project has been dex-ed
+     * Ensures that all libraries of the project has been dex-ed. The libraries are dexed
+     * concurrently and are shared with other projects through {@link LibraryDexer}.
      *
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
     protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
         List<File> libraries = getModule().getLibraries();
 
+        List<File> librariesToDex = new ArrayList<>();
         for (File lib : libraries) {
             File parentFile = lib.getParentFile();
             if (parentFile == null) {
@@ -217,30 +250,34 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     continue;
                 }
                 if (lib.exists()) {
-                    String message;
-                    CodeAssistLibrary library = getModule().getLibrary(parentFile.getName());
-                    if (library != null) {
-                        boolean declared = library.getDeclaration() != null;
-                        message = "Dexing library " +
-                                  (declared ? library.getDeclaration() : library.getSourceFile()
-                                          .getName());
-                    } else {
-                        message = "Dexing jar " + parentFile.getName();
-                    }
-                    getLogger().debug(message);
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                                    .addLibraryFiles(getLibraryFiles())
-                                    .addClasspathFiles(libraries.stream().map(File::toPath)
-                                                               .collect(Collectors.toList()))
-                                    .addProgramFiles(lib.toPath())
-                                    .setMode(CompilationMode.RELEASE)
-                                    .setMinApiLevel(getModule().getMinSdk())
-                                    .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                                    .build();
-                    D8.run(command);
+                    librariesToDex.add(lib);
                 }
             }
         }
+
+        if (librariesToDex.isEmpty()) {
+            return;
+        }
+        getLogger().debug("Dexing " + librariesToDex.size() + " libraries");
+
+        LibraryDexer dexer = new LibraryDexer(diagnosticsHandler, getLibraryFiles(), libraries,
+                getModule().getMinSdk(), BuildModule.getDexCacheDirectory());
+        dexer.dex(librariesToDex, (library, fromCache, millis, finished, total) -> {
+            String message = (fromCache ? "Copied cached dex of " : "Dexed ") +
+                             getLibraryName(library) + " in " + millis + " ms";
+            getLogger().debug(message);
+            updateProgress(message, (int) (finished * 100f / total));
+        });
+    }
+
+    private String getLibraryName(File lib) {
+        File parentFile = lib.getParentFile();
+        CodeAssistLibrary library = getModule().getLibrary(parentFile.getName());
+        if (library != null) {
+            boolean declared = library.getDeclaration() != null;
+            return declared ? library.getDeclaration() : library.getSourceFile().getName();
+        }
+        return parentFile.getName();
     }
 
     private List<Path> getLibraryFiles() {
@@ -0,0 +1,231 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which classes each source file produces and which classes each of those classes
+ * references, so that when the ABI of a class changes only the source files that can observe
+ * the change have to be recompiled.
+ */
+public class ClassDependencyGraph {
+
+    private static final int MAGIC = 0x4a444550;
+    private static final int VERSION = 1;
+
+    /**
+     * The classes produced by each source file, keyed by the absolute path of the source
+     */
+    private final Map<String, Map<String, ClassFileInfo>> mSourceClasses = new HashMap<>();
+
+    /**
+     * The source file of each class
+     */
+    private final Map<String, String> mClassSources = new HashMap<>();
+
+    /**
+     * The classes that reference each class, derived from {@link ClassFileInfo#getDependencies()}
+     */
+    private final Map<String, Set<String>> mDependents = new HashMap<>();
+
+    /**
+     * Fingerprint of the classpath the classes were compiled against
+     */
+    private String mClasspathHash = "";
+
+    public boolean isEmpty() {
+        return mSourceClasses.isEmpty();
+    }
+
+    public boolean contains(@NonNull String source) {
+        return mSourceClasses.containsKey(source);
+    }
+
+    @NonNull
+    public String getClasspathHash() {
+        return mClasspathHash;
+    }
+
+    public void setClasspathHash(@NonNull String classpathHash) {
+        mClasspathHash = classpathHash;
+    }
+
+    /**
+     * @return The classes produced by the source file the last time it was compiled
+     */
+    @NonNull
+    public Map<String, ClassFileInfo> getClasses(@NonNull String source) {
+        Map<String, ClassFileInfo> classes = mSourceClasses.get(source);
+        if (classes == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Replaces the classes produced by the source file
+     */
+    public void update(@NonNull String source, @NonNull Collection<ClassFileInfo> classes) {
+        remove(source);
+        Map<String, ClassFileInfo> map = new HashMap<>();
+        for (ClassFileInfo info : classes) {
+            map.put(info.getName(), info);
+            mClassSources.put(info.getName(), source);
+            for (String dependency : info.getDependencies()) {
+                mDependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(info.getName());
+            }
+        }
+        mSourceClasses.put(source, map);
+    }
+
+    /**
+     * Removes the source file and the classes it produced
+     *
+     * @return The classes that were produced by the source file
+     */
+    @NonNull
+    public Map<String, ClassFileInfo> remove(@NonNull String source) {
+        Map<String, ClassFileInfo> removed = mSourceClasses.remove(source);
+        if (removed == null) {
+            return Collections.emptyMap();
+        }
+        for (ClassFileInfo info : removed.values()) {
+            if (source.equals(mClassSources.get(info.getName()))) {
+                mClassSources.remove(info.getName());
+            }
+            for (String dependency : info.getDependencies()) {
+                Set<String> dependents = mDependents.get(dependency);
+                if (dependents != null) {
+                    dependents.remove(info.getName());
+                    if (dependents.isEmpty()) {
+                        mDependents.remove(dependency);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return The source files of all the classes that directly or indirectly reference any
+     * of the given classes
+     */
+    @NonNull
+    public Set<String> getTransitiveDependentSources(@NonNull Collection<String> classNames) {
+        Set<String> visited = new HashSet<>(classNames);
+        Deque<String> queue = new ArrayDeque<>(classNames);
+        Set<String> sources = new HashSet<>();
+        while (!queue.isEmpty()) {
+            Set<String> dependents = mDependents.get(queue.poll());
+            if (dependents == null) {
+                continue;
+            }
+            for (String dependent : dependents) {
+                if (visited.add(dependent)) {
+                    queue.add(dependent);
+                    String source = mClassSources.get(dependent);
+                    if (source != null) {
+                        sources.add(source);
+                    }
+                }
+            }
+        }
+        return sources;
+    }
+
+    public void clear() {
+        mSourceClasses.clear();
+        mClassSources.clear();
+        mDependents.clear();
+        mClasspathHash = "";
+    }
+
+    public void write(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        File temp = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mClasspathHash);
+            out.writeInt(mSourceClasses.size());
+            for (Map.Entry<String, Map<String, ClassFileInfo>> entry : mSourceClasses.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (ClassFileInfo info : entry.getValue().values()) {
+                    out.writeUTF(info.getName());
+                    out.writeUTF(info.getAbiHash());
+                    out.writeUTF(info.getConstantsHash());
+                    out.writeInt(info.getDependencies().size());
+                    for (String dependency : info.getDependencies()) {
+                        out.writeUTF(dependency);
+                    }
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The graph stored in the file, or null if it does not exist or was written by
+     * an incompatible version
+     */
+    @Nullable
+    public static ClassDependencyGraph read(@NonNull File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            ClassDependencyGraph graph = new ClassDependencyGraph();
+            graph.mClasspathHash = in.readUTF();
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                String source = in.readUTF();
+                int classCount = in.readInt();
+                List<ClassFileInfo> classes = new ArrayList<>(classCount);
+                for (int j = 0; j < classCount; j++) {
+                    String name = in.readUTF();
+                    String abiHash = in.readUTF();
+                    String constantsHash = in.readUTF();
+                    int dependencyCount = in.readInt();
+                    Set<String> dependencies = new HashSet<>(dependencyCount);
+                    for (int k = 0; k < dependencyCount; k++) {
+                        dependencies.add(in.readUTF());
+                    }
+                    classes.add(new ClassFileInfo(name, abiHash, constantsHash, dependencies));
+                }
+                graph.update(source, classes);
+            }
+            return graph;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The parts of a compiled class file that matter for incremental compilation: the classes it
+ * references and a hash of its ABI.
+ *
+ * The ABI hash covers everything other classes can see of this class: its modifiers, super
+ * types, generic signature and all of its non private fields and methods. A change to a method
+ * body or to a private member does not change the ABI hash. The values of compile time
+ * constants are hashed separately because javac inlines them into the classes that use
+ * them without leaving a reference to the declaring class behind.
+ */
+public class ClassFileInfo {
+
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String mName;
+    private final String mAbiHash;
+    private final String mConstantsHash;
+    private final Set<String> mDependencies;
+
+    public ClassFileInfo(String name,
+                         String abiHash,
+                         String constantsHash,
+                         Set<String> dependencies) {
+        mName = name;
+        mAbiHash = abiHash;
+        mConstantsHash = constantsHash;
+        mDependencies = dependencies;
+    }
+
+    /**
+     * @return The binary name of the class, e.g. com.example.Outer$Inner
+     */
+    public String getName() {
+        return mName;
+    }
+
+    public String getAbiHash() {
+        return mAbiHash;
+    }
+
+    public String getConstantsHash() {
+        return mConstantsHash;
+    }
+
+    /**
+     * @return The binary names of the classes referenced by this class, excluding itself
+     */
+    public Set<String> getDependencies() {
+        return mDependencies;
+    }
+
+    /**
+     * @return A hash of the names and the ABI of all the classes in the directory, it only
+     * changes when a class is added, removed or its ABI changes
+     */
+    @NonNull
+    public static String getAbiHash(@NonNull File classesDir) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        if (!classesDir.isDirectory()) {
+            return hasher.hash().toString();
+        }
+
+        List<Path> classFiles;
+        try (Stream<Path> stream = Files.walk(classesDir.toPath())) {
+            classFiles = stream.filter(path -> path.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles) {
+            ClassFileInfo info = read(classFile.toFile());
+            hasher.putUnencodedChars(info.getName());
+            hasher.putUnencodedChars(info.getAbiHash());
+            hasher.putUnencodedChars(info.getConstantsHash());
+        }
+        return hasher.hash().toString();
+    }
+
+    @NonNull
+    public static ClassFileInfo read(@NonNull File classFile) throws IOException {
+        return read(Files.readAllBytes(classFile.toPath()));
+    }
+
+    @NonNull
+    public static ClassFileInfo read(@NonNull byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        Object[] values = new Object[count];
+        // for references, the indexes of the entries they point to
+        int[] first = new int[count];
+        int[] second = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    values[i] = in.readUTF();
+                    break;
+                case CONSTANT_INTEGER:
+                    values[i] = in.readInt();
+                    break;
+                case CONSTANT_FLOAT:
+                    values[i] = in.readFloat();
+                    break;
+                case CONSTANT_LONG:
+                    values[i] = in.readLong();
+                    i++;
+                    break;
+                case CONSTANT_DOUBLE:
+                    values[i] = in.readDouble();
+                    i++;
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    first[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    first[i] = in.readUnsignedShort();
+                    second[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    in.readUnsignedByte();
+                    first[i] = in.readUnsignedShort();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        Set<String> dependencies = new HashSet<>();
+        for (int i = 1; i < count; i++) {
+            switch (tags[i]) {
+                case CONSTANT_CLASS:
+                    addClassName(dependencies, (String) values[first[i]]);
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    addDescriptor(dependencies, (String) values[second[i]]);
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    addDescriptor(dependencies, (String) values[first[i]]);
+                    break;
+            }
+        }
+
+        int access = in.readUnsignedShort();
+        String name = toBinaryName((String) values[first[in.readUnsignedShort()]]);
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? "" : (String) values[first[superIndex]];
+
+        int interfaceCount = in.readUnsignedShort();
+        List<String> interfaces = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add((String) values[first[in.readUnsignedShort()]]);
+        }
+        Collections.sort(interfaces);
+
+        List<String> members = new ArrayList<>();
+        List<String> constants = new ArrayList<>();
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            readMember(in, values, first, tags, dependencies, members, constants, true);
+        }
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            readMember(in, values, first, tags, dependencies, members, constants, false);
+        }
+        // the order of the members in the class file is not part of the ABI
+        Collections.sort(members);
+        Collections.sort(constants);
+
+        String signature = "";
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = (String) values[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("Signature".equals(attributeName)) {
+                signature = (String) values[in.readUnsignedShort()];
+                addDescriptor(dependencies, signature);
+            } else {
+                in.skipBytes(length);
+            }
+        }
+
+        Hasher abi = Hashing.murmur3_128().newHasher();
+        abi.putInt(access & ~ACC_SUPER);
+        putString(abi, name);
+        putString(abi, superName);
+        putString(abi, signature);
+        for (String anInterface : interfaces) {
+            putString(abi, anInterface);
+        }
+        for (String member : members) {
+            putString(abi, member);
+        }
+
+        Hasher constantsHasher = Hashing.murmur3_128().newHasher();
+        for (String constant : constants) {
+            putString(constantsHasher, constant);
+        }
+
+        dependencies.remove(name);
+        return new ClassFileInfo(name, abi.hash().toString(), constantsHasher.hash().toString(),
+                dependencies);
+    }
+
+    private static void readMember(DataInputStream in,
+                                   Object[] values,
+                                   int[] first,
+                                   int[] tags,
+                                   Set<String> dependencies,
+                                   List<String> members,
+                                   List<String> constants,
+                                   boolean field) throws IOException {
+        int access = in.readUnsignedShort();
+        String name = (String) values[in.readUnsignedShort()];
+        String descriptor = (String) values[in.readUnsignedShort()];
+        addDescriptor(dependencies, descriptor);
+
+        StringBuilder member = new StringBuilder();
+        member.append(field ? 'F' : 'M').append(access).append(' ')
+                .append(name).append(' ').append(descriptor);
+
+        String constant = null;
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = (String) values[in.readUnsignedShort()];
+            int length = in.readInt();
+            switch (attributeName) {
+                case "Signature":
+                    String signature = (String) values[in.readUnsignedShort()];
+                    addDescriptor(dependencies, signature);
+                    member.append(' ').append(signature);
+                    break;
+                case "ConstantValue":
+                    int index = in.readUnsignedShort();
+                    Object value = tags[index] == CONSTANT_STRING
+                            ? values[first[index]]
+                            : values[index];
+                    constant = name + '=' + value;
+                    break;
+                case "Exceptions":
+                    int exceptionCount = in.readUnsignedShort();
+                    List<String> exceptions = new ArrayList<>(exceptionCount);
+                    for (int j = 0; j < exceptionCount; j++) {
+                        exceptions.add((String) values[first[in.readUnsignedShort()]]);
+                    }
+                    Collections.sort(exceptions);
+                    member.append(" throws ").append(exceptions);
+                    break;
+                default:
+                    in.skipBytes(length);
+            }
+        }
+
+        if ((access & ACC_PRIVATE) != 0 || (access & ACC_SYNTHETIC) != 0) {
+            return;
+        }
+        members.add(member.toString());
+        if (constant != null) {
+            constants.add(constant);
+        }
+    }
+
+    private static void addClassName(Set<String> dependencies, String internalName) {
+        if (internalName.startsWith("[")) {
+            addDescriptor(dependencies, internalName);
+        } else {
+            dependencies.add(toBinaryName(internalName));
+        }
+    }
+
+    /**
+     * Adds the classes referenced in a field or method descriptor or in a generic signature,
+     * e.g. (ILjava/util/List<Lcom/example/Foo;>;)V references java.util.List and
+     * com.example.Foo
+     */
+    private static void addDescriptor(Set<String> dependencies, String descriptor) {
+        int length = descriptor.length();
+        boolean typeStart = true;
+        int i = 0;
+        while (i < length) {
+            char c = descriptor.charAt(i);
+            if (typeStart && isTypeParameter(descriptor, i)) {
+                // a type parameter declaration such as T:Ljava/lang/Object;
+                i = descriptor.indexOf(':', i);
+                continue;
+            }
+            if (typeStart && c == 'L') {
+                int end = i + 1;
+                while (end < length && ";<.".indexOf(descriptor.charAt(end)) == -1) {
+                    end++;
+                }
+                dependencies.add(toBinaryName(descriptor.substring(i + 1, end)));
+                typeStart = false;
+                i = end;
+                continue;
+            }
+            if (typeStart && c == 'T') {
+                // a type variable such as TT;
+                i = descriptor.indexOf(';', i) + 1;
+                if (i == 0) {
+                    return;
+                }
+                continue;
+            }
+            if (typeStart && "BCDFIJSZV".indexOf(c) != -1) {
+                i++;
+                continue;
+            }
+            typeStart = ";()[<>+-*^:".indexOf(c) != -1;
+            i++;
+        }
+    }
+
+    private static boolean isTypeParameter(String descriptor, int start) {
+        for (int i = start; i < descriptor.length(); i++) {
+            char c = descriptor.charAt(i);
+            if (c == ':') {
+                return i > start;
+            }
+            if (!Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String toBinaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    private static void putString(Hasher hasher, String string) {
+        hasher.putInt(string.length());
+        hasher.putUnencodedChars(string);
+    }
+}
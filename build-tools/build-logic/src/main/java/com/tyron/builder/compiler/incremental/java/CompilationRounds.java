@@ -0,0 +1,175 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.exception.CompilationFailedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the changed files first, then compiles the files that depend on the classes whose
+ * ABI has changed. A change in a method body does not change the ABI of its class so only the
+ * changed file is compiled. If the value of a compile time constant changes, all files are
+ * compiled since javac does not record where constants are inlined.
+ *
+ * <p>The graph is updated after each round so the next round can find the dependents of the
+ * classes it has just compiled. If a round fails, the entries of every source compiled so far
+ * are restored, the next build then compares the classes with the ones of the last successful
+ * build again.</p>
+ */
+class CompilationRounds {
+
+    interface Compiler {
+        /**
+         * @return The class files generated for each source file that has been compiled, this
+         * may include sources that were not given but were needed by the given files.
+         */
+        Map<File, List<File>> compile(List<File> files) throws CompilationFailedException;
+    }
+
+    private final ClassDependencyGraph mGraph;
+    private final Set<File> mJavaFiles;
+    private final Compiler mCompiler;
+
+    /**
+     * The entries of the sources before they were compiled, null if the source was not in
+     * the graph
+     */
+    private final Map<String, Map<String, ClassFileInfo>> mPreviousClasses = new HashMap<>();
+    private final Map<File, List<File>> mClassFiles = new LinkedHashMap<>();
+    private final Set<String> mRemovedClasses = new HashSet<>();
+    private final Set<String> mProducedClasses = new HashSet<>();
+    private final List<File> mCompiledFiles = new ArrayList<>();
+
+    CompilationRounds(ClassDependencyGraph graph, Collection<File> javaFiles, Compiler compiler) {
+        mGraph = graph;
+        mJavaFiles = new HashSet<>(javaFiles);
+        mCompiler = compiler;
+    }
+
+    /**
+     * Compiles the files and their dependents, the graph is left unchanged if this throws.
+     */
+    void run(List<File> files) throws IOException, CompilationFailedException {
+        try {
+            compileRounds(files);
+        } catch (IOException | CompilationFailedException | RuntimeException e) {
+            restore();
+            throw e;
+        }
+    }
+
+    private void compileRounds(List<File> files) throws IOException, CompilationFailedException {
+        Set<File> compiled = new HashSet<>();
+        List<File> round = new ArrayList<>(files);
+        while (!round.isEmpty()) {
+            mCompiledFiles.addAll(round);
+            Map<File, List<File>> outputs = mCompiler.compile(round);
+            compiled.addAll(round);
+            compiled.addAll(outputs.keySet());
+
+            Set<String> changedClasses = new HashSet<>();
+            boolean constantsChanged = false;
+            for (File file : round) {
+                outputs.putIfAbsent(file, Collections.emptyList());
+            }
+            for (Map.Entry<File, List<File>> entry : outputs.entrySet()) {
+                String source = entry.getKey().getAbsolutePath();
+                List<File> classFiles = entry.getValue();
+                Map<String, ClassFileInfo> previous = mGraph.getClasses(source);
+                if (!mPreviousClasses.containsKey(source)) {
+                    mPreviousClasses.put(source,
+                            mGraph.contains(source) ? new HashMap<>(previous) : null);
+                }
+
+                List<ClassFileInfo> current = new ArrayList<>(classFiles.size());
+                Set<String> currentNames = new HashSet<>();
+                for (File classFile : classFiles) {
+                    ClassFileInfo info = ClassFileInfo.read(classFile);
+                    current.add(info);
+                    currentNames.add(info.getName());
+
+                    ClassFileInfo old = previous.get(info.getName());
+                    if (old != null) {
+                        if (!old.getAbiHash().equals(info.getAbiHash())) {
+                            changedClasses.add(info.getName());
+                        }
+                        if (!old.getConstantsHash().equals(info.getConstantsHash())) {
+                            constantsChanged = true;
+                        }
+                    }
+                }
+                for (String name : previous.keySet()) {
+                    if (!currentNames.contains(name)) {
+                        changedClasses.add(name);
+                        mRemovedClasses.add(name);
+                    }
+                }
+                mProducedClasses.addAll(currentNames);
+
+                mGraph.update(source, current);
+                mClassFiles.put(entry.getKey(), classFiles);
+            }
+
+            Set<File> next = new LinkedHashSet<>();
+            if (constantsChanged) {
+                next.addAll(mJavaFiles);
+            } else {
+                for (String source : mGraph.getTransitiveDependentSources(changedClasses)) {
+                    next.add(new File(source));
+                }
+            }
+            next.retainAll(mJavaFiles);
+            next.removeAll(compiled);
+            round = new ArrayList<>(next);
+        }
+    }
+
+    private void restore() {
+        for (Map.Entry<String, Map<String, ClassFileInfo>> entry : mPreviousClasses.entrySet()) {
+            if (entry.getValue() == null) {
+                mGraph.remove(entry.getKey());
+            } else {
+                mGraph.update(entry.getKey(), entry.getValue().values());
+            }
+        }
+    }
+
+    /**
+     * @return The files given to the compiler in every round, including the round that failed
+     */
+    @NonNull
+    List<File> getCompiledFiles() {
+        return mCompiledFiles;
+    }
+
+    /**
+     * @return The class files generated for each source file that has been compiled
+     */
+    @NonNull
+    Map<File, List<File>> getClassFiles() {
+        return mClassFiles;
+    }
+
+    /**
+     * @return The classes that were produced by a source the last time it was compiled and
+     * that are no longer produced by any source
+     */
+    @NonNull
+    Set<String> getRemovedClasses() {
+        Set<String> removed = new HashSet<>(mRemovedClasses);
+        removed.removeAll(mProducedClasses);
+        return removed;
+    }
+}
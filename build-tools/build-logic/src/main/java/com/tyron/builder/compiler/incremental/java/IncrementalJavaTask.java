@@ -2,9 +2,14 @@ package com.tyron.builder.compiler.incremental.java;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.api.JavacTool;
 import com.sun.tools.javac.file.JavacFileManager;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
@@ -16,8 +21,10 @@ import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.CacheJournal;
 
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,11 +34,14 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
 
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
@@ -41,13 +51,17 @@ import javax.tools.StandardLocation;
 public class IncrementalJavaTask extends Task<JavaModule> {
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("javaCache");
+            new CacheHolder.CacheKey<>("javaCache", CacheJournal.STRING, CacheJournal.FILE_LIST);
+    public static final Key<ClassDependencyGraph> DEPENDENCY_GRAPH_KEY =
+            Key.create("javaDependencyGraph");
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
     private File mOutputDir;
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
     private Cache<String, List<File>> mClassCache;
+    private ClassDependencyGraph mGraph;
+    private String mClasspathHash;
 
     public IncrementalJavaTask(Project project, JavaModule module, ILogger logger) {
         super(project, module, logger);
@@ -58,6 +72,18 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.JAVA_SOURCES, BuildArtifact.R_SOURCES,
+                BuildArtifact.LIBRARY_R_SOURCES, BuildArtifact.VIEW_BINDING_SOURCES,
+                BuildArtifact.KOTLIN_CLASSES, BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.JAVA_CLASSES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mOutputDir = new File(getModule().getBuildDirectory(), "bin/java/classes");
@@ -67,37 +93,117 @@ public class IncrementalJavaTask extends Task<JavaModule> {
 
         mFilesToCompile = new ArrayList<>();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mGraph = getDependencyGraph();
 
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
         if (getModule() instanceof AndroidModule) {
             mJavaFiles.addAll(((AndroidModule) getModule()).getResourceClasses().values());
         }
+
+        Set<File> javaFiles = new HashSet<>(mJavaFiles);
+        Set<String> removedClasses = new HashSet<>();
         for (Cache.Key<String> key : new HashSet<>(mClassCache.getKeys())) {
-            if (!mJavaFiles.contains(key.file.toFile())) {
-                File file = mClassCache.get(key.file, "class").iterator().next();
-                deleteAllFiles(file, ".class");
+            if (!javaFiles.contains(key.file.toFile())) {
+                for (File file : mClassCache.get(key.file, "class")) {
+                    deleteAllFiles(file, ".class");
+                }
                 mClassCache.remove(key.file, "class", "dex");
+                removedClasses.addAll(
+                        mGraph.remove(key.file.toFile().getAbsolutePath()).keySet());
             }
         }
 
+        // the graph cannot tell which classes have changed if the classpath has changed
+        mClasspathHash = getClasspathHash();
+        boolean fullBuild = !mClasspathHash.equals(mGraph.getClasspathHash());
+        if (fullBuild) {
+            getLogger().debug("Classpath has changed, recompiling all java files");
+        }
+
+        Set<File> filesToCompile = new LinkedHashSet<>();
         for (File file : mJavaFiles) {
             Path filePath = file.toPath();
-            if (mClassCache.needs(filePath, "class")) {
-                mFilesToCompile.add(file);
+            if (fullBuild ||
+                mClassCache.needs(filePath, "class") ||
+                !hasClassFiles(filePath) ||
+                !mGraph.contains(file.getAbsolutePath())) {
+                filesToCompile.add(file);
             }
         }
 
+        // classes that referenced a deleted class have to be compiled again to report errors
+        for (String source : mGraph.getTransitiveDependentSources(removedClasses)) {
+            File file = new File(source);
+            if (javaFiles.contains(file)) {
+                filesToCompile.add(file);
+            }
+        }
+        mFilesToCompile.addAll(filesToCompile);
+    }
+
+    /**
+     * The cache may have been restored from disk, make sure the outputs have not been
+     * deleted since then.
+     */
+    private boolean hasClassFiles(Path file) {
+        for (File classFile : mClassCache.get(file, "class")) {
+            if (!classFile.exists()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private boolean mHasErrors = false;
 
+    /**
+     * Compiles the changed files and the files that depend on the classes whose ABI has
+     * changed, see {@link CompilationRounds}. The caches and the graph are only saved once
+     * every round has succeeded.
+     */
     @Override
     public void run() throws IOException, CompilationFailedException {
         if (mFilesToCompile.isEmpty()) {
             return;
         }
 
-        getLogger().debug("Compiling java files");
+        CompilationRounds rounds = new CompilationRounds(mGraph, mJavaFiles, this::compile);
+        try {
+            rounds.run(new ArrayList<>(mFilesToCompile));
+        } catch (IOException | CompilationFailedException e) {
+            // the files may have been compiled against classes that have changed since
+            for (File file : rounds.getCompiledFiles()) {
+                mClassCache.remove(file.toPath(), "class");
+            }
+            throw e;
+        } finally {
+            mFilesToCompile.clear();
+            mFilesToCompile.addAll(rounds.getCompiledFiles());
+        }
+
+        for (String name : rounds.getRemovedClasses()) {
+            deleteStaleClassFile(name);
+        }
+        for (Map.Entry<File, List<File>> entry : rounds.getClassFiles().entrySet()) {
+            mClassCache.load(entry.getKey().toPath(), "class", entry.getValue());
+        }
+
+        mGraph.setClasspathHash(mClasspathHash);
+        try {
+            mGraph.write(getDependencyGraphFile());
+        } catch (IOException e) {
+            getLogger().warning("Unable to save java dependency graph: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles the given files
+     *
+     * @return The class files generated for each source file that has been compiled, this
+     * may include sources that were not given but were needed by the given files.
+     */
+    private Map<File, List<File>> compile(List<File> files) throws CompilationFailedException {
+        getLogger().debug("Compiling " + files.size() + " java files");
 
         DiagnosticListener<JavaFileObject> diagnosticCollector = diagnostic -> {
             switch (diagnostic.getKind()) {
@@ -136,7 +242,7 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         }
 
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : files) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
@@ -153,61 +259,49 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
                 options, null, javaFileObjects);
 
-        HashMap<String, List<File>> compiledFiles = new HashMap<>();
-        try {
+        // the source file of each generated class
+        Map<String, File> classSources = new HashMap<>();
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void started(TaskEvent e) {
+
+            }
 
+            @Override
+            public void finished(TaskEvent e) {
+                if (e.getKind() != TaskEvent.Kind.GENERATE ||
+                    e.getTypeElement() == null ||
+                    e.getSourceFile() == null) {
+                    return;
+                }
+                String name = task.getElements().getBinaryName(e.getTypeElement()).toString();
+                classSources.put(name, new File(e.getSourceFile().toUri()));
+            }
+        });
+
+        Map<File, List<File>> compiledFiles = new HashMap<>();
+        try {
             task.parse();
             task.analyze();
             Iterable<? extends JavaFileObject> generate = task.generate();
+            if (mHasErrors) {
+                throw new CompilationFailedException(
+                        "Compilation failed, check logs for more details");
+            }
             for (JavaFileObject fileObject : generate) {
-                String path = fileObject.getName();
-                File classFile = new File(path);
-                if (classFile. exists()) {
-                    String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
-                            "src/main/java/").replace(".class", ".java");
-                    if (classFile.getName().indexOf('$') != -1) {
-                        classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
-                    }
-                    File file = new File(classPath);
-                    if (!file.exists()) {
-                        file = new File(classPath.replace("src/main/java", "build/gen"));
-                    }
-
-                    if (!compiledFiles.containsKey(file.getAbsolutePath())) {
-                        ArrayList<File> list = new ArrayList<>();
-                        list.add(classFile);
-                        compiledFiles.put(file.getAbsolutePath(), list);
-                    } else {
-                        Objects.requireNonNull(compiledFiles.get(file.getAbsolutePath())).add(classFile);
-                    }
-                    mClassCache.load(file.toPath(), "class", Collections.singletonList(classFile));
+                File classFile = new File(fileObject.toUri());
+                if (!classFile.exists()) {
+                    continue;
                 }
-            }
-
-            compiledFiles.forEach((key, values) -> {
-                File sourceFile = new File(key);
-                String name = sourceFile.getName().replace(".java", "");
-                File first = values.iterator().next();
-                File parent = first.getParentFile();
-                if (parent != null) {
-                    File[] children = parent.listFiles(c -> {
-                        if (!c.getName().contains("$")) {
-                            return false;
-                        }
-                        String baseClassName = c.getName().substring(0, c.getName().indexOf('$'));
-                        return baseClassName.equals(name);
-                    });
-                    if (children != null) {
-                        for (File file : children) {
-                            if (!values.contains(file)) {
-                                if (file.delete()) {
-                                    getLogger().debug("Deleted file " + file.getAbsolutePath());
-                                }
-                            }
-                        }
-                    }
+                File source = findSource(classSources, getBinaryName(classFile));
+                if (source == null) {
+                    getLogger().warning("Unable to find the source of " + classFile);
+                    continue;
                 }
-            });
+                compiledFiles.computeIfAbsent(source, k -> new ArrayList<>()).add(classFile);
+            }
+        } catch (CompilationFailedException e) {
+            throw e;
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
@@ -215,6 +309,90 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         if (mHasErrors) {
             throw new CompilationFailedException("Compilation failed, check logs for more details");
         }
+        return compiledFiles;
+    }
+
+    private String getBinaryName(File classFile) {
+        String path = mOutputDir.toPath().relativize(classFile.toPath()).toString();
+        return path.substring(0, path.length() - ".class".length())
+                .replace(File.separatorChar, '.');
+    }
+
+    /**
+     * Finds the source of a class, nested classes are looked up through their enclosing class
+     */
+    private static File findSource(Map<String, File> classSources, String binaryName) {
+        String name = binaryName;
+        while (true) {
+            File source = classSources.get(name);
+            if (source != null) {
+                return source;
+            }
+            int index = name.lastIndexOf('$');
+            if (index == -1) {
+                return null;
+            }
+            name = name.substring(0, index);
+        }
+    }
+
+    /**
+     * Deletes the class file of a class that the source file has produced the last time it
+     * was compiled but did not produce this time, e.g. a removed inner class
+     */
+    private void deleteStaleClassFile(String binaryName) throws IOException {
+        File file = new File(mOutputDir,
+                binaryName.replace('.', File.separatorChar) + ".class");
+        if (file.exists()) {
+            FileUtils.delete(file);
+            getLogger().debug("Deleted file " + file.getAbsolutePath());
+        }
+    }
+
+    private ClassDependencyGraph getDependencyGraph() {
+        ClassDependencyGraph graph = getModule().getUserData(DEPENDENCY_GRAPH_KEY);
+        if (graph != null) {
+            return graph;
+        }
+        try {
+            graph = ClassDependencyGraph.read(getDependencyGraphFile());
+        } catch (IOException e) {
+            getLogger().warning("Unable to read java dependency graph: " + e.getMessage());
+        }
+        if (graph == null) {
+            graph = new ClassDependencyGraph();
+        }
+        getModule().putUserData(DEPENDENCY_GRAPH_KEY, graph);
+        return graph;
+    }
+
+    private File getDependencyGraphFile() {
+        return new File(getModule().getBuildDirectory(),
+                "intermediate/caches/javaDependencies.bin");
+    }
+
+    /**
+     * @return A hash of the paths, sizes and modification times of the classpath entries and
+     * of the ABI of the classes compiled by kotlin, which java sources may reference. A change
+     * to the body of a kotlin function does not change the hash.
+     */
+    private String getClasspathHash() throws IOException {
+        List<File> classpath = new ArrayList<>(getModule().getLibraries());
+        classpath.add(getModule().getBootstrapJarFile());
+        classpath.add(getModule().getLambdaStubsJarFile());
+
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (File file : classpath) {
+            if (file == null) {
+                continue;
+            }
+            hasher.putUnencodedChars(file.getAbsolutePath());
+            hasher.putLong(file.length());
+            hasher.putLong(file.lastModified());
+        }
+        hasher.putUnencodedChars(ClassFileInfo.getAbiHash(
+                new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        return hasher.hash().toString();
     }
 
     @VisibleForTesting
@@ -5,6 +5,7 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 
 import com.google.common.base.Throwables;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -31,8 +32,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import kotlin.jvm.functions.Function0;
@@ -56,6 +59,18 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.JAVA_SOURCES, BuildArtifact.R_SOURCES,
+                BuildArtifact.LIBRARY_R_SOURCES, BuildArtifact.VIEW_BINDING_SOURCES,
+                BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.KOTLIN_CLASSES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mFilesToCompile = new ArrayList<>();
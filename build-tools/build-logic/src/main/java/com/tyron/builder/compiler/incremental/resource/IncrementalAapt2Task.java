@@ -1,7 +1,14 @@
 package com.tyron.builder.compiler.incremental.resource;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.tools.aapt2.Aapt2Jni;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.compiler.SharedCacheDirectory;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -9,7 +16,9 @@ import com.tyron.builder.log.LogUtils;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
-import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.common.util.Cache;
+import com.tyron.common.util.CacheJournal;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
@@ -17,21 +26,59 @@ import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-
+import java.util.stream.Stream;
+
+/**
+ * Compiles the resources of the project and its libraries and links them.
+ *
+ * Each resource file of the project is compiled to its own .flat file. The files that have
+ * changed since the last build are found using the persisted {@link #CACHE_KEY} cache so the
+ * output directory does not have to be compared with the resource directory. The compilation
+ * is split between a bounded pool of aapt2 processes.
+ *
+ * The compiled resources of libraries are shared between projects in
+ * {@link BuildModule#getResourceCacheDirectory()}, keyed by the hash of their contents. Like
+ * the dexed libraries, the cache is bounded to {@link #MAX_CACHE_SIZE} bytes, see
+ * {@link SharedCacheDirectory}.
+ */
 public class IncrementalAapt2Task extends Task<AndroidModule> {
 
     private static final String TAG = "IncrementalAAPT2";
 
+    public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
+            new CacheHolder.CacheKey<>("aapt2Cache", CacheJournal.STRING, CacheJournal.FILE_LIST);
+
+    private static final String KEY_RESOURCE = "flat";
+    private static final String KEY_LIBRARY = "res";
+
+    private static final int POOL_SIZE =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * The maximum total size of the cached compiled library resources
+     */
+    private static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+
     private final boolean mGenerateProtoFormat;
 
+    private Cache<String, List<File>> mCache;
+    private File mCompiledDirectory;
+
     public IncrementalAapt2Task(Project project,
                                 AndroidModule module,
                                 ILogger logger,
@@ -46,17 +93,30 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     }
 
     @Override
-    public void prepare(BuildType type) throws IOException {
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.MANIFEST, BuildArtifact.RESOURCE_SOURCES,
+                BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.COMPILED_RESOURCES, BuildArtifact.R_SOURCES);
+    }
 
+    @Override
+    public void prepare(BuildType type) throws IOException {
+        mCache = getModule().getCache(CACHE_KEY, new Cache<>());
+        mCompiledDirectory = new File(getOutputPath(), "compiled");
+        if (!mCompiledDirectory.exists() && !mCompiledDirectory.mkdirs()) {
+            throw new IOException("Failed to create compiled directory");
+        }
     }
 
     public void run() throws IOException, CompilationFailedException {
-        Map<String, List<File>> filesToCompile =
-                getFiles(getModule(), getOutputDirectory(getModule()));
-        List<File> librariesToCompile = getLibraries();
+        List<File> filesToCompile = getFilesToCompile();
+        List<File> librariesToCompile = getLibrariesToCompile();
 
-        compileProject(filesToCompile);
-        compileLibraries(librariesToCompile);
+        compile(filesToCompile, librariesToCompile);
 
         link();
 
@@ -72,80 +132,202 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         }
     }
 
-    private void compileProject(Map<String, List<File>> files) throws IOException,
+    /**
+     * Compiles the resource files of the project and the resource directories of the libraries
+     * concurrently. The logs of every aapt2 invocation are printed after all of them have
+     * finished so they are not interleaved.
+     */
+    private void compile(List<File> files, List<File> libraries) throws IOException,
             CompilationFailedException {
-        List<String> args = new ArrayList<>();
+        List<List<File>> chunks = partition(files, POOL_SIZE);
+        int jobs = chunks.size() + libraries.size();
+        if (jobs == 0) {
+            return;
+        }
+        getLogger().debug("Compiling " + files.size() + " resource files and " +
+                          libraries.size() + " libraries.");
+
+        List<List<DiagnosticWrapper>> logs = new ArrayList<>(jobs);
+        List<Future<Integer>> futures = new ArrayList<>(jobs);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(POOL_SIZE, jobs), r -> {
+            Thread thread = new Thread(r, "Aapt2Compile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        boolean failed = false;
+        try {
+            for (List<File> chunk : chunks) {
+                List<DiagnosticWrapper> chunkLogs = new ArrayList<>();
+                logs.add(chunkLogs);
+                futures.add(executor.submit(() -> compileFiles(chunk, chunkLogs)));
+            }
+            for (File library : libraries) {
+                List<DiagnosticWrapper> libraryLogs = new ArrayList<>();
+                logs.add(libraryLogs);
+                futures.add(executor.submit(() -> compileLibrary(library, libraryLogs)));
+            }
 
-        for (String resourceType : files.keySet()) {
-            List<File> filesToCompile = files.get(resourceType);
-            if (filesToCompile != null && !filesToCompile.isEmpty()) {
-                for (File fileToCompile : filesToCompile) {
-                    args.add(fileToCompile.getAbsolutePath());
+            for (Future<Integer> future : futures) {
+                if (getResult(future) != 0) {
+                    failed = true;
                 }
             }
+        } finally {
+            executor.shutdownNow();
         }
-        args.add("-o");
 
-        File outputCompiled = new File(getModule().getBuildDirectory(), "bin/res/compiled");
-        if (!outputCompiled.exists() && !outputCompiled.mkdirs()) {
-            throw new IOException("Failed to create compiled directory");
+        for (List<DiagnosticWrapper> log : logs) {
+            LogUtils.log(log, getLogger());
         }
-        args.add(outputCompiled.getAbsolutePath());
-
-        int compile = Aapt2Jni.compile(args);
-        List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-        LogUtils.log(logs, getLogger());
-
-        if (compile != 0) {
+        if (failed) {
             throw new CompilationFailedException(
                     "Compilation failed, check logs for more details.");
         }
+        onCompiled(files, libraries);
 
-        copyMapToDir(files);
+        File cacheDirectory = BuildModule.getResourceCacheDirectory();
+        if (cacheDirectory != null && !libraries.isEmpty()) {
+            try {
+                SharedCacheDirectory.prune(cacheDirectory, MAX_CACHE_SIZE);
+            } catch (IOException e) {
+                // the cache stays usable, pruning is retried the next time a library is compiled
+            }
+        }
     }
 
-    private void compileLibraries(List<File> libraries) throws IOException,
-            CompilationFailedException {
-        getLogger().debug("Compiling libraries.");
-
-        File output = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                throw new IOException("Failed to create resource output directory");
-            }
+    /**
+     * Records the outputs of the compiled files so they are not compiled again until they
+     * change
+     */
+    @VisibleForTesting
+    void onCompiled(List<File> files, List<File> libraries) throws IOException {
+        for (File file : files) {
+            mCache.load(file.toPath(), KEY_RESOURCE, Collections.singletonList(
+                    new File(mCompiledDirectory, getCompiledName(file))));
+        }
+        for (File library : libraries) {
+            mCache.load(library.toPath(), KEY_LIBRARY,
+                    Collections.singletonList(getLibraryOutput(library)));
         }
+    }
 
-        for (File file : libraries) {
-            File parent = file.getParentFile();
-            if (parent == null) {
-                throw new IOException("CodeAssistLibrary folder doesn't exist");
+    private static int getResult(Future<Integer> future) throws IOException,
+            CompilationFailedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException("Resource compilation was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
-            File[] files = parent.listFiles();
-            if (files == null) {
-                continue;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new CompilationFailedException("Resource compilation failed", cause);
+        }
+    }
 
-            for (File inside : files) {
-                if (inside.isDirectory() && inside.getName().equals("res")) {
-                    List<String> args = new ArrayList<>();
-                    args.add("--dir");
-                    args.add(inside.getAbsolutePath());
-                    args.add("-o");
-                    args.add(createNewFile(output, parent.getName() + ".zip").getAbsolutePath());
-
-                    int compile = Aapt2Jni.compile(args);
-                    List<DiagnosticWrapper> logs = Aapt2Jni.getLogs();
-                    LogUtils.log(logs, getLogger());
-
-                    if (compile != 0) {
-                        throw new CompilationFailedException(
-                                "Compilation failed, check logs for more details.");
-                    }
+    private int compileFiles(List<File> files, List<DiagnosticWrapper> logs) {
+        List<String> args = new ArrayList<>();
+        for (File file : files) {
+            args.add(file.getAbsolutePath());
+        }
+        args.add("-o");
+        args.add(mCompiledDirectory.getAbsolutePath());
+        return Aapt2Jni.compile(args, logs);
+    }
+
+    private int compileLibrary(File library, List<DiagnosticWrapper> logs) throws IOException {
+        File resDirectory = new File(library.getParentFile(), "res");
+        File output = getLibraryOutput(library);
+        File cacheDirectory = BuildModule.getResourceCacheDirectory();
+        if (cacheDirectory == null) {
+            return compileDirectory(resDirectory, output, logs);
+        }
+
+        File cached = new File(cacheDirectory, getCacheKey(resDirectory) + ".zip");
+        if (cached.exists()) {
+            try {
+                Files.copy(cached.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                SharedCacheDirectory.touch(cached);
+                return 0;
+            } catch (IOException e) {
+                if (cached.exists()) {
+                    throw e;
                 }
+                // pruned by another build in the meantime
+            }
+        }
+
+        if (!cacheDirectory.exists() && !cacheDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + cacheDirectory);
+        }
+        File temp = File.createTempFile(SharedCacheDirectory.TEMP_PREFIX + cached.getName(),
+                ".tmp", cacheDirectory);
+        try {
+            int result = compileDirectory(resDirectory, temp, logs);
+            if (result != 0) {
+                return result;
             }
+            // the output is copied before the entry is moved into the cache, where another
+            // build may prune it at any time
+            Files.copy(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            moveToCache(temp, cached);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        return 0;
+    }
+
+    private static int compileDirectory(File directory,
+                                        File output,
+                                        List<DiagnosticWrapper> logs) {
+        List<String> args = new ArrayList<>();
+        args.add("--dir");
+        args.add(directory.getAbsolutePath());
+        args.add("-o");
+        args.add(output.getAbsolutePath());
+        return Aapt2Jni.compile(args, logs);
+    }
+
+    /**
+     * Another project may have compiled the same library in the meantime, both results are
+     * the same so either one can be kept.
+     */
+    private static void moveToCache(File temp, File cached) throws IOException {
+        try {
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
+    /**
+     * @return A hash of the relative paths and contents of the files in the resource directory
+     * of a library and of the aapt2 binary that compiles it
+     */
+    private static String getCacheKey(File resDirectory) throws IOException {
+        Path root = resDirectory.toPath();
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        File binary = new File(Aapt2Jni.getBinary());
+        hasher.putLong(binary.length());
+        hasher.putLong(binary.lastModified());
+        for (Path file : files) {
+            hasher.putUnencodedChars(root.relativize(file).toString());
+            hasher.putBytes(Files.readAllBytes(file));
+        }
+        return hasher.hash().toString();
+    }
+
     private void link() throws IOException, CompilationFailedException {
         getLogger().debug("Linking resources");
 
@@ -259,219 +441,138 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
     }
 
     /**
-     * Utility function to get all the files that needs to be recompiled
+     * Finds the resource files of the project that have changed since they were last compiled
+     * and deletes the compiled files of the resources that have been deleted.
      *
      * @return resource files to compile
      */
-    public static Map<String, List<File>> getFiles(AndroidModule module,
-                                                   File cachedDirectory) throws IOException {
-        Map<String, List<ResourceFile>> newFiles = findFiles(module.getAndroidResourcesDirectory());
-        Map<String, List<ResourceFile>> oldFiles = findFiles(cachedDirectory);
-        Map<String, List<File>> filesToCompile = new HashMap<>();
-
-        for (String resourceType : newFiles.keySet()) {
-
-            // if the cache doesn't contain the new files then its considered new
-            if (!oldFiles.containsKey(resourceType)) {
-                List<ResourceFile> files = newFiles.get(resourceType);
-                if (files != null) {
-                    addToMapList(filesToCompile, resourceType, files);
-                }
-                continue;
-            }
-
-            // both contain the resource type, compare the contents
-            if (oldFiles.containsKey(resourceType)) {
-                List<ResourceFile> newFilesResource = newFiles.get(resourceType);
-                List<ResourceFile> oldFilesResource = oldFiles.get(resourceType);
-
-                if (newFilesResource == null) {
-                    newFilesResource = Collections.emptyList();
-                }
-                if (oldFilesResource == null) {
-                    oldFilesResource = Collections.emptyList();
-                }
-
-                addToMapList(filesToCompile, resourceType,
-                             getModifiedFiles(newFilesResource, oldFilesResource));
+    @VisibleForTesting
+    List<File> getFilesToCompile() {
+        Set<Path> current = new HashSet<>();
+        List<File> filesToCompile = new ArrayList<>();
+        for (File file : getResourceFiles(getModule().getAndroidResourcesDirectory())) {
+            Path path = file.toPath();
+            current.add(path);
+            if (mCache.needs(path, KEY_RESOURCE) || !hasOutputs(path, KEY_RESOURCE)) {
+                filesToCompile.add(file);
             }
         }
-
-        for (String resourceType : oldFiles.keySet()) {
-            // if the new files doesn't contain the old file then its deleted
-            if (!newFiles.containsKey(resourceType)) {
-                List<ResourceFile> files = oldFiles.get(resourceType);
-                if (files != null) {
-                    for (File file : files) {
-                        if (!file.delete()) {
-                            throw new IOException("Failed to delete file " + file);
-                        }
-                    }
-                }
-            }
-        }
-
+        removeStaleOutputs(KEY_RESOURCE, current);
         return filesToCompile;
     }
 
     /**
-     * Utility method to add a list of files to a map, if it doesn't exist, it creates a new one
-     *
-     * @param map    The map to add to
-     * @param key    Key to add the value
-     * @param values The list of files to add
+     * Returns the libraries whose resource directory needs to be compiled, a library is compiled
+     * again when its jar has changed or when its compiled resources have been deleted.
      */
-    public static void addToMapList(Map<String, List<File>> map,
-                                    String key,
-                                    List<ResourceFile> values) {
-        List<File> mapValues = map.get(key);
-        if (mapValues == null) {
-            mapValues = new ArrayList<>();
-        }
-
-        mapValues.addAll(values);
-        map.put(key, mapValues);
-    }
-
-    private void copyMapToDir(Map<String, List<File>> map) throws IOException {
-        File output = new File(getModule().getBuildDirectory(), "intermediate/resources");
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                throw new IOException("Failed to create intermediate directory");
-            }
-        }
-
-        for (String resourceType : map.keySet()) {
-            File outputDir = new File(output, resourceType);
-            if (!outputDir.exists()) {
-                if (!outputDir.mkdir()) {
-                    throw new IOException("Failed to create output directory for " + outputDir);
-                }
+    @VisibleForTesting
+    List<File> getLibrariesToCompile() {
+        Set<Path> current = new HashSet<>();
+        List<File> libraries = new ArrayList<>();
+        for (File library : getModule().getLibraries()) {
+            File parent = library.getParentFile();
+            if (parent == null || !new File(parent, "res").exists()) {
+                // we don't need to check it if it has no resource directory
+                continue;
             }
 
-            List<File> files = map.get(resourceType);
-            if (files != null) {
-                for (File file : files) {
-                    File copy = new File(outputDir, file.getName());
-                    if (copy.exists()) {
-                        FileUtils.deleteQuietly(copy);
-                    }
-                    FileUtils.copyFileToDirectory(file, outputDir, false);
-                }
+            Path path = library.toPath();
+            current.add(path);
+            if (mCache.needs(path, KEY_LIBRARY) || !hasOutputs(path, KEY_LIBRARY)) {
+                libraries.add(library);
             }
         }
+        removeStaleOutputs(KEY_LIBRARY, current);
+        return libraries;
     }
 
     /**
-     * Utility method to compare to list of files
+     * The cache may have been restored from disk, make sure the outputs have not been
+     * deleted since then.
      */
-    public static List<ResourceFile> getModifiedFiles(List<ResourceFile> newFiles,
-                                                      List<ResourceFile> oldFiles) throws IOException {
-        List<ResourceFile> resourceFiles = new ArrayList<>();
-
-        for (ResourceFile newFile : newFiles) {
-            if (!oldFiles.contains(newFile)) {
-                resourceFiles.add(newFile);
-            } else {
-                File oldFile = oldFiles.get(oldFiles.indexOf(newFile));
-                if (contentModified(newFile, oldFile)) {
-                    resourceFiles.add(newFile);
-                    if (!oldFile.delete()) {
-                        throw new IOException("Failed to delete file " + oldFile.getName());
-                    }
-                }
-                oldFiles.remove(oldFile);
+    private boolean hasOutputs(Path file, String key) {
+        for (File output : mCache.get(file, key)) {
+            if (!output.exists()) {
+                return false;
             }
         }
+        return true;
+    }
 
-        for (ResourceFile removedFile : oldFiles) {
-            if (!removedFile.delete()) {
-                throw new IOException("Failed to delete old file " + removedFile);
+    /**
+     * Deletes the outputs of the files in the cache that no longer exist
+     */
+    private void removeStaleOutputs(String key, Set<Path> current) {
+        for (Cache.Key<String> cacheKey : new ArrayList<>(mCache.getKeys())) {
+            if (!key.equals(cacheKey.key) || current.contains(cacheKey.file)) {
+                continue;
+            }
+            for (File output : mCache.get(cacheKey.file, key)) {
+                FileUtils.deleteQuietly(output);
             }
+            mCache.remove(cacheKey.file, key);
         }
-
-        return resourceFiles;
     }
 
-    private static boolean contentModified(File newFile, File oldFile) {
-        if (!oldFile.exists() || !newFile.exists()) {
-            return true;
+    /**
+     * @return The files in the resource type directories of the given res directory
+     */
+    private static List<File> getResourceFiles(File resDirectory) {
+        File[] directories = resDirectory.listFiles(File::isDirectory);
+        if (directories == null) {
+            return Collections.emptyList();
         }
 
-        if (newFile.length() != oldFile.length()) {
-            return true;
+        List<File> files = new ArrayList<>();
+        for (File directory : directories) {
+            File[] children = directory.listFiles(File::isFile);
+            if (children != null) {
+                Collections.addAll(files, children);
+            }
         }
-
-        return newFile.lastModified() > oldFile.lastModified();
+        return files;
     }
 
     /**
-     * Returns a map of resource type, and the files for a given resource directory
-     *
-     * @param file res directory
-     * @return Map of resource type and the files corresponding to it
+     * @return The name of the file aapt2 compiles the resource file to, e.g.
+     * layout-land/main.xml is compiled to layout-land_main.xml.flat and values/strings.xml to
+     * values_strings.arsc.flat. Like aapt2, the extension starts at the first dot of the name
+     * and only the xml files of the values directories are compiled to resource tables.
      */
-    public static Map<String, List<ResourceFile>> findFiles(File file) {
-        File[] children = file.listFiles();
-        if (children == null) {
-            return Collections.emptyMap();
+    @VisibleForTesting
+    static String getCompiledName(File file) {
+        String directory = file.getParentFile().getName();
+        String type = directory;
+        int dash = type.indexOf('-');
+        if (dash != -1) {
+            type = type.substring(0, dash);
         }
 
-        Map<String, List<ResourceFile>> map = new HashMap<>();
-        for (File child : children) {
-            if (!file.isDirectory()) {
-                continue;
-            }
-
-            String resourceType = child.getName();
-            File[] resourceFiles = child.listFiles();
-            List<File> files;
-            if (resourceFiles == null) {
-                files = Collections.emptyList();
-            } else {
-                files = Arrays.asList(resourceFiles);
-            }
-
-
-            map.put(resourceType,
-                    files.stream().map(ResourceFile::fromFile).collect(Collectors.toList()));
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        if (type.equals("values") && dot != -1 && name.substring(dot + 1).equals("xml")) {
+            return directory + "_" + name.substring(0, dot) + ".arsc.flat";
         }
-
-        return map;
+        return directory + "_" + name + ".flat";
     }
 
     /**
-     * Returns the list of resource directories of libraries that needs to be compiled
-     * It determines whether the library should be compiled by checking the build/bin/res folder,
-     * if it contains a zip file with its name, then its most likely the same library
+     * Splits the files into at most the given number of lists of about the same size
      */
-    private List<File> getLibraries() throws IOException {
-        File resDir = new File(getModule().getBuildDirectory(), "bin/res");
-        if (!resDir.exists()) {
-            if (!resDir.mkdirs()) {
-                throw new IOException("Failed to create resource directory");
-            }
+    private static List<List<File>> partition(List<File> files, int count) {
+        int size = Math.min(count, files.size());
+        List<List<File>> chunks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            chunks.add(new ArrayList<>());
         }
-
-        List<File> libraries = new ArrayList<>();
-
-        for (File library : getModule().getLibraries()) {
-            File parent = library.getParentFile();
-            if (parent != null) {
-
-                if (!new File(parent, "res").exists()) {
-                    // we don't need to check it if it has no resource directory
-                    continue;
-                }
-
-                File check = new File(resDir, parent.getName() + ".zip");
-                if (!check.exists()) {
-                    libraries.add(library);
-                }
-            }
+        for (int i = 0; i < files.size(); i++) {
+            chunks.get(i % size).add(files.get(i));
         }
+        return chunks;
+    }
 
-        return libraries;
+    private File getLibraryOutput(File library) throws IOException {
+        return new File(getOutputPath(), library.getParentFile().getName() + ".zip");
     }
 
     private File createNewFile(File parent, String name) throws IOException {
@@ -487,31 +588,6 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return createdFile;
     }
 
-    /**
-     * Return the output directory of where to stored cached files
-     *
-     * @param module The module
-     * @return The cached directory
-     * @throws IOException If the directory does not exist and cannot be created
-     */
-    public static File getOutputDirectory(Module module) throws IOException {
-        File intermediateDirectory = new File(module.getBuildDirectory(), "intermediate");
-
-        if (!intermediateDirectory.exists()) {
-            if (!intermediateDirectory.mkdirs()) {
-                throw new IOException("Failed to create intermediate directory");
-            }
-        }
-
-        File resourceDirectory = new File(intermediateDirectory, "resources");
-        if (!resourceDirectory.exists()) {
-            if (!resourceDirectory.mkdirs()) {
-                throw new IOException("Failed to create resource directory");
-            }
-        }
-        return resourceDirectory;
-    }
-
     private File getOutputPath() throws IOException {
         File file = new File(getModule().getBuildDirectory(), "bin/res");
         if (!file.exists()) {
@@ -3,6 +3,7 @@ package com.tyron.builder.compiler.log;
 import android.util.Log;
 import android.util.Pair;
 
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.exception.CompilationFailedException;
@@ -32,7 +33,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class InjectLoggerTask extends Task<AndroidModule> {
 
@@ -145,6 +148,17 @@ public class InjectLoggerTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.MANIFEST);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        // the application class is added to the manifest if it does not declare one
+        return EnumSet.of(BuildArtifact.JAVA_SOURCES, BuildArtifact.MANIFEST);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         getModule().getJavaFiles();
@@ -1,5 +1,6 @@
 package com.tyron.builder.compiler.manifest;
 
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.manifest.ManifestMerger2.SystemProperty;
@@ -19,7 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
 
@@ -37,6 +42,30 @@ public class ManifestMergeTask extends Task<AndroidModule> {
         return "ManifestMerger";
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.MANIFEST);
+    }
+
+    @Override
+    public List<File> getInputFiles() {
+        List<File> inputs = new ArrayList<>();
+        inputs.add(mMainManifest);
+        inputs.addAll(Arrays.asList(mLibraryManifestFiles));
+        inputs.add(new File(getModule().getRootFile(), "app_config.json"));
+        return inputs;
+    }
+
+    @Override
+    public List<File> getOutputFiles() {
+        return Collections.singletonList(mOutputFile);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mPackageName = getApplicationId();
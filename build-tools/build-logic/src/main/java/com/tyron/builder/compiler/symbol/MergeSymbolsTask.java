@@ -4,6 +4,7 @@ import android.util.Log;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.tyron.builder.compiler.BuildArtifact;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
@@ -13,6 +14,7 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.CacheJournal;
 
 import org.apache.commons.io.FileUtils;
 
@@ -20,8 +22,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
@@ -30,7 +34,8 @@ import java.util.List;
 public class MergeSymbolsTask extends Task<AndroidModule> {
 
     public static final CacheHolder.CacheKey<Void, Void> CACHE_KEY =
-            new CacheHolder.CacheKey<>("mergeSymbolsCache");
+            new CacheHolder.CacheKey<>("mergeSymbolsCache", CacheJournal.VOID,
+                    CacheJournal.VOID);
 
     private File mSymbolOutputDir;
     private File mFullResourceFile;
@@ -44,6 +49,16 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
         return "SymbolProcessor";
     }
 
+    @Override
+    public Set<BuildArtifact> getInputs() {
+        return EnumSet.of(BuildArtifact.COMPILED_RESOURCES, BuildArtifact.LIBRARIES);
+    }
+
+    @Override
+    public Set<BuildArtifact> getOutputs() {
+        return EnumSet.of(BuildArtifact.LIBRARY_R_SOURCES);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mSymbolOutputDir = new File(getModule().getBuildDirectory(), "gen");
@@ -1,6 +1,7 @@
 package com.tyron.builder.compiler.viewbinding
 
 import android.util.Log
+import com.tyron.builder.compiler.BuildArtifact
 import com.tyron.builder.compiler.BuildType
 import com.tyron.builder.compiler.Task
 import com.tyron.builder.exception.CompilationFailedException
@@ -22,6 +23,7 @@ import org.apache.commons.io.FileUtils
 import java.io.File
 import java.io.IOException
 import java.nio.charset.StandardCharsets
+import java.util.EnumSet
 
 /**
  * @param addToClasspath true if the generated binding classes
@@ -38,6 +40,10 @@ class GenerateViewBindingTask(
 
     override fun getName() = TAG
 
+    override fun getInputs(): Set<BuildArtifact> = EnumSet.of(BuildArtifact.RESOURCE_SOURCES)
+
+    override fun getOutputs(): Set<BuildArtifact> = EnumSet.of(BuildArtifact.VIEW_BINDING_SOURCES)
+
     override fun prepare(type: BuildType?) {
         outputDirectory = File(module.buildDirectory, VIEW_BINDING_GEN_DIR)
         doPrepare()
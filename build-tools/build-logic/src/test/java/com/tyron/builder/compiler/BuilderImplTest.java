@@ -0,0 +1,114 @@
+package com.tyron.builder.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.compiler.apk.PackageTask;
+import com.tyron.builder.compiler.apk.SignTask;
+import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
+import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
+import com.tyron.builder.compiler.incremental.java.IncrementalJavaTask;
+import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
+import com.tyron.builder.compiler.incremental.resource.IncrementalAapt2Task;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
+import com.tyron.builder.compiler.log.InjectLoggerTask;
+import com.tyron.builder.compiler.manifest.ManifestMergeTask;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
+import com.tyron.builder.compiler.viewbinding.GenerateViewBindingTask;
+import com.tyron.builder.crashlytics.CrashlyticsTask;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public class BuilderImplTest {
+
+    private List<Task<? super AndroidModule>> mTasks;
+    private List<Set<Integer>> mDependencies;
+
+    @Before
+    public void setup() {
+        MockAndroidModule module = new MockAndroidModule(new File("project"), null);
+        AndroidAppBuilder builder = new AndroidAppBuilder(null, module, ILogger.EMPTY);
+        mTasks = builder.getTasks(BuildType.DEBUG);
+        mDependencies = BuilderImpl.getDependencies(mTasks);
+    }
+
+    @Test
+    public void testTasksWithoutArtifactsAreBarriers() {
+        assertDependencies(CleanTask.class);
+        assertDependencies(CheckLibrariesTask.class, CleanTask.class);
+        for (int i = 2; i < mTasks.size(); i++) {
+            Set<Integer> dependencies = mDependencies.get(i);
+            assertTrue(mTasks.get(i).getName(),
+                    dependencies.contains(indexOf(CleanTask.class)) &&
+                    dependencies.contains(indexOf(CheckLibrariesTask.class)));
+        }
+    }
+
+    @Test
+    public void testDebugBuildDependencies() {
+        assertDependencies(ManifestMergeTask.class);
+        assertDependencies(GenerateFirebaseConfigTask.class);
+        // the logger adds its application class to the merged manifest
+        assertDependencies(InjectLoggerTask.class, ManifestMergeTask.class);
+        assertDependencies(CrashlyticsTask.class, GenerateFirebaseConfigTask.class);
+        assertDependencies(IncrementalAapt2Task.class, ManifestMergeTask.class,
+                GenerateFirebaseConfigTask.class, InjectLoggerTask.class, CrashlyticsTask.class);
+        // view binding runs concurrently with the resource compilation
+        assertDependencies(GenerateViewBindingTask.class, GenerateFirebaseConfigTask.class,
+                CrashlyticsTask.class);
+        assertDependencies(MergeSymbolsTask.class, IncrementalAapt2Task.class);
+        assertDependencies(IncrementalKotlinCompiler.class, InjectLoggerTask.class,
+                IncrementalAapt2Task.class, GenerateViewBindingTask.class, MergeSymbolsTask.class);
+        assertDependencies(IncrementalJavaTask.class, InjectLoggerTask.class,
+                IncrementalAapt2Task.class, GenerateViewBindingTask.class, MergeSymbolsTask.class,
+                IncrementalKotlinCompiler.class);
+        assertDependencies(IncrementalD8Task.class, IncrementalKotlinCompiler.class,
+                IncrementalJavaTask.class);
+        assertDependencies(PackageTask.class, IncrementalAapt2Task.class, IncrementalD8Task.class);
+        assertDependencies(SignTask.class, PackageTask.class);
+    }
+
+    /**
+     * Checks the tasks the given task depends on, apart from the tasks that do not declare
+     * their artifacts which every task after them depends on.
+     */
+    @SafeVarargs
+    private final void assertDependencies(Class<? extends Task<?>> task,
+                                          Class<? extends Task<?>>... expected) {
+        Set<String> expectedNames = new HashSet<>();
+        for (Class<? extends Task<?>> dependency : expected) {
+            expectedNames.add(dependency.getSimpleName());
+        }
+        Set<String> names = new HashSet<>();
+        for (int dependency : mDependencies.get(indexOf(task))) {
+            Class<?> dependencyClass = mTasks.get(dependency).getClass();
+            if (!Arrays.asList(CleanTask.class, CheckLibrariesTask.class).contains(dependencyClass) ||
+                task == CheckLibrariesTask.class) {
+                names.add(dependencyClass.getSimpleName());
+            }
+        }
+        assertEquals(task.getSimpleName(), expectedNames, names);
+    }
+
+    private int indexOf(Class<?> taskClass) {
+        for (int i = 0; i < mTasks.size(); i++) {
+            if (mTasks.get(i).getClass() == taskClass) {
+                return i;
+            }
+        }
+        throw new AssertionError(taskClass.getSimpleName() + " is not a task of the build");
+    }
+}
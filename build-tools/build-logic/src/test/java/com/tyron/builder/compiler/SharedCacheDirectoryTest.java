@@ -0,0 +1,98 @@
+package com.tyron.builder.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+public class SharedCacheDirectoryTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testPruneDeletesTheLeastRecentlyUsedEntries() throws Exception {
+        File cache = mFolder.newFolder("cache");
+        long now = System.currentTimeMillis();
+        File oldest = createEntry(cache, "oldest", 100, now - 3000);
+        File old = createEntry(cache, "old", 100, now - 2000);
+        File recent = createEntry(cache, "recent", 100, now - 1000);
+
+        SharedCacheDirectory.prune(cache, 300);
+        assertTrue(oldest.exists());
+
+        SharedCacheDirectory.prune(cache, 250);
+        assertFalse(oldest.exists());
+        assertTrue(old.exists());
+        assertTrue(recent.exists());
+
+        SharedCacheDirectory.prune(cache, 0);
+        assertEquals(0, cache.list().length);
+    }
+
+    @Test
+    public void testPruneDeletesFileEntries() throws Exception {
+        File cache = mFolder.newFolder("cache");
+        long now = System.currentTimeMillis();
+        File old = createFile(cache, "old.zip", 100, now - 2000);
+        File recent = createEntry(cache, "recent", 100, now - 1000);
+
+        SharedCacheDirectory.prune(cache, 150);
+        assertFalse(old.exists());
+        assertTrue(recent.exists());
+    }
+
+    @Test
+    public void testTouchedEntriesAreKept() throws Exception {
+        File cache = mFolder.newFolder("cache");
+        long now = System.currentTimeMillis();
+        File used = createFile(cache, "used.zip", 100, now - 3000);
+        File unused = createFile(cache, "unused.zip", 100, now - 2000);
+
+        SharedCacheDirectory.touch(used);
+        SharedCacheDirectory.prune(cache, 100);
+        assertTrue(used.exists());
+        assertFalse(unused.exists());
+    }
+
+    @Test
+    public void testPruneDeletesStaleTemporaryEntries() throws Exception {
+        File cache = mFolder.newFolder("cache");
+        long now = System.currentTimeMillis();
+        File stale = createEntry(cache, ".tmp-stale", 100, now - TimeUnit.DAYS.toMillis(2));
+        File staleFile = createFile(cache, ".tmp-stale.zip", 100,
+                now - TimeUnit.DAYS.toMillis(2));
+        File inProgress = createEntry(cache, ".tmp-in-progress", 100, now);
+
+        SharedCacheDirectory.prune(cache, 0);
+        assertFalse(stale.exists());
+        assertFalse(staleFile.exists());
+        // another build may still be writing it
+        assertTrue(inProgress.exists());
+    }
+
+    private static File createEntry(File cache, String name, int size, long lastModified)
+            throws IOException {
+        File entry = new File(cache, name);
+        assertTrue(entry.mkdir());
+        Files.write(new File(entry, "classes.dex").toPath(), new byte[size]);
+        assertTrue(entry.setLastModified(lastModified));
+        return entry;
+    }
+
+    private static File createFile(File cache, String name, int size, long lastModified)
+            throws IOException {
+        File file = new File(cache, name);
+        Files.write(file.toPath(), new byte[size]);
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+}
@@ -0,0 +1,291 @@
+package com.tyron.builder.compiler.apk;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+public class IncrementalApkPackagerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Random mRandom = new Random(1);
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File inputs = mFolder.newFolder("inputs");
+        File apk = new File(mFolder.getRoot(), "app.apk");
+        File state = new File(mFolder.getRoot(), "state/apk.bin");
+
+        File manifest = write(new File(inputs, "AndroidManifest.xml"), text("<manifest/>", 200));
+        File dex = write(new File(inputs, "classes.dex"), random(20000));
+        File removed = write(new File(inputs, "removed.txt"), text("removed", 3));
+        File jar = new File(inputs, "library.jar");
+        Map<String, byte[]> jarEntries = new HashMap<>();
+        jarEntries.put("com/example/Library.class", random(100));
+        jarEntries.put("com/example/stored.properties", random(333));
+        jarEntries.put("com/example/deflated.txt", text("deflated", 100));
+        writeJar(jar, jarEntries, "com/example/stored.properties");
+
+        Map<String, byte[]> expected = new TreeMap<>();
+        expected.put("AndroidManifest.xml", Files.readAllBytes(manifest.toPath()));
+        expected.put("classes.dex", Files.readAllBytes(dex.toPath()));
+        expected.put("removed.txt", Files.readAllBytes(removed.toPath()));
+        expected.put("com/example/stored.properties", jarEntries.get("com/example/stored.properties"));
+        expected.put("com/example/deflated.txt", jarEntries.get("com/example/deflated.txt"));
+
+        IncrementalApkPackager.Result result;
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            packager.addFile(manifest, "AndroidManifest.xml");
+            packager.addFile(dex, "classes.dex");
+            packager.addFile(removed, "removed.txt");
+            packager.addResourcesFromJar(jar);
+            result = packager.write();
+        }
+        assertFalse(result.isIncremental());
+        assertEquals(5, result.getWrittenEntries());
+        assertApk(apk, expected);
+
+        // the manifest changes, a file is removed and another one is added
+        write(manifest, text("<manifest package=\"com.example\"/>", 200));
+        File added = write(new File(inputs, "added.txt"), text("added", 10));
+        expected.put("AndroidManifest.xml", Files.readAllBytes(manifest.toPath()));
+        expected.remove("removed.txt");
+        expected.put("added.txt", Files.readAllBytes(added.toPath()));
+
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            packager.addFile(manifest, "AndroidManifest.xml");
+            packager.addFile(dex, "classes.dex");
+            packager.addFile(added, "added.txt");
+            packager.addResourcesFromJar(jar);
+            result = packager.write();
+        }
+        assertTrue(result.isIncremental());
+        assertEquals(2, result.getWrittenEntries());
+        assertEquals(5, result.getTotalEntries());
+        assertApk(apk, expected);
+
+        // nothing has changed
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            packager.addFile(manifest, "AndroidManifest.xml");
+            packager.addFile(dex, "classes.dex");
+            packager.addFile(added, "added.txt");
+            packager.addResourcesFromJar(jar);
+            result = packager.write();
+        }
+        assertTrue(result.isIncremental());
+        assertEquals(0, result.getWrittenEntries());
+        assertEquals(0, result.getBytesWritten());
+        assertApk(apk, expected);
+    }
+
+    @Test
+    public void testWritesFromScratchWhenGapsAreLarge() throws Exception {
+        File inputs = mFolder.newFolder("inputs");
+        File apk = new File(mFolder.getRoot(), "app.apk");
+        File state = new File(mFolder.getRoot(), "apk.bin");
+
+        File[] files = new File[8];
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            for (int i = 0; i < files.length; i++) {
+                files[i] = write(new File(inputs, "file" + i + ".bin"), random(1000 + i));
+                packager.addFile(files[i], files[i].getName());
+            }
+            packager.write();
+        }
+
+        // removing half of the entries leaves more than a quarter of the APK unused
+        Map<String, byte[]> expected = new TreeMap<>();
+        IncrementalApkPackager.Result result;
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            for (int i = 0; i < files.length; i += 2) {
+                packager.addFile(files[i], files[i].getName());
+                expected.put(files[i].getName(), Files.readAllBytes(files[i].toPath()));
+            }
+            result = packager.write();
+        }
+        assertFalse(result.isIncremental());
+        assertEquals(4, result.getWrittenEntries());
+        assertEquals(result.getApkSize(), apk.length());
+        assertApk(apk, expected);
+    }
+
+    @Test
+    public void testWritesFromScratchWhenTheApkHasBeenModified() throws Exception {
+        File inputs = mFolder.newFolder("inputs");
+        File apk = new File(mFolder.getRoot(), "app.apk");
+        File state = new File(mFolder.getRoot(), "apk.bin");
+        File file = write(new File(inputs, "file.txt"), text("file", 10));
+
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            packager.addFile(file, "file.txt");
+            packager.write();
+        }
+        write(apk, random(100));
+
+        IncrementalApkPackager.Result result;
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk, state)) {
+            packager.addFile(file, "file.txt");
+            result = packager.write();
+        }
+        assertFalse(result.isIncremental());
+        assertApk(apk, Collections.singletonMap("file.txt", Files.readAllBytes(file.toPath())));
+    }
+
+    @Test
+    public void testDuplicateEntry() throws Exception {
+        File inputs = mFolder.newFolder("inputs");
+        File first = write(new File(inputs, "first.txt"), text("first", 1));
+        File second = write(new File(inputs, "second.txt"), text("second", 1));
+        File apk = new File(mFolder.getRoot(), "app.apk");
+        try (IncrementalApkPackager packager = new IncrementalApkPackager(apk,
+                new File(mFolder.getRoot(), "apk.bin"))) {
+            packager.addFile(first, "file.txt");
+            try {
+                packager.addFile(second, "file.txt");
+                throw new AssertionError("Expected a DuplicateEntryException");
+            } catch (IncrementalApkPackager.DuplicateEntryException e) {
+                assertEquals("file.txt", e.getArchivePath());
+                assertEquals(first.getAbsolutePath(), e.getFile1());
+                assertEquals(second.getAbsolutePath(), e.getFile2());
+            }
+        }
+    }
+
+    @Test
+    public void testIsJavaResource() {
+        assertTrue(IncrementalApkPackager.isJavaResource("com/example/messages.properties"));
+        assertTrue(IncrementalApkPackager.isJavaResource("okhttp3/internal/publicsuffixes.gz"));
+        assertFalse(IncrementalApkPackager.isJavaResource("com/example/Library.class"));
+        assertFalse(IncrementalApkPackager.isJavaResource("com/example/Library.java"));
+        assertFalse(IncrementalApkPackager.isJavaResource("com/example/"));
+        assertFalse(IncrementalApkPackager.isJavaResource("com/example/.hidden"));
+        assertFalse(IncrementalApkPackager.isJavaResource("com/CVS/messages.properties"));
+        assertFalse(IncrementalApkPackager.isJavaResource("_private/messages.properties"));
+    }
+
+    /**
+     * Checks that the APK contains exactly the given entries when read from its central
+     * directory and when read sequentially, and that its stored entries are aligned.
+     */
+    private static void assertApk(File apk, Map<String, byte[]> expected) throws IOException {
+        Map<String, byte[]> entries = new TreeMap<>();
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    entries.put(entry.getName(), readAll(in));
+                }
+            }
+        }
+        assertEntries(expected, entries);
+
+        entries.clear();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(apk))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                byte[] data = readAll(in);
+                // the space left by removed entries is covered by entries without a name
+                if (!entry.getName().isEmpty()) {
+                    entries.put(entry.getName(), data);
+                }
+            }
+        }
+        assertEntries(expected, entries);
+
+        try (org.apache.commons.compress.archivers.zip.ZipFile zipFile =
+                     new org.apache.commons.compress.archivers.zip.ZipFile(apk)) {
+            Enumeration<ZipArchiveEntry> enumeration = zipFile.getEntries();
+            while (enumeration.hasMoreElements()) {
+                ZipArchiveEntry entry = enumeration.nextElement();
+                if (entry.getMethod() == ZipEntry.STORED) {
+                    assertEquals(entry.getName(), 0, entry.getDataOffset() % 4);
+                }
+            }
+        }
+    }
+
+    private static void assertEntries(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeJar(File jar, Map<String, byte[]> entries, String stored)
+            throws IOException {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar.toPath()))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (entry.getKey().equals(stored)) {
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static File write(File file, byte[] contents) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(contents);
+        }
+        return file;
+    }
+
+    private static byte[] text(String line, int repeat) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            builder.append(line).append(' ').append(i).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        mRandom.nextBytes(bytes);
+        return bytes;
+    }
+}
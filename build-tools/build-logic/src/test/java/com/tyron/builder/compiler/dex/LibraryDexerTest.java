@@ -0,0 +1,57 @@
+package com.tyron.builder.compiler.dex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LibraryDexerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCacheKeyDoesNotDependOnOtherLibraries() throws Exception {
+        File library = createJar("library.jar", 1);
+        File other = createJar("other.jar", 2);
+        File updated = createJar("updated.jar", 3);
+
+        String key = getCacheKey(library, Arrays.asList(library, other), 26);
+        assertEquals(key, getCacheKey(library, Arrays.asList(library, updated), 26));
+        assertNotEquals(key, getCacheKey(library, Arrays.asList(library, other), 27));
+        assertNotEquals(key, getCacheKey(other, Arrays.asList(library, other), 26));
+    }
+
+    @Test
+    public void testCacheKeyDependsOnTheDesugaringClasspath() throws Exception {
+        File library = createJar("library.jar", 1);
+        File other = createJar("other.jar", 2);
+        File updated = createJar("updated.jar", 3);
+
+        // interface methods are desugared below api 24 and that depends on the classpath
+        assertNotEquals(getCacheKey(library, Arrays.asList(library, other), 21),
+                getCacheKey(library, Arrays.asList(library, updated), 21));
+    }
+
+    private String getCacheKey(File library, List<File> classpath, int minSdk)
+            throws IOException {
+        LibraryDexer dexer = new LibraryDexer(null, Collections.emptyList(), classpath, minSdk,
+                mFolder.getRoot());
+        return dexer.getCacheKey(library);
+    }
+
+    private File createJar(String name, int content) throws IOException {
+        File jar = mFolder.newFile(name);
+        Files.write(jar.toPath(), new byte[] {(byte) content});
+        return jar;
+    }
+}
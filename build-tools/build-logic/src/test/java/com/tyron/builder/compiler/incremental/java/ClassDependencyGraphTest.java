@@ -0,0 +1,119 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+
+public class ClassDependencyGraphTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * a.java produces A, b.java produces B and B$Inner which reference A, c.java produces C
+     * which references B and d.java produces D which references nothing. A references C.
+     */
+    private static ClassDependencyGraph createGraph() {
+        ClassDependencyGraph graph = new ClassDependencyGraph();
+        graph.update("a.java", Collections.singletonList(info("A", "C")));
+        graph.update("b.java", Arrays.asList(info("B", "A", "java.lang.Object"), info("B$Inner", "A")));
+        graph.update("c.java", Collections.singletonList(info("C", "B")));
+        graph.update("d.java", Collections.singletonList(info("D")));
+        graph.setClasspathHash("classpath");
+        return graph;
+    }
+
+    @Test
+    public void testTransitiveDependentSources() {
+        ClassDependencyGraph graph = createGraph();
+        // the cycle through C does not add the source of A itself
+        assertEquals(set("b.java", "c.java"),
+                graph.getTransitiveDependentSources(Collections.singleton("A")));
+        assertEquals(set("c.java", "a.java", "b.java"),
+                graph.getTransitiveDependentSources(Collections.singleton("B")));
+        assertEquals(set(), graph.getTransitiveDependentSources(Collections.singleton("D")));
+        assertEquals(set(), graph.getTransitiveDependentSources(Collections.singleton("Missing")));
+    }
+
+    @Test
+    public void testUpdateReplacesTheDependencies() {
+        ClassDependencyGraph graph = createGraph();
+        graph.update("c.java", Collections.singletonList(info("C")));
+        assertEquals(set("b.java"), graph.getTransitiveDependentSources(Collections.singleton("A")));
+        assertEquals(set(), graph.getTransitiveDependentSources(Collections.singleton("B")));
+    }
+
+    @Test
+    public void testRemove() {
+        ClassDependencyGraph graph = createGraph();
+        Map<String, ClassFileInfo> removed = graph.remove("b.java");
+        assertEquals(set("B", "B$Inner"), removed.keySet());
+        assertFalse(graph.contains("b.java"));
+        assertTrue(graph.getClasses("b.java").isEmpty());
+        // C still references B but nothing produces it anymore
+        assertEquals(set(), graph.getTransitiveDependentSources(Collections.singleton("A")));
+        assertEquals(set("c.java", "a.java"),
+                graph.getTransitiveDependentSources(Collections.singleton("B")));
+        assertTrue(graph.remove("b.java").isEmpty());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ClassDependencyGraph graph = createGraph();
+        File file = new File(mFolder.getRoot(), "caches/graph.bin");
+        graph.write(file);
+
+        ClassDependencyGraph read = ClassDependencyGraph.read(file);
+        assertNotNull(read);
+        assertEquals("classpath", read.getClasspathHash());
+        for (String source : Arrays.asList("a.java", "b.java", "c.java", "d.java")) {
+            assertTrue(read.contains(source));
+            Map<String, ClassFileInfo> expected = graph.getClasses(source);
+            Map<String, ClassFileInfo> actual = read.getClasses(source);
+            assertEquals(expected.keySet(), actual.keySet());
+            for (String name : expected.keySet()) {
+                assertEquals(expected.get(name).getAbiHash(), actual.get(name).getAbiHash());
+                assertEquals(expected.get(name).getConstantsHash(), actual.get(name).getConstantsHash());
+                assertEquals(expected.get(name).getDependencies(), actual.get(name).getDependencies());
+            }
+        }
+        for (String name : Arrays.asList("A", "B", "B$Inner", "C", "D")) {
+            assertEquals(graph.getTransitiveDependentSources(Collections.singleton(name)),
+                    read.getTransitiveDependentSources(Collections.singleton(name)));
+        }
+    }
+
+    @Test
+    public void testReadMissingOrIncompatibleFile() throws Exception {
+        assertNull(ClassDependencyGraph.read(new File(mFolder.getRoot(), "missing.bin")));
+
+        File file = new File(mFolder.getRoot(), "old.bin");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x4a444550);
+            out.writeInt(0);
+        }
+        assertNull(ClassDependencyGraph.read(file));
+    }
+
+    private static ClassFileInfo info(String name, String... dependencies) {
+        return new ClassFileInfo(name, name + "-abi", name + "-constants", set(dependencies));
+    }
+
+    private static HashSet<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
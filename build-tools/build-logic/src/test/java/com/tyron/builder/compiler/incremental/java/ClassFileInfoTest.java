@@ -0,0 +1,126 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+public class ClassFileInfoTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testDependencies() throws Exception {
+        TestSources sources = new TestSources(mFolder.getRoot());
+        File a = sources.write("A", "public class A { public static class Inner {} }");
+        File b = sources.write("B",
+                "import java.util.List;\n" +
+                "public class B extends Thread {\n" +
+                "    List<A.Inner> inners;\n" +
+                "    int run(A a) { return a.hashCode() + new StringBuilder().length(); }\n" +
+                "}");
+        sources.compile(Collections.singletonList(a));
+        sources.compile(Collections.singletonList(b));
+
+        ClassFileInfo info = ClassFileInfo.read(sources.getClassFile("B"));
+        assertEquals("B", info.getName());
+        assertTrue(info.getDependencies().contains("A"));
+        assertTrue(info.getDependencies().contains("A$Inner"));
+        assertTrue(info.getDependencies().contains("java.util.List"));
+        assertTrue(info.getDependencies().contains("java.lang.Thread"));
+        assertTrue(info.getDependencies().contains("java.lang.StringBuilder"));
+        assertFalse(info.getDependencies().contains("B"));
+
+        assertEquals("A$Inner", ClassFileInfo.read(sources.getClassFile("A$Inner")).getName());
+    }
+
+    @Test
+    public void testBodyAndPrivateChangesKeepTheAbi() throws Exception {
+        ClassFileInfo before = compile("public class A {\n" +
+                                       "    public int value() { return 1; }\n" +
+                                       "}");
+        ClassFileInfo after = compile("public class A {\n" +
+                                      "    private String name;\n" +
+                                      "    public int value() { return helper() + 1; }\n" +
+                                      "    private int helper() { return 2; }\n" +
+                                      "}");
+        assertEquals(before.getAbiHash(), after.getAbiHash());
+        assertEquals(before.getConstantsHash(), after.getConstantsHash());
+    }
+
+    @Test
+    public void testSignatureChangesChangeTheAbi() throws Exception {
+        ClassFileInfo before = compile("public class A { public int value() { return 1; } }");
+        assertNotEquals(before.getAbiHash(),
+                compile("public class A { public long value() { return 1; } }").getAbiHash());
+        assertNotEquals(before.getAbiHash(),
+                compile("public class A { int value() { return 1; } }").getAbiHash());
+        assertNotEquals(before.getAbiHash(),
+                compile("public class A implements Runnable {\n" +
+                        "    public int value() { return 1; }\n" +
+                        "    public void run() {}\n" +
+                        "}").getAbiHash());
+        assertNotEquals(before.getAbiHash(),
+                compile("public class A {\n" +
+                        "    public int value() throws java.io.IOException { return 1; }\n" +
+                        "}").getAbiHash());
+    }
+
+    @Test
+    public void testConstantValuesAreHashedSeparately() throws Exception {
+        ClassFileInfo before = compile("public class A { public static final int SIZE = 1; }");
+        ClassFileInfo after = compile("public class A { public static final int SIZE = 2; }");
+        assertEquals(before.getAbiHash(), after.getAbiHash());
+        assertNotEquals(before.getConstantsHash(), after.getConstantsHash());
+
+        ClassFileInfo string = compile("public class A { public static final String NAME = \"a\"; }");
+        assertNotEquals(string.getConstantsHash(),
+                compile("public class A { public static final String NAME = \"b\"; }").getConstantsHash());
+    }
+
+    @Test
+    public void testDirectoryAbiHash() throws Exception {
+        TestSources sources = new TestSources(mFolder.newFolder());
+        File classesDir = sources.getClassFile("A").getParentFile();
+        String empty = ClassFileInfo.getAbiHash(classesDir);
+        assertEquals(empty, ClassFileInfo.getAbiHash(new File(classesDir, "missing")));
+
+        sources.compile(Collections.singletonList(sources.write("A",
+                "public class A { public int value() { return 1; } }")));
+        String before = ClassFileInfo.getAbiHash(classesDir);
+        assertNotEquals(empty, before);
+
+        sources.compile(Collections.singletonList(sources.write("A",
+                "public class A { public int value() { return 2; } }")));
+        assertEquals(before, ClassFileInfo.getAbiHash(classesDir));
+
+        sources.compile(Collections.singletonList(sources.write("B", "public class B {}")));
+        assertNotEquals(before, ClassFileInfo.getAbiHash(classesDir));
+    }
+
+    @Test
+    public void testNotAClassFile() {
+        try {
+            ClassFileInfo.read(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private ClassFileInfo compile(String contents) throws Exception {
+        TestSources sources = new TestSources(mFolder.newFolder());
+        sources.compile(Collections.singletonList(sources.write("A", contents)));
+        return ClassFileInfo.read(sources.getClassFile("A"));
+    }
+}
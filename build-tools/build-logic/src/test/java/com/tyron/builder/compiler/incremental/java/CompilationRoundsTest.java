@@ -0,0 +1,144 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.tyron.builder.exception.CompilationFailedException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class CompilationRoundsTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final ClassDependencyGraph mGraph = new ClassDependencyGraph();
+    private TestSources mSources;
+    private File mA;
+    private File mB;
+    private File mC;
+    private File mD;
+    private File mConstants;
+    private File mE;
+    private List<File> mJavaFiles;
+
+    /**
+     * B uses A, C uses B, D uses nothing and E inlines a constant of Constants
+     */
+    private void build() throws Exception {
+        mSources = new TestSources(mFolder.getRoot());
+        mA = mSources.write("A", "public class A {\n" +
+                                 "    public int value() { return 1; }\n" +
+                                 "    public static class Inner {}\n" +
+                                 "}");
+        mB = mSources.write("B", "public class B { int use(A a) { return a.value(); } }");
+        mC = mSources.write("C", "public class C { int use(B b) { return 0; } }");
+        mD = mSources.write("D", "public class D {}");
+        mConstants = mSources.write("Constants", "public class Constants { public static final int SIZE = 1; }");
+        mE = mSources.write("E", "public class E { int size() { return Constants.SIZE; } }");
+        mJavaFiles = Arrays.asList(mA, mB, mC, mD, mConstants, mE);
+
+        CompilationRounds rounds = run(mJavaFiles);
+        assertEquals(mJavaFiles, rounds.getCompiledFiles());
+        for (File file : mJavaFiles) {
+            assertTrue(mGraph.contains(file.getAbsolutePath()));
+        }
+        assertEquals(2, rounds.getClassFiles().get(mA).size());
+    }
+
+    @Test
+    public void testBodyChangeCompilesTheChangedFile() throws Exception {
+        build();
+        mSources.write("A", "public class A {\n" +
+                            "    public int value() { return 2; }\n" +
+                            "    public static class Inner {}\n" +
+                            "}");
+        assertEquals(Collections.singletonList(mA), run(Collections.singletonList(mA)).getCompiledFiles());
+    }
+
+    @Test
+    public void testAbiChangeCompilesTheDependents() throws Exception {
+        build();
+        mSources.write("A", "public class A {\n" +
+                            "    public int value() { return 1; }\n" +
+                            "    public int other() { return 2; }\n" +
+                            "    public static class Inner {}\n" +
+                            "}");
+        List<File> compiled = run(Collections.singletonList(mA)).getCompiledFiles();
+        assertEquals(mA, compiled.get(0));
+        assertEquals(new HashSet<>(Arrays.asList(mB, mC)),
+                new HashSet<>(compiled.subList(1, compiled.size())));
+    }
+
+    @Test
+    public void testConstantChangeCompilesAllFiles() throws Exception {
+        build();
+        mSources.write("Constants", "public class Constants { public static final int SIZE = 2; }");
+        List<File> compiled = run(Collections.singletonList(mConstants)).getCompiledFiles();
+        assertEquals(mConstants, compiled.get(0));
+        assertEquals(new HashSet<>(mJavaFiles), new HashSet<>(compiled));
+        assertEquals(mJavaFiles.size(), compiled.size());
+    }
+
+    @Test
+    public void testRemovedClass() throws Exception {
+        build();
+        mSources.write("A", "public class A { public int value() { return 1; } }");
+        CompilationRounds rounds = run(Collections.singletonList(mA));
+        assertEquals(Collections.singleton("A$Inner"), rounds.getRemovedClasses());
+        assertEquals(Collections.singleton("A"), mGraph.getClasses(mA.getAbsolutePath()).keySet());
+        // nothing else uses the inner class and the ABI of A is unchanged
+        assertEquals(Collections.singletonList(mA), rounds.getCompiledFiles());
+    }
+
+    @Test
+    public void testFailedRoundRestoresTheGraph() throws Exception {
+        build();
+        Map<String, ClassFileInfo> a = new HashMap<>(mGraph.getClasses(mA.getAbsolutePath()));
+        Map<String, ClassFileInfo> b = new HashMap<>(mGraph.getClasses(mB.getAbsolutePath()));
+
+        // the first round succeeds, B fails to compile in the second round
+        mSources.write("A", "public class A {\n" +
+                            "    public long value() { return 1; }\n" +
+                            "    public static class Inner {}\n" +
+                            "}");
+        File f = mSources.write("F", "public class F {}");
+        CompilationRounds rounds = new CompilationRounds(mGraph,
+                Arrays.asList(mA, mB, mC, mD, mConstants, mE, f), mSources::compile);
+        try {
+            rounds.run(Arrays.asList(mA, f));
+            fail("B should not compile");
+        } catch (CompilationFailedException expected) {
+            // expected
+        }
+        assertEquals(Arrays.asList(mA, f), rounds.getCompiledFiles().subList(0, 2));
+        assertTrue(rounds.getCompiledFiles().contains(mB));
+
+        assertEquals(a.keySet(), mGraph.getClasses(mA.getAbsolutePath()).keySet());
+        assertEquals(a.get("A").getAbiHash(), mGraph.getClasses(mA.getAbsolutePath()).get("A").getAbiHash());
+        assertEquals(b.get("B").getAbiHash(), mGraph.getClasses(mB.getAbsolutePath()).get("B").getAbiHash());
+        assertFalse(mGraph.contains(f.getAbsolutePath()));
+        // the next build still finds the dependents of A, A$Inner references its outer class
+        assertEquals(new HashSet<>(Arrays.asList(mA.getAbsolutePath(), mB.getAbsolutePath(),
+                        mC.getAbsolutePath())),
+                mGraph.getTransitiveDependentSources(Collections.singleton("A")));
+    }
+
+    private CompilationRounds run(List<File> files) throws Exception {
+        CompilationRounds rounds = new CompilationRounds(mGraph, mJavaFiles, mSources::compile);
+        rounds.run(files);
+        return rounds;
+    }
+}
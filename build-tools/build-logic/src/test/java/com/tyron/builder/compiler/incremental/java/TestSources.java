@@ -0,0 +1,101 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import com.tyron.builder.exception.CompilationFailedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Writes java sources of classes in the default package and compiles them with the java
+ * compiler of the running JDK.
+ */
+class TestSources {
+
+    private final File mSourceDir;
+    private final File mOutputDir;
+
+    TestSources(File root) {
+        mSourceDir = new File(root, "src");
+        mOutputDir = new File(root, "classes");
+        if (!mSourceDir.mkdirs() || !mOutputDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create directories in " + root);
+        }
+    }
+
+    File write(String className, String contents) throws IOException {
+        File file = new File(mSourceDir, className + ".java");
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    File getClassFile(String binaryName) {
+        return new File(mOutputDir, binaryName + ".class");
+    }
+
+    /**
+     * Compiles the files against the classes compiled before, like the incremental compiler
+     * the class files of a source are deleted before it is compiled.
+     *
+     * @return The class files generated for each file
+     */
+    Map<File, List<File>> compile(List<File> files) throws CompilationFailedException {
+        for (File file : files) {
+            for (File classFile : getClassFiles(file)) {
+                if (!classFile.delete()) {
+                    throw new IllegalStateException("Unable to delete " + classFile);
+                }
+            }
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager =
+                     compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-d", mOutputDir.getAbsolutePath(),
+                    "-classpath", mOutputDir.getAbsolutePath(), "-implicit:none",
+                    "-proc:none");
+            boolean success = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(files)).call();
+            if (!success) {
+                StringBuilder message = new StringBuilder();
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    message.append(diagnostic).append('\n');
+                }
+                throw new CompilationFailedException(message.toString());
+            }
+        } catch (IOException e) {
+            throw new CompilationFailedException(e);
+        }
+
+        Map<File, List<File>> classFiles = new HashMap<>();
+        for (File file : files) {
+            classFiles.put(file, getClassFiles(file));
+        }
+        return classFiles;
+    }
+
+    private List<File> getClassFiles(File source) {
+        String className = source.getName().substring(0, source.getName().length() - ".java".length());
+        List<File> classFiles = new ArrayList<>();
+        File[] children = mOutputDir.listFiles((dir, name) ->
+                name.equals(className + ".class") || name.startsWith(className + "$"));
+        if (children != null) {
+            classFiles.addAll(Arrays.asList(children));
+        }
+        return classFiles;
+    }
+}
@@ -0,0 +1,166 @@
+package com.tyron.builder.compiler.incremental.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.compiler.BuildType;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.mock.MockAndroidModule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalAapt2TaskTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<File> mLibraries = new ArrayList<>();
+    private MockAndroidModule mModule;
+    private File mCompiledDirectory;
+
+    @Before
+    public void setup() {
+        mModule = new MockAndroidModule(mFolder.getRoot(), null) {
+            @Override
+            public List<File> getLibraries() {
+                return mLibraries;
+            }
+        };
+        mCompiledDirectory = new File(mModule.getBuildDirectory(), "bin/res/compiled");
+    }
+
+    @Test
+    public void testCompiledName() {
+        assertEquals("layout_main.xml.flat", getCompiledName("layout/main.xml"));
+        assertEquals("layout-land_main.xml.flat", getCompiledName("layout-land/main.xml"));
+        assertEquals("drawable-v21_icon.9.png.flat", getCompiledName("drawable-v21/icon.9.png"));
+        assertEquals("raw_data.flat", getCompiledName("raw/data"));
+
+        assertEquals("values_strings.arsc.flat", getCompiledName("values/strings.xml"));
+        assertEquals("values-en-rUS_strings.arsc.flat",
+                getCompiledName("values-en-rUS/strings.xml"));
+        // aapt2 splits the extension at the first dot, only xml files are resource tables
+        assertEquals("values_strings.extra.xml.flat",
+                getCompiledName("values/strings.extra.xml"));
+        // a directory that only starts with values is not a values directory
+        assertEquals("valuesx_strings.xml.flat", getCompiledName("valuesx/strings.xml"));
+    }
+
+    @Test
+    public void testChangedFilesAreCompiled() throws Exception {
+        File layout = writeResource("layout/main.xml", "<LinearLayout />");
+        writeResource("values/strings.xml", "<resources />");
+
+        IncrementalAapt2Task task = createTask();
+        List<File> files = task.getFilesToCompile();
+        assertEquals(2, files.size());
+        compile(task, files);
+
+        task = createTask();
+        assertTrue(task.getFilesToCompile().isEmpty());
+
+        Files.write(layout.toPath(), "<FrameLayout />".getBytes(StandardCharsets.UTF_8));
+        assertTrue(layout.setLastModified(System.currentTimeMillis() + 10_000));
+        task = createTask();
+        assertEquals(Collections.singletonList(layout), task.getFilesToCompile());
+    }
+
+    @Test
+    public void testDeletedOutputsAreCompiledAgain() throws Exception {
+        File layout = writeResource("layout/main.xml", "<LinearLayout />");
+        IncrementalAapt2Task task = createTask();
+        compile(task, task.getFilesToCompile());
+
+        assertTrue(new File(mCompiledDirectory, "layout_main.xml.flat").delete());
+        assertEquals(Collections.singletonList(layout), createTask().getFilesToCompile());
+    }
+
+    @Test
+    public void testOutputsOfRemovedFilesAreDeleted() throws Exception {
+        File layout = writeResource("layout/main.xml", "<LinearLayout />");
+        writeResource("values/strings.xml", "<resources />");
+        IncrementalAapt2Task task = createTask();
+        compile(task, task.getFilesToCompile());
+
+        File output = new File(mCompiledDirectory, "layout_main.xml.flat");
+        assertTrue(output.exists());
+        assertTrue(layout.delete());
+
+        assertTrue(createTask().getFilesToCompile().isEmpty());
+        assertFalse(output.exists());
+        assertTrue(new File(mCompiledDirectory, "values_strings.arsc.flat").exists());
+    }
+
+    @Test
+    public void testLibraries() throws Exception {
+        File withResources = createLibrary("with-resources", true);
+        createLibrary("without-resources", false);
+
+        IncrementalAapt2Task task = createTask();
+        List<File> libraries = task.getLibrariesToCompile();
+        assertEquals(Collections.singletonList(withResources), libraries);
+        File output = new File(mModule.getBuildDirectory(), "bin/res/with-resources.zip");
+        Files.write(output.toPath(), new byte[1]);
+        task.onCompiled(Collections.emptyList(), libraries);
+
+        task = createTask();
+        assertTrue(task.getLibrariesToCompile().isEmpty());
+
+        // the library has been removed from the project
+        mLibraries.clear();
+        assertTrue(createTask().getLibrariesToCompile().isEmpty());
+        assertFalse(output.exists());
+    }
+
+    private IncrementalAapt2Task createTask() throws IOException {
+        IncrementalAapt2Task task = new IncrementalAapt2Task(null, mModule, ILogger.EMPTY, false);
+        task.prepare(BuildType.DEBUG);
+        return task;
+    }
+
+    /**
+     * Writes the outputs aapt2 would have written and records them
+     */
+    private void compile(IncrementalAapt2Task task, List<File> files) throws IOException {
+        for (File file : files) {
+            File output = new File(mCompiledDirectory, IncrementalAapt2Task.getCompiledName(file));
+            Files.write(output.toPath(), new byte[1]);
+        }
+        task.onCompiled(files, Collections.emptyList());
+    }
+
+    private File writeResource(String path, String contents) throws IOException {
+        File file = new File(mModule.getAndroidResourcesDirectory(), path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private File createLibrary(String name, boolean hasResources) throws IOException {
+        File directory = new File(mFolder.getRoot(), "libraries/" + name);
+        assertTrue(directory.mkdirs());
+        if (hasResources) {
+            assertTrue(new File(directory, "res/values").mkdirs());
+        }
+        File jar = new File(directory, "classes.jar");
+        Files.write(jar.toPath(), new byte[1]);
+        mLibraries.add(jar);
+        return jar;
+    }
+
+    private static String getCompiledName(String path) {
+        return IncrementalAapt2Task.getCompiledName(new File("res", path));
+    }
+}
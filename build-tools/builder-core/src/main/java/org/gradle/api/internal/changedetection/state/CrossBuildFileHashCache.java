@@ -9,6 +9,7 @@ import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.cache.scopes.ScopedCache;
+import org.gradle.internal.hash.Hashes;
 
 import java.io.Closeable;
 
@@ -16,9 +17,11 @@ public class CrossBuildFileHashCache implements Closeable {
 
     private final PersistentCache cache;
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
+    private final Kind cacheKind;
 
     public CrossBuildFileHashCache(ScopedCache scopedCache, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, Kind cacheKind) {
         this.inMemoryCacheDecoratorFactory = inMemoryCacheDecoratorFactory;
+        this.cacheKind = cacheKind;
         cache = scopedCache.cache(cacheKind.cacheId)
                 .withDisplayName(cacheKind.description)
                 .withLockOptions(mode(FileLockManager.LockMode.OnDemand)) // Lock on demand
@@ -26,6 +29,11 @@ public class CrossBuildFileHashCache implements Closeable {
     }
 
     public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses) {
+        if (cacheKind.hashStrategySpecific) {
+            // hashes computed with another strategy must not be read back
+            String cacheName = Hashes.getStrategy().versioned(parameters.getCacheName());
+            parameters = PersistentIndexedCacheParameters.of(cacheName, parameters.getKeySerializer(), parameters.getValueSerializer());
+        }
         return cache.createCache(parameters
                 .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(maxEntriesToKeepInMemory, cacheInMemoryForShortLivedProcesses))
         );
@@ -37,14 +45,16 @@ public class CrossBuildFileHashCache implements Closeable {
     }
 
     public enum Kind {
-        FILE_HASHES("fileHashes", "file hash cache"),
-        CHECKSUMS("checksums", "checksums cache");
+        FILE_HASHES("fileHashes", "file hash cache", true),
+        CHECKSUMS("checksums", "checksums cache", false);
         private final String cacheId;
         private final String description;
+        private final boolean hashStrategySpecific;
 
-        Kind(String cacheId, String description) {
+        Kind(String cacheId, String description, boolean hashStrategySpecific) {
             this.cacheId = cacheId;
             this.description = description;
+            this.hashStrategySpecific = hashStrategySpecific;
         }
 
         public String getCacheId() {
@@ -8,6 +8,7 @@ import org.gradle.cache.scopes.ScopedCache;
 import org.gradle.internal.Cast;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
+import org.gradle.internal.hash.Hashes;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.vfs.FileSystemAccess;
@@ -49,7 +50,8 @@ public class DefaultFileContentCacheFactory implements FileContentCacheFactory,
 
     @Override
     public <V> FileContentCache<V> newCache(String name, int normalizedCacheSize, final Calculator<? extends V> calculator, Serializer<V> serializer) {
-        PersistentIndexedCacheParameters<HashCode, V> parameters = PersistentIndexedCacheParameters.of(name, hashCodeSerializer, serializer)
+        // the values are keyed by content hash, so each hash strategy has its own index
+        PersistentIndexedCacheParameters<HashCode, V> parameters = PersistentIndexedCacheParameters.of(Hashes.getStrategy().versioned(name), hashCodeSerializer, serializer)
                 .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(normalizedCacheSize, true));
         PersistentIndexedCache<HashCode, V> store = cache.createCache(parameters);
 
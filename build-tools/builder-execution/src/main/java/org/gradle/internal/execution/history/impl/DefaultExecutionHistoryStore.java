@@ -29,6 +29,7 @@ import org.gradle.internal.execution.history.PreviousExecutionState;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 import org.gradle.internal.hash.ClassLoaderHierarchyHasher;
+import org.gradle.internal.hash.Hashes;
 
 import java.util.Optional;
 import java.util.function.Supplier;
@@ -53,8 +54,9 @@ public class DefaultExecutionHistoryStore implements ExecutionHistoryStore {
         );
 
         CacheDecorator inMemoryCacheDecorator = inMemoryCacheDecoratorFactory.decorator(10000, false);
+        // the fingerprints are content hashes, which must not be read back with another strategy
         this.store = cache.get().createCache(
-                PersistentIndexedCacheParameters.of("executionHistory", String.class, serializer)
+                PersistentIndexedCacheParameters.of(Hashes.getStrategy().versioned("executionHistory"), String.class, serializer)
                         .withCacheDecorator(inMemoryCacheDecorator)
         );
     }
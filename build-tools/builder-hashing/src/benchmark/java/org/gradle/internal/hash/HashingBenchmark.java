@@ -0,0 +1,89 @@
+package org.gradle.internal.hash;
+
+import com.google.common.hash.Hasher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures the single-threaded throughput of each {@link HashStrategy} on a buffer in memory,
+ * and of {@link DefaultStreamHasher} and {@link DefaultFileHasher} on a file.
+ *
+ * Run with {@code ./gradlew :build-tools:builder-hashing:benchmark}, the file is created in
+ * a temporary directory that is deleted afterwards.
+ */
+public class HashingBenchmark {
+
+    private static final int BENCHMARK_SIZE = 256 * 1024 * 1024;
+    private static final int CHUNKS = 16;
+    private static final int BENCHMARK_FILE_SIZE = 64 * 1024 * 1024;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        benchmarkStrategies();
+
+        File file = Files.createTempFile("hashing-benchmark", ".bin").toFile();
+        try {
+            benchmarkFile(file);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    private static void benchmarkStrategies() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BENCHMARK_SIZE / CHUNKS);
+        byte[] random = new byte[buffer.capacity()];
+        new Random(1).nextBytes(random);
+        buffer.put(random).flip();
+
+        for (HashStrategy strategy : HashStrategy.values()) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                Hasher hasher = strategy.getFunction().newHasher();
+                for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                    hasher.putBytes(buffer.duplicate());
+                }
+                hasher.hash();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(strategy.getId() + ": " + format(BENCHMARK_SIZE, best) +
+                               " GB/s per core");
+        }
+    }
+
+    private static void benchmarkFile(File file) throws Exception {
+        byte[] contents = new byte[BENCHMARK_FILE_SIZE];
+        new Random(BENCHMARK_FILE_SIZE).nextBytes(contents);
+        Files.write(file.toPath(), contents);
+
+        DefaultStreamHasher streamHasher = new DefaultStreamHasher();
+        DefaultFileHasher fileHasher = new DefaultFileHasher(streamHasher);
+        long bestStream = Long.MAX_VALUE;
+        long bestFile = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            try (InputStream inputStream = new FileInputStream(file)) {
+                streamHasher.hash(inputStream);
+            }
+            bestStream = Math.min(bestStream, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            fileHasher.hash(file);
+            bestFile = Math.min(bestFile, System.nanoTime() - start);
+        }
+        System.out.println("Hashing a " + BENCHMARK_FILE_SIZE / (1024 * 1024) + "MB file with " +
+                           Hashes.getStrategy().getId() + ": stream " +
+                           format(BENCHMARK_FILE_SIZE, bestStream) + " GB/s, file hasher " +
+                           format(BENCHMARK_FILE_SIZE, bestFile) + " GB/s");
+    }
+
+    private static String format(long bytes, long nanos) {
+        return String.format("%.2f", bytes / (double) nanos);
+    }
+}
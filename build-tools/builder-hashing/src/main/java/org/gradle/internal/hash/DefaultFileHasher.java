@@ -3,11 +3,11 @@ package org.gradle.internal.hash;
 import com.google.common.hash.HashCode;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 public class DefaultFileHasher implements FileHasher {
     private final StreamHasher streamHasher;
@@ -18,17 +18,19 @@ public class DefaultFileHasher implements FileHasher {
 
     @Override
     public HashCode hash(File file) {
-        InputStream inputStream;
+        FileChannel channel;
         try {
-            inputStream = new FileInputStream(file);
-        } catch (FileNotFoundException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s' as it does not exist.", file), e);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s' as it does not exist.", Hashes.getStrategy().getId(), file), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s'.", Hashes.getStrategy().getId(), file), e);
         }
         try {
-            return streamHasher.hash(inputStream);
+            return streamHasher.hash(channel);
         } finally {
             try {
-                inputStream.close();
+                channel.close();
             } catch (IOException ignored) {
                 // Ignored
             }
@@ -39,4 +41,4 @@ public class DefaultFileHasher implements FileHasher {
     public HashCode hash(File file, long length, long lastModified) {
         return hash(file);
     }
-}
\ No newline at end of file
+}
@@ -1,27 +1,63 @@
 package org.gradle.internal.hash;
 
 import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 
 public class DefaultStreamHasher implements StreamHasher {
     private static final HashCode SIGNATURE = Hashes.signature(DefaultStreamHasher.class);
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Files at least this large are hashed through a memory mapping instead of being copied
+     * into a buffer, smaller files do not make up for the cost of mapping them.
+     */
+    private static final long MAPPED_THRESHOLD = 4 * 1024 * 1024;
+
+    private static final long MAX_MAPPED_REGION = 256 * 1024 * 1024;
+
+    /**
+     * A mapped file cannot be deleted on Windows until the mapping is garbage collected.
+     */
+    private static final boolean MAPPING_SUPPORTED = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("windows");
+
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final Queue<ByteBuffer> directBuffers = new ArrayBlockingQueue<ByteBuffer>(16);
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream, ByteStreams.nullOutputStream());
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file content.", Hashes.getStrategy().getId()), e);
+        }
+    }
+
+    @Override
+    public HashCode hash(FileChannel channel) {
+        try {
+            PrimitiveHasher hasher = Hashes.newPrimitiveHasher();
+            hasher.putHash(SIGNATURE);
+            long position = channel.position();
+            long size = channel.size();
+            if (MAPPING_SUPPORTED && size - position >= MAPPED_THRESHOLD) {
+                hashMapped(channel, position, size, hasher);
+            } else {
+                hashBuffered(channel, hasher);
+            }
+            return hasher.hash();
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file content.", Hashes.getStrategy().getId()), e);
         }
     }
 
@@ -49,6 +85,29 @@ public class DefaultStreamHasher implements StreamHasher {
         }
     }
 
+    private static void hashMapped(FileChannel channel, long position, long size, PrimitiveHasher hasher) throws IOException {
+        while (position < size) {
+            long regionSize = Math.min(size - position, MAX_MAPPED_REGION);
+            hasher.putBytes(channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize));
+            position += regionSize;
+        }
+        channel.position(position);
+    }
+
+    private void hashBuffered(FileChannel channel, PrimitiveHasher hasher) throws IOException {
+        ByteBuffer buffer = takeDirectBuffer();
+        try {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                hasher.putBytes(buffer);
+                buffer.clear();
+            }
+        } finally {
+            buffer.clear();
+            returnDirectBuffer(buffer);
+        }
+    }
+
     private void returnBuffer(byte[] buffer) {
         // Retain buffer if there is capacity in the queue, otherwise discard
         buffers.offer(buffer);
@@ -57,8 +116,20 @@ public class DefaultStreamHasher implements StreamHasher {
     private byte[] takeBuffer() {
         byte[] buffer = buffers.poll();
         if (buffer == null) {
-            buffer = new byte[8192];
+            buffer = new byte[BUFFER_SIZE];
+        }
+        return buffer;
+    }
+
+    private void returnDirectBuffer(ByteBuffer buffer) {
+        directBuffers.offer(buffer);
+    }
+
+    private ByteBuffer takeDirectBuffer() {
+        ByteBuffer buffer = directBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
         }
         return buffer;
     }
-}
\ No newline at end of file
+}
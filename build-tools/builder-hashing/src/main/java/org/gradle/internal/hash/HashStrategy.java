@@ -0,0 +1,83 @@
+package org.gradle.internal.hash;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Locale;
+
+/**
+ * The hash function used for the content hashes computed by {@link Hashes}, such as the hashes
+ * of files and the signatures of types.
+ *
+ * <p>The strategy is selected with the {@value #STRATEGY_PROPERTY} system property and defaults
+ * to {@link #MD5}. Hashes computed with different strategies must never be compared, persistent
+ * caches that store content hashes should use {@link #versioned(String)} for their names. This is
+ * done for the file hashes, the execution history, the file content caches and the Java compile
+ * analyses. The checksums cache and the output files cache are exempt: checksums are always
+ * computed with the algorithm they are requested for, and the output files cache only stores
+ * paths.
+ */
+public enum HashStrategy {
+    /**
+     * The cryptographic MD5 hash, which is the hash caches and checksums have always used.
+     */
+    MD5("md5", Hashing.md5()),
+
+    /**
+     * The 128-bit variant of the non-cryptographic Murmur3 hash, which produces hashes of the same
+     * size as MD5 several times faster.
+     */
+    MURMUR3_128("murmur3-128", Hashing.murmur3_128());
+
+    public static final String STRATEGY_PROPERTY = "org.gradle.internal.hash.strategy";
+
+    private final String id;
+    private final HashFunction function;
+
+    HashStrategy(String id, HashFunction function) {
+        this.id = id;
+        this.function = function;
+    }
+
+    /**
+     * A short identifier of the strategy, the value used for {@value #STRATEGY_PROPERTY}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public HashFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the name to use for a cache that stores hashes computed with this strategy. The
+     * names for {@link #MD5} are unchanged so that existing caches are still used.
+     */
+    public String versioned(String cacheName) {
+        return this == MD5 ? cacheName : cacheName + "-" + id;
+    }
+
+    /**
+     * Returns the strategy with the given identifier.
+     *
+     * @throws IllegalArgumentException if there is no such strategy.
+     */
+    public static HashStrategy forId(String id) {
+        String normalized = id.trim().toLowerCase(Locale.ROOT);
+        for (HashStrategy strategy : values()) {
+            if (strategy.id.equals(normalized)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown hash strategy '%s'.", id));
+    }
+
+    /**
+     * Returns the strategy selected by the {@value #STRATEGY_PROPERTY} system property.
+     */
+    static HashStrategy fromSystemProperty() {
+        String id = System.getProperty(STRATEGY_PROPERTY);
+        return id == null ? MD5 : forId(id);
+    }
+}
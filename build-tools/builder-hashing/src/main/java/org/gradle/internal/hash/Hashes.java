@@ -8,6 +8,7 @@ import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class Hashes {
@@ -25,7 +26,16 @@ public class Hashes {
     private static final HashFunction SHA512 = Hashing.sha512();
 
 
-    private static final HashFunction DEFAULT = MD5;
+    private static final HashStrategy STRATEGY = HashStrategy.fromSystemProperty();
+
+    private static final HashFunction DEFAULT = STRATEGY.getFunction();
+
+    /**
+     * Returns the strategy used for the default hash function, see {@link HashStrategy}.
+     */
+    public static HashStrategy getStrategy() {
+        return STRATEGY;
+    }
 
     public static HashCode signature(String signature) {
         Hasher hasher = DEFAULT.newHasher();
@@ -62,6 +72,11 @@ public class Hashes {
                 hasher.putBytes(bytes, off, len);
             }
 
+            @Override
+            public void putBytes(ByteBuffer buffer) {
+                hasher.putBytes(buffer);
+            }
+
             @Override
             public void putByte(byte value) {
                 hasher.putByte(value);
@@ -5,6 +5,7 @@ import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 public interface StreamHasher {
     /**
@@ -12,6 +13,12 @@ public interface StreamHasher {
      */
     HashCode hash(InputStream inputStream);
 
+    /**
+     * Returns the hash of the content of the given file channel, from its current position to its end.
+     * The result is the same as hashing an input stream of the file. The channel will not be closed by the method.
+     */
+    HashCode hash(FileChannel channel);
+
     /**
      * Returns the hash of the given input stream while copying the data to the output stream.
      * The method will not close either stream.
@@ -0,0 +1,60 @@
+package org.gradle.internal.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.google.common.hash.HashCode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Checks that files hash the same through a channel as through a stream, and that each
+ * {@link HashStrategy} has its own hashes and cache names.
+ */
+public class HashingTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testFileHashIsTheSameAsStreamHash() throws Exception {
+        DefaultStreamHasher streamHasher = new DefaultStreamHasher();
+        DefaultFileHasher fileHasher = new DefaultFileHasher(streamHasher);
+        // empty, smaller than a buffer, several buffers and large enough to be mapped
+        for (int size : new int[] {0, 1000, 200 * 1024 + 7, 5 * 1024 * 1024 + 3}) {
+            File file = createFile("file" + size, size);
+            try (InputStream inputStream = new FileInputStream(file)) {
+                assertEquals(streamHasher.hash(inputStream), fileHasher.hash(file));
+            }
+        }
+    }
+
+    @Test
+    public void testStrategiesProduceDifferentHashesAndCacheNames() {
+        byte[] bytes = new byte[1024];
+        new Random(1).nextBytes(bytes);
+        HashCode md5 = HashStrategy.MD5.getFunction().hashBytes(bytes);
+        HashCode murmur = HashStrategy.MURMUR3_128.getFunction().hashBytes(bytes);
+        assertEquals(md5.bits(), murmur.bits());
+        assertNotEquals(md5, murmur);
+
+        assertEquals(HashStrategy.MURMUR3_128, HashStrategy.forId("Murmur3-128"));
+        assertEquals("fileHashes", HashStrategy.MD5.versioned("fileHashes"));
+        assertEquals("fileHashes-murmur3-128", HashStrategy.MURMUR3_128.versioned("fileHashes"));
+    }
+
+    private File createFile(String name, int size) throws Exception {
+        byte[] contents = new byte[size];
+        new Random(size).nextBytes(contents);
+        File file = new File(mFolder.getRoot(), name);
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+}
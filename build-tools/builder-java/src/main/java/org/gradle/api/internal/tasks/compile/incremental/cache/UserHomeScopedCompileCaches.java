@@ -15,6 +15,8 @@ import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.cache.internal.MinimalPersistentCache;
 import org.gradle.cache.scopes.GlobalScopedCache;
+import org.gradle.internal.hash.HashStrategy;
+import org.gradle.internal.hash.Hashes;
 
 import java.io.Closeable;
 
@@ -29,15 +31,17 @@ public class UserHomeScopedCompileCaches implements GeneralCompileCaches, Closea
                 .withDisplayName("Java compile cache")
                 .withLockOptions(mode(FileLockManager.LockMode.OnDemand)) // Lock on demand
                 .open();
+        // both analyses are keyed by content hash, so each hash strategy has its own indexes
+        HashStrategy hashStrategy = Hashes.getStrategy();
         PersistentIndexedCacheParameters<HashCode, ClassSetAnalysisData> jarCacheParameters = PersistentIndexedCacheParameters.of(
-                "jarAnalysis",
+                hashStrategy.versioned("jarAnalysis"),
                 new HashCodeSerializer(),
                 new ClassSetAnalysisData.Serializer(() -> new HierarchicalNameSerializer(interner))
         ).withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(20000, true));
         this.classpathEntrySnapshotCache = new MinimalPersistentCache<>(cache.createCache(jarCacheParameters));
 
         PersistentIndexedCacheParameters<HashCode, ClassAnalysis> classCacheParameters = PersistentIndexedCacheParameters.of(
-                "classAnalysis",
+                hashStrategy.versioned("classAnalysis"),
                 new HashCodeSerializer(),
                 new ClassAnalysis.Serializer(interner)
         ).withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(400000, true));
@@ -0,0 +1,95 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the get and put latency of a {@link BTreePersistentIndexedCache} backed by a
+ * {@link MappedFileBlockStore} with one backed by a {@link FileBackedBlockStore}.
+ *
+ * Run with {@code ./gradlew :build-tools:builder-persistent-cache:benchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BTreePersistentIndexedCacheBenchmark {
+
+    private static final int ENTRIES = 20_000;
+
+    @Param({"false", "true"})
+    public boolean mapped;
+
+    private File mFile;
+    private BTreePersistentIndexedCache<String, Long> mCache;
+    private String[] mKeys;
+    private int[] mOrder;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mFile = File.createTempFile("btree", ".bin");
+        mCache = new BTreePersistentIndexedCache<>(mFile, BaseSerializerFactory.STRING_SERIALIZER,
+                BaseSerializerFactory.LONG_SERIALIZER, (short) 512, 512, mapped);
+
+        mKeys = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            mKeys[i] = "/project/src/main/java/com/example/File" + i + ".java";
+            mCache.put(mKeys[i], (long) i);
+        }
+
+        // the keys are visited in a random order that is the same for both stores
+        Random random = new Random(0);
+        mOrder = new int[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            mOrder[i] = random.nextInt(ENTRIES);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mCache.close();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Benchmark
+    public Long get() {
+        return mCache.get(mKeys[nextIndex()]);
+    }
+
+    /**
+     * Replaces the value of an existing key, so the size of the cache does not depend on the
+     * number of invocations
+     */
+    @Benchmark
+    public void put() {
+        int index = nextIndex();
+        mCache.put(mKeys[index], (long) index);
+    }
+
+    private int nextIndex() {
+        int index = mOrder[mNext];
+        mNext = (mNext + 1) % mOrder.length;
+        return index;
+    }
+}
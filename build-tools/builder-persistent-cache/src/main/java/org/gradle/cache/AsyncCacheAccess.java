@@ -10,6 +10,21 @@ public interface AsyncCacheAccess {
      */
     void enqueue(Runnable task);
 
+    /**
+     * Submits an update of the given key of the given cache without waiting for it to be applied. The completion is run once the update has been applied or replaced.
+     *
+     * This behaves like {@link #enqueue(Runnable)}, except that an implementation may replace an update of a key that has not been applied yet by a later update of the same key, and may apply the updates of a cache in one batch using {@link MultiProcessSafePersistentIndexedCache#updateInBatch(Runnable)}. Updates of different keys may be applied in any order relative to each other, but all of them are applied before any action submitted after them to {@link #enqueue(Runnable)} or {@link #read(Factory)}.
+     */
+    default <K> void enqueueUpdate(MultiProcessSafePersistentIndexedCache<K, ?> cache, K key, Runnable update, Runnable completion) {
+        enqueue(() -> {
+            try {
+                update.run();
+            } finally {
+                completion.run();
+            }
+        });
+    }
+
     /**
      * Runs the given action, blocking until the result is available.
      *
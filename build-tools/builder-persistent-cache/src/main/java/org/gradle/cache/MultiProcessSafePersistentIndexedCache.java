@@ -4,4 +4,10 @@ package org.gradle.cache;
  * A {@link PersistentIndexedCache} implementation that is aware of file locking.
  */
 public interface MultiProcessSafePersistentIndexedCache<K, V> extends PersistentIndexedCache<K, V>, UnitOfWorkParticipant {
+    /**
+     * Runs the given updates of this cache as a single write to the cache files. The changes made by the updates may only be written once all of them have run, reads made by the updates see the changes already made.
+     */
+    default void updateInBatch(Runnable updates) {
+        updates.run();
+    }
 }
\ No newline at end of file
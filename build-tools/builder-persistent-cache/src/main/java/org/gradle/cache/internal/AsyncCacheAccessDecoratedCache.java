@@ -36,13 +36,7 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
         try {
-            asyncCacheAccess.enqueue(() -> {
-                try {
-                    persistentCache.put(key, value);
-                } finally {
-                    completion.run();
-                }
-            });
+            asyncCacheAccess.enqueueUpdate(persistentCache, key, () -> persistentCache.put(key, value), completion);
         } catch (RuntimeException e) {
             completion.run();
             throw e;
@@ -52,13 +46,7 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Override
     public void removeLater(final K key, final Runnable completion) {
         try {
-            asyncCacheAccess.enqueue(() -> {
-                try {
-                    persistentCache.remove(key);
-                } finally {
-                    completion.run();
-                }
-            });
+            asyncCacheAccess.enqueueUpdate(persistentCache, key, () -> persistentCache.remove(key), completion);
         } catch (RuntimeException e) {
             completion.run();
             throw e;
@@ -8,18 +8,29 @@ import org.gradle.internal.time.CountdownTimer;
 import org.gradle.internal.time.Time;
 import org.gradle.cache.AsyncCacheAccess;
 import org.gradle.cache.CacheAccess;
+import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
+    /**
+     * The maximum number of pending updates applied in a single batch.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    // Not fair, and producers only contend with each other, not with the worker taking from it
     private final BlockingQueue<Runnable> workQueue;
     private final String displayName;
     private final CacheAccess cacheAccess;
@@ -30,6 +41,7 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private boolean stopSeen;
     private final CountDownLatch doneSignal = new CountDownLatch(1);
     private final ExecutorPolicy.CatchAndRecordFailures failureHandler = new ExecutorPolicy.CatchAndRecordFailures();
+    private final Statistics statistics = new Statistics();
 
     CacheAccessWorker(String displayName, CacheAccess cacheAccess) {
         this.displayName = displayName;
@@ -38,7 +50,7 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         this.maximumLockingTimeMillis = 5000;
         HeapProportionalCacheSizer heapProportionalCacheSizer = new HeapProportionalCacheSizer();
         int queueCapacity = Math.min(4000, heapProportionalCacheSizer.scaleCacheSize(40000));
-        workQueue = new ArrayBlockingQueue<Runnable>(queueCapacity, true);
+        workQueue = new LinkedBlockingQueue<Runnable>(queueCapacity);
     }
 
     @Override
@@ -46,6 +58,11 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         addToQueue(task);
     }
 
+    @Override
+    public <K> void enqueueUpdate(MultiProcessSafePersistentIndexedCache<K, ?> cache, K key, Runnable update, Runnable completion) {
+        addToQueue(new PendingUpdate(cache, key, update, completion));
+    }
+
     private void addToQueue(Runnable task) {
         if (closed) {
             throw new IllegalStateException("The worker has already been closed. Cannot add more work to queue.");
@@ -55,6 +72,7 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         } catch (InterruptedException e) {
             throw UncheckedException.throwAsUncheckedException(e);
         }
+        statistics.queued(workQueue.size());
     }
 
     @Override
@@ -78,13 +96,19 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     @Override
     public synchronized void flush() {
         if (!workerCompleted && !closed) {
+            long start = System.nanoTime();
             FlushOperationsCommand flushOperationsCommand = new FlushOperationsCommand();
             addToQueue(flushOperationsCommand);
             flushOperationsCommand.await();
+            statistics.flushed(System.nanoTime() - start);
         }
         rethrowFailure();
     }
 
+    Statistics getStatistics() {
+        return statistics;
+    }
+
     private void rethrowFailure() {
         failureHandler.onStop();
     }
@@ -109,6 +133,98 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         }
     }
 
+    /**
+     * An update of a key of a cache, which is replaced by a later update of the same key if it
+     * has not been applied yet.
+     */
+    private static class PendingUpdate implements Runnable {
+        private final MultiProcessSafePersistentIndexedCache<?, ?> cache;
+        private final Object key;
+        private final Runnable update;
+        private final Runnable completion;
+
+        PendingUpdate(MultiProcessSafePersistentIndexedCache<?, ?> cache, Object key, Runnable update, Runnable completion) {
+            this.cache = cache;
+            this.key = key;
+            this.update = update;
+            this.completion = completion;
+        }
+
+        @Override
+        public void run() {
+            try {
+                update.run();
+            } finally {
+                completion.run();
+            }
+        }
+    }
+
+    /**
+     * The updates taken from the queue that have not been applied yet, by cache and by key.
+     */
+    private class UpdateBatch {
+        private final Map<MultiProcessSafePersistentIndexedCache<?, ?>, Map<Object, PendingUpdate>> updates = new LinkedHashMap<>();
+        private final List<Runnable> completions = new ArrayList<>();
+        private int size;
+
+        void add(PendingUpdate update) {
+            statistics.taken(1);
+            Map<Object, PendingUpdate> cacheUpdates = updates.computeIfAbsent(update.cache, cache -> new LinkedHashMap<>());
+            PendingUpdate replaced = cacheUpdates.put(update.key, update);
+            if (replaced != null) {
+                completions.add(replaced.completion);
+                statistics.coalesced();
+            } else {
+                size++;
+            }
+            if (size >= MAX_BATCH_SIZE) {
+                apply();
+            }
+        }
+
+        /**
+         * Applies the pending updates, then runs the completion of every update taken from the
+         * queue, including the ones that were replaced.
+         */
+        void apply() {
+            if (updates.isEmpty()) {
+                return;
+            }
+            try {
+                for (Map.Entry<MultiProcessSafePersistentIndexedCache<?, ?>, Map<Object, PendingUpdate>> entry : updates.entrySet()) {
+                    final Iterable<PendingUpdate> cacheUpdates = entry.getValue().values();
+                    failureHandler.onExecute(new Runnable() {
+                        @Override
+                        public void run() {
+                            entry.getKey().updateInBatch(new Runnable() {
+                                @Override
+                                public void run() {
+                                    for (PendingUpdate update : cacheUpdates) {
+                                        failureHandler.onExecute(update.update);
+                                    }
+                                }
+                            });
+                        }
+                    });
+                    statistics.written(entry.getValue().size());
+                }
+            } finally {
+                for (Map<Object, PendingUpdate> cacheUpdates : updates.values()) {
+                    for (PendingUpdate update : cacheUpdates.values()) {
+                        completions.add(update.completion);
+                    }
+                }
+                updates.clear();
+                size = 0;
+                for (Runnable completion : completions) {
+                    failureHandler.onExecute(completion);
+                }
+                completions.clear();
+            }
+        }
+    }
+
     @Override
     public void run() {
         try {
@@ -155,33 +271,44 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
 
     private void flushOperations(final Runnable updateOperation) {
         final List<FlushOperationsCommand> flushOperations = new ArrayList<FlushOperationsCommand>();
+        final UpdateBatch batch = new UpdateBatch();
         try {
             cacheAccess.useCache(new Runnable() {
                 @Override
                 public void run() {
                     CountdownTimer timer = Time.startCountdownTimer(maximumLockingTimeMillis, TimeUnit.MILLISECONDS);
-                    if (updateOperation != null) {
-                        failureHandler.onExecute(updateOperation);
-                    }
-                    Runnable otherOperation;
+                    long start = System.nanoTime();
+                    long waitNanos = 0;
                     try {
-                        while ((otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS)) != null) {
-                            failureHandler.onExecute(otherOperation);
-                            final Class<? extends Runnable> runnableClass = otherOperation.getClass();
-                            if (runnableClass == FlushOperationsCommand.class) {
-                                flushOperations.add((FlushOperationsCommand) otherOperation);
+                        if (updateOperation != null) {
+                            execute(updateOperation, batch, flushOperations);
+                        }
+                        List<Runnable> otherOperations = new ArrayList<Runnable>();
+                        Runnable otherOperation;
+                        while (true) {
+                            long waitStart = System.nanoTime();
+                            otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS);
+                            waitNanos += System.nanoTime() - waitStart;
+                            if (otherOperation == null) {
+                                break;
                             }
-                            if (runnableClass == ShutdownOperationsCommand.class) {
-                                stopSeen = true;
+                            // take whatever else is already queued without waiting for it one by one
+                            otherOperations.add(otherOperation);
+                            workQueue.drainTo(otherOperations, MAX_BATCH_SIZE);
+                            boolean done = false;
+                            for (Runnable operation : otherOperations) {
+                                done |= execute(operation, batch, flushOperations);
                             }
-                            if (runnableClass == ShutdownOperationsCommand.class
-                                || runnableClass == FlushOperationsCommand.class
-                                || timer.hasExpired()) {
+                            otherOperations.clear();
+                            if (done || timer.hasExpired()) {
                                 break;
                             }
                         }
                     } catch (InterruptedException e) {
                         throw UncheckedException.throwAsUncheckedException(e);
+                    } finally {
+                        batch.apply();
+                        statistics.busy(System.nanoTime() - start - waitNanos);
                     }
                 }
             });
@@ -192,6 +319,32 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         }
     }
 
+    /**
+     * Runs an operation taken from the queue while holding the cache lock. Updates are added
+     * to the batch, any other operation first applies the updates submitted before it.
+     *
+     * @return true when the cache lock should be released after this operation
+     */
+    private boolean execute(Runnable operation, UpdateBatch batch, List<FlushOperationsCommand> flushOperations) {
+        Class<? extends Runnable> runnableClass = operation.getClass();
+        if (runnableClass == PendingUpdate.class) {
+            batch.add((PendingUpdate) operation);
+            return false;
+        }
+        batch.apply();
+        failureHandler.onExecute(operation);
+        statistics.taken(1);
+        statistics.written(1);
+        if (runnableClass == FlushOperationsCommand.class) {
+            flushOperations.add((FlushOperationsCommand) operation);
+        }
+        if (runnableClass == ShutdownOperationsCommand.class) {
+            stopSeen = true;
+        }
+        return runnableClass == ShutdownOperationsCommand.class
+            || runnableClass == FlushOperationsCommand.class;
+    }
+
     @Override
     public synchronized void stop() {
         if (!closed && !workerCompleted) {
@@ -216,4 +369,96 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
             // do nothing
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Counters of the work done by a worker. They are updated without locking, so values read
+     * while the worker is running may be slightly out of date with each other.
+     */
+    static class Statistics {
+        private final LongAdder operations = new LongAdder();
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final AtomicLong maxQueueDepth = new AtomicLong();
+        private final LongAdder flushes = new LongAdder();
+        private final LongAdder flushNanos = new LongAdder();
+        private final AtomicLong maxFlushNanos = new AtomicLong();
+
+        private void queued(int depth) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        private void taken(int count) {
+            operations.add(count);
+        }
+
+        private void written(int count) {
+            writes.add(count);
+        }
+
+        private void coalesced() {
+            coalesced.increment();
+        }
+
+        private void busy(long nanos) {
+            busyNanos.add(nanos);
+        }
+
+        private void flushed(long nanos) {
+            flushes.increment();
+            flushNanos.add(nanos);
+            maxFlushNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * The number of operations taken from the queue, including the updates that were
+         * coalesced.
+         */
+        long getOperationCount() {
+            return operations.sum();
+        }
+
+        /**
+         * The number of operations run against the cache, after coalescing.
+         */
+        long getWriteCount() {
+            return writes.sum();
+        }
+
+        /**
+         * The number of updates that were replaced by a later update of the same key.
+         */
+        long getCoalescedCount() {
+            return coalesced.sum();
+        }
+
+        /**
+         * The number of operations taken from the queue per second while the worker was holding
+         * the cache lock, not counting the time spent waiting for more operations.
+         */
+        double getThroughput() {
+            long nanos = busyNanos.sum();
+            return nanos == 0 ? 0 : getOperationCount() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        long getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+
+        long getAverageFlushMillis() {
+            long count = flushes.sum();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(flushNanos.sum() / count);
+        }
+
+        long getMaxFlushMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxFlushNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d operations (%.0f/s), %d run after coalescing %d updates, max queue depth %d, %d flushes (average %dms, max %dms)",
+                getOperationCount(), getThroughput(), getWriteCount(), getCoalescedCount(), getMaxQueueDepth(),
+                flushes.sum(), getAverageFlushMillis(), getMaxFlushMillis());
+        }
+    }
+}
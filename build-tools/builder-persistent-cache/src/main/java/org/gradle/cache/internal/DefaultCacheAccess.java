@@ -140,6 +140,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
     public synchronized void close() {
         if (cacheAccessWorker != null) {
             cacheAccessWorker.stop();
+            LOG.debug("Cache worker for " + cacheDisplayName + " ran " + cacheAccessWorker.getStatistics());
             cacheAccessWorker = null;
         }
         if (cacheUpdateExecutor != null) {
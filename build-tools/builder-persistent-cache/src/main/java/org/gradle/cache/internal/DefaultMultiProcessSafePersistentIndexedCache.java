@@ -13,6 +13,7 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
     private final FileAccess fileAccess;
     private final Factory<BTreePersistentIndexedCache<K, V>> factory;
     private BTreePersistentIndexedCache<K, V> cache;
+    private boolean batching;
 
     public DefaultMultiProcessSafePersistentIndexedCache(Factory<BTreePersistentIndexedCache<K, V>> factory, FileAccess fileAccess) {
         this.factory = factory;
@@ -49,7 +50,11 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
         final BTreePersistentIndexedCache<K, V> cache = getCache();
         // Use writeFile because the cache can internally recover from datafile
         // corruption, so we don't care at this level if it's corrupt
-        fileAccess.writeFile(() -> cache.put(key, value));
+        if (batching) {
+            cache.put(key, value);
+        } else {
+            fileAccess.writeFile(() -> cache.put(key, value));
+        }
     }
 
     @Override
@@ -57,7 +62,27 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
         final BTreePersistentIndexedCache<K, V> cache = getCache();
         // Use writeFile because the cache can internally recover from datafile
         // corruption, so we don't care at this level if it's corrupt
-        fileAccess.writeFile(() -> cache.remove(key));
+        if (batching) {
+            cache.remove(key);
+        } else {
+            fileAccess.writeFile(() -> cache.remove(key));
+        }
+    }
+
+    @Override
+    public void updateInBatch(Runnable updates) {
+        final BTreePersistentIndexedCache<K, V> cache = getCache();
+        // The file is marked dirty once for the whole batch instead of once per update
+        fileAccess.writeFile(() -> {
+            batching = true;
+            cache.beginBatch();
+            try {
+                updates.run();
+            } finally {
+                batching = false;
+                cache.endBatch();
+            }
+        });
     }
 
     @Override
@@ -36,6 +36,19 @@ import java.util.List;
 @SuppressWarnings("unchecked")
 public class BTreePersistentIndexedCache<K, V> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class.getSimpleName());
+
+    /**
+     * Set this system property to {@code true} to read and write the cache files through a
+     * {@link MappedFileBlockStore} instead of a {@link FileBackedBlockStore}.
+     */
+    public static final String MAPPED_STORE_PROPERTY = "org.gradle.cache.internal.btree.mapped";
+
+    /**
+     * The number of index blocks kept decoded in memory when the file is mapped. Reading an
+     * index block from the mapping is cheap, but decoding it still allocates its entries.
+     */
+    private static final int MAPPED_INDEX_BLOCK_CACHE_SIZE = 1024;
+
     private final File cacheFile;
     private final KeyHasher<K> keyHasher;
     private final Serializer<V> serializer;
@@ -43,6 +56,7 @@ public class BTreePersistentIndexedCache<K, V> {
     private final int minIndexChildNodes;
     private final StateCheckBlockStore store;
     private HeaderBlock header;
+    private boolean batching;
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this(cacheFile, keySerializer, valueSerializer, (short) 512, 512);
@@ -50,13 +64,21 @@ public class BTreePersistentIndexedCache<K, V> {
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
+        this(cacheFile, keySerializer, valueSerializer, maxChildIndexEntries, maxFreeListEntries,
+                useMappedStore());
+    }
+
+    public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                       short maxChildIndexEntries, int maxFreeListEntries, boolean mapped) {
         this.cacheFile = cacheFile;
         this.keyHasher = new KeyHasher<K>(keySerializer);
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), ImmutableSet
-                .of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
+        BlockStore fileStore = mapped ? new MappedFileBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        BlockStore cachingStore = new CachingBlockStore(fileStore, ImmutableSet
+                .of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class),
+                mapped ? MAPPED_INDEX_BLOCK_CACHE_SIZE : CachingBlockStore.DEFAULT_CACHE_SIZE);
         this.store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
             open();
@@ -65,6 +87,10 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    private static boolean useMappedStore() {
+        return "true".equals(System.getProperty(MAPPED_STORE_PROPERTY));
+    }
+
     @Override
     public String toString() {
         return "cache " + cacheFile.getName() + " (" + cacheFile + ")";
@@ -145,7 +171,7 @@ public class BTreePersistentIndexedCache<K, V> {
                 store.write(newBlock);
                 lookup.indexBlock.put(hashCode, newBlock.getPos());
             }
-            store.flush();
+            flushUnlessBatching();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
         }
@@ -160,12 +186,43 @@ public class BTreePersistentIndexedCache<K, V> {
             lookup.indexBlock.remove(lookup.entry);
             DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
             store.remove(block);
-            store.flush();
+            flushUnlessBatching();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
         }
     }
 
+    /**
+     * Keeps the blocks changed by {@link #put(Object, Object)} and {@link #remove(Object)} in
+     * memory until {@link #endBatch()} is called, so blocks changed by several updates, like
+     * the header and the upper index blocks, are only written once.
+     */
+    public void beginBatch() {
+        batching = true;
+    }
+
+    /**
+     * Writes the blocks changed since {@link #beginBatch()}.
+     */
+    public void endBatch() {
+        batching = false;
+        if (!store.isOpen()) {
+            // the cache was closed after failing to rebuild it
+            return;
+        }
+        try {
+            store.flush();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not write changes to %s.", this), e);
+        }
+    }
+
+    private void flushUnlessBatching() {
+        if (!batching) {
+            store.flush();
+        }
+    }
+
     private IndexBlock load(BlockPointer pos, IndexRoot root, IndexBlock parent, int index) {
         IndexBlock block = store.read(pos, IndexBlock.class);
         block.root = root;
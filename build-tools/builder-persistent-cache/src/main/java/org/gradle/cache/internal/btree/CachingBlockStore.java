@@ -11,14 +11,21 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class CachingBlockStore implements BlockStore {
+    public static final int DEFAULT_CACHE_SIZE = 100;
+
     private final BlockStore store;
     private final Map<BlockPointer, BlockPayload> dirty = new LinkedHashMap<BlockPointer, BlockPayload>();
-    private final Cache<BlockPointer, BlockPayload> indexBlockCache = CacheBuilder.newBuilder().maximumSize(100).concurrencyLevel(1).build();
+    private final Cache<BlockPointer, BlockPayload> indexBlockCache;
     private final ImmutableSet<Class<? extends BlockPayload>> cacheableBlockTypes;
 
     public CachingBlockStore(BlockStore store, Collection<Class<? extends BlockPayload>> cacheableBlockTypes) {
+        this(store, cacheableBlockTypes, DEFAULT_CACHE_SIZE);
+    }
+
+    public CachingBlockStore(BlockStore store, Collection<Class<? extends BlockPayload>> cacheableBlockTypes, int cacheSize) {
         this.store = store;
         this.cacheableBlockTypes = ImmutableSet.copyOf(cacheableBlockTypes);
+        this.indexBlockCache = CacheBuilder.newBuilder().maximumSize(cacheSize).concurrencyLevel(1).build();
     }
 
     @Override
@@ -0,0 +1,392 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link BlockStore} that reads and writes blocks through a memory mapping of the cache file
+ * instead of seeking and streaming through a {@link java.io.RandomAccessFile}, so reading a
+ * block that is already in the page cache costs no system call.
+ *
+ * <p>The file format is the same as {@link FileBackedBlockStore}, caches written by one store
+ * can be read by the other.
+ *
+ * <p>The mapping is grown in powers of two, which extends the file past the last block. The
+ * file is truncated back to its content when the store is closed. If the process dies before
+ * that, the padding is treated as unused space at the end of the file.
+ */
+public class MappedFileBlockStore implements BlockStore {
+    private static final int MIN_MAPPED_SIZE = 64 * 1024;
+    private static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private final File cacheFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private boolean readOnly;
+    private long nextBlock;
+    private Factory factory;
+    private long currentFileSize;
+
+    public MappedFileBlockStore(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            channel = openChannel();
+            currentFileSize = channel.size();
+            if (currentFileSize > MAX_MAPPED_SIZE) {
+                throw new CorruptedCacheException(String.format("%s is too large to be mapped.", this));
+            }
+            nextBlock = currentFileSize;
+            buffer = map(currentFileSize);
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        try {
+            readOnly = false;
+            return FileChannel.open(cacheFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            readOnly = true;
+            return FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+        }
+    }
+
+    private MappedByteBuffer map(long requiredSize) throws IOException {
+        if (readOnly) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long size = MIN_MAPPED_SIZE;
+        while (size < requiredSize) {
+            size *= 2;
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_MAPPED_SIZE));
+    }
+
+    /**
+     * Grows the mapping so that it covers the given position of the file.
+     */
+    private void ensureCapacity(long end) throws IOException {
+        if (end <= buffer.capacity()) {
+            return;
+        }
+        if (readOnly) {
+            throw new IOException(String.format("Cannot write to read-only %s.", this));
+        }
+        if (end > MAX_MAPPED_SIZE) {
+            throw new IOException(String.format("%s exceeds the maximum size of a mapped file.", this));
+        }
+        buffer = map(end);
+    }
+
+    @Override
+    public void close() {
+        try {
+            // the mapping is released once it is garbage collected
+            buffer = null;
+            if (!readOnly) {
+                truncatePadding();
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void truncatePadding() {
+        try {
+            channel.truncate(currentFileSize);
+        } catch (IOException e) {
+            // some platforms do not allow truncating a file that is still mapped, the padding
+            // is then kept as unused space
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            buffer = null;
+            channel.truncate(0);
+            currentFileSize = 0;
+            buffer = map(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextBlock = 0;
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        long pos = nextBlock;
+        nextBlock += length;
+        return pos;
+    }
+
+    /**
+     * Reads from the mapping, starting at the given position and up to the end of the content
+     * of the file.
+     */
+    private final class MappedInputStream extends InputStream {
+        private final int start;
+        private final int limit;
+        private int position;
+
+        MappedInputStream(long start) {
+            this.start = (int) start;
+            this.limit = (int) Math.min(currentFileSize, buffer.capacity());
+            this.position = this.start;
+        }
+
+        long getBytesRead() {
+            return position - start;
+        }
+
+        @Override
+        public int read() {
+            if (position >= limit) {
+                return -1;
+            }
+            return buffer.get(position++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (position >= limit) {
+                return -1;
+            }
+            int count = Math.min(length, limit - position);
+            ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(bytes, offset, count);
+            position += count;
+            return count;
+        }
+    }
+
+    /**
+     * Writes to the mapping starting at the given position, growing it when needed.
+     */
+    private final class MappedOutputStream extends OutputStream {
+        private final long start;
+        private long position;
+
+        MappedOutputStream(long start) {
+            this.start = start;
+            this.position = start;
+        }
+
+        long getBytesWritten() {
+            return position - start;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(position + 1);
+            buffer.put((int) position++, (byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureCapacity(position + length);
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) position);
+            view.put(bytes, offset, length);
+            position += length;
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+            ensureCapacity(finalSize);
+
+            MappedOutputStream output = new MappedOutputStream(pos);
+            DataOutputStream outputStream = new DataOutputStream(output);
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write count
+            long bytesWritten = output.getBytesWritten();
+            if (bytesWritten > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Block payload exceeds maximum size");
+            }
+            outputStream.writeInt((int) bytesWritten);
+
+            // Pad
+            if (currentFileSize < finalSize) {
+                currentFileSize = finalSize;
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            if (pos + HEADER_SIZE >= currentFileSize) {
+                throw blockCorruptedException();
+            }
+
+            MappedInputStream input = new MappedInputStream(pos);
+            DataInputStream inputStream = new DataInputStream(input);
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = inputStream.readByte();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = inputStream.readInt();
+            if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > currentFileSize) {
+                throw blockCorruptedException();
+            }
+            payload.read(inputStream);
+
+            // Read and verify count
+            long actualCount = input.getBytesRead();
+            long count = inputStream.readInt();
+            if (actualCount != count) {
+                throw blockCorruptedException();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedFileBlockStore.this));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.gradle.cache.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.gradle.cache.CacheAccess;
+import org.gradle.cache.FileAccess;
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.internal.Factory;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheAccessWorkerTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int UPDATES = 20_000;
+    private static final int KEYS = 50;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final AtomicInteger mWrites = new AtomicInteger();
+    private File mCacheFile;
+    private DefaultMultiProcessSafePersistentIndexedCache<String, Long> mPersistentCache;
+    private CacheAccessWorker mWorker;
+    private Thread mWorkerThread;
+
+    @Before
+    public void setup() throws Exception {
+        mCacheFile = new File(mFolder.getRoot(), "cache.bin");
+        mPersistentCache = new DefaultMultiProcessSafePersistentIndexedCache<>(this::createCache, new CountingFileAccess());
+        mWorker = new CacheAccessWorker("test cache", new DirectCacheAccess());
+        mWorkerThread = new Thread(mWorker, "CacheAccessWorkerTest");
+        mWorkerThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mWorker.stop();
+        mWorkerThread.join();
+        mPersistentCache.finishWork();
+    }
+
+    @Test
+    public void testUpdatesOfTheSameKeyAreCoalesced() throws Exception {
+        AsyncCacheAccessDecoratedCache<String, Long> cache = new AsyncCacheAccessDecoratedCache<>(mWorker, mPersistentCache);
+        AtomicInteger completions = new AtomicInteger();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < UPDATES; i++) {
+                    cache.putLater(key(producer, i % KEYS), (long) i, completions::incrementAndGet);
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+
+        // a read sees every update submitted before it
+        assertEquals(Long.valueOf(UPDATES - 1), cache.get(key(0, KEYS - 1)));
+        cache.removeLater(key(0, 0), completions::incrementAndGet);
+        assertNull(cache.get(key(0, 0)));
+        mWorker.flush();
+
+        assertEquals(PRODUCERS * UPDATES + 1, completions.get());
+        for (int p = 0; p < PRODUCERS; p++) {
+            for (int k = 1; k < KEYS; k++) {
+                assertEquals(Long.valueOf(UPDATES - KEYS + k), mPersistentCache.getIfPresent(key(p, k)));
+            }
+        }
+
+        CacheAccessWorker.Statistics statistics = mWorker.getStatistics();
+        assertTrue(statistics.toString(), statistics.getOperationCount() >= PRODUCERS * UPDATES + 3);
+        assertTrue(statistics.toString(), statistics.getCoalescedCount() > 0);
+        assertTrue(mWrites.get() + " file writes", mWrites.get() < PRODUCERS * UPDATES);
+    }
+
+    @Test
+    public void testBatchIsWrittenToTheCacheFile() throws Exception {
+        // opening the cache counts as a write
+        assertNull(mPersistentCache.getIfPresent(key(0, 0)));
+        mWrites.set(0);
+
+        mPersistentCache.updateInBatch(() -> {
+            for (int i = 0; i < 1000; i++) {
+                mPersistentCache.put(key(0, i), (long) i);
+            }
+        });
+        assertEquals(1, mWrites.get());
+        mPersistentCache.finishWork();
+
+        BTreePersistentIndexedCache<String, Long> reopened = createCache();
+        reopened.verify();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), reopened.get(key(0, i)));
+        }
+        reopened.close();
+    }
+
+    private BTreePersistentIndexedCache<String, Long> createCache() {
+        return new BTreePersistentIndexedCache<>(mCacheFile, BaseSerializerFactory.STRING_SERIALIZER,
+                BaseSerializerFactory.LONG_SERIALIZER);
+    }
+
+    private static String key(int producer, int index) {
+        return "key" + producer + "_" + index;
+    }
+
+    /**
+     * Runs the actions on the calling thread without any locking.
+     */
+    private static class DirectCacheAccess implements CacheAccess {
+        @Override
+        public <T> T useCache(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void useCache(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public <T> T withFileLock(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void withFileLock(Runnable action) {
+            action.run();
+        }
+    }
+
+    /**
+     * Counts the writes, which each mark the cache file dirty and then clean again.
+     */
+    private class CountingFileAccess implements FileAccess {
+        @Override
+        public <T> T readFile(Callable<? extends T> action) {
+            try {
+                return action.call();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public <T> T readFile(Factory<? extends T> action) {
+            return action.create();
+        }
+
+        @Override
+        public void updateFile(Runnable action) {
+            action.run();
+        }
+
+        @Override
+        public void writeFile(Runnable action) {
+            mWrites.incrementAndGet();
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.gradle.cache.internal.btree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Checks that a {@link BTreePersistentIndexedCache} backed by a {@link MappedFileBlockStore}
+ * reads the files written by one backed by a {@link FileBackedBlockStore} and the other way
+ * around.
+ */
+public class MappedFileBlockStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testFilesAreInterchangeable() throws Exception {
+        File mappedFile = mFolder.newFile("mapped.bin");
+        BTreePersistentIndexedCache<String, Long> cache = createCache(mappedFile, true);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, (long) i);
+        }
+        cache.remove("key0");
+        cache.close();
+
+        cache = createCache(mappedFile, false);
+        cache.verify();
+        assertNull(cache.get("key0"));
+        for (int i = 1; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), cache.get("key" + i));
+        }
+        cache.put("key0", 0L);
+        cache.close();
+
+        cache = createCache(mappedFile, true);
+        cache.verify();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Long.valueOf(i), cache.get("key" + i));
+        }
+        cache.close();
+    }
+
+    @Test
+    public void testPaddingLeftByAnUncleanShutdownIsUnusedSpace() throws Exception {
+        for (boolean mapped : new boolean[]{true, false}) {
+            File file = mFolder.newFile((mapped ? "mapped" : "file") + ".bin");
+            BTreePersistentIndexedCache<String, Long> cache = createCache(file, true);
+            for (int i = 0; i < 100; i++) {
+                cache.put("key" + i, (long) i);
+            }
+            cache.close();
+
+            // the mapping had grown the file and it was not truncated when closing
+            long length = file.length();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(length + 64 * 1024);
+            }
+
+            cache = createCache(file, mapped);
+            cache.verify();
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Long.valueOf(i), cache.get("key" + i));
+            }
+            for (int i = 100; i < 200; i++) {
+                cache.put("key" + i, (long) i);
+            }
+            cache.close();
+
+            cache = createCache(file, !mapped);
+            cache.verify();
+            for (int i = 0; i < 200; i++) {
+                assertEquals(Long.valueOf(i), cache.get("key" + i));
+            }
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testCacheIsUsableAfterClear() throws Exception {
+        File file = mFolder.newFile("mapped.bin");
+        BTreePersistentIndexedCache<String, Long> cache = createCache(file, true);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, (long) i);
+        }
+        cache.clear();
+        assertNull(cache.get("key1"));
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("other" + i, (long) i);
+        }
+        cache.verify();
+        cache.close();
+
+        for (boolean mapped : new boolean[]{true, false}) {
+            cache = createCache(file, mapped);
+            cache.verify();
+            assertNull(cache.get("key1"));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Long.valueOf(i), cache.get("other" + i));
+            }
+            cache.close();
+        }
+    }
+
+    private static BTreePersistentIndexedCache<String, Long> createCache(File file, boolean mapped) {
+        return new BTreePersistentIndexedCache<>(file, BaseSerializerFactory.STRING_SERIALIZER,
+                BaseSerializerFactory.LONG_SERIALIZER, (short) 512, 512, mapped);
+    }
+}
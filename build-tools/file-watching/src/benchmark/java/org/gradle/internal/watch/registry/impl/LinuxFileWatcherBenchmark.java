@@ -0,0 +1,151 @@
+package org.gradle.internal.watch.registry.impl;
+
+import net.rubygrapefruit.platform.file.FileWatchEvent.ChangeType;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Measures the latency between a file being written and its event being reported, and the
+ * CPU used by the watcher while nothing changes on a tree with many files.
+ *
+ * Run with {@code ./gradlew :build-tools:file-watching:benchmark}, the tree is created in a
+ * temporary directory that is deleted afterwards.
+ */
+public class LinuxFileWatcherBenchmark {
+
+    private static final int DIRECTORIES = 100;
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final int LATENCY_SAMPLES = 50;
+    private static final long IDLE_MILLIS = 2000;
+    private static final long EVENT_TIMEOUT_SECONDS = 5;
+
+    private static final String EVENT_THREAD_NAME = "File watcher";
+
+    public static void main(String[] args) throws Exception {
+        File root = Files.createTempDirectory("watcher-benchmark").toFile();
+        try {
+            run(root);
+        } finally {
+            deleteRecursively(root);
+        }
+    }
+
+    private static void run(File root) throws Exception {
+        for (int i = 0; i < DIRECTORIES; i++) {
+            File directory = new File(root, "dir" + i);
+            if (!directory.mkdir()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            for (int j = 0; j < FILES_PER_DIRECTORY; j++) {
+                write(new File(directory, "File" + j + ".java"), "class File" + j + " {}");
+            }
+        }
+
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        LinuxFileWatcherRegistryFactory.LinuxFileWatcher watcher =
+                new LinuxFileWatcherRegistryFactory.LinuxFileWatcher(
+                        new LinuxFileWatcherRegistryFactory.LinuxFileWatcher.Callback() {
+                            @Override
+                            public void reportChangeEvent(ChangeType type, String absolutePath) {
+                                events.add(absolutePath);
+                            }
+
+                            @Override
+                            public void reportOverflow(@Nullable String absolutePath) {
+                                events.add(String.valueOf(absolutePath));
+                            }
+
+                            @Override
+                            public void reportFailure(Throwable failure) {
+                                failure.printStackTrace();
+                            }
+
+                            @Override
+                            public void reportTermination() {
+
+                            }
+                        });
+        try {
+            long start = System.nanoTime();
+            watcher.startWatching(Collections.singletonList(root));
+            long registerMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+
+            long totalLatency = 0;
+            long maxLatency = 0;
+            for (int i = 0; i < LATENCY_SAMPLES; i++) {
+                File file = new File(root, "dir" + (i % DIRECTORIES) + "/File0.java");
+                long written = System.nanoTime();
+                write(file, "class File0 { int i = " + i + "; }");
+                awaitEvent(events, file);
+                long latency = System.nanoTime() - written;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+                events.clear();
+            }
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long threadId = getEventThread().getId();
+            long cpuBefore = threads.getThreadCpuTime(threadId);
+            Thread.sleep(IDLE_MILLIS);
+            long idleCpu = threads.getThreadCpuTime(threadId) - cpuBefore;
+
+            System.out.println("Watched " + DIRECTORIES * FILES_PER_DIRECTORY + " files in " +
+                               DIRECTORIES + " directories, registered in " + registerMicros +
+                               "us");
+            System.out.println("Event latency: average=" +
+                               TimeUnit.NANOSECONDS.toMicros(totalLatency / LATENCY_SAMPLES) +
+                               "us, max=" + TimeUnit.NANOSECONDS.toMicros(maxLatency) + "us");
+            System.out.println("Watcher CPU time while idle for " + IDLE_MILLIS + "ms: " +
+                               TimeUnit.NANOSECONDS.toMicros(idleCpu) + "us");
+        } finally {
+            watcher.awaitTermination(EVENT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Thread getEventThread() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (EVENT_THREAD_NAME.equals(thread.getName())) {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("The event thread of the watcher is not running");
+    }
+
+    private static void awaitEvent(BlockingQueue<String> events, File file)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(EVENT_TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            String path = events.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (file.getAbsolutePath().equals(path)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("No event was reported for " + file);
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
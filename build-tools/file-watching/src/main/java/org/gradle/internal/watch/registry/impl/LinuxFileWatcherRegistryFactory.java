@@ -1,6 +1,11 @@
 package org.gradle.internal.watch.registry.impl;
 
-import static net.rubygrapefruit.platform.internal.jni.LinuxFileEventFunctions.*;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import com.google.common.annotations.VisibleForTesting;
 
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.snapshot.SnapshotHierarchy;
@@ -9,100 +14,308 @@ import org.gradle.internal.watch.registry.FileWatcherUpdater;
 
 import net.rubygrapefruit.platform.NativeIntegrationUnavailableException;
 import net.rubygrapefruit.platform.file.FileWatchEvent;
+import net.rubygrapefruit.platform.file.FileWatchEvent.ChangeType;
 import net.rubygrapefruit.platform.file.FileWatcher;
 import net.rubygrapefruit.platform.internal.jni.AbstractFileEventFunctions;
 import net.rubygrapefruit.platform.internal.jni.InsufficientResourcesForWatchingException;
 
-import org.apache.commons.vfs2.FileChangeEvent;
-import org.apache.commons.vfs2.FileListener;
-import org.apache.commons.vfs2.FileObject;
-import org.apache.commons.vfs2.FileSystemException;
-import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.VFS;
-import org.apache.commons.vfs2.impl.DefaultFileMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistryFactory<LinuxFileWatcherRegistryFactory.LinuxFileEventFunctions, LinuxFileWatcherRegistryFactory.LinuxFileWatcher> {
 
-    private final BlockingQueue<FileWatchEvent> queue = new ArrayBlockingQueue<>(10);
-
+    /**
+     * A file watcher backed by {@link WatchService}, which uses inotify on Linux and Android.
+     *
+     * <p>
+     * Directories passed to {@link #startWatching(Collection)} are registered together with
+     * all of their subdirectories, and directories created later inside them are registered
+     * as they appear. The event thread blocks until the kernel reports a change, so an idle
+     * watcher uses no CPU no matter how many files are watched.
+     * </p>
+     *
+     * <p>
+     * Events arriving within {@link #COALESCE_WINDOW_MILLIS} of each other are merged per
+     * path before they are reported, so a burst such as a build writing its outputs is
+     * reported once per file. If the kernel queue overflows, the affected directory, or every
+     * watched root when more than one directory overflowed, is reported as an overflow so
+     * the virtual file system invalidates it.
+     * </p>
+     */
     protected static class LinuxFileWatcher implements FileWatcher {
 
-        private final FileSystemManager manager;
-        private DefaultFileMonitor fileMonitor;
-        private final FileListener fileListener;
+        private static final Logger LOGGER = LoggerFactory.getLogger(LinuxFileWatcher.class);
+
+        private static final long COALESCE_WINDOW_MILLIS = 10;
+        private static final int MAX_COALESCED_EVENTS = 4096;
+
+        /**
+         * Receives the events of the watcher, they are forwarded to the queue of the
+         * {@link DefaultFileWatcherRegistry}.
+         */
+        public interface Callback {
+            void reportChangeEvent(ChangeType type, String absolutePath);
+
+            /**
+             * @param absolutePath The directory that overflowed, null if every watched
+             *                     directory has to be invalidated
+             */
+            void reportOverflow(@Nullable String absolutePath);
+
+            void reportFailure(Throwable failure);
+
+            void reportTermination();
+        }
+
+        private final WatchService watchService;
+        private final Callback callback;
+        private final Set<Path> roots = ConcurrentHashMap.newKeySet();
+        private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+        private final Thread eventThread;
 
-        public LinuxFileWatcher(FileListener fileListener) {
+        public LinuxFileWatcher(Callback callback) {
+            this.callback = callback;
             try {
-                manager = VFS.getManager();
-            } catch (FileSystemException e) {
-                throw new RuntimeException(e);
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            this.fileListener = fileListener;
+            eventThread = new Thread(this::processEvents, "File watcher");
+            eventThread.setDaemon(true);
+            eventThread.start();
         }
 
         @Override
         public void startWatching(Collection<File> collection) throws InsufficientResourcesForWatchingException {
-            if (fileMonitor != null) {
-                return;
+            for (File file : collection) {
+                Path root = file.toPath().toAbsolutePath().normalize();
+                roots.add(root);
+                registerRecursively(root);
             }
-
-            List<FileObject> files = resolveFileObjects(collection);
-            fileMonitor = new DefaultFileMonitor(fileListener);
-            fileMonitor.setRecursive(true);
-            files.forEach(fileMonitor::addFile);
-            fileMonitor.start();
         }
 
         @Override
         public boolean stopWatching(Collection<File> collection) {
-            if (fileMonitor == null) {
-                return false;
+            boolean allWatched = true;
+            for (File file : collection) {
+                Path root = file.toPath().toAbsolutePath().normalize();
+                if (!roots.remove(root)) {
+                    allWatched = false;
+                    continue;
+                }
+
+                Iterator<Map.Entry<Path, WatchKey>> iterator = watchedDirectories.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Path, WatchKey> entry = iterator.next();
+                    if (entry.getKey().startsWith(root) && !isUnderRoot(entry.getKey())) {
+                        entry.getValue().cancel();
+                        iterator.remove();
+                    }
+                }
+            }
+            return allWatched;
+        }
+
+        /**
+         * @return Whether the directory is still covered by one of the watched roots
+         */
+        private boolean isUnderRoot(Path directory) {
+            for (Path current = directory; current != null; current = current.getParent()) {
+                if (roots.contains(current)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void registerRecursively(Path directory) throws InsufficientResourcesForWatchingException {
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                return;
+            }
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                        watchedDirectories.put(dir, key);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // the directory may have been deleted while it was being walked
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (ClosedWatchServiceException e) {
+                LOGGER.debug("Not watching {}, the watcher has been shut down", directory);
+            } catch (IOException e) {
+                // the limit is set by /proc/sys/fs/inotify/max_user_watches
+                throw new InsufficientResourcesForWatchingException(
+                        "Unable to watch " + directory + ": " + e.getMessage());
+            }
+        }
+
+        private void processEvents() {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+
+                    Map<Path, ChangeType> changes = new LinkedHashMap<>();
+                    Set<Path> overflows = new LinkedHashSet<>();
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COALESCE_WINDOW_MILLIS);
+                    while (key != null) {
+                        collectEvents(key, changes, overflows);
+                        if (changes.size() >= MAX_COALESCED_EVENTS) {
+                            break;
+                        }
+                        long remaining = deadline - System.nanoTime();
+                        key = remaining > 0
+                                ? watchService.poll(remaining, TimeUnit.NANOSECONDS)
+                                : watchService.poll();
+                    }
+                    report(changes, overflows);
+                }
+            } catch (ClosedWatchServiceException e) {
+                LOGGER.debug("File watcher has been shut down");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                callback.reportFailure(t);
+            } finally {
+                callback.reportTermination();
             }
-            List<FileObject> fileObjects = resolveFileObjects(collection);
-            fileObjects.forEach(fileMonitor::removeFile);
-            return true;
         }
 
-        private List<FileObject> resolveFileObjects(Collection<File> collection) {
-            return collection.stream()
-                    .map(File::toString)
-                    .map(path -> {
+        private void collectEvents(WatchKey key, Map<Path, ChangeType> changes, Set<Path> overflows) {
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    overflows.add(directory);
+                    continue;
+                }
+
+                Path path = directory.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE) {
+                    changes.merge(path, ChangeType.CREATED, LinuxFileWatcher::coalesce);
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
                         try {
-                            return manager.resolveFile(path);
-                        } catch (FileSystemException e) {
-                            return null;
+                            registerRecursively(path);
+                        } catch (InsufficientResourcesForWatchingException e) {
+                            LOGGER.warn("Unable to watch new directory {}", path, e);
+                            overflows.add(path);
                         }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+                    }
+                } else if (event.kind() == ENTRY_DELETE) {
+                    changes.merge(path, ChangeType.REMOVED, LinuxFileWatcher::coalesce);
+                } else {
+                    changes.merge(path, ChangeType.MODIFIED, LinuxFileWatcher::coalesce);
+                }
+            }
+
+            if (!key.reset()) {
+                // the directory is no longer accessible, it was deleted or moved
+                watchedDirectories.remove(directory, key);
+            }
+        }
+
+        /**
+         * Merges two changes of the same path that happened in order into one.
+         */
+        @VisibleForTesting
+        static ChangeType coalesce(ChangeType previous, ChangeType next) {
+            if (next == ChangeType.REMOVED) {
+                return ChangeType.REMOVED;
+            }
+            if (previous == ChangeType.REMOVED) {
+                // deleted and created again, its contents may be different
+                return ChangeType.MODIFIED;
+            }
+            if (previous == ChangeType.CREATED) {
+                return ChangeType.CREATED;
+            }
+            return next;
+        }
+
+        private void report(Map<Path, ChangeType> changes, Set<Path> overflows) {
+            if (overflows.size() > 1) {
+                // the kernel queue overflowed, which is reported on every key
+                callback.reportOverflow(null);
+            } else if (overflows.size() == 1) {
+                callback.reportOverflow(overflows.iterator().next().toString());
+            }
+
+            for (Map.Entry<Path, ChangeType> entry : changes.entrySet()) {
+                callback.reportChangeEvent(entry.getValue(), entry.getKey().toString());
+            }
         }
 
         @Override
         public void shutdown() {
-            if (fileMonitor != null) {
-                fileMonitor.stop();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close the watch service", e);
             }
+            watchedDirectories.clear();
+            roots.clear();
         }
 
         @Override
         public boolean awaitTermination(long l, TimeUnit timeUnit) throws InterruptedException {
             shutdown();
-            return true;
+            eventThread.join(timeUnit.toMillis(l));
+            return !eventThread.isAlive();
         }
 
+        /**
+         * Stops watching the given directories whose watches are no longer valid because the
+         * directory was moved or deleted.
+         *
+         * @return The directories that are no longer watched
+         */
         public Collection<File> stopWatchingMovedPaths(Collection<File> directoriesToCheck) {
-            return Collections.emptyList();
+            List<File> moved = new ArrayList<>();
+            for (File directory : directoriesToCheck) {
+                Path path = directory.toPath().toAbsolutePath().normalize();
+                WatchKey key = watchedDirectories.get(path);
+                if (key != null && (!key.isValid() || !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))) {
+                    key.cancel();
+                    watchedDirectories.remove(path, key);
+                    roots.remove(path);
+                    moved.add(directory);
+                }
+            }
+            return moved;
         }
     }
 
@@ -126,29 +339,25 @@ public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistry
                                                          long l,
                                                          TimeUnit timeUnit,
                                                          NativeFileWatcherCallback nativeFileWatcherCallback) throws InterruptedException {
-                    return new LinuxFileWatcher(new FileListener() {
+                    return new LinuxFileWatcher(new LinuxFileWatcher.Callback() {
+                        @Override
+                        public void reportChangeEvent(ChangeType type, String absolutePath) {
+                            nativeFileWatcherCallback.reportChangeEvent(type.ordinal(), absolutePath);
+                        }
+
                         @Override
-                        public void fileCreated(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(FileWatchEvent.ChangeType.CREATED.ordinal(), fileObject.getPath().toString());
+                        public void reportOverflow(@Nullable String absolutePath) {
+                            nativeFileWatcherCallback.reportOverflow(absolutePath);
                         }
 
                         @Override
-                        public void fileDeleted(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.REMOVED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
+                        public void reportFailure(Throwable failure) {
+                            nativeFileWatcherCallback.reportFailure(failure);
                         }
 
                         @Override
-                        public void fileChanged(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.MODIFIED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
+                        public void reportTermination() {
+                            nativeFileWatcherCallback.reportTermination();
                         }
                     });
                 }
@@ -0,0 +1,151 @@
+package org.gradle.internal.watch.registry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import net.rubygrapefruit.platform.file.FileWatchEvent.ChangeType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+public class LinuxFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final BlockingQueue<Event> mEvents = new LinkedBlockingQueue<>();
+    private LinuxFileWatcherRegistryFactory.LinuxFileWatcher mWatcher;
+
+    @Before
+    public void setup() {
+        assumeTrue(System.getProperty("os.name").toLowerCase().contains("linux"));
+
+        mWatcher = new LinuxFileWatcherRegistryFactory.LinuxFileWatcher(
+                new LinuxFileWatcherRegistryFactory.LinuxFileWatcher.Callback() {
+                    @Override
+                    public void reportChangeEvent(ChangeType type, String absolutePath) {
+                        mEvents.add(new Event(type, absolutePath));
+                    }
+
+                    @Override
+                    public void reportOverflow(@Nullable String absolutePath) {
+                        mEvents.add(new Event(ChangeType.INVALIDATED, absolutePath));
+                    }
+
+                    @Override
+                    public void reportFailure(Throwable failure) {
+                        failure.printStackTrace();
+                    }
+
+                    @Override
+                    public void reportTermination() {
+
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mWatcher != null) {
+            assertTrue(mWatcher.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testNewDirectoriesAreWatched() throws Exception {
+        File root = mFolder.newFolder("root");
+        mWatcher.startWatching(Collections.singletonList(root));
+
+        File directory = new File(root, "created");
+        assertTrue(directory.mkdir());
+        assertEquals(ChangeType.CREATED, awaitEvent(directory).type);
+
+        File file = new File(directory, "Test.java");
+        write(file, "class Test {}");
+        assertNotNull(awaitEvent(file));
+    }
+
+    @Test
+    public void testBurstIsCoalesced() throws Exception {
+        File root = mFolder.newFolder("root");
+        mWatcher.startWatching(Collections.singletonList(root));
+
+        File file = new File(root, "Test.java");
+        for (int i = 0; i < 20; i++) {
+            write(file, "class Test { int i = " + i + "; }");
+        }
+        Event event = awaitEvent(file);
+        assertNotNull(event);
+        assertEquals(ChangeType.CREATED, event.type);
+
+        // let the rest of the burst, if any, be reported
+        Thread.sleep(200);
+        long remaining = mEvents.stream()
+                .filter(it -> file.getAbsolutePath().equals(it.path))
+                .count();
+        // the writes take less than the coalescing window, at most the last ones may be
+        // reported after the window has closed
+        assertTrue("Expected the writes to be coalesced, got " + (remaining + 1) + " events",
+                remaining <= 1);
+    }
+
+    @Test
+    public void testCoalesce() {
+        assertEquals(ChangeType.CREATED, LinuxFileWatcherRegistryFactory.LinuxFileWatcher
+                .coalesce(ChangeType.CREATED, ChangeType.MODIFIED));
+        assertEquals(ChangeType.REMOVED, LinuxFileWatcherRegistryFactory.LinuxFileWatcher
+                .coalesce(ChangeType.CREATED, ChangeType.REMOVED));
+        assertEquals(ChangeType.MODIFIED, LinuxFileWatcherRegistryFactory.LinuxFileWatcher
+                .coalesce(ChangeType.REMOVED, ChangeType.CREATED));
+        assertEquals(ChangeType.MODIFIED, LinuxFileWatcherRegistryFactory.LinuxFileWatcher
+                .coalesce(ChangeType.MODIFIED, ChangeType.MODIFIED));
+        assertEquals(ChangeType.REMOVED, LinuxFileWatcherRegistryFactory.LinuxFileWatcher
+                .coalesce(ChangeType.MODIFIED, ChangeType.REMOVED));
+    }
+
+    private Event awaitEvent(File file) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            Event event = mEvents.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (event != null && file.getAbsolutePath().equals(event.path)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class Event {
+        final ChangeType type;
+        final String path;
+
+        Event(ChangeType type, String path) {
+            this.type = type;
+            this.path = path;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + path;
+        }
+    }
+}
@@ -1,23 +1,64 @@
 package com.tyron.builder.project.cache;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.CacheJournal;
+
+import java.io.IOException;
 
 public interface CacheHolder {
 
     class CacheKey<K, V> {
 
         private final String name;
+        private final CacheJournal.Serializer<K> keySerializer;
+        private final CacheJournal.Serializer<V> valueSerializer;
 
         public CacheKey(String name) {
+            this(name, null, null);
+        }
+
+        /**
+         * Creates a key for a cache that is persisted to the build directory so it survives
+         * process restarts, see {@link CacheHolder#saveCaches()}
+         */
+        public CacheKey(String name,
+                        @Nullable CacheJournal.Serializer<K> keySerializer,
+                        @Nullable CacheJournal.Serializer<V> valueSerializer) {
             this.name = name;
+            this.keySerializer = keySerializer;
+            this.valueSerializer = valueSerializer;
         }
 
         public String getName() {
             return name;
         }
+
+        public boolean isPersistent() {
+            return keySerializer != null && valueSerializer != null;
+        }
+
+        @Nullable
+        public CacheJournal.Serializer<K> getKeySerializer() {
+            return keySerializer;
+        }
+
+        @Nullable
+        public CacheJournal.Serializer<V> getValueSerializer() {
+            return valueSerializer;
+        }
     }
 
     <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
 
     <K, V> void put(CacheKey<K, V> key, Cache<K, V> value);
+
+    /**
+     * Writes the caches with a persistent key to disk, they are read back lazily the next
+     * time they are requested through {@link #getCache(CacheKey, Cache)}.
+     */
+    default void saveCaches() throws IOException {
+
+    }
 }
@@ -32,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
@@ -53,7 +54,7 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
         super(root);
 
         mKotlinFiles = new HashMap<>();
-        mResourceClasses = new HashMap<>(1);
+        mResourceClasses = new ConcurrentHashMap<>(1);
     }
 
     @Override
@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.util.JarIndex;
 import com.tyron.builder.project.util.PackageTrie;
 import com.tyron.common.util.StringSearch;
 
@@ -18,14 +19,12 @@ import org.jetbrains.kotlin.com.intellij.util.ReflectionUtil;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
@@ -41,7 +40,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
     public JavaModuleImpl(File root) {
         super(root);
-        mJavaFiles = new HashMap<>();
+        mJavaFiles = new ConcurrentHashMap<>();
         mClassFiles = new HashMap<>();
         mLibraries = new HashSet<>();
         mInjectedClassesMap = new HashMap<>();
@@ -117,8 +116,7 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
             return;
         }
         try {
-            // noinspection unused, used to check if jar is valid.
-            JarFile jarFile = new JarFile(jar);
+            // putJar throws if the jar is not valid
             putJar(jar);
             mLibraries.add(jar);
         } catch (IOException e) {
@@ -130,30 +128,32 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (file == null) {
             return;
         }
-        try (JarFile jar = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-
-                if (!entry.getName().endsWith(".class")) {
-                    continue;
-                }
-
-                // We only want top level classes, if it contains $ then
-                // its an inner class, we ignore it
-                if (entry.getName().contains("$")) {
-                    continue;
-                }
-
-                String packageName = entry.getName().replace("/", ".")
-                        .substring(0, entry.getName().length() - ".class".length());
-
-                mClassFiles.put(packageName, file);
-                mClassIndex.add(packageName);
+
+        JarIndex index = JarIndex.getOrCreate(file, getJarIndexDirectory());
+        for (int i = 0; i < index.size(); i++) {
+            // We only want top level classes
+            if (index.isInnerClass(i)) {
+                continue;
             }
+
+            String packageName = index.getClassName(i);
+            mClassFiles.put(packageName, file);
+            mClassIndex.add(packageName);
         }
     }
 
+    /**
+     * @return The directory where the indexes of the libraries of this module are stored,
+     * null if this module has no build directory.
+     */
+    @Nullable
+    protected File getJarIndexDirectory() {
+        if (getRootFile() == null || getSettings() == null) {
+            return null;
+        }
+        return new File(getBuildDirectory(), "intermediate/jar_index");
+    }
+
     @NonNull
     @Override
     public File getResourcesDir() {
@@ -247,7 +247,8 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
     @Override
     public void index() {
-
+        // libraries have been added at this point
+        mClassIndex.trimToSize();
     }
 
     @Override
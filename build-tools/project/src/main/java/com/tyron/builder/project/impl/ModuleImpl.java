@@ -6,6 +6,7 @@ import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.util.Cache;
+import com.tyron.common.util.CacheJournal;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
@@ -148,22 +149,64 @@ public class ModuleImpl implements Module {
     private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new HashMap<>();
 
     @Override
-    public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
+    public synchronized <K, V> Cache<K, V> getCache(CacheKey<K, V> key,
+                                                 Cache<K, V> defaultValue) {
         Object o = mCacheMap.get(key);
         if (o == null) {
-            put(key, defaultValue);
-            return defaultValue;
+            Cache<K, V> cache = readCache(key);
+            if (cache == null) {
+                cache = defaultValue;
+            }
+            put(key, cache);
+            return cache;
         }
         //noinspection unchecked
         return (Cache<K, V>) o;
     }
 
-    public <K, V> void removeCache(CacheKey<K, V> key) {
+    @Override
+    public synchronized void saveCaches() throws IOException {
+        for (Map.Entry<CacheKey<?, ?>, Cache<?, ?>> entry : mCacheMap.entrySet()) {
+            if (entry.getKey().isPersistent()) {
+                //noinspection unchecked
+                writeCache((CacheKey<Object, Object>) entry.getKey(),
+                        (Cache<Object, Object>) entry.getValue());
+            }
+        }
+    }
+
+    @Nullable
+    private <K, V> Cache<K, V> readCache(CacheKey<K, V> key) {
+        if (!key.isPersistent()) {
+            return null;
+        }
+        File journal = getCacheJournal(key);
+        try {
+            return CacheJournal.read(journal, key.getKeySerializer(), key.getValueSerializer());
+        } catch (IOException e) {
+            // the journal is corrupted, start from a clean cache
+            if (!journal.delete()) {
+                journal.deleteOnExit();
+            }
+            return null;
+        }
+    }
+
+    private <K, V> void writeCache(CacheKey<K, V> key, Cache<K, V> cache) throws IOException {
+        CacheJournal.write(cache, getCacheJournal(key), key.getKeySerializer(),
+                key.getValueSerializer());
+    }
+
+    private File getCacheJournal(CacheKey<?, ?> key) {
+        return new File(getBuildDirectory(), "intermediate/caches/" + key.getName() + ".bin");
+    }
+
+    public synchronized <K, V> void removeCache(CacheKey<K, V> key) {
         mCacheMap.remove(key);
     }
 
     @Override
-    public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
+    public synchronized <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
         mCacheMap.put(key, value);
     }
 }
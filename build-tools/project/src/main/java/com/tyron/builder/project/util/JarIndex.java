@@ -0,0 +1,319 @@
+package com.tyron.builder.project.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An index of the classes contained in a jar file that can be saved to disk so the jar does
+ * not have to be opened and walked again the next time the project is opened.
+ *
+ * The index file is stored per library and is versioned, it is only rebuilt when the jar
+ * it was created from changes or when the format of the index changes.
+ *
+ * <p>
+ * Format of the index file:
+ * <pre>
+ *     int     magic
+ *     int     version
+ *     long    jar length
+ *     long    jar last modified
+ *     int     package count
+ *     string  package name, repeated package count times
+ *     int     class count
+ *     (int package index, byte flags, string name), repeated class count times
+ * </pre>
+ * Strings are stored as an unsigned short length followed by its UTF-8 bytes.
+ * </p>
+ */
+public class JarIndex {
+
+    private static final int MAGIC = 0x4A494458;
+
+    /**
+     * Increment this when the format of the index file changes so old indexes are rebuilt
+     */
+    private static final int VERSION = 1;
+
+    private static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * Set if the class is an inner class, its name contains a {@code $}
+     */
+    public static final int FLAG_INNER = 1;
+
+    private final List<String> mPackages;
+    private final int[] mClassPackages;
+    private final byte[] mClassFlags;
+    private final String[] mClassNames;
+
+    private JarIndex(List<String> packages, int[] classPackages, byte[] classFlags,
+                     String[] classNames) {
+        mPackages = packages;
+        mClassPackages = classPackages;
+        mClassFlags = classFlags;
+        mClassNames = classNames;
+    }
+
+    /**
+     * Returns the index of the given jar file, the index is read from the index directory if
+     * it is still up to date, otherwise the jar is walked and the index is saved.
+     *
+     * @param jar The jar file to index
+     * @param indexDirectory The directory where the indexes are stored, if null the index
+     *                       will not be saved
+     * @throws IOException if the jar file is not a valid jar file
+     */
+    @NonNull
+    public static JarIndex getOrCreate(@NonNull File jar, @Nullable File indexDirectory) throws IOException {
+        if (indexDirectory == null) {
+            return create(jar);
+        }
+
+        File indexFile = getIndexFile(jar, indexDirectory);
+        JarIndex index = read(indexFile, jar);
+        if (index != null) {
+            return index;
+        }
+
+        index = create(jar);
+        try {
+            index.write(indexFile, jar);
+        } catch (IOException e) {
+            // the index can always be rebuilt from the jar, failing to save it is not fatal
+            //noinspection ResultOfMethodCallIgnored
+            indexFile.delete();
+        }
+        return index;
+    }
+
+    /**
+     * @return The file where the index of the given jar will be saved
+     */
+    @NonNull
+    public static File getIndexFile(@NonNull File jar, @NonNull File indexDirectory) {
+        String name = Hashing.sha256()
+                .hashString(jar.getAbsolutePath(), StandardCharsets.UTF_8)
+                .toString();
+        return new File(indexDirectory, name + INDEX_EXTENSION);
+    }
+
+    /**
+     * Walks the entries of the jar file and creates an index from it.
+     */
+    @NonNull
+    public static JarIndex create(@NonNull File jar) throws IOException {
+        List<String> packages = new ArrayList<>();
+        Map<String, Integer> packageIndexes = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> classPackages = new ArrayList<>();
+
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                if (!entryName.endsWith(".class")) {
+                    continue;
+                }
+
+                String binaryName = entryName.substring(0,
+                        entryName.length() - ".class".length());
+                int lastSlash = binaryName.lastIndexOf('/');
+                String packageName = lastSlash == -1
+                        ? ""
+                        : binaryName.substring(0, lastSlash).replace('/', '.');
+                Integer packageIndex = packageIndexes.get(packageName);
+                if (packageIndex == null) {
+                    packageIndex = packages.size();
+                    packages.add(packageName);
+                    packageIndexes.put(packageName, packageIndex);
+                }
+                names.add(binaryName.substring(lastSlash + 1));
+                classPackages.add(packageIndex);
+            }
+        }
+
+        int size = names.size();
+        int[] packageArray = new int[size];
+        byte[] flags = new byte[size];
+        for (int i = 0; i < size; i++) {
+            packageArray[i] = classPackages.get(i);
+            if (names.get(i).contains("$")) {
+                flags[i] |= FLAG_INNER;
+            }
+        }
+        return new JarIndex(packages, packageArray, flags, names.toArray(new String[0]));
+    }
+
+    /**
+     * Reads the index file by memory mapping it.
+     *
+     * @param indexFile The file where the index was saved
+     * @param jar The jar that the index was created from, used to check if the index is
+     *            still up to date
+     * @return the index, or null if the index does not exist or is out of date
+     */
+    @Nullable
+    public static JarIndex read(@NonNull File indexFile, @NonNull File jar) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if (buffer.getLong() != jar.length() || buffer.getLong() != jar.lastModified()) {
+                return null;
+            }
+
+            int packageCount = buffer.getInt();
+            List<String> packages = new ArrayList<>(packageCount);
+            for (int i = 0; i < packageCount; i++) {
+                packages.add(readString(buffer));
+            }
+
+            int classCount = buffer.getInt();
+            int[] classPackages = new int[classCount];
+            byte[] flags = new byte[classCount];
+            String[] names = new String[classCount];
+            for (int i = 0; i < classCount; i++) {
+                int packageIndex = buffer.getInt();
+                if (packageIndex < 0 || packageIndex >= packageCount) {
+                    return null;
+                }
+                classPackages[i] = packageIndex;
+                flags[i] = buffer.get();
+                names[i] = readString(buffer);
+            }
+            return new JarIndex(packages, classPackages, flags, names);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // the index is corrupt, it will be rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Saves this index to the given file.
+     *
+     * @param indexFile The file to save the index to
+     * @param jar The jar file this index was created from
+     */
+    public void write(@NonNull File indexFile, @NonNull File jar) throws IOException {
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        // write to a temporary file first so a partially written index is never read
+        File tempFile = new File(parent, indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(jar.length());
+            out.writeLong(jar.lastModified());
+
+            out.writeInt(mPackages.size());
+            for (String packageName : mPackages) {
+                writeString(out, packageName);
+            }
+
+            out.writeInt(mClassNames.length);
+            for (int i = 0; i < mClassNames.length; i++) {
+                out.writeInt(mClassPackages[i]);
+                out.writeByte(mClassFlags[i]);
+                writeString(out, mClassNames[i]);
+            }
+        }
+
+        if (!tempFile.renameTo(indexFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Unable to save index to " + indexFile);
+        }
+    }
+
+    /**
+     * @return The names of the packages that contain at least one class
+     */
+    @NonNull
+    public List<String> getPackages() {
+        return Collections.unmodifiableList(mPackages);
+    }
+
+    /**
+     * @return The number of classes in this index, including inner classes
+     */
+    public int size() {
+        return mClassNames.length;
+    }
+
+    /**
+     * @return The fully qualified binary name of the class at the given position
+     */
+    @NonNull
+    public String getClassName(int index) {
+        String packageName = mPackages.get(mClassPackages[index]);
+        if (packageName.isEmpty()) {
+            return mClassNames[index];
+        }
+        return packageName + "." + mClassNames[index];
+    }
+
+    public boolean isInnerClass(int index) {
+        return (mClassFlags[index] & FLAG_INNER) != 0;
+    }
+
+    /**
+     * @return The fully qualified names of all the top level classes in the jar
+     */
+    @NonNull
+    public List<String> getTopLevelClasses() {
+        List<String> classes = new ArrayList<>(mClassNames.length);
+        for (int i = 0; i < mClassNames.length; i++) {
+            if (!isInnerClass(i)) {
+                classes.add(getClassName(i));
+            }
+        }
+        return classes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Name is too long: " + string);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -3,13 +3,14 @@ package com.tyron.builder.project.util;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.function.Consumer;
 
 /**
  * A trie that stores package segments to a node.
@@ -22,13 +23,25 @@ import java.util.function.Function;
  *     /  \
  * String Object
  * </p>
+ *
+ * To keep the memory footprint low with large indexes, the segments are interned so the same
+ * segment is shared across nodes and tries, and the children of a node are kept in an array
+ * sorted by their segment instead of a map.
  */
 public class PackageTrie {
 
+    private static final Node[] EMPTY_CHILDREN = new Node[0];
+
     private final Node mRoot;
 
+    /**
+     * Incremented every time names are added or removed, used by caches built on top of
+     * this trie to know when they are outdated.
+     */
+    private volatile int mModificationCount;
+
     public PackageTrie() {
-        mRoot = new Node();
+        mRoot = new Node(null);
     }
 
     /**
@@ -43,7 +56,10 @@ public class PackageTrie {
             current = current.getOrCreateChild(part);
         }
         // this is the end node, so mark it as a leaf
-        current.isLeaf = true;
+        if (!current.isLeaf) {
+            current.isLeaf = true;
+            mModificationCount++;
+        }
     }
 
     public void remove(@NonNull String fqn) {
@@ -64,108 +80,112 @@ public class PackageTrie {
      */
     public void remove(@NonNull String fqn, boolean leafOnly) {
         String[] parts = getParts(fqn);
-        Node current = mRoot;
+        Node[] path = new Node[parts.length + 1];
+        path[0] = mRoot;
         for (int i = 0; i < parts.length; i++) {
-            String part = parts[i];
-            boolean isLeaf = i == parts.length - 1;
+            Node next = path[i].getChild(parts[i]);
+            if (next == null) {
+                return;
+            }
+            path[i + 1] = next;
+        }
 
-            if (current == null) {
-                break;
+        Node target = path[parts.length];
+        mModificationCount++;
+        if (leafOnly) {
+            if (!target.isLeaf) {
+                return;
             }
-            if (current.getChildren() == null) {
-                current = null;
-            } else {
-                Node next = current.getChildren().get(part);
-                if (next != null && (isLeaf || !leafOnly)) {
-                    current.getChildren().remove(next.getValue());
-                }
-                current = next;
+            target.isLeaf = false;
+        } else {
+            target.isLeaf = false;
+            target.clearChildren();
+        }
+
+        // remove the nodes that no longer lead to a leaf
+        for (int i = parts.length; i > 0; i--) {
+            Node node = path[i];
+            if (node.isLeaf || node.mSize > 0) {
+                break;
             }
+            path[i - 1].removeChild(node.mValue);
         }
     }
 
+    /**
+     * Returns the fully qualified names of all the leaf nodes under the given package.
+     */
     public List<String> getMatchingPackages(String packageQuery) {
         List<String> result = new ArrayList<>();
-        StringBuilder currentPackage = new StringBuilder();
-        String[] parts = getParts(packageQuery);
-        Node current = mRoot;
-        for (String part : parts) {
-            if (current == null || current.getChildren() == null || !current.getChildren().containsKey(part)) {
-                return result;
-            }
-
-            if (current.isLeaf) {
-                String fqn = currentPackage.length() > 0
-                        ? currentPackage + "." + part
-                        : part;
-                result.add(fqn);
-            } else {
-                boolean insertDot = currentPackage.length() > 0;
-                if (insertDot) {
-                    currentPackage.append('.');
-                }
-                currentPackage.append(part);
-            }
+        forEachMatchingPackage(packageQuery, result::add);
+        return result;
+    }
 
-            current = current.getChildren().get(part);
+    /**
+     * Calls the consumer for each fully qualified name under the given package without
+     * building an intermediate list.
+     */
+    public void forEachMatchingPackage(String packageQuery, Consumer<String> consumer) {
+        Iterator<String> iterator = iterateMatchingPackages(packageQuery);
+        while (iterator.hasNext()) {
+            consumer.accept(iterator.next());
         }
+    }
 
-        if (current.getChildren() != null) {
-            for (Node node : current.getChildren().values()) {
-                recurse(node, currentPackage.toString(), result);
+    /**
+     * Returns an iterator over the fully qualified names of all the leaf nodes under the given
+     * package. The names are computed lazily as the iterator advances.
+     */
+    @NonNull
+    public Iterator<String> iterateMatchingPackages(String packageQuery) {
+        String[] parts = getParts(packageQuery);
+        Node current = mRoot;
+        for (String part : parts) {
+            current = current.getChild(part);
+            if (current == null) {
+                return Collections.emptyIterator();
             }
         }
+        return new LeafIterator(current, packageQuery);
+    }
 
-        return result;
+    /**
+     * @return A number that changes every time the contents of this trie are modified
+     */
+    public int getModificationCount() {
+        return mModificationCount;
     }
 
     public Set<String> getTopLevelNonLeafNodes() {
-        if (mRoot.getChildren() == null) {
+        if (mRoot.mSize == 0) {
             return Collections.emptySet();
         }
 
-        return mRoot.getChildren().keySet();
+        Set<String> nodes = new HashSet<>(mRoot.mSize);
+        for (int i = 0; i < mRoot.mSize; i++) {
+            nodes.add(mRoot.mChildren[i].mValue);
+        }
+        return nodes;
     }
 
     public Set<String> getLeafNodes() {
-        return new HashSet<>(getLeafNodes("", mRoot));
+        Set<String> leafNodes = new HashSet<>();
+        new LeafIterator(mRoot, "").forEachRemaining(leafNodes::add);
+        return leafNodes;
     }
 
-    private Set<String> getLeafNodes(String currentPackage, Node current) {
-        if (current.isLeaf) {
-            return Collections.singleton(currentPackage);
-        } else {
-            if (current.getChildren() == null || current.getChildren().isEmpty()) {
-                return Collections.emptySet();
-            }
-            Set<String> leafNodes = new HashSet<>();
-            for (Node value : current.getChildren().values()) {
-                String newPackage = currentPackage.isEmpty()
-                        ? value.getValue()
-                        : currentPackage + "." + value.getValue();
-                leafNodes.addAll(getLeafNodes(newPackage, value));
-            }
-            return leafNodes;
-        }
+    /**
+     * Releases the unused capacity of the children arrays, call this after adding a large
+     * amount of names to the index.
+     */
+    public void trimToSize() {
+        trimToSize(mRoot);
     }
 
-    private void recurse(Node node, String currentPackage, List<String> result) {
-        if (node.isLeaf) {
-            String newResult = currentPackage.length() > 0
-                    ? currentPackage + "." + node.getValue()
-                    : node.getValue();
-            result.add(newResult);
-        } else {
-            currentPackage = currentPackage.isEmpty()
-                    ? node.getValue()
-                    : currentPackage + "." + node.getValue();
-        }
-
-        if (node.getChildren() == null) {
-            return;
-        }
-        for (Node child : node.getChildren().values()) {
-            recurse(child, currentPackage, result);
+    private void trimToSize(Node node) {
+        node.trimToSize();
+        for (int i = 0; i < node.mSize; i++) {
+            trimToSize(node.mChildren[i]);
         }
     }
 
@@ -176,36 +196,178 @@ public class PackageTrie {
         return new String[]{fqn};
     }
 
-    private static class Node {
+    /**
+     * Depth first iterator over the leaf nodes of a subtree, the current path is kept in a
+     * single {@link StringBuilder} which is truncated when going back up the tree.
+     */
+    private static class LeafIterator implements Iterator<String> {
 
-        private Map<String, Node> mChildren;
+        private final StringBuilder mPath;
 
-        private boolean isLeaf;
+        private Node[] mNodes = new Node[8];
+        private int[] mIndexes = new int[8];
+        private int[] mLengths = new int[8];
+        private int mDepth;
+
+        private String mNext;
+
+        LeafIterator(Node root, String prefix) {
+            mPath = new StringBuilder(prefix);
+            mNodes[0] = root;
+            mLengths[0] = mPath.length();
+            mDepth = 1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (mNext == null) {
+                mNext = advance();
+            }
+            return mNext != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String next = mNext;
+            mNext = null;
+            return next;
+        }
+
+        private String advance() {
+            while (mDepth > 0) {
+                int top = mDepth - 1;
+                Node node = mNodes[top];
+                int index = mIndexes[top];
+                if (index >= node.mSize) {
+                    // all children have been visited, go back up
+                    mDepth--;
+                    continue;
+                }
+                mIndexes[top] = index + 1;
 
-        private String mValue;
+                Node child = node.mChildren[index];
+                mPath.setLength(mLengths[top]);
+                if (mPath.length() > 0) {
+                    mPath.append('.');
+                }
+                mPath.append(child.mValue);
+                push(child);
 
-        public Node() {
+                if (child.isLeaf) {
+                    return mPath.toString();
+                }
+            }
+            return null;
+        }
 
+        private void push(Node node) {
+            if (mDepth == mNodes.length) {
+                int newLength = mDepth * 2;
+                mNodes = Arrays.copyOf(mNodes, newLength);
+                mIndexes = Arrays.copyOf(mIndexes, newLength);
+                mLengths = Arrays.copyOf(mLengths, newLength);
+            }
+            mNodes[mDepth] = node;
+            mIndexes[mDepth] = 0;
+            mLengths[mDepth] = mPath.length();
+            mDepth++;
         }
+    }
+
+    private static class Node {
+
+        /**
+         * The children of this node sorted by their value, only the first {@link #mSize}
+         * elements are used.
+         */
+        private Node[] mChildren = EMPTY_CHILDREN;
+
+        private int mSize;
+
+        private boolean isLeaf;
+
+        private final String mValue;
 
         public Node(String value) {
-            mValue = value;
+            mValue = value == null ? null : value.intern();
+        }
+
+        public Node getChild(String part) {
+            int index = indexOf(part);
+            return index >= 0 ? mChildren[index] : null;
         }
 
         public Node getOrCreateChild(String part) {
-            if (mChildren == null) {
-                mChildren = new HashMap<>();
+            int index = indexOf(part);
+            if (index >= 0) {
+                return mChildren[index];
+            }
+
+            int insertion = -(index + 1);
+            if (mSize == mChildren.length) {
+                mChildren = Arrays.copyOf(mChildren, mSize == 0 ? 2 : mSize + (mSize >> 1) + 1);
             }
+            System.arraycopy(mChildren, insertion, mChildren, insertion + 1, mSize - insertion);
 
-            return mChildren.computeIfAbsent(part, Node::new);
+            Node node = new Node(part);
+            mChildren[insertion] = node;
+            mSize++;
+            return node;
         }
 
-        public Map<String, Node> getChildren() {
-            return mChildren;
+        public void removeChild(String part) {
+            int index = indexOf(part);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(mChildren, index + 1, mChildren, index, mSize - index - 1);
+            mChildren[--mSize] = null;
+        }
+
+        public void clearChildren() {
+            mChildren = EMPTY_CHILDREN;
+            mSize = 0;
+        }
+
+        public void trimToSize() {
+            if (mSize < mChildren.length) {
+                mChildren = mSize == 0 ? EMPTY_CHILDREN : Arrays.copyOf(mChildren, mSize);
+            }
         }
 
-        public String getValue() {
-            return mValue;
+        /**
+         * @return the index of the child with the given value, or (-(insertion point) - 1)
+         * if there is no such child
+         */
+        private int indexOf(String part) {
+            // names are usually added in sorted order, check the last child first
+            if (mSize > 0) {
+                int compare = mChildren[mSize - 1].mValue.compareTo(part);
+                if (compare == 0) {
+                    return mSize - 1;
+                }
+                if (compare < 0) {
+                    return -(mSize + 1);
+                }
+            }
+
+            int low = 0;
+            int high = mSize - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int compare = mChildren[mid].mValue.compareTo(part);
+                if (compare < 0) {
+                    low = mid + 1;
+                } else if (compare > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
         }
 
         @Override
@@ -0,0 +1,75 @@
+package com.tyron.builder.project.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class JarIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testCreate() throws IOException {
+        File jar = createJar("java/lang/String.class", "java/lang/Object.class",
+                "java/util/Map$Entry.class", "Default.class", "META-INF/MANIFEST.MF");
+
+        JarIndex index = JarIndex.create(jar);
+        assert index.size() == 4;
+        assert index.getPackages().size() == 3;
+
+        List<String> classes = index.getTopLevelClasses();
+        assert classes.size() == 3;
+        assert classes.contains("java.lang.String");
+        assert classes.contains("java.lang.Object");
+        assert classes.contains("Default");
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        File jar = createJar("java/lang/String.class", "java/util/Map$Entry.class");
+        File indexDir = mFolder.newFolder("index");
+
+        JarIndex created = JarIndex.getOrCreate(jar, indexDir);
+        File indexFile = JarIndex.getIndexFile(jar, indexDir);
+        assert indexFile.exists();
+
+        JarIndex read = JarIndex.read(indexFile, jar);
+        assert read != null;
+        assert read.size() == created.size();
+        for (int i = 0; i < read.size(); i++) {
+            assert read.getClassName(i).equals(created.getClassName(i));
+            assert read.isInnerClass(i) == created.isInnerClass(i);
+        }
+    }
+
+    @Test
+    public void testOutdatedIndex() throws IOException {
+        File jar = createJar("java/lang/String.class");
+        File indexDir = mFolder.newFolder("index");
+        JarIndex.getOrCreate(jar, indexDir);
+
+        File indexFile = JarIndex.getIndexFile(jar, indexDir);
+        boolean modified = jar.setLastModified(jar.lastModified() - 10_000);
+        assert modified;
+        assert JarIndex.read(indexFile, jar) == null;
+    }
+
+    private File createJar(String... entries) throws IOException {
+        File jar = mFolder.newFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
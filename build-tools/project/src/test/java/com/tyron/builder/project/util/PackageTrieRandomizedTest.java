@@ -0,0 +1,114 @@
+package com.tyron.builder.project.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the packages found by {@link PackageTrie} against the previous implementation, which
+ * stored the children of each node in a {@link HashMap}, on randomly generated class names.
+ */
+public class PackageTrieRandomizedTest {
+
+    private static final int CLASS_COUNT = 20_000;
+    private static final int LOOKUPS = 2_000;
+
+    @Test
+    public void testMatchesHashMapTrie() {
+        List<String> classNames = generateClassNames();
+        HashMapTrie hashMapTrie = new HashMapTrie();
+        PackageTrie packageTrie = new PackageTrie();
+        for (String className : classNames) {
+            hashMapTrie.add(className);
+            packageTrie.add(className);
+        }
+        packageTrie.trimToSize();
+
+        Random random = new Random(0);
+        for (int i = 0; i < LOOKUPS; i++) {
+            String className = classNames.get(random.nextInt(classNames.size()));
+            String query = className.substring(0, className.lastIndexOf('.'));
+
+            List<String> expected = hashMapTrie.getMatchingPackages(query);
+            List<String> actual = new ArrayList<>();
+            packageTrie.forEachMatchingPackage(query, actual::add);
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(query, expected, actual);
+        }
+    }
+
+    private static List<String> generateClassNames() {
+        Random random = new Random(42);
+        String[] roots = {"android", "androidx", "java", "javax", "kotlin", "com", "org"};
+        List<String> names = new ArrayList<>(CLASS_COUNT);
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            StringBuilder builder = new StringBuilder(roots[random.nextInt(roots.length)]);
+            int depth = 1 + random.nextInt(4);
+            for (int j = 0; j < depth; j++) {
+                builder.append(".p").append(random.nextInt(12));
+            }
+            builder.append(".Class").append(i);
+            names.add(builder.toString());
+        }
+        return names;
+    }
+
+    /**
+     * The previous implementation of {@link PackageTrie}, kept here as a baseline.
+     */
+    private static class HashMapTrie {
+
+        private final Node mRoot = new Node(null);
+
+        void add(String fqn) {
+            Node current = mRoot;
+            for (String part : fqn.split("\\.")) {
+                current = current.mChildren.computeIfAbsent(part, Node::new);
+            }
+            current.isLeaf = true;
+        }
+
+        List<String> getMatchingPackages(String packageQuery) {
+            List<String> result = new ArrayList<>();
+            Node current = mRoot;
+            for (String part : packageQuery.split("\\.")) {
+                current = current.mChildren.get(part);
+                if (current == null) {
+                    return result;
+                }
+            }
+            for (Node node : current.mChildren.values()) {
+                recurse(node, packageQuery, result);
+            }
+            return result;
+        }
+
+        private void recurse(Node node, String currentPackage, List<String> result) {
+            String newPackage = currentPackage + "." + node.mValue;
+            if (node.isLeaf) {
+                result.add(newPackage);
+            }
+            for (Node child : node.mChildren.values()) {
+                recurse(child, newPackage, result);
+            }
+        }
+
+        private static class Node {
+            private final Map<String, Node> mChildren = new HashMap<>();
+            private final String mValue;
+            private boolean isLeaf;
+
+            Node(String value) {
+                mValue = value;
+            }
+        }
+    }
+}
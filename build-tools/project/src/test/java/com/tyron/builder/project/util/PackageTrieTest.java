@@ -2,6 +2,9 @@ package com.tyron.builder.project.util;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 public class PackageTrieTest {
@@ -47,4 +50,35 @@ public class PackageTrieTest {
         List<String> packages = trie.getMatchingPackages("a");
         assert packages.size() == 1;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRemovePackage() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("a.b.c.Class");
+        trie.add("a.b.d.Class");
+        trie.add("a.e.Class");
+        trie.remove("a.b", false);
+
+        List<String> packages = trie.getMatchingPackages("a");
+        assert packages.size() == 1;
+        assert packages.contains("a.e.Class");
+    }
+
+    @Test
+    public void testIterator() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("java.util.Map");
+        trie.add("java.util.List");
+        trie.add("java.util.concurrent.Future");
+        trie.add("java.lang.String");
+
+        Iterator<String> iterator = trie.iterateMatchingPackages("java.util");
+        List<String> names = new ArrayList<>();
+        iterator.forEachRemaining(names::add);
+        assert names.equals(Arrays.asList("java.util.List", "java.util.Map",
+                "java.util.concurrent.Future")) : names;
+
+        assert !trie.iterateMatchingPackages("java.io").hasNext();
+        assert trie.getLeafNodes().size() == 4;
+    }
+}
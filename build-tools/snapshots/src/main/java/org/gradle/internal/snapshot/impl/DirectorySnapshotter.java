@@ -3,6 +3,7 @@ package org.gradle.internal.snapshot.impl;
 import static org.gradle.internal.file.FileMetadata.*;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Iterables;
@@ -25,21 +26,29 @@ import org.gradle.internal.snapshot.DirectorySnapshotBuilder;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -49,6 +58,14 @@ import org.jetbrains.annotations.Nullable;
  * For creating {@link DirectorySnapshot}s of directories.
  */
 public class DirectorySnapshotter {
+    /**
+     * Set this system property to {@code true} to walk directories in parallel and hash files
+     * on a separate pool, by default they are walked and hashed on the calling thread only.
+     * The file hasher and the predicates of every caller must then be safe to use from
+     * several threads.
+     */
+    public static final String PARALLEL_SNAPSHOT_PROPERTY = "org.gradle.internal.snapshot.parallel";
+
     private static final EnumSet<FileVisitOption> DONT_FOLLOW_SYMLINKS = EnumSet.noneOf(FileVisitOption.class);
     private static final SymbolicLinkMapping EMPTY_SYMBOLIC_LINK_MAPPING = new SymbolicLinkMapping() {
 
@@ -58,8 +75,8 @@ public class DirectorySnapshotter {
         }
 
         @Override
-        public SymbolicLinkMapping withNewMapping(String source, String target, RelativePathTracker currentPathTracker) {
-            return new DefaultSymbolicLinkMapping(source, target, currentPathTracker.getSegments());
+        public SymbolicLinkMapping withNewMapping(String source, String target, Iterable<String> currentSegments) {
+            return new DefaultSymbolicLinkMapping(source, target, currentSegments);
         }
 
         @Override
@@ -72,12 +89,23 @@ public class DirectorySnapshotter {
     private final Interner<String> stringInterner;
     private final DefaultExcludes defaultExcludes;
     private final DirectorySnapshotterStatistics.Collector collector;
+    private final boolean parallel;
 
     public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector) {
+        this(hasher, stringInterner, defaultExcludes, collector, "true".equals(System.getProperty(PARALLEL_SNAPSHOT_PROPERTY)));
+    }
+
+    /**
+     * @param parallel Whether to walk directories in parallel and hash files on a separate pool,
+     *                 see {@link ParallelSnapshot}. The predicate given to {@link #snapshot} and
+     *                 the file hasher must then be safe to use from several threads.
+     */
+    public DirectorySnapshotter(FileHasher hasher, Interner<String> stringInterner, Collection<String> defaultExcludes, DirectorySnapshotterStatistics.Collector collector, boolean parallel) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
         this.collector = collector;
+        this.parallel = parallel;
     }
 
     /**
@@ -98,20 +126,44 @@ public class DirectorySnapshotter {
      * @return The (possible filtered) snapshot of the directory.
      */
     public FileSystemLocationSnapshot snapshot(String absolutePath, @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate, final AtomicBoolean hasBeenFiltered, Consumer<FileSystemLocationSnapshot> unfilteredSnapshotConsumer) {
+        long start = System.nanoTime();
+        Path rootPath = Paths.get(absolutePath);
+        if (parallel && isDirectory(rootPath)) {
+            ParallelSnapshot snapshot = new ParallelSnapshot(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, unfilteredSnapshotConsumer);
+            try {
+                return snapshot.snapshot(rootPath);
+            } finally {
+                collector.recordSnapshotTime(System.nanoTime() - start, snapshot.getWorkNanos());
+            }
+        }
         try {
-            Path rootPath = Paths.get(absolutePath);
             PathVisitor visitor = new PathVisitor(predicate, hasBeenFiltered, hasher, stringInterner, defaultExcludes, collector, EMPTY_SYMBOLIC_LINK_MAPPING, unfilteredSnapshotConsumer);
             Files.walkFileTree(rootPath, DONT_FOLLOW_SYMLINKS, Integer.MAX_VALUE, visitor);
             return visitor.getResult();
         } catch (IOException e) {
             throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", absolutePath), e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            collector.recordSnapshotTime(elapsed, elapsed);
+        }
+    }
+
+    /**
+     * Whether the path is a directory that is not a symlink, anything else, including a missing
+     * root, is left to the sequential walk.
+     */
+    private static boolean isDirectory(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+        } catch (IOException e) {
+            return false;
         }
     }
 
     private interface SymbolicLinkMapping {
         String remapAbsolutePath(Path path);
         @CheckReturnValue
-        SymbolicLinkMapping withNewMapping(String source, String target, RelativePathTracker currentPathTracker);
+        SymbolicLinkMapping withNewMapping(String source, String target, Iterable<String> currentSegments);
         Iterable<String> getRemappedSegments(Iterable<String> segments);
     }
 
@@ -142,8 +194,8 @@ public class DirectorySnapshotter {
         }
 
         @Override
-        public SymbolicLinkMapping withNewMapping(String source, String target, RelativePathTracker currentPathTracker) {
-            return new DefaultSymbolicLinkMapping(remapAbsolutePath(source), target, getRemappedSegments(currentPathTracker.getSegments()));
+        public SymbolicLinkMapping withNewMapping(String source, String target, Iterable<String> currentSegments) {
+            return new DefaultSymbolicLinkMapping(remapAbsolutePath(source), target, getRemappedSegments(currentSegments));
         }
 
         @Override
@@ -352,7 +404,7 @@ public class DirectorySnapshotter {
                             stringInterner,
                             defaultExcludes,
                             collector,
-                            symbolicLinkMapping.withNewMapping(file.toString(), targetDirString, pathTracker),
+                            symbolicLinkMapping.withNewMapping(file.toString(), targetDirString, pathTracker.getSegments()),
                             unfilteredSnapshotConsumer);
                     Files.walkFileTree(targetDir, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, subtreeVisitor);
                     return (DirectorySnapshot) subtreeVisitor.getResult();
@@ -470,4 +522,441 @@ public class DirectorySnapshotter {
             return builder.getResult();
         }
     }
+    /**
+     * The thread pools used by {@link ParallelSnapshot}, created the first time a directory is
+     * snapshotted in parallel.
+     */
+    private static class Pools {
+        private static final ForkJoinPool WALK = createPool("directory-snapshotter-walk", false);
+        private static final ForkJoinPool HASH = createPool("directory-snapshotter-hash", true);
+
+        private static ForkJoinPool createPool(String name, boolean asyncMode) {
+            return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(name + "-" + thread.getPoolIndex());
+                return thread;
+            }, null, asyncMode);
+        }
+    }
+
+    /**
+     * Snapshots a directory by walking its subdirectories in parallel and hashing its files on a
+     * separate pool.
+     *
+     * <p>Each directory is listed by its own {@link DirectoryTask}, which applies the same
+     * excludes, predicate and symlink handling as {@link PathVisitor} and records the outcome in
+     * a {@link DirectoryNode}. The nodes are then replayed on the calling thread into a {@link
+     * FilteredTrackingMerkleDirectorySnapshotBuilder}. Since that builder sorts the children of
+     * each directory, the snapshot and the snapshots given to the unfiltered snapshot consumer are
+     * the same as for a sequential walk, and the consumer is only called from the calling thread.
+     */
+    private static class ParallelSnapshot {
+        private final SnapshottingFilter.DirectoryWalkerPredicate predicate;
+        private final AtomicBoolean hasBeenFiltered;
+        private final FileHasher hasher;
+        private final Interner<String> stringInterner;
+        private final DefaultExcludes defaultExcludes;
+        private final DirectorySnapshotterStatistics.Collector collector;
+        private final Consumer<FileSystemLocationSnapshot> unfilteredSnapshotConsumer;
+        private final LongAdder workNanos = new LongAdder();
+
+        ParallelSnapshot(
+                @Nullable SnapshottingFilter.DirectoryWalkerPredicate predicate,
+                AtomicBoolean hasBeenFiltered,
+                FileHasher hasher,
+                Interner<String> stringInterner,
+                DefaultExcludes defaultExcludes,
+                DirectorySnapshotterStatistics.Collector collector,
+                Consumer<FileSystemLocationSnapshot> unfilteredSnapshotConsumer
+        ) {
+            this.predicate = predicate;
+            this.hasBeenFiltered = hasBeenFiltered;
+            this.hasher = hasher;
+            this.stringInterner = stringInterner;
+            this.defaultExcludes = defaultExcludes;
+            this.collector = collector;
+            this.unfilteredSnapshotConsumer = unfilteredSnapshotConsumer;
+        }
+
+        public FileSystemLocationSnapshot snapshot(Path rootPath) {
+            DirectoryTask root = walk(rootPath, new Walk(EMPTY_SYMBOLIC_LINK_MAPPING, hasBeenFiltered));
+            Pools.WALK.execute(root);
+            return new SnapshotReplayer(hasBeenFiltered).replay(root.join());
+        }
+
+        /**
+         * The time spent by all threads walking directories and hashing files.
+         */
+        public long getWorkNanos() {
+            return workNanos.sum();
+        }
+
+        private DirectoryTask walk(Path root, Walk walk) {
+            collector.recordVisitHierarchy();
+            return new DirectoryTask(walk, root, getInternedFileName(root), ImmutableList.of(), null, ImmutableList.of());
+        }
+
+        /**
+         * The state shared by all directories of a walk, a followed symlink to a directory starts
+         * a new walk.
+         */
+        private static class Walk {
+            private final SymbolicLinkMapping symbolicLinkMapping;
+            private final AtomicBoolean hasBeenFiltered;
+
+            Walk(SymbolicLinkMapping symbolicLinkMapping, AtomicBoolean hasBeenFiltered) {
+                this.symbolicLinkMapping = symbolicLinkMapping;
+                this.hasBeenFiltered = hasBeenFiltered;
+            }
+        }
+
+        /**
+         * A visited directory, its children are added by the task listing it. Tasks listing its
+         * subdirectories may mark it as filtered while it is being listed.
+         */
+        private static class DirectoryNode {
+            private final String absolutePath;
+            private final String name;
+            private final List<PendingChild> children = new ArrayList<>();
+            private volatile boolean filtered;
+
+            DirectoryNode(String absolutePath, String name) {
+                this.absolutePath = absolutePath;
+                this.name = name;
+            }
+        }
+
+        private interface PendingChild {
+            /**
+             * Waits for the child to be snapshotted and adds it to the current directory of the
+             * replayer.
+             */
+            void replay(SnapshotReplayer replayer);
+        }
+
+        private class DirectoryTask extends RecursiveTask<DirectoryNode> implements PendingChild {
+            private final Walk walk;
+            private final Path dir;
+            private final String name;
+            private final ImmutableList<String> segments;
+            private final DirectoryNode parent;
+            private final ImmutableList<String> parentDirectories;
+
+            /**
+             * @param segments The relative path of the directory, empty for the root of the walk.
+             * @param parent The node of the parent directory, {@code null} for the root of the walk.
+             * @param parentDirectories The directories entered by the walk so far, used to detect cycles.
+             */
+            DirectoryTask(Walk walk, Path dir, String name, ImmutableList<String> segments, @Nullable DirectoryNode parent, ImmutableList<String> parentDirectories) {
+                this.walk = walk;
+                this.dir = dir;
+                this.name = name;
+                this.segments = segments;
+                this.parent = parent;
+                this.parentDirectories = parentDirectories;
+            }
+
+            @Override
+            protected DirectoryNode compute() {
+                long start = System.nanoTime();
+                try {
+                    return visitDirectory();
+                } finally {
+                    workNanos.add(System.nanoTime() - start);
+                }
+            }
+
+            @Nullable
+            private DirectoryNode visitDirectory() {
+                DirectoryStream<Path> stream;
+                try {
+                    stream = Files.newDirectoryStream(dir);
+                } catch (IOException e) {
+                    // unlistable directories are reported like Files.walkFileTree() does
+                    visitFailed(walk, parent, dir, name, segments, e);
+                    return null;
+                }
+                try {
+                    collector.recordVisitDirectory();
+                    if (parent != null && !shouldVisit(walk, parent, dir, name, true, segments)) {
+                        return null;
+                    }
+                    DirectoryNode node = new DirectoryNode(intern(walk.symbolicLinkMapping.remapAbsolutePath(dir)), name);
+                    ImmutableList<String> entryParentDirectories = append(parentDirectories, dir.toString());
+                    for (Path entry : stream) {
+                        visitEntry(node, entry, entryParentDirectories);
+                    }
+                    return node;
+                } catch (DirectoryIteratorException e) {
+                    throw new UncheckedIOException(String.format("Could not read directory path '%s'.", dir), e.getCause());
+                } finally {
+                    try {
+                        stream.close();
+                    } catch (IOException e) {
+                        // ignored, as Files.walkFileTree() does
+                    }
+                }
+            }
+
+            private void visitEntry(DirectoryNode node, Path entry, ImmutableList<String> entryParentDirectories) {
+                String entryName = getInternedFileName(entry);
+                ImmutableList<String> entrySegments = append(segments, entryName);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    visitFailed(walk, node, entry, entryName, entrySegments, e);
+                    return;
+                }
+                if (attrs.isDirectory()) {
+                    DirectoryTask task = new DirectoryTask(walk, entry, entryName, entrySegments, node, entryParentDirectories);
+                    task.fork();
+                    node.children.add(task);
+                    return;
+                }
+
+                collector.recordVisitFile();
+                if (attrs.isSymbolicLink()) {
+                    BasicFileAttributes targetAttributes = readAttributesOfSymlinkTarget(entry, attrs);
+                    if (targetAttributes.isDirectory()) {
+                        followSymlink(node, entry, entryName, entrySegments, entryParentDirectories);
+                    } else {
+                        visitResolvedFile(node, entry, entryName, entrySegments, targetAttributes, AccessType.VIA_SYMLINK);
+                    }
+                } else {
+                    visitResolvedFile(node, entry, entryName, entrySegments, attrs, AccessType.DIRECT);
+                }
+            }
+
+            private void followSymlink(DirectoryNode node, Path file, String internedFileName, ImmutableList<String> fileSegments, ImmutableList<String> entryParentDirectories) {
+                Path targetDir;
+                try {
+                    targetDir = file.toRealPath();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(String.format("Could not list contents of directory '%s'.", file), e);
+                }
+                String targetDirString = targetDir.toString();
+                if (!entryParentDirectories.contains(targetDirString) && shouldVisit(walk, node, targetDir, internedFileName, true, fileSegments)) {
+                    Walk targetWalk = new Walk(walk.symbolicLinkMapping.withNewMapping(file.toString(), targetDirString, fileSegments), new AtomicBoolean(false));
+                    DirectoryTask task = walk(targetDir, targetWalk);
+                    task.fork();
+                    node.children.add(new SymlinkedDirectory(internedFileName, targetWalk, task));
+                }
+            }
+
+            private void visitResolvedFile(DirectoryNode node, Path file, String internedName, ImmutableList<String> fileSegments, BasicFileAttributes attrs, AccessType accessType) {
+                if (!shouldVisit(walk, node, file, internedName, false, fileSegments)) {
+                    return;
+                }
+                String internedRemappedAbsoluteFilePath = intern(walk.symbolicLinkMapping.remapAbsolutePath(file));
+                if (attrs.isSymbolicLink()) {
+                    node.children.add(new SnapshottedFile(new MissingFileSnapshot(internedRemappedAbsoluteFilePath, internedName, accessType)));
+                } else if (!attrs.isRegularFile()) {
+                    throw new UncheckedIOException(new IOException(String.format("Cannot snapshot %s: not a regular file", internedRemappedAbsoluteFilePath)));
+                } else {
+                    HashFileTask task = new HashFileTask(file, internedRemappedAbsoluteFilePath, internedName, attrs, accessType);
+                    Pools.HASH.execute(task);
+                    node.children.add(task);
+                }
+            }
+
+            @Override
+            public void replay(SnapshotReplayer replayer) {
+                DirectoryNode node = join();
+                if (node != null) {
+                    replayer.replayDirectory(node);
+                }
+            }
+        }
+
+        private class HashFileTask extends RecursiveTask<FileSystemLeafSnapshot> implements PendingChild {
+            private final Path file;
+            private final String internedAbsolutePath;
+            private final String internedName;
+            private final long lastModified;
+            private final long fileLength;
+            private final AccessType accessType;
+
+            HashFileTask(Path file, String internedAbsolutePath, String internedName, BasicFileAttributes attrs, AccessType accessType) {
+                this.file = file;
+                this.internedAbsolutePath = internedAbsolutePath;
+                this.internedName = internedName;
+                this.lastModified = attrs.lastModifiedTime().toMillis();
+                this.fileLength = attrs.size();
+                this.accessType = accessType;
+            }
+
+            @Override
+            protected FileSystemLeafSnapshot compute() {
+                long start = System.nanoTime();
+                try {
+                    FileMetadata metadata = DefaultFileMetadata.file(lastModified, fileLength, accessType);
+                    HashCode hash = hasher.hash(file.toFile(), fileLength, lastModified);
+                    return new RegularFileSnapshot(internedAbsolutePath, internedName, hash, metadata);
+                } finally {
+                    workNanos.add(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public void replay(SnapshotReplayer replayer) {
+                replayer.builder.visitLeafElement(join());
+            }
+        }
+
+        private static class SnapshottedFile implements PendingChild {
+            private final FileSystemLeafSnapshot snapshot;
+
+            SnapshottedFile(FileSystemLeafSnapshot snapshot) {
+                this.snapshot = snapshot;
+            }
+
+            @Override
+            public void replay(SnapshotReplayer replayer) {
+                replayer.builder.visitLeafElement(snapshot);
+            }
+        }
+
+        private static class SymlinkedDirectory implements PendingChild {
+            private final String internedFileName;
+            private final Walk walk;
+            private final DirectoryTask target;
+
+            SymlinkedDirectory(String internedFileName, Walk walk, DirectoryTask target) {
+                this.internedFileName = internedFileName;
+                this.walk = walk;
+                this.target = target;
+            }
+
+            @Override
+            public void replay(SnapshotReplayer replayer) {
+                replayer.replaySymlinkedDirectory(internedFileName, walk.hasBeenFiltered, target.join());
+            }
+        }
+
+        /**
+         * Builds the snapshot of a walk from its nodes, in the same way {@link PathVisitor}
+         * builds it while walking.
+         */
+        private class SnapshotReplayer {
+            private final FilteredTrackingMerkleDirectorySnapshotBuilder builder;
+            private final AtomicBoolean walkHasBeenFiltered;
+            private final Set<FileSystemLocationSnapshot> filteredDirectorySnapshots = new HashSet<>();
+
+            SnapshotReplayer(AtomicBoolean walkHasBeenFiltered) {
+                this.builder = FilteredTrackingMerkleDirectorySnapshotBuilder.sortingRequired(this::consumeUnfilteredSnapshot);
+                this.walkHasBeenFiltered = walkHasBeenFiltered;
+            }
+
+            private void consumeUnfilteredSnapshot(FileSystemLocationSnapshot snapshot) {
+                if (snapshot.getType() == FileType.Directory) {
+                    if (!filteredDirectorySnapshots.contains(snapshot)) {
+                        unfilteredSnapshotConsumer.accept(snapshot);
+                    }
+                } else {
+                    unfilteredSnapshotConsumer.accept(snapshot);
+                }
+            }
+
+            @Nullable
+            FileSystemLocationSnapshot replay(@Nullable DirectoryNode root) {
+                if (root != null) {
+                    replayDirectory(root);
+                }
+                return builder.getResult();
+            }
+
+            void replayDirectory(DirectoryNode node) {
+                builder.enterDirectory(AccessType.DIRECT, node.absolutePath, node.name, DirectorySnapshotBuilder.EmptyDirectoryHandlingStrategy.INCLUDE_EMPTY_DIRS);
+                for (PendingChild child : node.children) {
+                    child.replay(this);
+                }
+                // read after the children have been joined, they may have marked the node as filtered
+                if (node.filtered) {
+                    builder.markCurrentLevelAsFiltered();
+                }
+                boolean currentLevelComplete = builder.isCurrentLevelUnfiltered();
+                FileSystemLocationSnapshot currentLevel = builder.leaveDirectory();
+                if (!currentLevelComplete) {
+                    filteredDirectorySnapshots.add(currentLevel);
+                }
+            }
+
+            void replaySymlinkedDirectory(String internedFileName, AtomicBoolean symlinkHasBeenFiltered, @Nullable DirectoryNode target) {
+                DirectorySnapshot targetSnapshot = (DirectorySnapshot) new SnapshotReplayer(symlinkHasBeenFiltered).replay(target);
+                if (targetSnapshot == null) {
+                    return;
+                }
+                DirectorySnapshot directorySnapshotAccessedViaSymlink = new DirectorySnapshot(
+                        targetSnapshot.getAbsolutePath(),
+                        internedFileName,
+                        AccessType.VIA_SYMLINK,
+                        targetSnapshot.getHash(),
+                        targetSnapshot.getChildren()
+                );
+                builder.visitDirectory(directorySnapshotAccessedViaSymlink);
+                if (symlinkHasBeenFiltered.get()) {
+                    filteredDirectorySnapshots.add(directorySnapshotAccessedViaSymlink);
+                    builder.markCurrentLevelAsFiltered();
+                    walkHasBeenFiltered.set(true);
+                }
+            }
+        }
+
+        /** unlistable directories (and maybe some locked files) will stop here */
+        private void visitFailed(Walk walk, @Nullable DirectoryNode parent, Path file, String internedFileName, ImmutableList<String> segments, IOException exc) {
+            collector.recordVisitFileFailed();
+            boolean isDirectory = Files.isDirectory(file);
+            if (shouldVisit(walk, parent, file, internedFileName, isDirectory, segments)) {
+                throw new UncheckedIOException(exc);
+            }
+        }
+
+        /**
+         * Same as {@link PathVisitor#shouldVisit}, an entry rejected by the predicate marks the
+         * directory containing it as filtered.
+         */
+        private boolean shouldVisit(Walk walk, @Nullable DirectoryNode parent, Path path, String internedName, boolean isDirectory, ImmutableList<String> segments) {
+            if (isDirectory) {
+                if (defaultExcludes.excludeDir(internedName)) {
+                    return false;
+                }
+            } else if (defaultExcludes.excludeFile(internedName)) {
+                return false;
+            }
+
+            if (predicate == null) {
+                return true;
+            }
+            boolean allowed = predicate.test(path, internedName, isDirectory, walk.symbolicLinkMapping.getRemappedSegments(segments));
+            if (!allowed) {
+                if (parent != null) {
+                    parent.filtered = true;
+                }
+                walk.hasBeenFiltered.set(true);
+            }
+            return allowed;
+        }
+
+        private static BasicFileAttributes readAttributesOfSymlinkTarget(Path symlink, BasicFileAttributes symlinkAttributes) {
+            try {
+                return Files.readAttributes(symlink, BasicFileAttributes.class);
+            } catch (IOException ioe) {
+                return symlinkAttributes;
+            }
+        }
+
+        private static ImmutableList<String> append(ImmutableList<String> list, String element) {
+            return ImmutableList.<String>builderWithExpectedSize(list.size() + 1).addAll(list).add(element).build();
+        }
+
+        private String intern(String string) {
+            return stringInterner.intern(string);
+        }
+
+        private String getInternedFileName(Path path) {
+            Path fileName = path.getFileName();
+            return fileName == null ? "" : intern(fileName.toString());
+        }
+    }
 }
\ No newline at end of file
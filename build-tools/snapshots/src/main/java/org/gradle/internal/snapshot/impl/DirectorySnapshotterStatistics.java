@@ -6,6 +6,7 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public interface DirectorySnapshotterStatistics {
@@ -29,11 +30,30 @@ public interface DirectorySnapshotterStatistics {
      */
     long getFailedFiles();
 
+    /**
+     * The time spent snapshotting directory trees, in milliseconds.
+     */
+    long getSnapshotTimeMillis();
+
+    /**
+     * The time spent walking directories and hashing files, summed over all the threads that
+     * took part in the snapshots, in milliseconds.
+     */
+    long getWorkTimeMillis();
+
+    /**
+     * How much faster the snapshots were than when walking and hashing on a single thread,
+     * estimated as the ratio of the work time to the snapshot time.
+     */
+    double getSpeedup();
+
     class Collector {
         private final AtomicLong hierarchyCount = new AtomicLong();
         private final AtomicLong directoryCount = new AtomicLong();
         private final AtomicLong fileCount = new AtomicLong();
         private final AtomicLong failedFileCount = new AtomicLong();
+        private final AtomicLong snapshotNanos = new AtomicLong();
+        private final AtomicLong workNanos = new AtomicLong();
 
         public void recordVisitHierarchy() {
             hierarchyCount.incrementAndGet();
@@ -51,11 +71,19 @@ public interface DirectorySnapshotterStatistics {
             failedFileCount.incrementAndGet();
         }
 
+        public void recordSnapshotTime(long snapshotNanos, long workNanos) {
+            this.snapshotNanos.addAndGet(snapshotNanos);
+            this.workNanos.addAndGet(workNanos);
+        }
+
         public DirectorySnapshotterStatistics collect() {
             long hierarchyCount = this.hierarchyCount.getAndSet(0);
             long directoryCount = this.directoryCount.getAndSet(0);
             long fileCount = this.fileCount.getAndSet(0);
             long failedFileCount = this.failedFileCount.getAndSet(0);
+            long snapshotTime = TimeUnit.NANOSECONDS.toMillis(this.snapshotNanos.getAndSet(0));
+            long workTime = TimeUnit.NANOSECONDS.toMillis(this.workNanos.getAndSet(0));
+            double speedup = snapshotTime == 0 ? 1 : (double) workTime / snapshotTime;
 
             return new DirectorySnapshotterStatistics() {
                 @Override
@@ -78,10 +106,25 @@ public interface DirectorySnapshotterStatistics {
                     return failedFileCount;
                 }
 
+                @Override
+                public long getSnapshotTimeMillis() {
+                    return snapshotTime;
+                }
+
+                @Override
+                public long getWorkTimeMillis() {
+                    return workTime;
+                }
+
+                @Override
+                public double getSpeedup() {
+                    return speedup;
+                }
+
                 @Override
                 public String toString() {
-                    return MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files)",
-                            hierarchyCount, directoryCount, fileCount, failedFileCount);
+                    return MessageFormat.format("Snapshot {0,number,integer} directory hierarchies (visited {1,number,integer} directories, {2,number,integer} files and {3,number,integer} failed files) in {4,number,integer}ms ({5,number,integer}ms of work, speedup {6,number,#.##}x)",
+                            hierarchyCount, directoryCount, fileCount, failedFileCount, snapshotTime, workTime, speedup);
                 }
             };
         }
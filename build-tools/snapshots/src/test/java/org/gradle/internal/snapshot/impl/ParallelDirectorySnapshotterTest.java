@@ -0,0 +1,151 @@
+package org.gradle.internal.snapshot.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Interners;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.SnapshottingFilter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Checks that the parallel walk of {@link DirectorySnapshotter} produces the same snapshots as
+ * the sequential one, and that it is only used when enabled.
+ */
+public class ParallelDirectorySnapshotterTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testParallelSnapshotIsTheSameAsSequential() throws Exception {
+        File root = mFolder.newFolder("root");
+        for (int i = 0; i < 10; i++) {
+            File directory = new File(root, "dir" + i + "/nested/deeper");
+            assertTrue(directory.mkdirs());
+            for (int j = 0; j < 10; j++) {
+                write(new File(directory, "File" + j + ".java"), "class File" + j + " { int i = " + i + "; }");
+                write(new File(directory.getParentFile(), "Skipped" + j + ".java"), "class Skipped" + j + " {}");
+            }
+        }
+        assertTrue(new File(root, "empty").mkdir());
+        assertTrue(new File(root, ".git").mkdir());
+        write(new File(root, ".git/HEAD"), "ref: refs/heads/main");
+        write(new File(root, ".DS_Store"), "excluded");
+        Files.createSymbolicLink(new File(root, "linkToDir").toPath(), new File(root, "dir1").toPath());
+        Files.createSymbolicLink(new File(root, "dir2/linkToRoot").toPath(), root.toPath());
+        Files.createSymbolicLink(new File(root, "linkToFile").toPath(), new File(root, "dir3/nested/deeper/File3.java").toPath());
+        Files.createSymbolicLink(new File(root, "brokenLink").toPath(), new File(root, "missing").toPath());
+
+        assertSameSnapshot(root, null, false);
+        // rejects some files in every directory, including the ones reached through a symlink
+        assertSameSnapshot(root, (path, name, isDirectory, relativePath) -> !name.startsWith("Skipped"), true);
+        // rejects a whole directory
+        assertSameSnapshot(root, (path, name, isDirectory, relativePath) -> !String.join("/", relativePath).equals("dir4/nested"), true);
+    }
+
+    @Test
+    public void testSequentialByDefault() throws Exception {
+        File root = mFolder.newFolder("root");
+        for (int i = 0; i < 10; i++) {
+            File directory = new File(root, "dir" + i);
+            assertTrue(directory.mkdir());
+            write(new File(directory, "File.java"), "class File {}");
+        }
+
+        assertFalse(Boolean.getBoolean(DirectorySnapshotter.PARALLEL_SNAPSHOT_PROPERTY));
+        Set<Thread> threads = new ConcurrentSkipListSet<>(Comparator.comparing(Thread::getName));
+        DirectorySnapshotter snapshotter = new DirectorySnapshotter(new ContentHasher(), Interners.newStrongInterner(),
+                Collections.emptyList(), new DirectorySnapshotterStatistics.Collector());
+        snapshotter.snapshot(root.getAbsolutePath(), (path, name, isDirectory, relativePath) -> {
+            threads.add(Thread.currentThread());
+            return true;
+        }, new AtomicBoolean(), snapshot -> {});
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    private void assertSameSnapshot(File root, SnapshottingFilter.DirectoryWalkerPredicate predicate, boolean expectFiltered) {
+        AtomicBoolean sequentialFiltered = new AtomicBoolean();
+        Set<String> sequentialUnfiltered = new TreeSet<>();
+        FileSystemLocationSnapshot sequential = snapshot(root, predicate, false, new DirectorySnapshotterStatistics.Collector(),
+                sequentialFiltered, snapshot -> sequentialUnfiltered.add(describe(snapshot)));
+
+        AtomicBoolean parallelFiltered = new AtomicBoolean();
+        Set<String> parallelUnfiltered = new ConcurrentSkipListSet<>();
+        FileSystemLocationSnapshot parallel = snapshot(root, predicate, true, new DirectorySnapshotterStatistics.Collector(),
+                parallelFiltered, snapshot -> parallelUnfiltered.add(describe(snapshot)));
+
+        assertEquals(describeTree(sequential), describeTree(parallel));
+        assertEquals(sequential.getHash(), parallel.getHash());
+        assertEquals(expectFiltered, sequentialFiltered.get());
+        assertEquals(sequentialFiltered.get(), parallelFiltered.get());
+        assertEquals(sequentialUnfiltered, parallelUnfiltered);
+        assertFalse(expectFiltered && sequentialUnfiltered.isEmpty());
+    }
+
+    private static FileSystemLocationSnapshot snapshot(File root, SnapshottingFilter.DirectoryWalkerPredicate predicate, boolean parallel,
+            DirectorySnapshotterStatistics.Collector collector, AtomicBoolean hasBeenFiltered,
+            Consumer<FileSystemLocationSnapshot> unfilteredSnapshotConsumer) {
+        DirectorySnapshotter snapshotter = new DirectorySnapshotter(new ContentHasher(), Interners.newStrongInterner(),
+                Collections.singletonList(".DS_Store"), collector, parallel);
+        return snapshotter.snapshot(root.getAbsolutePath(), predicate, hasBeenFiltered, unfilteredSnapshotConsumer);
+    }
+
+    private static String describeTree(FileSystemLocationSnapshot snapshot) {
+        StringBuilder builder = new StringBuilder(describe(snapshot));
+        if (snapshot instanceof DirectorySnapshot) {
+            for (FileSystemLocationSnapshot child : ((DirectorySnapshot) snapshot).getChildren()) {
+                builder.append('\n').append(describeTree(child));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String describe(FileSystemLocationSnapshot snapshot) {
+        return snapshot.getType() + " " + snapshot.getAbsolutePath() + " " + snapshot.getName() + " " +
+               snapshot.getAccessType() + " " + snapshot.getHash();
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes the content of files, it is safe to use from several threads.
+     */
+    private static class ContentHasher implements FileHasher {
+        @Override
+        public HashCode hash(File file) {
+            try {
+                return Hashing.murmur3_128().hashBytes(Files.readAllBytes(file.toPath()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public HashCode hash(File file, long length, long lastModified) {
+            return hash(file);
+        }
+    }
+}
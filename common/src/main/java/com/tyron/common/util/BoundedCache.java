@@ -0,0 +1,146 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent cache that maps a file + an arbitrary key to a value, similar to {@link Cache}.
+ *
+ * Entries are removed when {@link #invalidate(Path)} is called for their file, which is done
+ * from the snapshot and save listeners of the file manager and when a file is created or
+ * deleted. A lookup never touches the disk, the file is only read by the caller when there
+ * is no entry for it. The number of entries (or their total weight) is bounded, the least
+ * recently used entries are evicted when the cache is full.
+ */
+public class BoundedCache<K, V> {
+
+    private final com.google.common.cache.Cache<Cache.Key<K>, V> mCache;
+
+    /**
+     * Keys associated with each file so they can be removed when the file changes
+     */
+    private final Map<Path, Set<Cache.Key<K>>> mFileKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache that holds at most the given number of entries.
+     */
+    public BoundedCache(long maximumSize) {
+        mCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    /**
+     * Creates a cache where the total weight of its entries does not exceed the given
+     * maximum weight.
+     *
+     * @param maximumWeight The maximum total weight of the entries
+     * @param weigher Used to compute the weight of each entry, e.g. its approximate size in bytes
+     */
+    public BoundedCache(long maximumWeight, @NonNull Weigher<Path, V> weigher) {
+        mCache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((Weigher<Cache.Key<K>, V>) (key, value) -> weigher.weigh(key.file, value))
+                .recordStats()
+                .removalListener(this::onRemoval)
+                .build();
+    }
+
+    public boolean has(Path file, K k) {
+        return get(file, k) != null;
+    }
+
+    public boolean needs(Path file, K k) {
+        return !has(file, k);
+    }
+
+    public void load(Path file, K k, V v) {
+        Cache.Key<K> key = new Cache.Key<>(file, k);
+        mFileKeys.computeIfAbsent(file, f -> ConcurrentHashMap.newKeySet()).add(key);
+        mCache.put(key, v);
+    }
+
+    /**
+     * @return The cached value, or null if there is no value for this file and key
+     */
+    @Nullable
+    public V get(Path file, K k) {
+        return mCache.getIfPresent(new Cache.Key<>(file, k));
+    }
+
+    @SafeVarargs
+    public final void remove(Path file, K... keys) {
+        for (K k : keys) {
+            mCache.invalidate(new Cache.Key<>(file, k));
+        }
+    }
+
+    /**
+     * Removes all the entries associated with this file, call this when the file has changed.
+     */
+    public void invalidate(Path file) {
+        Set<Cache.Key<K>> keys = mFileKeys.remove(file);
+        if (keys != null) {
+            mCache.invalidateAll(keys);
+        }
+    }
+
+    public void clear() {
+        mCache.invalidateAll();
+        mFileKeys.clear();
+    }
+
+    public Set<Cache.Key<K>> getKeys() {
+        return Collections.unmodifiableSet(mCache.asMap().keySet());
+    }
+
+    /**
+     * @return The files that currently have keys associated with them
+     */
+    @VisibleForTesting
+    Set<Path> getTrackedFiles() {
+        return Collections.unmodifiableSet(mFileKeys.keySet());
+    }
+
+    public long size() {
+        return mCache.size();
+    }
+
+    /**
+     * @return The hit, miss and eviction counts of this cache
+     */
+    @NonNull
+    public CacheStats stats() {
+        return mCache.stats();
+    }
+
+    private void onRemoval(RemovalNotification<Cache.Key<K>, V> notification) {
+        // a replaced key is still in the cache
+        if (notification.getCause() == RemovalCause.REPLACED) {
+            return;
+        }
+        Cache.Key<K> key = notification.getKey();
+        if (key == null || mCache.asMap().containsKey(key)) {
+            return;
+        }
+        mFileKeys.computeIfPresent(key.file, (file, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+}
@@ -34,16 +34,28 @@ public class Cache<K, V> {
         }
     }
 
-    private class Value {
+    class Value {
         final V value;
-        final Instant created = Instant.now();
+        final Instant created;
+
+        /**
+         * The hash of the contents of the file when the value was loaded, only known for values
+         * restored from a {@link CacheJournal} or written to one.
+         */
+        String hash;
 
         Value(V value) {
+            this(value, Instant.now(), null);
+        }
+
+        Value(V value, Instant created, String hash) {
             this.value = value;
+            this.created = created;
+            this.hash = hash;
         }
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    final Map<Key<K>, Value> map = new HashMap<>();
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
@@ -68,6 +80,11 @@ public class Cache<K, V> {
         }
         // TODO remove all keys associated with file when file changes
         boolean before = value.created.isBefore(modified.toInstant());
+        if (before && value.hash != null && value.hash.equals(CacheJournal.hash(file))) {
+            // the file has been touched but its contents are the same
+            map.put(key, new Value(value.value, modified.toInstant(), value.hash));
+            return false;
+        }
         return before;
     }
 
@@ -0,0 +1,202 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the contents of a {@link Cache} to a compact binary file so the cache
+ * survives process restarts.
+ *
+ * Each entry is stored with the last modified time and the hash of the contents of its file.
+ * A restored entry is up to date while its file has the same last modified time, if the file
+ * has been touched since then, the entry is still up to date as long as its contents have
+ * the same hash. Entries whose file has been modified after they were loaded are not written.
+ */
+public class CacheJournal {
+
+    public interface Serializer<T> {
+
+        void write(DataOutput out, T value) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    public static final Serializer<String> STRING = new Serializer<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    public static final Serializer<Void> VOID = new Serializer<Void>() {
+        @Override
+        public void write(DataOutput out, Void value) {
+
+        }
+
+        @Override
+        public Void read(DataInput in) {
+            return null;
+        }
+    };
+
+    public static final Serializer<List<File>> FILE_LIST = new Serializer<List<File>>() {
+        @Override
+        public void write(DataOutput out, List<File> value) throws IOException {
+            out.writeInt(value.size());
+            for (File file : value) {
+                out.writeUTF(file.getPath());
+            }
+        }
+
+        @Override
+        public List<File> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            if (size == 1) {
+                return Collections.singletonList(new File(in.readUTF()));
+            }
+            List<File> files = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                files.add(new File(in.readUTF()));
+            }
+            return files;
+        }
+    };
+
+    private static final int MAGIC = 0x43414a4e;
+    private static final int VERSION = 1;
+
+    /**
+     * Writes the up to date entries of the cache to the journal, the journal is replaced
+     * atomically so a crash while writing does not leave a corrupted journal behind.
+     */
+    public static <K, V> void write(@NonNull Cache<K, V> cache,
+                                    @NonNull File journal,
+                                    @NonNull Serializer<K> keySerializer,
+                                    @NonNull Serializer<V> valueSerializer) throws IOException {
+        File parent = journal.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        File temp = new File(parent, journal.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            List<Map.Entry<Cache.Key<K>, Cache<K, V>.Value>> entries = new ArrayList<>();
+            List<FileTime> modifiedTimes = new ArrayList<>();
+            for (Map.Entry<Cache.Key<K>, Cache<K, V>.Value> entry : cache.map.entrySet()) {
+                Cache<K, V>.Value value = entry.getValue();
+                FileTime modified;
+                try {
+                    modified = Files.getLastModifiedTime(entry.getKey().file);
+                } catch (IOException e) {
+                    // the file no longer exists
+                    continue;
+                }
+                if (value.created.isBefore(modified.toInstant())) {
+                    // the value is out of date, it will be recomputed on the next build anyway
+                    continue;
+                }
+                if (value.hash == null) {
+                    value.hash = hash(entry.getKey().file);
+                    if (value.hash == null) {
+                        continue;
+                    }
+                }
+                entries.add(entry);
+                modifiedTimes.add(modified);
+            }
+
+            out.writeInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                Map.Entry<Cache.Key<K>, Cache<K, V>.Value> entry = entries.get(i);
+                Instant modified = modifiedTimes.get(i).toInstant();
+                out.writeUTF(entry.getKey().file.toString());
+                out.writeLong(modified.getEpochSecond());
+                out.writeInt(modified.getNano());
+                out.writeUTF(entry.getValue().hash);
+                keySerializer.write(out, entry.getKey().key);
+                valueSerializer.write(out, entry.getValue().value);
+            }
+        }
+        Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a cache from the journal.
+     *
+     * @return The cache, or null if the journal does not exist or was written by an
+     * incompatible version
+     */
+    @Nullable
+    public static <K, V> Cache<K, V> read(@NonNull File journal,
+                                          @NonNull Serializer<K> keySerializer,
+                                          @NonNull Serializer<V> valueSerializer)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(journal.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            Cache<K, V> cache = new Cache<>();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Path file = Paths.get(in.readUTF());
+                Instant modified = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                String hash = in.readUTF();
+                K key = keySerializer.read(in);
+                V value = valueSerializer.read(in);
+                cache.map.put(new Cache.Key<>(file, key), cache.new Value(value, modified, hash));
+            }
+            return cache;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The hash of the contents of the file, or null if it cannot be read
+     */
+    @Nullable
+    static String hash(Path file) {
+        try {
+            return com.google.common.io.Files.asByteSource(file.toFile())
+                    .hash(Hashing.murmur3_128())
+                    .toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
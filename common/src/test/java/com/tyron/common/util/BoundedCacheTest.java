@@ -0,0 +1,92 @@
+package com.tyron.common.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class BoundedCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Path mFile = Paths.get("Test.java");
+    private final Path mOther = Paths.get("Other.java");
+
+    @Test
+    public void testInvalidate() {
+        BoundedCache<String, Integer> cache = new BoundedCache<>(16);
+        cache.load(mFile, "a", 1);
+        cache.load(mFile, "b", 2);
+        cache.load(mOther, "a", 3);
+
+        cache.invalidate(mFile);
+
+        assert cache.needs(mFile, "a");
+        assert cache.needs(mFile, "b");
+        assert cache.get(mOther, "a") == 3;
+    }
+
+    @Test
+    public void testEviction() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(4);
+        for (int i = 0; i < 8; i++) {
+            cache.load(mFile, i, i);
+        }
+
+        assert cache.size() <= 4;
+        assert cache.stats().evictionCount() >= 4;
+        assert cache.has(mFile, 7);
+    }
+
+    @Test
+    public void testStats() {
+        BoundedCache<String, String> cache = new BoundedCache<>(16);
+        cache.get(mFile, "a");
+        cache.load(mFile, "a", "value");
+        cache.get(mFile, "a");
+
+        assert cache.stats().missCount() == 1;
+        assert cache.stats().hitCount() == 1;
+    }
+
+    @Test
+    public void testLookupDoesNotReadTheDisk() throws IOException {
+        File file = mFolder.newFile("Modified.java");
+        Files.write(file.toPath(), "class Modified {}".getBytes(StandardCharsets.UTF_8));
+        BoundedCache<String, Integer> cache = new BoundedCache<>(16);
+        cache.load(file.toPath(), "a", 1);
+
+        // the entry is kept until the change is reported
+        Files.write(file.toPath(), "class Modified { int i; }".getBytes(StandardCharsets.UTF_8));
+        assert file.setLastModified(file.lastModified() + 2000);
+        assert cache.get(file.toPath(), "a") == 1;
+
+        cache.invalidate(file.toPath());
+        assert cache.needs(file.toPath(), "a");
+        assert cache.size() == 0;
+        assert cache.getTrackedFiles().isEmpty();
+    }
+
+    @Test
+    public void testRemovedKeysAreForgotten() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(4);
+        for (int i = 0; i < 8; i++) {
+            cache.load(Paths.get("File" + i + ".java"), i, i);
+        }
+        assert cache.getTrackedFiles().size() == 4;
+
+        cache.remove(Paths.get("File7.java"), 7);
+        assert cache.getTrackedFiles().size() == 3;
+        assert !cache.getTrackedFiles().contains(Paths.get("File7.java"));
+
+        cache.clear();
+        assert cache.getTrackedFiles().isEmpty();
+    }
+}
@@ -0,0 +1,98 @@
+package com.tyron.common.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+public class CacheJournalTest {
+
+    private Path mDirectory;
+    private Path mSource;
+    private File mJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("cacheJournal");
+        mSource = mDirectory.resolve("Test.java");
+        Files.write(mSource, "class Test {}".getBytes(StandardCharsets.UTF_8));
+        mJournal = mDirectory.resolve("caches/javaCache.bin").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        org.apache.commons.io.FileUtils.deleteDirectory(mDirectory.toFile());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<File> outputs = Collections.singletonList(new File("Test.class"));
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(mSource, "class", outputs);
+
+        CacheJournal.write(cache, mJournal, CacheJournal.STRING, CacheJournal.FILE_LIST);
+        Cache<String, List<File>> restored =
+                CacheJournal.read(mJournal, CacheJournal.STRING, CacheJournal.FILE_LIST);
+
+        assert restored != null;
+        assert restored.has(mSource, "class");
+        assert restored.get(mSource, "class").equals(outputs);
+    }
+
+    @Test
+    public void testTouchedFileIsUpToDate() throws IOException {
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(mSource, "class", Collections.emptyList());
+        CacheJournal.write(cache, mJournal, CacheJournal.STRING, CacheJournal.FILE_LIST);
+
+        Files.setLastModifiedTime(mSource,
+                FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        Cache<String, List<File>> restored =
+                CacheJournal.read(mJournal, CacheJournal.STRING, CacheJournal.FILE_LIST);
+        assert restored != null;
+        assert restored.has(mSource, "class");
+    }
+
+    @Test
+    public void testModifiedFileNeedsUpdate() throws IOException {
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(mSource, "class", Collections.emptyList());
+        CacheJournal.write(cache, mJournal, CacheJournal.STRING, CacheJournal.FILE_LIST);
+
+        Files.write(mSource, "class Test { int a; }".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(mSource,
+                FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        Cache<String, List<File>> restored =
+                CacheJournal.read(mJournal, CacheJournal.STRING, CacheJournal.FILE_LIST);
+        assert restored != null;
+        assert restored.needs(mSource, "class");
+    }
+
+    @Test
+    public void testDeletedFileIsNotWritten() throws IOException {
+        Cache<Void, Void> cache = new Cache<>();
+        cache.load(mSource, null, null);
+        Files.delete(mSource);
+
+        CacheJournal.write(cache, mJournal, CacheJournal.VOID, CacheJournal.VOID);
+        Cache<Void, Void> restored =
+                CacheJournal.read(mJournal, CacheJournal.VOID, CacheJournal.VOID);
+        assert restored != null;
+        assert restored.getKeys().isEmpty();
+    }
+
+    @Test
+    public void testMissingJournal() throws IOException {
+        assert CacheJournal.read(mJournal, CacheJournal.STRING, CacheJournal.STRING) == null;
+    }
+}
@@ -1,16 +1,18 @@
 package com.tyron.completion;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
-
 /**
  * Logic of matching a completion name with a given completion prefix
+ *
+ * <p>The prefix is preprocessed once when the matcher is created, matching a candidate with
+ * {@link #match(CharSequence)} does not allocate. A matcher keeps a small scratch buffer for
+ * the typo tolerant matching so it must not be shared between threads.</p>
  */
 public class CompletionPrefixMatcher {
 
     /**
-     * The minimum score needed for a candidate to be considered as partial match.
+     * The minimum length of the prefix before typos are tolerated
      */
-    private static final int MINIMUM_SCORE = 70;
+    private static final int MIN_TYPO_TOLERANT_LENGTH = 4;
 
     /**
      * How well does the candidate name match the completion prefix.
@@ -22,6 +24,7 @@ public class CompletionPrefixMatcher {
     public enum MatchLevel {
         NOT_MATCH,
         PARTIAL_MATCH,
+        CAMEL_CASE_MATCH,
         CASE_INSENSITIVE_PREFIX,
         CASE_SENSITIVE_PREFIX,
         CASE_INSENSITIVE_EQUAL,
@@ -29,22 +32,190 @@ public class CompletionPrefixMatcher {
     }
 
     public static MatchLevel computeMatchLevel(String candidateName, String completionPrefix) {
-        if (candidateName.startsWith(completionPrefix)) {
-            return candidateName.length() == completionPrefix.length()
-                    ? MatchLevel.CASE_SENSITIVE_EQUAL
-                    : MatchLevel.CASE_SENSITIVE_PREFIX;
+        return new CompletionPrefixMatcher(completionPrefix).match(candidateName);
+    }
+
+    private final String mPrefix;
+    private final char[] mLowerPrefix;
+
+    /**
+     * The start index of each hump of the prefix, a hump starts at the first character and at
+     * every upper case character.
+     */
+    private final int[] mHumpStarts;
+
+    /**
+     * The maximum number of edits for a candidate to be considered as a partial match
+     */
+    private final int mMaxTypos;
+
+    // columns of the edit distance matrix, reused across candidates
+    private final int[] mPreviousPrevious;
+    private final int[] mPrevious;
+    private final int[] mCurrent;
+
+    public CompletionPrefixMatcher(String completionPrefix) {
+        mPrefix = completionPrefix;
+
+        int length = completionPrefix.length();
+        mLowerPrefix = new char[length];
+        int humps = 0;
+        for (int i = 0; i < length; i++) {
+            char c = completionPrefix.charAt(i);
+            mLowerPrefix[i] = Character.toLowerCase(c);
+            if (i == 0 || Character.isUpperCase(c)) {
+                humps++;
+            }
+        }
+        mHumpStarts = new int[humps];
+        for (int i = 0, hump = 0; i < length; i++) {
+            if (i == 0 || Character.isUpperCase(completionPrefix.charAt(i))) {
+                mHumpStarts[hump++] = i;
+            }
+        }
+
+        if (length < MIN_TYPO_TOLERANT_LENGTH) {
+            mMaxTypos = 0;
+        } else if (length < 8) {
+            mMaxTypos = 1;
+        } else {
+            mMaxTypos = 2;
+        }
+        mPreviousPrevious = new int[length + 1];
+        mPrevious = new int[length + 1];
+        mCurrent = new int[length + 1];
+    }
+
+    public String getPrefix() {
+        return mPrefix;
+    }
+
+    public MatchLevel match(CharSequence candidate) {
+        int length = mLowerPrefix.length;
+        if (candidate.length() >= length) {
+            boolean caseSensitive = true;
+            boolean caseInsensitive = true;
+            for (int i = 0; i < length; i++) {
+                char c = candidate.charAt(i);
+                if (c != mPrefix.charAt(i)) {
+                    caseSensitive = false;
+                    if (Character.toLowerCase(c) != mLowerPrefix[i]) {
+                        caseInsensitive = false;
+                        break;
+                    }
+                }
+            }
+            boolean equal = candidate.length() == length;
+            if (caseSensitive) {
+                return equal ? MatchLevel.CASE_SENSITIVE_EQUAL : MatchLevel.CASE_SENSITIVE_PREFIX;
+            }
+            if (caseInsensitive) {
+                return equal
+                        ? MatchLevel.CASE_INSENSITIVE_EQUAL
+                        : MatchLevel.CASE_INSENSITIVE_PREFIX;
+            }
         }
 
-        if (candidateName.toLowerCase().startsWith(completionPrefix.toLowerCase())) {
-            return candidateName.length() == completionPrefix.length()
-                    ? MatchLevel.CASE_INSENSITIVE_EQUAL
-                    : MatchLevel.CASE_INSENSITIVE_PREFIX;
+        if (mHumpStarts.length > 1 && matchesCamelHumps(candidate)) {
+            return MatchLevel.CAMEL_CASE_MATCH;
         }
 
-        int score = FuzzySearch.ratio(candidateName, completionPrefix);
-        if (score > MINIMUM_SCORE) {
+        // the first character is assumed to be typed correctly
+        if (mMaxTypos > 0 &&
+            candidate.length() > 0 &&
+            Character.toLowerCase(candidate.charAt(0)) == mLowerPrefix[0] &&
+            prefixEditDistance(candidate) <= mMaxTypos) {
             return MatchLevel.PARTIAL_MATCH;
         }
         return MatchLevel.NOT_MATCH;
     }
+
+    /**
+     * Checks whether each hump of the prefix is a prefix of the consecutive humps of the
+     * candidate, e.g. SBu matches StringBuilder and sBu matches setBuffer.
+     */
+    private boolean matchesCamelHumps(CharSequence candidate) {
+        int candidatePos = 0;
+        int candidateLength = candidate.length();
+        for (int hump = 0; hump < mHumpStarts.length; hump++) {
+            if (candidatePos >= candidateLength) {
+                return false;
+            }
+            int start = mHumpStarts[hump];
+            int end = hump + 1 < mHumpStarts.length ? mHumpStarts[hump + 1] : mPrefix.length();
+            if (candidatePos + end - start > candidateLength) {
+                return false;
+            }
+            // the first character of a hump may differ in case, e.g. sBu and StringBuilder
+            if (Character.toLowerCase(candidate.charAt(candidatePos)) != mLowerPrefix[start]) {
+                return false;
+            }
+            for (int i = start + 1; i < end; i++) {
+                if (candidate.charAt(candidatePos + i - start) != mPrefix.charAt(i)) {
+                    return false;
+                }
+            }
+            candidatePos = nextHump(candidate, candidatePos);
+        }
+        return true;
+    }
+
+    private static int nextHump(CharSequence candidate, int from) {
+        for (int i = from + 1; i < candidate.length(); i++) {
+            if (Character.isUpperCase(candidate.charAt(i))) {
+                return i;
+            }
+        }
+        return candidate.length();
+    }
+
+    /**
+     * Computes the smallest number of case insensitive edits (insertions, deletions,
+     * substitutions and transpositions of adjacent characters) needed to turn the prefix into
+     * a prefix of the candidate. Stops early when the distance exceeds {@link #mMaxTypos}.
+     *
+     * @return The edit distance, or a value greater than {@link #mMaxTypos} if it exceeds it
+     */
+    private int prefixEditDistance(CharSequence candidate) {
+        int length = mLowerPrefix.length;
+        int[] previousPrevious = mPreviousPrevious;
+        int[] previous = mPrevious;
+        int[] current = mCurrent;
+
+        // distance between the prefix and an empty candidate prefix
+        for (int i = 0; i <= length; i++) {
+            previous[i] = i;
+        }
+        int best = previous[length];
+
+        int maxColumn = Math.min(candidate.length(), length + mMaxTypos);
+        for (int j = 1; j <= maxColumn; j++) {
+            char c = Character.toLowerCase(candidate.charAt(j - 1));
+            current[0] = j;
+            int columnMin = current[0];
+            for (int i = 1; i <= length; i++) {
+                int cost = mLowerPrefix[i - 1] == c ? 0 : 1;
+                int distance = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1),
+                        previous[i - 1] + cost);
+                if (i > 1 && j > 1 &&
+                    mLowerPrefix[i - 1] == Character.toLowerCase(candidate.charAt(j - 2)) &&
+                    mLowerPrefix[i - 2] == c) {
+                    distance = Math.min(distance, previousPrevious[i - 2] + 1);
+                }
+                current[i] = distance;
+                columnMin = Math.min(columnMin, distance);
+            }
+            best = Math.min(best, current[length]);
+            if (columnMin > mMaxTypos) {
+                // the distance can only grow from here
+                break;
+            }
+
+            int[] recycled = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return best;
+    }
 }
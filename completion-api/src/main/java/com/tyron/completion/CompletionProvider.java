@@ -21,6 +21,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * Subclass this to provide completions on the given file.
@@ -38,6 +39,21 @@ public abstract class CompletionProvider {
 
     public abstract CompletionList complete(CompletionParameters parameters);
 
+    /**
+     * Same as {@link #complete(CompletionParameters)}, but providers that compute their items
+     * in multiple independent parts may pass each part to the consumer as soon as it is ready
+     * so the editor can show them before the whole list is computed. The returned list still
+     * contains all of the items.
+     *
+     * The default implementation does not report partial results.
+     *
+     * @param partialResultConsumer Called on the calling thread with the partial results
+     */
+    public CompletionList complete(CompletionParameters parameters,
+                                   Consumer<CompletionList> partialResultConsumer) {
+        return complete(parameters);
+    }
+
     @SuppressLint("NewApi")
     public static ImmutableList<CompletionProvider> forParameters(@NotNull CompletionParameters parameters) {
         File file = parameters.getFile();
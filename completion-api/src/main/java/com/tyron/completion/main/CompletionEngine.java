@@ -13,6 +13,7 @@ import com.tyron.editor.Editor;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -84,4 +85,46 @@ public class CompletionEngine {
         }
         return list;
     }
+
+    /**
+     * Runs the providers that accept the file on the calling thread, the providers may use
+     * state that is confined to it such as a compiler. The partial results are passed to the
+     * consumer as soon as they are available, either from a provider that has finished or from
+     * the independent parts of a provider that are computed concurrently.
+     *
+     * @return All the items that have been computed
+     */
+    public CompletionList complete(CompletionParameters parameters,
+                                   Consumer<CompletionList> partialResultConsumer) {
+        Project project = parameters.getProject();
+        if (project.isCompiling() || project.isIndexing()) {
+            return CompletionList.EMPTY;
+        }
+
+        CompletionList.Builder builder = CompletionList.builder(parameters.getPrefix());
+        for (CompletionProvider provider : CompletionProvider.forParameters(parameters)) {
+            try {
+                CompletionList complete = provider.complete(parameters, partialResultConsumer);
+                if (complete == null) {
+                    continue;
+                }
+                if (complete.isIncomplete()) {
+                    builder.incomplete();
+                }
+                builder.addItems(complete.getItems());
+            } catch (Throwable e) {
+                if (e instanceof ProcessCanceledException) {
+                    throw e;
+                }
+
+                String message = "Failed to complete: \n" +
+                                 "index: " + parameters.getIndex() + "\n" +
+                                 "prefix: " + parameters.getPrefix() + "\n" +
+                                 "File: " + parameters.getFile().getName() + "\n" +
+                                 "Stack trace: " + Throwables.getStackTraceAsString(e);
+                logger.severe(message);
+            }
+        }
+        return builder.build();
+    }
 }
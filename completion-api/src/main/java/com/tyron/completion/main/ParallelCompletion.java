@@ -0,0 +1,347 @@
+package com.tyron.completion.main;
+
+import com.google.common.base.Throwables;
+import com.tyron.common.logging.IdeLog;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
+import com.tyron.completion.progress.ProgressManager;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Runs completion tasks that do not depend on each other concurrently on a bounded pool.
+ *
+ * Each task fills its own {@link CompletionList.Builder}, the partial lists are passed to the
+ * consumer on the calling thread as soon as each task finishes so a slow task does not delay
+ * the results of the others. A task that runs longer than its deadline is canceled through
+ * its {@link ProgressIndicator} and its results are dropped.
+ *
+ * Tasks added through {@link #addTask(String, long, Task)} run on other threads and must not
+ * use state that is confined to the calling thread, such as a javac context. Work that needs
+ * it is given to {@link #setCallerTask(String, Task)} instead, it runs on the calling thread
+ * while the other tasks run on the pool. {@link #run(Consumer)} only returns once every task
+ * has stopped, including the ones that have been canceled.
+ */
+public class ParallelCompletion {
+
+    public interface Task {
+        void complete(@NotNull CompletionList.Builder builder);
+    }
+
+    private static final int POOL_SIZE =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ExecutorService sExecutor = Executors.newFixedThreadPool(POOL_SIZE, r -> {
+        Thread thread = new Thread(r, "ParallelCompletion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Set on the threads of the pool, a task that starts its own parallel completion runs it
+     * on its thread instead of waiting for a thread of the pool.
+     */
+    private static final ThreadLocal<Boolean> sInPool = new ThreadLocal<>();
+
+    /**
+     * How often the calling thread checks for cancellation and deadlines while waiting
+     */
+    private static final long POLL_INTERVAL_MS = 10;
+
+    private final Logger mLogger = IdeLog.getCurrentLogger(this);
+
+    private final String mPrefix;
+    private final List<String> mNames = new ArrayList<>();
+    private final List<Task> mTasks = new ArrayList<>();
+    private final List<Long> mDeadlines = new ArrayList<>();
+    private final List<Boolean> mDropIfCallerIncomplete = new ArrayList<>();
+
+    private String mCallerName;
+    private Task mCallerTask;
+
+    public ParallelCompletion(String prefix) {
+        mPrefix = prefix;
+    }
+
+    /**
+     * @param name     The name of the task, used for logging
+     * @param deadline The maximum time in milliseconds the task is allowed to run
+     * @param task     The task to run
+     */
+    public ParallelCompletion addTask(String name, long deadline, Task task) {
+        return addTask(name, deadline, task, false);
+    }
+
+    /**
+     * @param dropIfCallerIncomplete Whether the results of this task are dropped when the list
+     *                               of the caller task is incomplete. The user will type more
+     *                               characters in that case, so there is no point in showing
+     *                               the items of an expensive task yet.
+     */
+    public ParallelCompletion addTask(String name,
+                                      long deadline,
+                                      Task task,
+                                      boolean dropIfCallerIncomplete) {
+        mNames.add(name);
+        mDeadlines.add(deadline);
+        mTasks.add(task);
+        mDropIfCallerIncomplete.add(dropIfCallerIncomplete);
+        return this;
+    }
+
+    /**
+     * Sets the task that runs on the calling thread, it has no deadline and its items are
+     * passed to the consumer before the items of the other tasks.
+     *
+     * @param name The name of the task, used for logging
+     * @param task The task to run
+     */
+    public ParallelCompletion setCallerTask(String name, Task task) {
+        mCallerName = name;
+        mCallerTask = task;
+        return this;
+    }
+
+    /**
+     * Runs all the tasks and waits for them to finish or to reach their deadline.
+     *
+     * If the calling thread is canceled while waiting, all the tasks are canceled and
+     * a {@link ProcessCanceledException} is thrown once they have stopped.
+     *
+     * @param partialResultConsumer Called on the calling thread with the list of each task as
+     *                              soon as it finishes
+     * @return A builder containing the items of all the tasks that have finished in time
+     */
+    public CompletionList.Builder run(@Nullable Consumer<CompletionList> partialResultConsumer) {
+        if (Boolean.TRUE.equals(sInPool.get())) {
+            return runOnCurrentThread(partialResultConsumer);
+        }
+
+        CompletionList.Builder merged = CompletionList.builder(mPrefix);
+        int count = mTasks.size();
+
+        CompletionService<Integer> completionService = new ExecutorCompletionService<>(sExecutor);
+        ProgressIndicator[] indicators = new ProgressIndicator[count];
+        CompletionList.Builder[] builders = new CompletionList.Builder[count];
+        List<Future<Integer>> futures = new ArrayList<>(count);
+        boolean[] done = new boolean[count];
+        CountDownLatch stopped = new CountDownLatch(count);
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            indicators[i] = new ProgressIndicator();
+            builders[i] = CompletionList.builder(mPrefix);
+            futures.add(completionService.submit(() -> {
+                try {
+                    // canceled before it had a chance to start
+                    if (indicators[index].isCanceled()) {
+                        throw new ProcessCanceledException();
+                    }
+                    sInPool.set(true);
+                    ProgressManager.getInstance().runWithIndicator(
+                            () -> mTasks.get(index).complete(builders[index]),
+                            indicators[index]);
+                    return index;
+                } finally {
+                    sInPool.remove();
+                    stopped.countDown();
+                }
+            }));
+        }
+
+        try {
+            boolean callerIncomplete = false;
+            if (mCallerTask != null) {
+                CompletionList list = runCallerTask();
+                callerIncomplete = list.isIncomplete();
+                publish(list, merged, partialResultConsumer);
+            }
+            if (callerIncomplete) {
+                for (int i = 0; i < count; i++) {
+                    if (mDropIfCallerIncomplete.get(i)) {
+                        indicators[i].cancel();
+                        done[i] = true;
+                    }
+                }
+            }
+
+            int remaining = count;
+            for (boolean d : done) {
+                if (d) {
+                    remaining--;
+                }
+            }
+            while (remaining > 0) {
+                ProgressManager.checkCanceled();
+
+                Future<Integer> future = completionService.poll(POLL_INTERVAL_MS,
+                        TimeUnit.MILLISECONDS);
+                if (future != null) {
+                    Integer index = getIndex(future, futures);
+                    if (index != null && !done[index]) {
+                        done[index] = true;
+                        remaining--;
+
+                        CompletionList list = getResult(future, index, builders[index]);
+                        if (list == null) {
+                            merged.incomplete();
+                            continue;
+                        }
+                        publish(list, merged, partialResultConsumer);
+                    }
+                }
+
+                long elapsed = System.currentTimeMillis() - start;
+                for (int i = 0; i < count; i++) {
+                    if (!done[i] && elapsed > mDeadlines.get(i)) {
+                        mLogger.warning("Completion task " + mNames.get(i) +
+                                        " did not finish in " + mDeadlines.get(i) + " ms");
+                        indicators[i].cancel();
+                        done[i] = true;
+                        remaining--;
+                        merged.incomplete();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        } finally {
+            // the tasks that are still running are canceled, their results are not used
+            // but they may still be using the state they were given
+            cancelAll(indicators);
+            awaitUninterruptibly(stopped);
+        }
+        return merged;
+    }
+
+    /**
+     * Runs all the tasks one after the other, used when the pool may not have any free thread.
+     */
+    private CompletionList.Builder runOnCurrentThread(
+            @Nullable Consumer<CompletionList> partialResultConsumer) {
+        CompletionList.Builder merged = CompletionList.builder(mPrefix);
+        boolean callerIncomplete = false;
+        if (mCallerTask != null) {
+            CompletionList list = runCallerTask();
+            callerIncomplete = list.isIncomplete();
+            publish(list, merged, partialResultConsumer);
+        }
+        for (int i = 0; i < mTasks.size(); i++) {
+            ProgressManager.checkCanceled();
+            if (callerIncomplete && mDropIfCallerIncomplete.get(i)) {
+                continue;
+            }
+            CompletionList.Builder builder = CompletionList.builder(mPrefix);
+            try {
+                mTasks.get(i).complete(builder);
+            } catch (ProcessCanceledException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                mLogger.severe("Completion task " + mNames.get(i) + " failed: " +
+                               Throwables.getStackTraceAsString(e));
+                merged.incomplete();
+                continue;
+            }
+            publish(builder.build(), merged, partialResultConsumer);
+        }
+        return merged;
+    }
+
+    private CompletionList runCallerTask() {
+        CompletionList.Builder builder = CompletionList.builder(mPrefix);
+        try {
+            mCallerTask.complete(builder);
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            mLogger.severe("Completion task " + mCallerName + " failed: " +
+                           Throwables.getStackTraceAsString(e));
+            builder.incomplete();
+        }
+        return builder.build();
+    }
+
+    private static void publish(CompletionList list,
+                                CompletionList.Builder merged,
+                                @Nullable Consumer<CompletionList> partialResultConsumer) {
+        if (list.isIncomplete()) {
+            merged.incomplete();
+        }
+        merged.addItems(list.getItems());
+        if (partialResultConsumer != null && !list.getItems().isEmpty()) {
+            partialResultConsumer.accept(list);
+        }
+    }
+
+    @Nullable
+    private CompletionList getResult(Future<Integer> future,
+                                     int index,
+                                     CompletionList.Builder builder) {
+        try {
+            future.get();
+            return builder.build();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (!(cause instanceof ProcessCanceledException)) {
+                mLogger.severe("Completion task " + mNames.get(index) + " failed: " +
+                               Throwables.getStackTraceAsString(cause));
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * @return The index of the task of a completed future, the index cannot be retrieved from
+     * the future itself if the task has failed.
+     */
+    @Nullable
+    private static Integer getIndex(Future<Integer> future, List<Future<Integer>> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) == future) {
+                return i;
+            }
+        }
+        return null;
+    }
+
+    private static void cancelAll(ProgressIndicator[] indicators) {
+        for (ProgressIndicator indicator : indicators) {
+            indicator.cancel();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
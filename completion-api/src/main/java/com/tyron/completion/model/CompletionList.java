@@ -12,7 +12,6 @@ import com.tyron.completion.CompletionProvider;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -68,10 +67,12 @@ public class CompletionList {
         private boolean incomplete;
 
         private final String completionPrefix;
+        private final CompletionPrefixMatcher matcher;
 
         public Builder(String completionPrefix) {
             items = new ArrayList<>();
             this.completionPrefix = completionPrefix;
+            this.matcher = new CompletionPrefixMatcher(completionPrefix);
         }
 
         public String getPrefix() {
@@ -94,20 +95,16 @@ public class CompletionList {
         }
 
         public Builder addItem(CompletionItem item) {
-            List<MatchLevel> matchLevels = new ArrayList<>();
+            MatchLevel matchLevel = MatchLevel.NOT_MATCH;
             for (String filterText : item.getFilterTexts()) {
-                MatchLevel matchLevel =
-                        CompletionPrefixMatcher.computeMatchLevel(filterText, completionPrefix);
-                if (matchLevel == MatchLevel.NOT_MATCH) {
-                    continue;
+                MatchLevel level = matcher.match(filterText);
+                if (level.compareTo(matchLevel) > 0) {
+                    matchLevel = level;
                 }
-                matchLevels.add(matchLevel);
             }
-            if (matchLevels.isEmpty()) {
+            if (matchLevel == MatchLevel.NOT_MATCH) {
                 return this;
             }
-            Collections.sort(matchLevels);
-            MatchLevel matchLevel = matchLevels.get(matchLevels.size() - 1);
             item.setMatchLevel(matchLevel);
             items.add(item);
             return this;
@@ -42,7 +42,7 @@ public class ProgressManager {
     private final Map<Thread, ProgressIndicator> mThreadToIndicator;
 
     public ProgressManager() {
-        mThreadToIndicator = new WeakHashMap<>();
+        mThreadToIndicator = Collections.synchronizedMap(new WeakHashMap<>());
         if (TestUtil.isDalvik()) {
             mMainHandler = new DefaultHandlerInterface(new Handler(Looper.getMainLooper()));
         } else {
@@ -76,6 +76,29 @@ public class ProgressManager {
         });
     }
 
+    /**
+     * Runs the runnable on the current thread, calls to {@link #checkCanceled()} made by the
+     * runnable throw a {@link ProcessCanceledException} once the indicator is canceled.
+     *
+     * @param runnable  The code to run
+     * @param indicator The class used to control the execution of the runnable
+     */
+    public void runWithIndicator(Runnable runnable, ProgressIndicator indicator) {
+        Thread currentThread = Thread.currentThread();
+        ProgressIndicator previous = mThreadToIndicator.put(currentThread, indicator);
+        try {
+            indicator.setRunning(true);
+            runnable.run();
+        } finally {
+            indicator.setRunning(false);
+            if (previous != null) {
+                mThreadToIndicator.put(currentThread, previous);
+            } else {
+                mThreadToIndicator.remove(currentThread);
+            }
+        }
+    }
+
     public void runAsync(Context uiContext,
                          Runnable runnable,
                          ProgressIndicator indicator) {
@@ -0,0 +1,182 @@
+package com.tyron.completion;
+
+import static org.junit.Assert.assertEquals;
+
+import com.tyron.completion.CompletionPrefixMatcher.MatchLevel;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares {@link CompletionPrefixMatcher} with a straightforward implementation of the same
+ * rules on random candidates and prefixes, including prefixes with typos.
+ */
+public class CompletionPrefixMatcherRandomizedTest {
+
+    private static final int CANDIDATE_COUNT = 2_000;
+    private static final int PREFIX_COUNT = 300;
+    private static final String[] WORDS = {"get", "set", "on", "string", "builder", "create",
+            "view", "buffer", "context", "item", "list", "to", "value", "is", "layout", "reader"};
+
+    @Test
+    public void testMatchesReference() {
+        Random random = new Random(42);
+        List<String> candidates = generateCandidates(random);
+        for (int i = 0; i < PREFIX_COUNT; i++) {
+            String prefix = generatePrefix(random, candidates.get(random.nextInt(candidates.size())));
+            // a matcher is reused for all candidates, like while completing
+            CompletionPrefixMatcher matcher = new CompletionPrefixMatcher(prefix);
+            for (String candidate : candidates) {
+                assertEquals("'" + prefix + "' and '" + candidate + "'",
+                        referenceMatchLevel(candidate, prefix), matcher.match(candidate));
+            }
+        }
+    }
+
+    private static MatchLevel referenceMatchLevel(String candidate, String prefix) {
+        if (candidate.startsWith(prefix)) {
+            return candidate.length() == prefix.length()
+                    ? MatchLevel.CASE_SENSITIVE_EQUAL
+                    : MatchLevel.CASE_SENSITIVE_PREFIX;
+        }
+        if (candidate.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return candidate.length() == prefix.length()
+                    ? MatchLevel.CASE_INSENSITIVE_EQUAL
+                    : MatchLevel.CASE_INSENSITIVE_PREFIX;
+        }
+        if (matchesHumps(candidate, prefix)) {
+            return MatchLevel.CAMEL_CASE_MATCH;
+        }
+        int maxTypos = prefix.length() < 4 ? 0 : prefix.length() < 8 ? 1 : 2;
+        if (maxTypos > 0 &&
+            !candidate.isEmpty() &&
+            Character.toLowerCase(candidate.charAt(0)) == Character.toLowerCase(prefix.charAt(0))) {
+            String lowerCandidate = candidate.toLowerCase(Locale.ROOT);
+            String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+            for (int end = 0; end <= candidate.length(); end++) {
+                if (editDistance(lowerPrefix, lowerCandidate.substring(0, end)) <= maxTypos) {
+                    return MatchLevel.PARTIAL_MATCH;
+                }
+            }
+        }
+        return MatchLevel.NOT_MATCH;
+    }
+
+    /**
+     * Every hump of the prefix must start the hump of the candidate at the same index, only the
+     * case of the first character of a hump is ignored.
+     */
+    private static boolean matchesHumps(String candidate, String prefix) {
+        List<Integer> prefixHumps = humpStarts(prefix);
+        List<Integer> candidateHumps = humpStarts(candidate);
+        if (prefixHumps.size() < 2 || candidateHumps.size() < prefixHumps.size()) {
+            return false;
+        }
+        for (int hump = 0; hump < prefixHumps.size(); hump++) {
+            int start = prefixHumps.get(hump);
+            int end = hump + 1 < prefixHumps.size() ? prefixHumps.get(hump + 1) : prefix.length();
+            String rest = candidate.substring(candidateHumps.get(hump));
+            if (rest.length() < end - start ||
+                !rest.substring(0, 1).equalsIgnoreCase(prefix.substring(start, start + 1)) ||
+                !rest.startsWith(prefix.substring(start + 1, end), 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Integer> humpStarts(String name) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < name.length(); i++) {
+            if (i == 0 || Character.isUpperCase(name.charAt(i))) {
+                starts.add(i);
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * The optimal string alignment distance, which counts insertions, deletions, substitutions
+     * and transpositions of adjacent characters.
+     */
+    private static int editDistance(String a, String b) {
+        int[][] distance = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    distance[i][j] = i + j;
+                    continue;
+                }
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                distance[i][j] = Math.min(Math.min(distance[i - 1][j] + 1, distance[i][j - 1] + 1),
+                        distance[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 &&
+                    a.charAt(i - 1) == b.charAt(j - 2) &&
+                    a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance[i][j] = Math.min(distance[i][j], distance[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return distance[a.length()][b.length()];
+    }
+
+    /**
+     * Takes the start of a candidate or the first characters of its humps, then changes the
+     * case of a character, swaps two characters or removes one.
+     */
+    private static String generatePrefix(Random random, String candidate) {
+        StringBuilder prefix = new StringBuilder();
+        if (random.nextBoolean()) {
+            prefix.append(candidate, 0, 1 + random.nextInt(candidate.length()));
+        } else {
+            for (int start : humpStarts(candidate)) {
+                int end = Math.min(candidate.length(), start + 1 + random.nextInt(3));
+                prefix.append(candidate, start, end);
+            }
+        }
+        int edits = random.nextInt(3);
+        for (int i = 0; i < edits && prefix.length() > 1; i++) {
+            int index = random.nextInt(prefix.length() - 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    char c = prefix.charAt(index);
+                    prefix.setCharAt(index, Character.isUpperCase(c)
+                            ? Character.toLowerCase(c)
+                            : Character.toUpperCase(c));
+                    break;
+                case 1:
+                    char next = prefix.charAt(index + 1);
+                    prefix.setCharAt(index + 1, prefix.charAt(index));
+                    prefix.setCharAt(index, next);
+                    break;
+                default:
+                    prefix.deleteCharAt(index + 1);
+                    break;
+            }
+        }
+        return prefix.toString();
+    }
+
+    private static List<String> generateCandidates(Random random) {
+        List<String> candidates = new ArrayList<>(CANDIDATE_COUNT);
+        for (int i = 0; i < CANDIDATE_COUNT; i++) {
+            StringBuilder builder = new StringBuilder();
+            int count = 1 + random.nextInt(3);
+            for (int j = 0; j < count; j++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                if (j == 0 && random.nextBoolean()) {
+                    builder.append(word);
+                } else {
+                    builder.append(Character.toUpperCase(word.charAt(0)))
+                            .append(word, 1, word.length());
+                }
+            }
+            candidates.add(builder.toString());
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,58 @@
+package com.tyron.completion;
+
+import static org.junit.Assert.assertEquals;
+
+import com.tyron.completion.CompletionPrefixMatcher.MatchLevel;
+
+import org.junit.Test;
+
+public class CompletionPrefixMatcherTest {
+
+    @Test
+    public void testPrefix() {
+        CompletionPrefixMatcher matcher = new CompletionPrefixMatcher("Str");
+        assertEquals(MatchLevel.CASE_SENSITIVE_PREFIX, matcher.match("String"));
+        assertEquals(MatchLevel.CASE_SENSITIVE_EQUAL, matcher.match("Str"));
+        assertEquals(MatchLevel.CASE_INSENSITIVE_PREFIX, matcher.match("strings"));
+        assertEquals(MatchLevel.CASE_INSENSITIVE_EQUAL, matcher.match("str"));
+        assertEquals(MatchLevel.NOT_MATCH, matcher.match("Object"));
+
+        assertEquals(MatchLevel.CASE_SENSITIVE_PREFIX,
+                new CompletionPrefixMatcher("").match("anything"));
+    }
+
+    @Test
+    public void testCamelCase() {
+        CompletionPrefixMatcher matcher = new CompletionPrefixMatcher("SBu");
+        assertEquals(MatchLevel.CAMEL_CASE_MATCH, matcher.match("StringBuilder"));
+        assertEquals(MatchLevel.CAMEL_CASE_MATCH, matcher.match("StringBuffer"));
+        assertEquals(MatchLevel.NOT_MATCH, matcher.match("StringReader"));
+
+        matcher = new CompletionPrefixMatcher("sBu");
+        assertEquals(MatchLevel.CAMEL_CASE_MATCH, matcher.match("setBuffer"));
+        assertEquals(MatchLevel.CAMEL_CASE_MATCH, matcher.match("StringBuilder"));
+    }
+
+    @Test
+    public void testTypos() {
+        CompletionPrefixMatcher matcher = new CompletionPrefixMatcher("Strnig");
+        // transposition
+        assertEquals(MatchLevel.PARTIAL_MATCH, matcher.match("StringBuilder"));
+
+        matcher = new CompletionPrefixMatcher("Strng");
+        // deletion
+        assertEquals(MatchLevel.PARTIAL_MATCH, matcher.match("String"));
+        assertEquals(MatchLevel.NOT_MATCH, matcher.match("Object"));
+        // the first character must match
+        assertEquals(MatchLevel.NOT_MATCH, matcher.match("Xtring"));
+
+        // typos are not tolerated on short prefixes
+        assertEquals(MatchLevel.NOT_MATCH, new CompletionPrefixMatcher("Stz").match("String"));
+    }
+
+    @Test
+    public void testComputeMatchLevel() {
+        assertEquals(MatchLevel.CASE_SENSITIVE_PREFIX,
+                CompletionPrefixMatcher.computeMatchLevel("toString", "toS"));
+    }
+}
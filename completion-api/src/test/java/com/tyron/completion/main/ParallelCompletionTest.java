@@ -0,0 +1,144 @@
+package com.tyron.completion.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.completion.model.CompletionItem;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProgressManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ParallelCompletionTest {
+
+    @Test
+    public void testPartialResults() {
+        List<String> received = new ArrayList<>();
+        CompletionList.Builder builder = new ParallelCompletion("")
+                .addTask("slow", 5000, list -> {
+                    sleep(300);
+                    list.addItem(new CompletionItem("slow"));
+                })
+                .addTask("fast", 5000, list -> list.addItem(new CompletionItem("fast")))
+                .run(list -> {
+                    for (CompletionItem item : list.getItems()) {
+                        received.add(item.label);
+                    }
+                });
+
+        // the fast task must not wait for the slow one
+        assertEquals(2, received.size());
+        assertEquals("fast", received.get(0));
+        assertEquals("slow", received.get(1));
+        assertEquals(2, builder.getItemCount());
+    }
+
+    @Test
+    public void testDeadline() {
+        long start = System.currentTimeMillis();
+        CompletionList.Builder builder = new ParallelCompletion("")
+                .addTask("stuck", 100, list -> {
+                    while (true) {
+                        ProgressManager.checkCanceled();
+                        sleep(10);
+                    }
+                })
+                .addTask("fast", 5000, list -> list.addItem(new CompletionItem("fast")))
+                .run(null);
+
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, builder.getItemCount());
+        assertTrue(builder.isIncomplete());
+    }
+
+    @Test
+    public void testWaitsForCanceledTasks() {
+        AtomicBoolean running = new AtomicBoolean();
+        new ParallelCompletion("")
+                .addTask("stuck", 100, list -> {
+                    running.set(true);
+                    try {
+                        while (true) {
+                            ProgressManager.checkCanceled();
+                            sleep(10);
+                        }
+                    } finally {
+                        // a canceled task may take a while to notice
+                        sleep(200);
+                        running.set(false);
+                    }
+                })
+                .run(null);
+
+        assertFalse(running.get());
+    }
+
+    @Test
+    public void testCallerTaskRunsOnCallingThread() {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        List<String> received = new ArrayList<>();
+        CompletionList.Builder builder = new ParallelCompletion("")
+                .setCallerTask("caller", list -> {
+                    thread.set(Thread.currentThread());
+                    list.addItem(new CompletionItem("caller"));
+                })
+                .addTask("other", 5000, list -> list.addItem(new CompletionItem("other")))
+                .run(list -> {
+                    for (CompletionItem item : list.getItems()) {
+                        received.add(item.label);
+                    }
+                });
+
+        assertSame(Thread.currentThread(), thread.get());
+        assertEquals(2, builder.getItemCount());
+        assertEquals("caller", received.get(0));
+    }
+
+    @Test
+    public void testDropIfCallerIncomplete() {
+        CompletionList.Builder builder = new ParallelCompletion("")
+                .setCallerTask("caller", list -> {
+                    list.addItem(new CompletionItem("caller"));
+                    list.incomplete();
+                })
+                .addTask("dropped", 5000, list -> list.addItem(new CompletionItem("dropped")),
+                        true)
+                .addTask("kept", 5000, list -> list.addItem(new CompletionItem("kept")))
+                .run(null);
+
+        assertTrue(builder.isIncomplete());
+        assertEquals(2, builder.getItemCount());
+    }
+
+    @Test
+    public void testNestedRunDoesNotWaitForThePool() {
+        ParallelCompletion parallelCompletion = new ParallelCompletion("");
+        for (int i = 0; i < 8; i++) {
+            parallelCompletion.addTask("outer" + i, 5000, list -> {
+                CompletionList.Builder nested = new ParallelCompletion("")
+                        .addTask("inner", 5000, l -> l.addItem(new CompletionItem("inner")))
+                        .run(null);
+                list.addItems(nested.build().getItems());
+            });
+        }
+        CompletionList.Builder builder = parallelCompletion.run(null);
+
+        assertFalse(builder.isIncomplete());
+        assertEquals(8, builder.getItemCount());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.tyron.completion.java;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An immutable index of fully qualified class names that can be searched by the prefix or
+ * the camel humps of their simple names.
+ *
+ * The simple names are kept in an array sorted case insensitively so the classes matching a
+ * prefix are found with a binary search. The camel hump signature of each name (its first
+ * character and all of its upper case characters, e.g. SB for StringBuilder) is kept in a
+ * second sorted array so queries such as SBu can find StringBuilder the same way. Only the
+ * candidates in the matching ranges are ranked, the best of them are kept in a bounded heap.
+ */
+public class ClassNameIndex {
+
+    public static final ClassNameIndex EMPTY = new ClassNameIndex(new String[0]);
+
+    private static final int CASE_SENSITIVE_EQUAL = 5;
+    private static final int CASE_INSENSITIVE_EQUAL = 4;
+    private static final int CASE_SENSITIVE_PREFIX = 3;
+    private static final int CASE_INSENSITIVE_PREFIX = 2;
+    private static final int CAMEL_HUMP = 1;
+    private static final int NOT_MATCH = 0;
+
+    /**
+     * Fully qualified names sorted by their simple names
+     */
+    private final String[] mClassNames;
+    private final String[] mSimpleNames;
+
+    /**
+     * Indexes to {@link #mClassNames} sorted by their camel hump signature
+     */
+    private final int[] mHumpOrder;
+    private final String[] mHumps;
+
+    public ClassNameIndex(@NonNull String[] classNames) {
+        String[] sorted = classNames.clone();
+        Arrays.sort(sorted, Comparator.comparing(ClassNameIndex::getSimpleName,
+                String.CASE_INSENSITIVE_ORDER).thenComparing(Comparator.naturalOrder()));
+
+        mClassNames = sorted;
+        mSimpleNames = new String[sorted.length];
+        mHumps = new String[sorted.length];
+        Integer[] humpOrder = new Integer[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            mSimpleNames[i] = getSimpleName(sorted[i]);
+            mHumps[i] = getHumps(mSimpleNames[i]);
+            humpOrder[i] = i;
+        }
+        Arrays.sort(humpOrder, Comparator.comparing(i -> mHumps[i]));
+        mHumpOrder = new int[humpOrder.length];
+        for (int i = 0; i < humpOrder.length; i++) {
+            mHumpOrder[i] = humpOrder[i];
+        }
+    }
+
+    public int size() {
+        return mClassNames.length;
+    }
+
+    /**
+     * Returns at most {@code limit} fully qualified names whose simple name matches the given
+     * prefix, the best matches come first.
+     *
+     * Exact matches rank above prefix matches which rank above camel hump matches. Within the
+     * same match level, shorter simple names come first.
+     *
+     * @param prefix The prefix of the simple name or its camel humps, e.g. SBu for StringBuilder
+     * @param caseSensitive Whether prefix matches must also match the case of the prefix
+     * @param limit The maximum amount of names to return
+     */
+    @NonNull
+    public List<String> search(@NonNull String prefix, boolean caseSensitive, int limit) {
+        if (limit <= 0 || mClassNames.length == 0) {
+            return Collections.emptyList();
+        }
+        if (prefix.isEmpty() || ".".equals(prefix)) {
+            int size = Math.min(limit, mClassNames.length);
+            return new ArrayList<>(Arrays.asList(mClassNames).subList(0, size));
+        }
+
+        // the head of the queue is the worst match so far
+        PriorityQueue<Match> matches = new PriorityQueue<>(limit + 1, this::compare);
+
+        int start = lowerBound(prefix);
+        for (int i = start; i < mSimpleNames.length; i++) {
+            String simpleName = mSimpleNames[i];
+            if (!simpleName.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                break;
+            }
+            int level = getPrefixLevel(simpleName, prefix);
+            if (caseSensitive && level != CASE_SENSITIVE_PREFIX && level != CASE_SENSITIVE_EQUAL) {
+                continue;
+            }
+            offer(matches, new Match(i, level), limit);
+        }
+
+        String humps = getHumps(prefix);
+        if (humps.length() > 1) {
+            int humpStart = lowerBoundHumps(humps);
+            for (int i = humpStart; i < mHumpOrder.length; i++) {
+                int index = mHumpOrder[i];
+                if (!mHumps[index].startsWith(humps)) {
+                    break;
+                }
+                String simpleName = mSimpleNames[index];
+                if (simpleName.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    // already matched by its prefix
+                    continue;
+                }
+                if (matchesCamelHumps(simpleName, prefix)) {
+                    offer(matches, new Match(index, CAMEL_HUMP), limit);
+                }
+            }
+        }
+
+        String[] result = new String[matches.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = mClassNames[matches.poll().index];
+        }
+        return Arrays.asList(result);
+    }
+
+    private static void offer(PriorityQueue<Match> matches, Match match, int limit) {
+        matches.offer(match);
+        if (matches.size() > limit) {
+            matches.poll();
+        }
+    }
+
+    /**
+     * Orders the matches from the worst to the best.
+     */
+    private int compare(Match first, Match second) {
+        if (first.level != second.level) {
+            return Integer.compare(first.level, second.level);
+        }
+        int firstLength = mSimpleNames[first.index].length();
+        int secondLength = mSimpleNames[second.index].length();
+        if (firstLength != secondLength) {
+            return Integer.compare(secondLength, firstLength);
+        }
+        return Integer.compare(second.index, first.index);
+    }
+
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = mSimpleNames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(mSimpleNames[mid], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBoundHumps(String humps) {
+        int low = 0;
+        int high = mHumpOrder.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mHumps[mHumpOrder[mid]].compareTo(humps) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int getPrefixLevel(String simpleName, String prefix) {
+        boolean equalLength = simpleName.length() == prefix.length();
+        if (simpleName.startsWith(prefix)) {
+            return equalLength ? CASE_SENSITIVE_EQUAL : CASE_SENSITIVE_PREFIX;
+        }
+        if (simpleName.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return equalLength ? CASE_INSENSITIVE_EQUAL : CASE_INSENSITIVE_PREFIX;
+        }
+        return NOT_MATCH;
+    }
+
+    /**
+     * Checks whether each hump of the query is a prefix of the hump at the same position in
+     * the name, e.g. SBu matches StringBuilder and StringBuffer while SBi only matches
+     * StringBuilder.
+     */
+    static boolean matchesCamelHumps(String name, String query) {
+        int namePos = 0;
+        int queryPos = 0;
+        while (queryPos < query.length()) {
+            if (namePos >= name.length()) {
+                return false;
+            }
+            int queryEnd = nextHump(query, queryPos);
+            int length = queryEnd - queryPos;
+            if (Character.toUpperCase(name.charAt(namePos)) !=
+                Character.toUpperCase(query.charAt(queryPos))) {
+                return false;
+            }
+            if (!name.regionMatches(namePos + 1, query, queryPos + 1, length - 1)) {
+                return false;
+            }
+            queryPos = queryEnd;
+            namePos = nextHump(name, namePos);
+        }
+        return true;
+    }
+
+    /**
+     * @return The index of the next upper case character after the given position or the
+     * length of the string if there is none.
+     */
+    private static int nextHump(String string, int from) {
+        for (int i = from + 1; i < string.length(); i++) {
+            if (Character.isUpperCase(string.charAt(i))) {
+                return i;
+            }
+        }
+        return string.length();
+    }
+
+    /**
+     * @return The first character of the name in upper case followed by all the upper case
+     * characters of the name, e.g. SB for StringBuilder
+     */
+    static String getHumps(String name) {
+        if (name.isEmpty()) {
+            return name;
+        }
+        StringBuilder humps = new StringBuilder();
+        humps.append(Character.toUpperCase(name.charAt(0)));
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                humps.append(c);
+            }
+        }
+        return humps.toString();
+    }
+
+    private static String getSimpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static class Match {
+        final int index;
+        final int level;
+
+        Match(int index, int level) {
+            this.index = index;
+            this.level = level;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import static com.tyron.completion.progress.ProgressManager.checkCanceled;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.google.common.base.Throwables;
 import com.sun.source.tree.IdentifierTree;
 import com.sun.source.tree.NewClassTree;
@@ -57,6 +59,7 @@ import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -80,6 +83,12 @@ public class JavaCompletionProvider extends CompletionProvider {
 
     @Override
     public CompletionList complete(CompletionParameters params) {
+        return complete(params, null);
+    }
+
+    @Override
+    public CompletionList complete(CompletionParameters params,
+                                   @Nullable Consumer<CompletionList> partialResultConsumer) {
         if (!(params.getModule() instanceof JavaModule)) {
             return CompletionList.EMPTY;
         }
@@ -100,7 +109,7 @@ public class JavaCompletionProvider extends CompletionProvider {
 
         CompletionList.Builder complete = null;
         try {
-            complete = completeV2(params);
+            complete = completeV2(params, partialResultConsumer);
         } catch (Throwable t) {
             IdeLog.getCurrentLogger(getClass()).severe("Failed to complete: " +
                                                        Throwables.getStackTraceAsString(t));
@@ -122,6 +131,16 @@ public class JavaCompletionProvider extends CompletionProvider {
     }
 
     public CompletionList.Builder completeV2(CompletionParameters parameters) {
+        return completeV2(parameters, null);
+    }
+
+    /**
+     * @param partialResultConsumer If not null, the independent parts of the completion are
+     *                              computed concurrently and passed to this consumer as soon
+     *                              as they are ready
+     */
+    public CompletionList.Builder completeV2(CompletionParameters parameters,
+                                             @Nullable Consumer<CompletionList> partialResultConsumer) {
         CompilationInfo compilationInfo = CompilationInfo.get(parameters.getProject(), parameters.getFile());
         if (compilationInfo == null) {
             return null;
@@ -130,17 +149,24 @@ public class JavaCompletionProvider extends CompletionProvider {
         JavacTaskImpl javacTask = compilationInfo.impl.getJavacTask();
         Context context = javacTask.getContext();
         SimpleJavaFileObject fileObject = new SimpleJavaFileObject(parameters.getFile().toURI(), JavaFileObject.Kind.SOURCE) {
+
+                    private CharSequence fixedContents;
+
                     @Override
                     public CharSequence getCharContent(boolean ignoreEncodingErrors) {
-                        StringBuilder pruned = new StringBuilder(
-                                new FileContentFixer(context).fixFileContent(parameters.getContents())
-                        );
-                        int toInsert = StringSearch.endOfLine(pruned, (int) parameters.getIndex());
-                        return pruned.insert(toInsert, ';');
+                        if (fixedContents == null) {
+                            StringBuilder pruned = new StringBuilder(
+                                    new FileContentFixer(context).fixFileContent(parameters.getContents())
+                            );
+                            int toInsert = StringSearch.endOfLine(pruned, (int) parameters.getIndex());
+                            fixedContents = pruned.insert(toInsert, ';').toString();
+                        }
+                        return fixedContents;
                     }
                 };
 
-        JCTree.JCCompilationUnit unit = compilationInfo.updateImmediately(fileObject);
+        // only the method body being edited is reparsed when possible
+        JCTree.JCCompilationUnit unit = compilationInfo.updatePartially(fileObject);
         if (unit == null) {
             return null;
         }
@@ -166,6 +192,11 @@ public class JavaCompletionProvider extends CompletionProvider {
 //                                scanned, parameters.getPrefix(), false);
 //                    }
 //                }
+                if (partialResultConsumer != null) {
+                    return new IdentifierCompletionProvider(null).completeConcurrently(
+                            javacUtilities, scanned, parameters.getPrefix(), false,
+                            partialResultConsumer);
+                }
                 new IdentifierCompletionProvider(null).complete(builder, javacUtilities,
                         scanned, parameters.getPrefix(), false);
                 break;
@@ -4,14 +4,18 @@ import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.impl.JavaModuleImpl;
+import com.tyron.common.util.ThreadUtil;
 
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Allows to retrieve java classes in a project by non-qualified names
@@ -39,6 +43,10 @@ public class ShortNamesCache {
 
     private final Module module;
 
+    private volatile ClassNameIndex mClassNameIndex;
+    private volatile long mIndexedFingerprint;
+    private final AtomicBoolean mIndexing = new AtomicBoolean();
+
     public ShortNamesCache(Module module) {
         this.module = module;
     }
@@ -53,6 +61,65 @@ public class ShortNamesCache {
         }
 
         Set<String> classNames = new HashSet<>();
+        for (JavaModule javaModule : getJavaModules()) {
+            classNames.addAll(javaModule.getClassIndex().getLeafNodes());
+        }
+        classNames.addAll(JDK_MODULE.getClassIndex().getLeafNodes());
+        return classNames.toArray(new String[0]);
+    }
+
+    /**
+     * Returns an index of the classes returned by {@link #getAllClassNames()} that can be
+     * searched by prefix or camel humps.
+     *
+     * The index is built on the calling thread the first time, after that it is rebuilt on a
+     * background thread when the class index of one of the modules changes, the previous
+     * index is returned in the meantime.
+     */
+    public ClassNameIndex getClassNameIndex() {
+        if (!(module instanceof JavaModule)) {
+            return ClassNameIndex.EMPTY;
+        }
+
+        long fingerprint = computeFingerprint();
+        ClassNameIndex index = mClassNameIndex;
+        if (index == null) {
+            index = new ClassNameIndex(getAllClassNames());
+            mClassNameIndex = index;
+            mIndexedFingerprint = fingerprint;
+            return index;
+        }
+
+        if (fingerprint != mIndexedFingerprint && mIndexing.compareAndSet(false, true)) {
+            ThreadUtil.runOnBackgroundThread(() -> {
+                try {
+                    mClassNameIndex = new ClassNameIndex(getAllClassNames());
+                    mIndexedFingerprint = fingerprint;
+                } finally {
+                    mIndexing.set(false);
+                }
+            });
+        }
+        return index;
+    }
+
+    /**
+     * @return A value that changes when the class index of this module or any of the modules
+     * it depends on changes.
+     */
+    private long computeFingerprint() {
+        long fingerprint = JDK_MODULE.getClassIndex().getModificationCount();
+        for (JavaModule javaModule : getJavaModules()) {
+            fingerprint = 31 * fingerprint + javaModule.getClassIndex().getModificationCount();
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return This module and the java modules it depends on, directly or transitively
+     */
+    private List<JavaModule> getJavaModules() {
+        List<JavaModule> javaModules = new ArrayList<>();
 
         Deque<Module> queue = new LinkedList<>();
         Set<Module> visitedModules = new HashSet<>();
@@ -62,8 +129,7 @@ public class ShortNamesCache {
             Module current = queue.removeFirst();
 
             if (current instanceof JavaModule) {
-                JavaModule javaModule = (JavaModule) current;
-                classNames.addAll(javaModule.getClassIndex().getLeafNodes());
+                javaModules.add((JavaModule) current);
             }
 
             visitedModules.add(current);
@@ -74,8 +140,6 @@ public class ShortNamesCache {
                 }
             }
         }
-
-        classNames.addAll(JDK_MODULE.getClassIndex().getLeafNodes());
-        return classNames.toArray(new String[0]);
+        return javaModules;
     }
 }
@@ -45,21 +45,38 @@ public class CompileBatch implements AutoCloseable {
      */
     public boolean closed;
 
+    /**
+     * Indicates that a read of this batch was canceled while javac was attributing it, the
+     * trees may be partially attributed so the batch must not be reused.
+     */
+    public volatile boolean dirty;
+
     public final JavacTask task;
     public final Trees trees;
     public final Elements elements;
     public final Types types;
     public final List<CompilationUnitTree> roots;
 
+    /**
+     * The diagnostics reported while compiling this batch
+     */
+    public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
     public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+        this(parent, parent.compiler, files);
+    }
+
+    public CompileBatch(JavaCompilerService parent, ReusableCompiler compiler,
+                        Collection<? extends JavaFileObject> files) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.borrow = batchTask(parent, compiler, files);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
         this.types = borrow.task.getTypes();
         this.roots = new ArrayList<>();
         // Compile all roots
+        boolean success = false;
         try {
             for (CompilationUnitTree t : borrow.task.parse()) {
                 roots.add(t);
@@ -68,9 +85,16 @@ public class CompileBatch implements AutoCloseable {
             // The results of borrow.task.analyze() are unreliable when errors are present
             // You can get at `Element` values using `Trees`
             task.analyze();
+            success = true;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            if (!success) {
+                // return the compiler, nothing else can close this borrow
+                borrow.close();
+            }
         }
+        this.diagnostics = parent.getDiagnostics();
     }
 
     /**
@@ -85,7 +109,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : diagnostics) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -156,11 +180,12 @@ public class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
-            extends JavaFileObject> sources) {
+    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent,
+                                                     ReusableCompiler compiler,
+                                                     Collection<? extends JavaFileObject> sources) {
         parent.clearDiagnostics();
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
+        return compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
                 Collections.emptyList(), sources);
     }
 
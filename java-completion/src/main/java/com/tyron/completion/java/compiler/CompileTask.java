@@ -32,7 +32,7 @@ public class CompileTask implements AutoCloseable {
         this.trees = JavacTrees.instance(task);
 
         this.roots = batch.roots;
-        this.diagnostics = batch.parent.getDiagnostics();
+        this.diagnostics = batch.diagnostics;
     }
 
     public Trees getTrees() {
@@ -77,6 +77,13 @@ public class CompileTask implements AutoCloseable {
         }
     }
 
+    /**
+     * Marks the batch of this task so it is compiled again instead of being reused
+     */
+    void markDirty() {
+        mCompileBatch.dirty = true;
+    }
+
     public boolean isClosed() {
         return mCompileBatch.closed;
     }
@@ -1,21 +1,15 @@
 package com.tyron.completion.java.compiler;
 
-import android.util.Log;
-
 import androidx.annotation.GuardedBy;
 
 import com.sun.source.util.JavacTask;
 import com.sun.tools.javac.api.JavacTaskImpl;
 import com.sun.tools.javac.util.Context;
-import com.tyron.completion.java.BuildConfig;
+import com.tyron.completion.java.compiler.services.CancelAbort;
 import com.tyron.completion.java.compiler.services.CancelService;
 import com.tyron.completion.progress.ProcessCanceledException;
-import com.tyron.completion.progress.ProgressManager;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Consumer;
 
 import kotlin.jvm.functions.Function1;
@@ -26,20 +20,31 @@ import kotlin.jvm.functions.Function1;
  * A read is when the {@link CompileTask} is being accessed to get information about the parse tree.
  * A write is when the {@link CompileTask} is being changed from a compile call
  *
- * Any threads are allowed to read only if there is no thread that is currently writing.
- * If there is a thread that is currently writing, all other threads that attempts to read
- * will be blocked until the write thread has finished.
+ * When concurrent reads are enabled, any number of threads are allowed to read at the same time
+ * as long as there is no thread that is currently writing. If there is a thread that is currently writing, all other threads
+ * that attempts to read will be blocked until the write thread has finished.
  *
- * Only one thread is allowed to write at a time, during a write operation all threads that
- * attempts to read will be blocked until the thread writing has finished.
+ * Only one thread is allowed to write at a time. When a thread requests a write, the reads that
+ * are still running against the old {@link CompileTask} are canceled through the compiler's
+ * {@link CancelService} so the writer does not have to wait for stale results.
  */
 public class CompilerContainer {
 
     private static final String TAG = CompilerContainer.class.getSimpleName();
 
+    private static final StampedLock sLock = new StampedLock();
+
+    /**
+     * Whether readers are allowed to access the compile task at the same time, if false
+     * reads are serialized the same way as writes. Disabled by default since javac's
+     * {@link Context} completes symbols lazily and is not safe to read from multiple threads.
+     */
+    private static volatile boolean sConcurrentReads = false;
+
     private volatile boolean mIsWriting;
 
-    private static final Semaphore semaphore = new Semaphore(1);
+    @GuardedBy("this")
+    private int mActiveReaders;
 
     private volatile CompileTask mCompileTask;
 
@@ -47,24 +52,57 @@ public class CompilerContainer {
         System.out.println("New instance created - CompilerContainer");
     }
 
-    private void cancel() {
-        if (mCompileTask == null) {
+    public static void setConcurrentReads(boolean concurrentReads) {
+        sConcurrentReads = concurrentReads;
+    }
+
+    public static boolean isConcurrentReads() {
+        return sConcurrentReads;
+    }
+
+    /**
+     * Requests the reads that are currently running against the compile task to stop
+     * as soon as javac reaches a cancellation point.
+     */
+    private synchronized void cancel() {
+        if (mActiveReaders == 0) {
             return;
         }
+        ReusableCompiler.CancelServiceImpl cancelService = getCancelService();
+        if (cancelService != null) {
+            cancelService.cancel();
+        }
+    }
+
+    private void resetCancel() {
+        ReusableCompiler.CancelServiceImpl cancelService = getCancelService();
+        if (cancelService != null) {
+            cancelService.reset();
+        }
+    }
 
-        JavacTask task = mCompileTask.task;
+    private ReusableCompiler.CancelServiceImpl getCancelService() {
+        CompileTask compileTask = mCompileTask;
+        if (compileTask == null) {
+            return null;
+        }
+
+        JavacTask task = compileTask.task;
         if (!(task instanceof JavacTaskImpl)) {
-            return;
+            return null;
         }
 
         JavacTaskImpl taskImpl = ((JavacTaskImpl) task);
         Context context = taskImpl.getContext();
         if (context == null) {
-            return;
+            return null;
         }
 
-        ReusableCompiler.CancelServiceImpl cancelService =
-                (ReusableCompiler.CancelServiceImpl) ReusableCompiler.CancelServiceImpl.instance(context);
+        CancelService cancelService = CancelService.instance(context);
+        if (!(cancelService instanceof ReusableCompiler.CancelServiceImpl)) {
+            return null;
+        }
+        return (ReusableCompiler.CancelServiceImpl) cancelService;
     }
 
     /**
@@ -73,35 +111,50 @@ public class CompilerContainer {
      * are synchronized
      */
     public void run(Consumer<CompileTask> consumer) {
-        cancel();
-        semaphore.acquireUninterruptibly();
+        long stamp = acquireRead(false);
         try {
             consumer.accept(mCompileTask);
+        } catch (RuntimeException e) {
+            throw onReadFailed(e);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            releaseRead(stamp);
         }
     }
 
     public <T> T get(Function1<CompileTask, T> fun) {
-        cancel();
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            throw new ProcessCanceledException();
-        }
-
+        long stamp = acquireRead(true);
         try {
             return fun.invoke(mCompileTask);
+        } catch (RuntimeException e) {
+            throw onReadFailed(e);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            releaseRead(stamp);
         }
     }
 
+    /**
+     * A read that is canceled may have stopped javac in the middle of attributing a tree, the
+     * batch is marked dirty so the next compile does not reuse it.
+     */
+    private RuntimeException onReadFailed(RuntimeException e) {
+        if (!(e instanceof CancelAbort) && !(e.getCause() instanceof CancelAbort)) {
+            return e;
+        }
+        CompileTask compileTask = mCompileTask;
+        if (compileTask != null) {
+            compileTask.markDirty();
+        }
+        return new ProcessCanceledException();
+    }
+
+    /**
+     * Same as {@link #get(Function1)} but the function is given exclusive access
+     * to the compile task, no other reads or writes will run at the same time.
+     */
     public <T> T getWithLock(Function1<CompileTask, T> fun) {
+        long stamp;
         try {
-            semaphore.acquire();
+            stamp = sLock.writeLockInterruptibly();
         } catch (InterruptedException e) {
             throw new ProcessCanceledException();
         }
@@ -109,35 +162,41 @@ public class CompilerContainer {
         try {
             return fun.invoke(mCompileTask);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            closeTask();
+            sLock.unlockWrite(stamp);
         }
-
     }
 
-    public synchronized boolean isWriting() {
-        return mIsWriting || semaphore.hasQueuedThreads();
+    /**
+     * @return true if a thread is currently writing or is waiting to write, reads that
+     * start now will be blocked until the write has finished
+     */
+    public boolean isWriting() {
+        return mIsWriting || sLock.isWriteLocked();
     }
 
     void initialize(Runnable runnable) {
+        mIsWriting = true;
+        cancel();
+
+        long stamp;
         try {
-            semaphore.acquire();
+            stamp = sLock.writeLockInterruptibly();
         } catch (InterruptedException e) {
+            mIsWriting = false;
             throw new ProcessCanceledException();
         }
-        mIsWriting = true;
         try {
-            // ensure that compile task is closed
-            if (mCompileTask != null) {
-                mCompileTask.close();
-            }
+            // all stale reads have finished at this point
+            resetCancel();
 
-            cancel();
+            // ensure that compile task is closed
+            closeTask();
 
             runnable.run();
         } finally {
             mIsWriting = false;
-            semaphore.release();
+            sLock.unlockWrite(stamp);
         }
     }
 
@@ -145,9 +204,40 @@ public class CompilerContainer {
         mCompileTask = task;
     }
 
-    private static void assertNotClosed(CompileTask task) {
-        if (task.isClosed()) {
-            throw new RuntimeException("Compile task is already closed.");
+    private long acquireRead(boolean interruptibly) {
+        long stamp;
+        try {
+            if (sConcurrentReads) {
+                stamp = interruptibly ? sLock.readLockInterruptibly() : sLock.readLock();
+            } else {
+                stamp = interruptibly ? sLock.writeLockInterruptibly() : sLock.writeLock();
+            }
+        } catch (InterruptedException e) {
+            throw new ProcessCanceledException();
+        }
+        synchronized (this) {
+            mActiveReaders++;
+        }
+        return stamp;
+    }
+
+    private void releaseRead(long stamp) {
+        try {
+            synchronized (this) {
+                // the compile task is only closed by the last reader so the other
+                // readers can still access it
+                if (--mActiveReaders == 0) {
+                    closeTask();
+                }
+            }
+        } finally {
+            sLock.unlock(stamp);
+        }
+    }
+
+    private void closeTask() {
+        if (mCompileTask != null) {
+            mCompileTask.close();
         }
     }
 }
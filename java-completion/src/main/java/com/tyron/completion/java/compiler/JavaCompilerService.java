@@ -4,17 +4,19 @@ import android.annotation.SuppressLint;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.sun.tools.javac.api.JavacTaskImpl;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.FileListener;
 import com.tyron.builder.project.util.PackageTrie;
-import com.tyron.common.util.Cache;
-import com.tyron.common.util.StringSearch;
+import com.tyron.common.util.BoundedCache;
 import com.tyron.completion.java.CompilerProvider;
 import com.tyron.completion.java.Docs;
 import com.tyron.completion.java.FindTypeDeclarations;
@@ -25,6 +27,7 @@ import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 
 import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ImportTree;
 import com.sun.tools.javac.file.PathFileObject;
 import com.tyron.completion.java.compiler.services.CancelAbort;
 import com.tyron.completion.progress.ProcessCanceledException;
@@ -40,12 +43,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -65,9 +71,71 @@ public class JavaCompilerService implements CompilerProvider {
     public ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
 
+    /**
+     * Maximum number of parsed files kept in memory
+     */
+    private static final int MAX_PARSE_CACHE_SIZE = 32;
+
+    /**
+     * Maximum number of files whose declared types are kept in memory
+     */
+    private static final int MAX_TYPE_CACHE_SIZE = 4096;
+
+    private final FileListener mCacheInvalidator =
+            (file, contents) -> invalidateCaches(file.toPath());
+
+    /**
+     * Maximum number of compiled batches kept in memory, each batch has its own javac context
+     */
+    private static final int MAX_CACHED_BATCHES = 3;
+
+    /**
+     * Older batches are evicted when the free heap falls below this fraction of the max heap
+     */
+    private static final double MIN_FREE_MEMORY_RATIO = 0.2;
+
+    /**
+     * A compiled batch along with the compiler that owns its javac context and the
+     * modification times of the sources it was compiled from.
+     */
+    private static class CachedBatch {
+        final ReusableCompiler compiler;
+        final Map<JavaFileObject, Long> modified = new HashMap<>();
+        CompileBatch batch;
+
+        /**
+         * The value of {@link #mFileChanges} when this batch was compiled
+         */
+        long fileChanges;
+
+        CachedBatch(ReusableCompiler compiler) {
+            this.compiler = compiler;
+        }
+
+        void release() {
+            if (batch != null && batch.borrow != null) {
+                batch.borrow.close();
+            }
+            batch = null;
+            modified.clear();
+        }
+    }
+
+    /**
+     * Incremented whenever a file is changed, created or deleted. A javac context also holds
+     * the symbols of the files it has loaded from the source path, so a batch is compiled again
+     * after any file has changed, not only its own sources.
+     */
+    private final AtomicLong mFileChanges = new AtomicLong();
+
     private final CompilerContainer mContainer = new CompilerContainer();
+
+    /**
+     * Compiled batches keyed by their source files, in least recently used order
+     */
+    private final LinkedHashMap<Set<JavaFileObject>, CachedBatch> mBatches =
+            new LinkedHashMap<>(MAX_CACHED_BATCHES + 1, 0.75f, true);
     private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
 
     public final ReentrantLock mLock = new ReentrantLock();
 
@@ -89,16 +157,26 @@ public class JavaCompilerService implements CompilerProvider {
 
     public void setCurrentModule(@NonNull JavaModule module) {
         mSourceFileManager.setCurrentModule(module);
+        if (mCurrentModule != module) {
+            if (mCurrentModule != null) {
+                mCurrentModule.getFileManager().removeSnapshotListener(mWordIndex);
+                mCurrentModule.getFileManager().removeSnapshotListener(mCacheInvalidator);
+            }
+            module.getFileManager().addSnapshotListener(mWordIndex);
+            module.getFileManager().addSnapshotListener(mCacheInvalidator);
+        }
         mCurrentModule = module;
     }
 
     /**
      * Checks whether this list has been compiled before
      *
+     * @param cachedModified the modification times of the sources of the cached batch
      * @param sources list of java files to compile
      * @return true if there's a valid cache for it, false otherwise
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
+    private boolean needsCompile(Map<JavaFileObject, Long> cachedModified,
+                                 Collection<? extends JavaFileObject> sources) {
         if (cachedModified.size() != sources.size()) {
             return true;
         }
@@ -117,35 +195,118 @@ public class JavaCompilerService implements CompilerProvider {
         return false;
     }
 
-    private synchronized void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
+    private synchronized void loadCompile(CachedBatch cached,
+                                          Collection<? extends JavaFileObject> sources) {
+        if (cached.batch != null) {
+            if (!cached.batch.closed) {
                 throw new RuntimeException("Compiler is still in-use!");
             }
-            cachedCompile.borrow.close();
+            cached.batch.borrow.close();
+        }
+        compiler = cached.compiler;
+        long fileChanges = mFileChanges.get();
+        boolean success = false;
+        try {
+            cached.batch = doCompile(sources);
+            success = true;
+        } finally {
+            if (!success) {
+                // the old batch has been closed, it must not be reused
+                cached.batch = null;
+            }
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
+        cached.fileChanges = fileChanges;
+        cached.modified.clear();
         for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+            cached.modified.put(f, f.getLastModified());
         }
     }
 
+    /**
+     * Returns the cached batch for these sources, creating a new entry if needed. Batches
+     * that have not been used recently are evicted when there are too many of them or when
+     * the device is running low on memory.
+     */
+    private CachedBatch getOrCreateCachedBatch(Collection<? extends JavaFileObject> sources) {
+        Set<JavaFileObject> key = new HashSet<>(sources);
+        CachedBatch cached = mBatches.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ReusableCompiler recycled = null;
+        Iterator<CachedBatch> iterator = mBatches.values().iterator();
+        while (iterator.hasNext() && (mBatches.size() >= MAX_CACHED_BATCHES || isLowOnMemory())) {
+            CachedBatch eldest = iterator.next();
+            if (eldest.batch != null && !eldest.batch.closed) {
+                continue;
+            }
+            eldest.release();
+            iterator.remove();
+            if (recycled == null) {
+                // reuse the javac context of the evicted batch
+                recycled = eldest.compiler;
+            }
+        }
+
+        cached = new CachedBatch(recycled != null
+                ? recycled
+                : mBatches.isEmpty() ? compiler : new ReusableCompiler());
+        mBatches.put(key, cached);
+        return cached;
+    }
+
+    private static boolean isLowOnMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long free = runtime.maxMemory() - used;
+        return free < runtime.maxMemory() * MIN_FREE_MEMORY_RATIO;
+    }
+
     public void invalidate(Path source) {
         invalidate(Collections.singletonList(new SourceFileObject(source)));
     }
 
     public void invalidate(Collection<? extends JavaFileObject> sources) {
+        mFileChanges.incrementAndGet();
         for (JavaFileObject source : sources) {
-            cachedModified.remove(source);
+            if (source instanceof SourceFileObject) {
+                Path file = ((SourceFileObject) source).mFile;
+                invalidateCaches(file);
+                mWordIndex.invalidate(file);
+            }
         }
     }
 
+    /**
+     * Removes the cached parse and type information of this file, called when the
+     * contents of the file has changed.
+     */
+    private void invalidateCaches(Path file) {
+        mFileChanges.incrementAndGet();
+        parseCache.invalidate(file);
+        cacheContainsType.invalidate(file);
+    }
+
+    /**
+     * @return The hit, miss and eviction counts of the parse cache
+     */
+    public CacheStats getParseCacheStats() {
+        return parseCache.stats();
+    }
+
+    /**
+     * @return The hit, miss and eviction counts of the type declarations cache
+     */
+    public CacheStats getTypeCacheStats() {
+        return cacheContainsType.stats();
+    }
+
     private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
         if (sources.isEmpty()) {
             throw new RuntimeException("empty sources");
         }
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
+        CompileBatch firstAttempt = new CompileBatch(this, compiler, sources);
         Set<Path> addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) {
             return firstAttempt;
@@ -159,7 +320,7 @@ public class JavaCompilerService implements CompilerProvider {
         for (Path add : addFiles) {
             moreSources.add(new SourceFileObject(add, mCurrentModule));
         }
-        return new CompileBatch(this, moreSources);
+        return new CompileBatch(this, compiler, moreSources);
     }
 
     /**
@@ -171,9 +332,14 @@ public class JavaCompilerService implements CompilerProvider {
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
         try {
             mContainer.initialize(() -> {
-                if (needsCompile(sources)) {
-                    loadCompile(sources);
+                CachedBatch cached = getOrCreateCachedBatch(sources);
+                if (cached.batch == null || cached.batch.dirty
+                        || cached.fileChanges != mFileChanges.get()
+                        || needsCompile(cached.modified, sources)) {
+                    loadCompile(cached, sources);
                 }
+                compiler = cached.compiler;
+                cachedCompile = cached.batch;
                 if (cachedCompile.task == null || ((JavacTaskImpl) cachedCompile.task).getContext() == null) {
                     System.out.println();
                 }
@@ -236,7 +402,7 @@ public class JavaCompilerService implements CompilerProvider {
         for (Module module : mProject.getDependencies(mCurrentModule)) {
             if (module instanceof JavaModule) {
                 PackageTrie classIndex = ((JavaModule) module).getClassIndex();
-                classes.addAll(classIndex.getMatchingPackages(packageName));
+                classIndex.forEachMatchingPackage(packageName, classes::add);
             }
         }
         return classes;
@@ -330,25 +496,24 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
+    private final WordIndex mWordIndex = new WordIndex();
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
+        return mWordIndex.containsWord(file, word);
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private final BoundedCache<Void, List<String>> cacheContainsType =
+            new BoundedCache<>(MAX_TYPE_CACHE_SIZE);
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
+        List<String> types = cacheContainsType.get(file, null);
+        if (types == null) {
             CompilationUnitTree root = parse(file).root;
-            List<String> types = new ArrayList<>();
+            types = new ArrayList<>();
             new FindTypeDeclarations().scan(root, types);
             cacheContainsType.load(file, null, types);
         }
-        return cacheContainsType.get(file, null).contains(className);
+        return types.contains(className);
     }
 
 
@@ -421,24 +586,83 @@ public class JavaCompilerService implements CompilerProvider {
         return Optional.ofNullable(source);
     }
 
+    /**
+     * Finds the files that may reference the given class, the candidates are taken from
+     * the word index and are verified by checking the package and imports of the file.
+     */
     @Override
     public Path[] findTypeReferences(String className) {
-        return null;
+        String packageName = packageName(className);
+        String simpleName = simpleName(className);
+        List<Path> references = new ArrayList<>();
+        for (Path file : mWordIndex.findFiles(allJavaFiles(), simpleName)) {
+            if (importsType(file, packageName, className)) {
+                references.add(file);
+            }
+        }
+        return references.toArray(new Path[0]);
     }
 
+    /**
+     * Finds the files that may reference the given member of the given class, the candidates
+     * are the files that contain the member name and that declare the class or refer to it
+     * by its simple name through their package or imports. References through an expression
+     * whose type is never named in the file, such as a chained call, are not found.
+     */
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
-        return null;
+        String packageName = packageName(className);
+        String simpleName = simpleName(className);
+        List<Path> references = new ArrayList<>();
+        for (Path file : mWordIndex.findFiles(allJavaFiles(), memberName)) {
+            if (mWordIndex.containsWord(file, simpleName)
+                    && importsType(file, packageName, className)) {
+                references.add(file);
+            }
+        }
+        return references.toArray(new Path[0]);
     }
 
-    private final Cache<String, ParseTask> parseCache = new Cache<>();
+    private boolean importsType(Path file, String packageName, String className) {
+        CompilationUnitTree root = parse(file).root;
+        String filePackage = root.getPackageName() == null
+                ? ""
+                : root.getPackageName().toString();
+        if (filePackage.equals(packageName)) {
+            return true;
+        }
+        for (ImportTree importTree : root.getImports()) {
+            String name = importTree.getQualifiedIdentifier().toString();
+            if (name.equals(className) || name.equals(packageName + ".*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Path> allJavaFiles() {
+        List<Path> files = new ArrayList<>();
+        for (Module module : mProject.getDependencies(mCurrentModule)) {
+            if (module instanceof JavaModule) {
+                for (File file : ((JavaModule) module).getJavaFiles().values()) {
+                    files.add(file.toPath());
+                }
+            }
+        }
+        return files;
+    }
+
+    private final BoundedCache<String, ParseTask> parseCache =
+            new BoundedCache<>(MAX_PARSE_CACHE_SIZE);
 
     private ParseTask cachedParse(Path file) {
-        if (parseCache.needs(file, file.toFile().getName())) {
+        ParseTask task = parseCache.get(file, file.toFile().getName());
+        if (task == null) {
             Parser parser = Parser.parseFile(mProject, file);
-            parseCache.load(file, file.toFile().getName(), new ParseTask(parser.task, parser.root));
+            task = new ParseTask(parser.task, parser.root);
+            parseCache.load(file, file.toFile().getName(), task);
         }
-        return parseCache.get(file, file.toFile().getName());
+        return task;
     }
 
     private ParseTask cachedParse(JavaFileObject file) {
@@ -448,14 +672,15 @@ public class JavaCompilerService implements CompilerProvider {
                     file.toUri().toString().substring(4, file.toUri().toString().lastIndexOf("!"));
 
             Path parsedPath = new File(URI.create(path)).toPath();
-            if (parseCache.needs(parsedPath, file.getName())) {
+            ParseTask task = parseCache.get(parsedPath, file.getName());
+            if (task == null) {
                 Parser parser = Parser.parseJavaFileObject(mProject, file);
-                parseCache
-                        .load(parsedPath, file.getName(), new ParseTask(parser.task, parser.root));
+                task = new ParseTask(parser.task, parser.root);
+                parseCache.load(parsedPath, file.getName(), task);
             } else {
                 Log.d("JavaCompilerService", "Using cached parse for " + file.getName());
             }
-            return parseCache.get(parsedPath, file.getName());
+            return task;
         } else if (file instanceof SourceFileObject) {
             return cachedParse(((SourceFileObject) file).mFile);
         }
@@ -537,14 +762,11 @@ public class JavaCompilerService implements CompilerProvider {
     public void destroy() {
         mContainer.initialize(() -> {
             close();
-            if (cachedCompile != null) {
-                final ReusableCompiler.Borrow borrow = cachedCompile.borrow;
-                if (borrow != null) {
-                    borrow.close();
-                }
+            for (CachedBatch cached : mBatches.values()) {
+                cached.release();
             }
+            mBatches.clear();
             cachedCompile = null;
-            cachedModified.clear();
             compiler = new ReusableCompiler();
         });
     }
@@ -553,6 +775,14 @@ public class JavaCompilerService implements CompilerProvider {
         return cachedCompile;
     }
 
+    /**
+     * @return The number of compiled batches that are kept in memory
+     */
+    @VisibleForTesting
+    int getCachedBatchCount() {
+        return mBatches.size();
+    }
+
     @NonNull
     public CompilerContainer getCachedContainer() {
         return mContainer;
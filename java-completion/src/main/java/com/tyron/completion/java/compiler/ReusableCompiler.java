@@ -95,6 +95,10 @@ public class ReusableCompiler {
             canceled.set(true);
         }
 
+        public void reset() {
+            canceled.set(false);
+        }
+
         public boolean isRunning() {
             return running.get();
         }
@@ -105,7 +109,7 @@ public class ReusableCompiler {
 
         @Override
         public boolean isCanceled() {
-            return false;
+            return canceled.get();
         }
 
         @Override
@@ -0,0 +1,170 @@
+package com.tyron.completion.java.compiler;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.builder.project.listener.FileListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An inverted index that maps each identifier to the source files that contain it.
+ *
+ * Files are indexed lazily the first time they are queried. An indexed file is not checked
+ * against the disk again, it is updated when its snapshot changes or is saved through
+ * {@link FileListener} and it is dropped by {@link #invalidate(Path)} when it is created,
+ * deleted or changed outside of the editor. A file that matches a query but no longer exists
+ * is evicted, so only the matches of a query are looked up on disk.
+ */
+public class WordIndex implements FileListener {
+
+    private final Map<String, Set<Path>> mPostings = new ConcurrentHashMap<>();
+    private final Map<Path, Set<String>> mFiles = new ConcurrentHashMap<>();
+
+    /**
+     * @return whether the file contains the word as a whole identifier
+     */
+    public boolean containsWord(@NonNull Path file, @NonNull String word) {
+        ensureIndexed(file);
+        Set<Path> files = mPostings.get(word);
+        return files != null && files.contains(file) && exists(file);
+    }
+
+    /**
+     * Returns the files from the given candidates that contain the given word, the candidates
+     * that have not been indexed yet are indexed first.
+     */
+    @NonNull
+    public Set<Path> findFiles(@NonNull Collection<Path> candidates, @NonNull String word) {
+        for (Path candidate : candidates) {
+            ensureIndexed(candidate);
+        }
+
+        Set<Path> files = mPostings.get(word);
+        if (files == null || files.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<Path> result = new HashSet<>();
+        for (Path candidate : candidates) {
+            if (files.contains(candidate) && exists(candidate)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Indexes the file from disk if it has not been indexed yet.
+     */
+    public void ensureIndexed(@NonNull Path file) {
+        if (mFiles.containsKey(file)) {
+            return;
+        }
+
+        try {
+            String contents = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            update(file, contents);
+        } catch (NoSuchFileException e) {
+            remove(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void onSnapshotChanged(File file, CharSequence contents) {
+        if (!file.getName().endsWith(".java") || contents == null) {
+            return;
+        }
+        update(file.toPath(), contents);
+    }
+
+    /**
+     * Drops the entry of a file that has been created, deleted or modified outside of the
+     * editor, it is read again from disk the next time it is queried.
+     */
+    public void invalidate(@NonNull Path file) {
+        remove(file);
+    }
+
+    public synchronized void remove(@NonNull Path file) {
+        Set<String> removed = mFiles.remove(file);
+        if (removed != null) {
+            removePostings(file, removed);
+        }
+    }
+
+    public synchronized void clear() {
+        mFiles.clear();
+        mPostings.clear();
+    }
+
+    /**
+     * Evicts a matching file that has been deleted on disk without being removed
+     */
+    private boolean exists(Path file) {
+        if (Files.exists(file)) {
+            return true;
+        }
+        remove(file);
+        return false;
+    }
+
+    private synchronized void update(Path file, CharSequence contents) {
+        Set<String> words = tokenize(contents);
+        Set<String> old = mFiles.put(file, words);
+
+        if (old != null) {
+            Set<String> removed = new HashSet<>(old);
+            removed.removeAll(words);
+            removePostings(file, removed);
+        }
+        for (String word : words) {
+            if (old == null || !old.contains(word)) {
+                mPostings.computeIfAbsent(word, w -> ConcurrentHashMap.newKeySet()).add(file);
+            }
+        }
+    }
+
+    private void removePostings(Path file, Set<String> words) {
+        for (String word : words) {
+            mPostings.computeIfPresent(word, (w, files) -> {
+                files.remove(file);
+                return files.isEmpty() ? null : files;
+            });
+        }
+    }
+
+    private static Set<String> tokenize(CharSequence contents) {
+        Set<String> words = new HashSet<>();
+        int length = contents.length();
+        int i = 0;
+        while (i < length) {
+            char c = contents.charAt(i);
+            if (!Character.isJavaIdentifierPart(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            i++;
+            while (i < length && Character.isJavaIdentifierPart(contents.charAt(i))) {
+                i++;
+            }
+            // skip number literals such as 10L, they are not identifiers
+            if (Character.isJavaIdentifierStart(c)) {
+                words.add(contents.subSequence(start, i).toString());
+            }
+        }
+        return words;
+    }
+}
@@ -1,6 +1,8 @@
 package com.tyron.completion.java.parse;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.Scope;
@@ -10,8 +12,16 @@ import com.sun.tools.javac.api.JavacTrees;
 import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.comp.MemberEnter;
 import com.sun.tools.javac.main.JavaCompiler;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.JCTree.JCClassDecl;
 import com.sun.tools.javac.tree.JCTree.JCCompilationUnit;
+import com.sun.tools.javac.tree.JCTree.JCMethodDecl;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.DiagnosticSource;
+import com.sun.tools.javac.util.JCDiagnostic;
 import com.sun.tools.javac.util.Pair;
+import com.sun.tools.javac.util.Position;
 import com.tyron.builder.model.CodeAssistAndroidLibrary;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
@@ -28,14 +38,19 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.lang.model.element.Element;
@@ -82,6 +97,13 @@ public class CompilationInfo {
 
     public final CompilationInfoImpl impl;
     private final Map<URI, JCCompilationUnit> compiledMap = new HashMap<>();
+    /**
+     * The contents of the files at the time their compilation unit was last updated
+     */
+    private final Map<URI, String> compiledContents = new HashMap<>();
+
+    private final PartialReparser partialReparser = new DefaultPartialReparser();
+    private final ReparseStatistics reparseStatistics = new ReparseStatistics();
 
     private final DebouncerStore<String> debouncerStore = DebouncerStore.DEFAULT;
 
@@ -103,6 +125,24 @@ public class CompilationInfo {
         }
     }
 
+    /**
+     * Same as {@link #updateImmediately(JavaFileObject)}, but if the only difference with the
+     * previously parsed contents of the file is inside a single method body, only that method
+     * body is reparsed and attributed again. The other trees of the compilation unit keep
+     * their attribution. Falls back to a full reparse otherwise.
+     *
+     * This is meant to be called on every keystroke from the completion path.
+     */
+    public JCCompilationUnit updatePartially(JavaFileObject fileObject) {
+        CompletableFuture<JCCompilationUnit> future = new CompletableFuture<>();
+        update(fileObject, 0, true, future::complete);
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        }
+    }
+
     public void update(JavaFileObject fileObject) {
         this.update(fileObject, 300, __ -> {
         });
@@ -113,34 +153,56 @@ public class CompilationInfo {
         });
     }
 
-    public synchronized void update(JavaFileObject fileObject,
-                                    long delay,
-                                    Consumer<JCCompilationUnit> treeConsumer) {
+    public void update(JavaFileObject fileObject,
+                       long delay,
+                       Consumer<JCCompilationUnit> treeConsumer) {
+        update(fileObject, delay, false, treeConsumer);
+    }
+
+    private synchronized void update(JavaFileObject fileObject,
+                                     long delay,
+                                     boolean allowPartialReparse,
+                                     Consumer<JCCompilationUnit> treeConsumer) {
         debouncerStore.registerOrGetDebouncer("update").debounce(delay, () -> {
             synchronized (parseLock) {
                 try {
                     JavacTaskImpl javacTask = impl.getJavacTask();
+                    URI uri = fileObject.toUri();
+                    CharSequence contents = fileObject.getCharContent(true);
+
+                    if (allowPartialReparse) {
+                        long start = System.nanoTime();
+                        JCCompilationUnit unit = reparseMethod(fileObject, contents);
+                        if (unit != null) {
+                            compiledContents.put(uri, contents.toString());
+                            reparseStatistics.record(true, System.nanoTime() - start);
+                            treeConsumer.accept(unit);
+                            return;
+                        }
+                    }
 
+                    long start = System.nanoTime();
                     NBLog log = NBLog.instance(javacTask.getContext());
                     log.useSource(fileObject);
 
                     Set<Pair<JavaFileObject, Integer>> toRemove = new HashSet<>();
                     for (Pair<JavaFileObject, Integer> pair : log.getRecorded()) {
-                        if (pair.fst.toUri().equals(fileObject.toUri())) {
+                        if (pair.fst.toUri().equals(uri)) {
                             toRemove.add(pair);
                         }
                     }
                     log.getRecorded().removeAll(toRemove);
-                    log.removeDiagnostics(fileObject.toUri());
+                    log.removeDiagnostics(uri);
                     log.removeFileObject(fileObject);
 
 
-                    JCCompilationUnit previous = compiledMap.get(fileObject.toUri());
+                    JCCompilationUnit previous = compiledMap.get(uri);
                     if (previous != null) {
                         NBEnter enter = (NBEnter) NBEnter.instance(javacTask.getContext());
                         enter.unenter(previous, previous);
                         enter.removeCompilationUnit(fileObject);
                     }
+                    compiledContents.remove(uri);
 
                     // reparse the whole file
                     JCCompilationUnit unit;
@@ -160,7 +222,11 @@ public class CompilationInfo {
                     Iterable<? extends Element> analyze = javacTask.analyze(enter);
 
                     JCCompilationUnit newUnit = unit;
-                    compiledMap.put(fileObject.toUri(), newUnit);
+                    compiledMap.put(uri, newUnit);
+                    compiledContents.put(uri, contents.toString());
+                    if (allowPartialReparse) {
+                        reparseStatistics.record(false, System.nanoTime() - start);
+                    }
 
                     treeConsumer.accept(unit);
                 } catch (Throwable t) {
@@ -171,6 +237,272 @@ public class CompilationInfo {
         });
     }
 
+    /**
+     * Reparses and attributes only the method body that contains the changes between the
+     * previous contents of the file and the given contents.
+     *
+     * @return The updated compilation unit, or null if the changes are not contained in a
+     * single method body or the method could not be reparsed.
+     */
+    @Nullable
+    private JCCompilationUnit reparseMethod(JavaFileObject fileObject, CharSequence contents) throws IOException {
+        URI uri = fileObject.toUri();
+        JCCompilationUnit previous = compiledMap.get(uri);
+        String previousContents = compiledContents.get(uri);
+        if (previous == null || previousContents == null || previous.endPositions == null) {
+            return null;
+        }
+
+        int oldLength = previousContents.length();
+        int newLength = contents.length();
+        int prefix = 0;
+        int max = Math.min(oldLength, newLength);
+        while (prefix < max && previousContents.charAt(prefix) == contents.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return previous;
+        }
+        int suffix = 0;
+        max -= prefix;
+        while (suffix < max && previousContents.charAt(oldLength - suffix - 1) ==
+                               contents.charAt(newLength - suffix - 1)) {
+            suffix++;
+        }
+
+        // the changed region in the previous contents is [prefix, oldLength - suffix)
+        JCMethodDecl method = findEnclosingMethod(previous, prefix, oldLength - suffix);
+        if (method == null) {
+            return null;
+        }
+
+        int bodyStart = TreeInfo.getStartPos(method.body);
+        int bodyEnd = TreeInfo.getEndPos(method.body, previous.endPositions);
+        String newBody = contents.subSequence(bodyStart, bodyEnd + newLength - oldLength).toString();
+
+        JavacTaskImpl javacTask = impl.getJavacTask();
+        NBLog log = NBLog.instance(javacTask.getContext());
+        // diagnostics inside the method body are replaced by the ones reported while attributing
+        // the new body, the ones after it move by the change in length
+        List<JCDiagnostic> diagnostics = log.getDiagnostics(uri);
+        if (diagnostics != null) {
+            updateDiagnostics(diagnostics, bodyStart, bodyEnd, newLength - oldLength,
+                    JCDiagnostic.Factory.instance(javacTask.getContext()),
+                    new DiagnosticSource(fileObject, log));
+        }
+
+        if (!partialReparser.reparseMethod(impl, previousContents, previous, method, newBody)) {
+            return null;
+        }
+
+        char[] chars = contents.toString().toCharArray();
+        previous.sourcefile = fileObject;
+        previous.lineMap = Position.makeLineMap(chars, chars.length, true);
+        return previous;
+    }
+
+    /**
+     * Removes the diagnostics reported in the range [start, end) of the previous contents and
+     * moves the ones after it by {@code delta}.
+     *
+     * <p>The positions of the moved diagnostics are fixed before the method is reparsed, a
+     * diagnostic may point to a tree whose positions are translated by the reparse.
+     *
+     * @param source the source of the new contents, used for the line numbers of the moved
+     *               diagnostics
+     */
+    @VisibleForTesting
+    static void updateDiagnostics(List<JCDiagnostic> diagnostics,
+                                  int start,
+                                  int end,
+                                  int delta,
+                                  JCDiagnostic.Factory factory,
+                                  DiagnosticSource source) {
+        ListIterator<JCDiagnostic> iterator = diagnostics.listIterator();
+        while (iterator.hasNext()) {
+            JCDiagnostic diagnostic = iterator.next();
+            long position = diagnostic.getPosition();
+            if (position == Position.NOPOS || position < start) {
+                continue;
+            }
+            if (position < end) {
+                iterator.remove();
+            } else if (delta != 0) {
+                iterator.set(move(diagnostic, delta, factory, source));
+            }
+        }
+    }
+
+    private static JCDiagnostic move(JCDiagnostic diagnostic,
+                                     int delta,
+                                     JCDiagnostic.Factory factory,
+                                     DiagnosticSource source) {
+        Set<JCDiagnostic.DiagnosticFlag> flags = EnumSet.noneOf(JCDiagnostic.DiagnosticFlag.class);
+        for (JCDiagnostic.DiagnosticFlag flag : JCDiagnostic.DiagnosticFlag.values()) {
+            if (diagnostic.isFlagSet(flag)) {
+                flags.add(flag);
+            }
+        }
+        // the code is <prefix>.<type>.<key>, e.g. compiler.err.cant.resolve
+        String code = diagnostic.getCode();
+        String key = code.substring(code.indexOf('.', code.indexOf('.') + 1) + 1);
+        MovedPosition position = new MovedPosition(move(diagnostic.getStartPosition(), delta),
+                move(diagnostic.getPosition(), delta), move(diagnostic.getEndPosition(), delta));
+        return factory.create(diagnostic.getType(), diagnostic.getLintCategory(), flags, source,
+                position, key, diagnostic.getArgs());
+    }
+
+    private static int move(long position, int delta) {
+        return position == Position.NOPOS ? Position.NOPOS : (int) position + delta;
+    }
+
+    /**
+     * A position that does not depend on a tree, whose positions may change after a reparse.
+     */
+    private static class MovedPosition implements JCDiagnostic.DiagnosticPosition {
+
+        private final int start;
+        private final int preferred;
+        private final int end;
+
+        MovedPosition(int start, int preferred, int end) {
+            this.start = start;
+            this.preferred = preferred;
+            this.end = end;
+        }
+
+        @Override
+        public JCTree getTree() {
+            return null;
+        }
+
+        @Override
+        public int getStartPosition() {
+            return start;
+        }
+
+        @Override
+        public int getPreferredPosition() {
+            return preferred;
+        }
+
+        @Override
+        public int getEndPosition(EndPosTable endPosTable) {
+            return end;
+        }
+    }
+
+    /**
+     * Finds the method declared directly in a class whose body contains the range
+     * [start, end), the opening and closing braces of the body must be outside of the range.
+     */
+    @Nullable
+    private static JCMethodDecl findEnclosingMethod(JCCompilationUnit unit, int start, int end) {
+        for (JCTree tree : unit.getTypeDecls()) {
+            if (tree instanceof JCClassDecl) {
+                JCMethodDecl method = findEnclosingMethod(unit, (JCClassDecl) tree, start, end);
+                if (method != null) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static JCMethodDecl findEnclosingMethod(JCCompilationUnit unit,
+                                                    JCClassDecl classDecl,
+                                                    int start,
+                                                    int end) {
+        for (JCTree member : classDecl.getMembers()) {
+            if (member instanceof JCClassDecl) {
+                JCMethodDecl method = findEnclosingMethod(unit, (JCClassDecl) member, start, end);
+                if (method != null) {
+                    return method;
+                }
+            } else if (member instanceof JCMethodDecl) {
+                JCMethodDecl method = (JCMethodDecl) member;
+                if (method.body == null) {
+                    continue;
+                }
+                int bodyStart = TreeInfo.getStartPos(method.body);
+                int bodyEnd = TreeInfo.getEndPos(method.body, unit.endPositions);
+                if (bodyStart < start && end < bodyEnd) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the time spent updating the compilation units through
+     * {@link #updatePartially(JavaFileObject)}, for both the partial and full reparse.
+     */
+    @NonNull
+    public ReparseStatistics getReparseStatistics() {
+        return reparseStatistics;
+    }
+
+    /**
+     * Keeps track of the latency of partial (method body only) and full reparses.
+     */
+    public static class ReparseStatistics {
+
+        private static final Logger LOGGER = Logger.getLogger("ReparseStatistics");
+
+        private final AtomicLong partialCount = new AtomicLong();
+        private final AtomicLong partialNanos = new AtomicLong();
+        private final AtomicLong fullCount = new AtomicLong();
+        private final AtomicLong fullNanos = new AtomicLong();
+
+        void record(boolean partial, long nanos) {
+            if (partial) {
+                partialCount.incrementAndGet();
+                partialNanos.addAndGet(nanos);
+            } else {
+                fullCount.incrementAndGet();
+                fullNanos.addAndGet(nanos);
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "{0} reparse took {1} ms, {2}",
+                        new Object[]{partial ? "Partial" : "Full", nanos / 1_000_000, this});
+            }
+        }
+
+        public long getPartialCount() {
+            return partialCount.get();
+        }
+
+        public long getFullCount() {
+            return fullCount.get();
+        }
+
+        /**
+         * @return The average latency of a partial reparse in nanoseconds
+         */
+        public long getAveragePartialNanos() {
+            long count = partialCount.get();
+            return count == 0 ? 0 : partialNanos.get() / count;
+        }
+
+        /**
+         * @return The average latency of a full reparse in nanoseconds
+         */
+        public long getAverageFullNanos() {
+            long count = fullCount.get();
+            return count == 0 ? 0 : fullNanos.get() / count;
+        }
+
+        @Override
+        public String toString() {
+            return "ReparseStatistics{" +
+                   "partial=" + getPartialCount() + " (avg " + getAveragePartialNanos() / 1000 + " us)" +
+                   ", full=" + getFullCount() + " (avg " + getAverageFullNanos() / 1000 + " us)" +
+                   '}';
+        }
+    }
+
     public JCCompilationUnit getCompilationUnit(JavaFileObject fileObject) {
         return getCompilationUnit(fileObject.toUri());
     }
@@ -98,10 +98,10 @@ public class DefaultPartialReparser implements PartialReparser {
         }
         final int noInner = fav.noInner;
         final Context ctx = task.getContext();
+        final NBLog l = NBLog.instance(ctx);
+        l.startPartialReparse(cu.getSourceFile());
+        final JavaFileObject prevLogged = l.useSource(cu.getSourceFile());
         try {
-            final NBLog l = NBLog.instance(ctx);
-            l.startPartialReparse(cu.getSourceFile());
-            final JavaFileObject prevLogged = l.useSource(cu.getSourceFile());
 
             long start = System.currentTimeMillis();
             Map<JCTree, LazyDocCommentTable.Entry> docComments = new HashMap<>();
@@ -151,6 +151,9 @@ public class DefaultPartialReparser implements PartialReparser {
             }
             t.printStackTrace();
             return false;
+        } finally {
+            l.endPartialReparse(cu.getSourceFile());
+            l.useSource(prevLogged);
         }
         return true;
     }
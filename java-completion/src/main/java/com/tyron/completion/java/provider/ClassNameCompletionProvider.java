@@ -11,23 +11,23 @@ import com.sun.source.util.TreePath;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.ApplicationProvider;
 import com.tyron.common.SharedPreferenceKeys;
-import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.ShortNamesCache;
 import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.completion.java.insert.ClassImportInsertHandler;
-import com.tyron.completion.java.util.ActionUtil;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.function.Predicate;
 
 public class ClassNameCompletionProvider extends BaseCompletionProvider {
 
+    /**
+     * The maximum number of class names suggested, the index only ranks the matching names
+     * and keeps the best ones.
+     */
+    private static final int MAX_CLASS_NAMES = Completions.MAX_COMPLETION_ITEMS * 2;
+
     public ClassNameCompletionProvider(JavaCompilerService service) {
         super(service);
     }
@@ -68,33 +68,25 @@ public class ClassNameCompletionProvider extends BaseCompletionProvider {
                                                       String partial,
                                                       JavacUtilitiesProvider task,
                                                       boolean caseSensitive) {
-        checkCanceled();
+        return getFullyQualifiedNames(root, partial, task, caseSensitive, MAX_CLASS_NAMES);
+    }
 
-        Predicate<String> predicate;
-        if (caseSensitive) {
-            predicate = string -> StringSearch.matchesPartialName(string, partial);
-        } else {
-            predicate = string -> StringSearch.matchesPartialNameLowercase(string, partial);
-        }
+    /**
+     * Returns the fully qualified names of the classes whose simple name matches the given
+     * partial name by prefix or by camel humps, the best matches come first.
+     *
+     * @param limit The maximum number of names to return
+     */
+    public static List<String> getFullyQualifiedNames(CompilationUnitTree root,
+                                                      String partial,
+                                                      JavacUtilitiesProvider task,
+                                                      boolean caseSensitive,
+                                                      int limit) {
+        checkCanceled();
 
-        Set<String> uniques = new HashSet<>();
         File fileToComplete = new File(root.getSourceFile().toUri());
         final Module module = task.getProject().getModule(fileToComplete);
         ShortNamesCache cache = ShortNamesCache.getInstance(module);
-
-        for (String className : cache.getAllClassNames()) {
-            // more strict on matching class names
-            String simpleName = ActionUtil.getSimpleName(className);
-            if (!predicate.test(simpleName)) {
-                continue;
-            }
-            if (uniques.contains(className)) {
-                continue;
-            }
-
-            uniques.add(className);
-        }
-
-        return new ArrayList<>(uniques);
+        return cache.getClassNameIndex().search(partial, caseSensitive, limit);
     }
 }
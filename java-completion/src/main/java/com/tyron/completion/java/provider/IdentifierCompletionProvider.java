@@ -12,13 +12,22 @@ import com.tyron.common.ApplicationProvider;
 import com.tyron.common.SharedPreferenceKeys;
 import com.tyron.completion.java.compiler.CompileTask;
 import com.tyron.completion.java.compiler.JavaCompilerService;
+import com.tyron.completion.main.ParallelCompletion;
 import com.tyron.completion.model.CompletionList;
 
 import com.sun.source.tree.CaseTree;
 import com.sun.source.util.TreePath;
 
+import java.util.function.Consumer;
+
 public class IdentifierCompletionProvider extends BaseCompletionProvider {
 
+    /**
+     * The maximum time the parts that run alongside the scope members are allowed to take.
+     */
+    private static final long CLASS_NAMES_DEADLINE_MS = 1000;
+    private static final long KEYWORDS_DEADLINE_MS = 500;
+
     public IdentifierCompletionProvider(JavaCompilerService service) {
         super(service);
     }
@@ -37,21 +46,72 @@ public class IdentifierCompletionProvider extends BaseCompletionProvider {
             return;
         }
 
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(
-                ApplicationProvider.getApplicationContext());
-        boolean caseSensitiveMatch =
-                !preferences.getBoolean(SharedPreferenceKeys.JAVA_CASE_INSENSITIVE_MATCH, false);
+        boolean caseSensitiveMatch = isCaseSensitiveMatch();
 
-        ScopeCompletionProvider.addCompletionItems(task, path, partial, endsWithParen, builder);
-        addStaticImports(task, path.getCompilationUnit(), partial, endsWithParen, builder);
-        if (!builder.isIncomplete()) {
-            if (!caseSensitiveMatch ||
-                partial.length() > 0 && Character.isUpperCase(partial.charAt(0))) {
-                addClassNames(path.getCompilationUnit(), partial, builder, task,
-                        caseSensitiveMatch);
-            }
+        addScopeItems(builder, task, path, partial, endsWithParen);
+        if (!builder.isIncomplete() && shouldAddClassNames(partial, caseSensitiveMatch)) {
+            addClassNames(path.getCompilationUnit(), partial, builder, task, caseSensitiveMatch);
         }
 
         KeywordCompletionProvider.addKeywords(task, path, partial, builder);
     }
+
+    /**
+     * Same as {@link #complete(CompletionList.Builder, JavacUtilitiesProvider, TreePath,
+     * String, boolean)}, but the scope members, the class names and the keywords are computed
+     * concurrently and each of them is passed to the consumer as soon as it is ready.
+     *
+     * Only the scope members need javac so they are computed on the calling thread, the class
+     * names come from the {@link com.tyron.completion.java.ShortNamesCache} index and the
+     * keywords only look at the tree, so they can safely run alongside it. As with the
+     * sequential version, the class names are not shown when the scope members are incomplete.
+     */
+    public CompletionList.Builder completeConcurrently(JavacUtilitiesProvider task,
+                                                       TreePath path,
+                                                       String partial,
+                                                       boolean endsWithParen,
+                                                       Consumer<CompletionList> partialResultConsumer) {
+        checkCanceled();
+
+        if (path.getParentPath()
+                .getLeaf() instanceof CaseTree) {
+            CompletionList.Builder builder = CompletionList.builder(partial);
+            completeSwitchConstant(builder, task, path.getParentPath(), partial);
+            return builder;
+        }
+
+        boolean caseSensitiveMatch = isCaseSensitiveMatch();
+        ParallelCompletion parallelCompletion = new ParallelCompletion(partial)
+                .setCallerTask("scope",
+                        builder -> addScopeItems(builder, task, path, partial, endsWithParen))
+                .addTask("keywords", KEYWORDS_DEADLINE_MS,
+                        builder -> KeywordCompletionProvider.addKeywords(task, path, partial,
+                                builder));
+        if (shouldAddClassNames(partial, caseSensitiveMatch)) {
+            parallelCompletion.addTask("class names", CLASS_NAMES_DEADLINE_MS,
+                    builder -> addClassNames(path.getCompilationUnit(), partial, builder, task,
+                            caseSensitiveMatch), true);
+        }
+        return parallelCompletion.run(partialResultConsumer);
+    }
+
+    private static void addScopeItems(CompletionList.Builder builder,
+                                      JavacUtilitiesProvider task,
+                                      TreePath path,
+                                      String partial,
+                                      boolean endsWithParen) {
+        ScopeCompletionProvider.addCompletionItems(task, path, partial, endsWithParen, builder);
+        addStaticImports(task, path.getCompilationUnit(), partial, endsWithParen, builder);
+    }
+
+    private static boolean shouldAddClassNames(String partial, boolean caseSensitiveMatch) {
+        return !caseSensitiveMatch ||
+               partial.length() > 0 && Character.isUpperCase(partial.charAt(0));
+    }
+
+    private static boolean isCaseSensitiveMatch() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(
+                ApplicationProvider.getApplicationContext());
+        return !preferences.getBoolean(SharedPreferenceKeys.JAVA_CASE_INSENSITIVE_MATCH, false);
+    }
 }
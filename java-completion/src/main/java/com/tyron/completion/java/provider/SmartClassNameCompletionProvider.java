@@ -18,6 +18,12 @@ import javax.lang.model.util.Types;
 
 public class SmartClassNameCompletionProvider extends BaseCompletionProvider {
 
+    /**
+     * The number of best matching class names that are checked for assignability, most of
+     * them are filtered out so this is larger than the number of suggested items.
+     */
+    private static final int MAX_CANDIDATES = 1000;
+
     public SmartClassNameCompletionProvider(JavaCompilerService service) {
         super(service);
     }
@@ -42,7 +48,8 @@ public class SmartClassNameCompletionProvider extends BaseCompletionProvider {
                 ClassNameCompletionProvider.getFullyQualifiedNames(path.getCompilationUnit(),
                         partial,
                         task,
-                        true);
+                        true,
+                        MAX_CANDIDATES);
         for (String fullyQualifiedName : fullyQualifiedNames) {
             TypeElement typeElement = task.getElements().getTypeElement(fullyQualifiedName);
             if (typeElement == null) {
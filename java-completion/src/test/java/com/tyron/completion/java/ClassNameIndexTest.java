@@ -0,0 +1,56 @@
+package com.tyron.completion.java;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class ClassNameIndexTest {
+
+    private final ClassNameIndex mIndex = new ClassNameIndex(new String[]{
+            "java.lang.StringBuilder",
+            "java.lang.StringBuffer",
+            "java.lang.String",
+            "java.util.Set",
+            "java.util.SortedSet",
+            "android.text.SpannableStringBuilder",
+            "com.test.string"
+    });
+
+    @Test
+    public void testPrefix() {
+        List<String> result = mIndex.search("String", true, 10);
+        assert result.size() == 3;
+        // exact match first, then the shorter names
+        assert result.get(0).equals("java.lang.String");
+        assert result.contains("java.lang.StringBuilder");
+        assert result.contains("java.lang.StringBuffer");
+
+        result = mIndex.search("string", false, 10);
+        assert result.size() == 4;
+        assert result.get(0).equals("com.test.string");
+    }
+
+    @Test
+    public void testCamelHumps() {
+        List<String> result = mIndex.search("SBu", true, 10);
+        assert result.size() == 2;
+        assert result.contains("java.lang.StringBuilder");
+        assert result.contains("java.lang.StringBuffer");
+
+        result = mIndex.search("SBui", true, 10);
+        assert result.size() == 1;
+        assert result.get(0).equals("java.lang.StringBuilder");
+
+        result = mIndex.search("SSB", true, 10);
+        assert result.size() == 1;
+        assert result.get(0).equals("android.text.SpannableStringBuilder");
+    }
+
+    @Test
+    public void testLimit() {
+        List<String> result = mIndex.search("S", true, 2);
+        assert result.size() == 2;
+        assert result.get(0).equals("java.util.Set");
+        assert result.get(1).equals("java.lang.String");
+    }
+}
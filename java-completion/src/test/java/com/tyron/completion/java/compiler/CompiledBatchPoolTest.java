@@ -0,0 +1,143 @@
+package com.tyron.completion.java.compiler;
+
+import static com.tyron.completion.TestUtil.resolveBasePath;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.TestUtil;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+
+/**
+ * Checks when {@link JavaCompilerService} reuses a compiled batch and when it compiles again.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class CompiledBatchPoolTest {
+
+    private static final String[] CLASSES = {
+            "com.tyron.test.MemberSelect",
+            "com.tyron.test.InheritedMembers",
+            "com.tyron.test.CompleteIdentifier",
+            "com.tyron.test.Scope"
+    };
+
+    private MockAndroidModule mModule;
+    private JavaCompilerService mService;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, provider);
+
+        File root = new File(TestUtil.resolveBasePath(), "EmptyProject");
+        MockFileManager fileManager = new MockFileManager(root);
+        Project project = new Project(root);
+        mModule = new MockAndroidModule(root, fileManager);
+        mModule.open();
+
+        File[] testFiles = new File(root, "completion").listFiles(c -> c.getName().endsWith(
+                ".java"));
+        if (testFiles != null) {
+            for (File testFile : testFiles) {
+                mModule.addJavaFile(testFile);
+            }
+        }
+
+        mService = provider.get(project, mModule);
+    }
+
+    @Test
+    public void testUnchangedBatchIsReused() {
+        CompileBatch batch = compile(CLASSES[0]);
+        assertSame(batch, compile(CLASSES[0]));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedBatchIsEvicted() {
+        CompileBatch first = compile(CLASSES[0]);
+        for (int i = 1; i < CLASSES.length; i++) {
+            compile(CLASSES[i]);
+        }
+        // fewer batches may be kept if the heap is running low
+        assertTrue(mService.getCachedBatchCount() <= 3);
+
+        // the most recently used batches are still reused
+        CompileBatch last = mService.getCompileBatch();
+        assertSame(last, compile(CLASSES[CLASSES.length - 1]));
+        assertNotSame(first, compile(CLASSES[0]));
+        assertTrue(mService.getCachedBatchCount() <= 3);
+    }
+
+    @Test
+    public void testBatchIsCompiledAgainWhenAnotherFileChanges() {
+        CompileBatch batch = compile(CLASSES[0]);
+
+        // the context of the batch may have loaded the other file from the source path
+        mService.invalidate(getFile(CLASSES[1]).toPath());
+        CompileBatch recompiled = compile(CLASSES[0]);
+        assertNotSame(batch, recompiled);
+        assertSame(recompiled, compile(CLASSES[0]));
+    }
+
+    @Test
+    public void testFailedCompileReleasesTheCompiler() {
+        File file = getFile(CLASSES[0]);
+        SourceFileObject broken = new SourceFileObject(file.toPath(),
+                "package com.tyron.test; public class MemberSelect { int i = ; }", Instant.now());
+        mService.setDiagnosticListener(diagnostic -> {
+            if (diagnostic != null) {
+                throw new IllegalStateException("Listener failed");
+            }
+        });
+        try {
+            mService.compile(Collections.singletonList(broken));
+            throw new AssertionError("The compile did not fail");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        mService.setDiagnosticListener(null);
+        for (int i = 0; i < 3; i++) {
+            // the compiler has been returned so it can be borrowed again
+            assertNotNull(compile(CLASSES[0]));
+            mService.invalidate(file.toPath());
+        }
+    }
+
+    private CompileBatch compile(String className) {
+        mService.compile(getFile(className).toPath()).run(task -> {});
+        return mService.getCompileBatch();
+    }
+
+    private File getFile(String className) {
+        File file = mModule.getJavaFile(className);
+        assertNotNull(file);
+        return file;
+    }
+}
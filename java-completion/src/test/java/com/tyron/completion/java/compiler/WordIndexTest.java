@@ -0,0 +1,100 @@
+package com.tyron.completion.java.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class WordIndexTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final WordIndex mIndex = new WordIndex();
+
+    @Test
+    public void testAddFile() throws IOException {
+        Path first = write("First.java", "class First { int count = 10L; void run() {} }");
+        Path second = write("Second.java", "class Second { First first; }");
+        List<Path> files = Arrays.asList(first, second);
+
+        assertEquals(new HashSet<>(files), mIndex.findFiles(files, "First"));
+        assertEquals(Collections.singleton(first), mIndex.findFiles(files, "run"));
+        assertTrue(mIndex.containsWord(second, "first"));
+        // only whole identifiers are indexed
+        assertFalse(mIndex.containsWord(first, "Fir"));
+        assertFalse(mIndex.containsWord(first, "10L"));
+        assertTrue(mIndex.findFiles(files, "missing").isEmpty());
+    }
+
+    @Test
+    public void testUpdateFromSnapshot() throws IOException {
+        Path file = write("Test.java", "class Test { void before() {} }");
+        assertTrue(mIndex.containsWord(file, "before"));
+
+        mIndex.onSnapshotChanged(file.toFile(), "class Test { void after() {} }");
+        assertFalse(mIndex.containsWord(file, "before"));
+        assertTrue(mIndex.containsWord(file, "after"));
+        assertTrue(mIndex.containsWord(file, "Test"));
+    }
+
+    @Test
+    public void testUpdateFromDisk() throws IOException {
+        Path file = write("Test.java", "class Test { void before() {} }");
+        assertTrue(mIndex.containsWord(file, "before"));
+
+        // indexed files are not checked against the disk until they are invalidated
+        write("Test.java", "class Test { void after() {} }");
+        assertTrue(mIndex.containsWord(file, "before"));
+
+        mIndex.invalidate(file);
+        assertFalse(mIndex.containsWord(file, "before"));
+        assertTrue(mIndex.containsWord(file, "after"));
+    }
+
+    @Test
+    public void testDeletedFileIsEvicted() throws IOException {
+        Path deleted = write("Deleted.java", "class Deleted { void shared() {} }");
+        Path kept = write("Kept.java", "class Kept { void shared() {} }");
+        List<Path> files = Arrays.asList(deleted, kept);
+        assertEquals(new HashSet<>(files), mIndex.findFiles(files, "shared"));
+
+        // deleted without notifying the index
+        Files.delete(deleted);
+        assertEquals(Collections.singleton(kept), mIndex.findFiles(files, "shared"));
+        assertFalse(mIndex.containsWord(deleted, "Deleted"));
+        assertTrue(mIndex.findFiles(Collections.singletonList(deleted), "Deleted").isEmpty());
+    }
+
+    @Test
+    public void testRemoveFile() throws IOException {
+        Path removed = write("Removed.java", "class Removed { void shared() {} }");
+        Path kept = write("Kept.java", "class Kept { void shared() {} }");
+        List<Path> files = Arrays.asList(removed, kept);
+        assertEquals(new HashSet<>(files), mIndex.findFiles(files, "shared"));
+
+        mIndex.remove(removed);
+        Files.delete(removed);
+        assertEquals(Collections.singleton(kept), mIndex.findFiles(files, "shared"));
+        assertTrue(mIndex.findFiles(files, "Removed").isEmpty());
+    }
+
+    private Path write(String name, String contents) throws IOException {
+        File file = new File(mFolder.getRoot(), name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file.toPath();
+    }
+}
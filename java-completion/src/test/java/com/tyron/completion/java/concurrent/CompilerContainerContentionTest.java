@@ -0,0 +1,182 @@
+package com.tyron.completion.java.concurrent;
+
+import static com.tyron.completion.TestUtil.resolveBasePath;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.TestUtil;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+import com.tyron.completion.java.compiler.CompileBatch;
+import com.tyron.completion.java.compiler.CompilerContainer;
+import com.tyron.completion.java.compiler.JavaCompilerService;
+import com.tyron.completion.java.compiler.ReusableCompiler;
+import com.tyron.completion.progress.ProcessCanceledException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that {@link CompilerContainer#get} callers and edits arriving at the same time all make
+ * progress and that reads never fail with anything but a cancellation.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class CompilerContainerContentionTest {
+
+    private static final int READERS = 4;
+    private static final long DURATION_MILLIS = 500;
+    private static final long EDIT_INTERVAL_MILLIS = 50;
+
+    private MockAndroidModule mModule;
+    private JavaCompilerService mService;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs" + ".jar"));
+
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, provider);
+
+        File root = new File(TestUtil.resolveBasePath(), "EmptyProject");
+        MockFileManager fileManager = new MockFileManager(root);
+        Project project = new Project(root);
+        mModule = new MockAndroidModule(root, fileManager);
+        mModule.open();
+
+        File[] testFiles = new File(root, "completion").listFiles(c -> c.getName().endsWith(
+                ".java"));
+        if (testFiles != null) {
+            for (File testFile : testFiles) {
+                mModule.addJavaFile(testFile);
+            }
+        }
+
+        mService = provider.get(project, mModule);
+    }
+
+    @Test
+    public void testConcurrentReadsAreDisabledByDefault() {
+        assertFalse(CompilerContainer.isConcurrentReads());
+    }
+
+    @Test
+    public void testCanceledReadIsNotReused() {
+        File file = mModule.getJavaFile("com.tyron.test.MemberSelect");
+        assertNotNull(file);
+
+        mService.compile(file.toPath()).run(task -> {});
+        CompileBatch batch = mService.getCompileBatch();
+        mService.compile(file.toPath()).run(task -> {});
+        assertSame(batch, mService.getCompileBatch());
+
+        CompilerContainer container = mService.compile(file.toPath());
+        try {
+            container.run(task -> {
+                ReusableCompiler.CancelServiceImpl cancelService =
+                        mService.compiler.getCancelService();
+                cancelService.cancel();
+                cancelService.abortIfCanceled();
+            });
+            throw new AssertionError("The read was not canceled");
+        } catch (ProcessCanceledException e) {
+            // expected
+        }
+        assertTrue(batch.dirty);
+
+        mService.compile(file.toPath()).run(task -> {});
+        assertNotSame(batch, mService.getCompileBatch());
+    }
+
+    @Test
+    public void testReadsAndEditsMakeProgress() throws InterruptedException {
+        File file = mModule.getJavaFile("com.tyron.test.MemberSelect");
+        assertNotNull(file);
+
+        // warm up the compiler
+        mService.compile(file.toPath()).run(task -> {});
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong edits = new AtomicLong();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(READERS + 1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    CompilerContainer container = mService.getCachedContainer();
+                    while (running.get()) {
+                        try {
+                            if (container.get(task -> task.root(file)) == null) {
+                                failures.add(new AssertionError("Read returned no tree"));
+                            }
+                            reads.incrementAndGet();
+                        } catch (ProcessCanceledException e) {
+                            // a read may be canceled by an edit
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    done.countDown();
+                }
+            }, "Reader #" + i));
+        }
+
+        threads.add(new Thread(() -> {
+            try {
+                while (running.get()) {
+                    SourceFileObject source =
+                            new SourceFileObject(file.toPath(), mModule, Instant.now());
+                    mService.compile(Collections.singletonList(source));
+                    edits.incrementAndGet();
+                    Thread.sleep(EDIT_INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException ignored) {
+                // stop editing
+            } catch (Throwable t) {
+                failures.add(t);
+            } finally {
+                done.countDown();
+            }
+        }, "Writer"));
+
+        threads.forEach(Thread::start);
+        Thread.sleep(DURATION_MILLIS);
+        running.set(false);
+
+        assertTrue("Threads did not finish", done.await(30, TimeUnit.SECONDS));
+        assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+        assertTrue(reads.get() > 0);
+        assertTrue(edits.get() > 0);
+    }
+}
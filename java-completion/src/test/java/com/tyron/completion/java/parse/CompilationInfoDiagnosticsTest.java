@@ -0,0 +1,92 @@
+package com.tyron.completion.java.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.DiagnosticSource;
+import com.sun.tools.javac.util.JCDiagnostic;
+import com.tyron.completion.java.compiler.services.NBLog;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+public class CompilationInfoDiagnosticsTest {
+
+    private static final String CONTENTS = "class Test {\n" +
+                                           "    int field = \"0\";\n" +
+                                           "    void first() {\n" +
+                                           "        String value = 1;\n" +
+                                           "    }\n" +
+                                           "    void second() {\n" +
+                                           "        int count = \"2\";\n" +
+                                           "    }\n" +
+                                           "}\n";
+
+    @Test
+    public void testOnlyDiagnosticsOfTheEditedMethodAreRemoved() throws Exception {
+        Context context = new Context();
+        NBLog.preRegister(context, new PrintWriter(new StringWriter()));
+        JavaFileObject file = new SourceFile(CONTENTS);
+        JavacTaskImpl task = (JavacTaskImpl) JavacTool.create().getTask(null, null, null,
+                Collections.singletonList("-proc:none"), null, Collections.singletonList(file),
+                context);
+        task.analyze();
+
+        NBLog log = NBLog.instance(context);
+        List<JCDiagnostic> diagnostics = new ArrayList<>(log.getDiagnostics(file.toUri()));
+        assertEquals(3, diagnostics.size());
+        JCDiagnostic field = diagnostics.get(0);
+        JCDiagnostic second = diagnostics.get(2);
+        assertEquals(7, second.getLineNumber());
+
+        // only the body of the first method changes, a line is added to it
+        int bodyStart = CONTENTS.indexOf('{', CONTENTS.indexOf("first()"));
+        int bodyEnd = CONTENTS.indexOf('}', bodyStart) + 1;
+        String newContents = CONTENTS.replace("String value = 1;", "String value = \"1\";\n        value = 1;");
+        int delta = newContents.length() - CONTENTS.length();
+
+        JavaFileObject newFile = new SourceFile(newContents);
+        CompilationInfo.updateDiagnostics(diagnostics, bodyStart, bodyEnd, delta,
+                JCDiagnostic.Factory.instance(context), new DiagnosticSource(newFile, log));
+
+        assertEquals(2, diagnostics.size());
+        assertSame(field, diagnostics.get(0));
+
+        JCDiagnostic moved = diagnostics.get(1);
+        assertEquals(second.getCode(), moved.getCode());
+        assertEquals(second.getKind(), moved.getKind());
+        assertEquals(second.getMessage(Locale.ROOT), moved.getMessage(Locale.ROOT));
+        assertEquals(newContents.indexOf("\"2\""), moved.getPosition());
+        assertEquals(second.getStartPosition() + delta, moved.getStartPosition());
+        assertEquals(second.getEndPosition() + delta, moved.getEndPosition());
+        assertEquals(8, moved.getLineNumber());
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+
+        private final String contents;
+
+        SourceFile(String contents) {
+            super(URI.create("file:///Test.java"), Kind.SOURCE);
+            this.contents = contents;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return contents;
+        }
+    }
+}
@@ -89,6 +89,17 @@ public class CompilerClassPath implements Closeable {
         dest.addAll(added);
     }
 
+    /**
+     * @return The compiled jars of the current class path
+     */
+    public Set<File> getClassPathFiles() {
+        synchronized (mClassPath) {
+            return mClassPath.stream()
+                    .map(entry -> entry.getCompiledJar().toFile())
+                    .collect(Collectors.toSet());
+        }
+    }
+
     public Compiler getCompiler() {
         return compiler;
     }
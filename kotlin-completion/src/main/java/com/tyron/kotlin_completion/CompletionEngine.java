@@ -1,5 +1,10 @@
 package com.tyron.kotlin_completion;
 
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.BuildModule;
 import com.tyron.builder.model.DiagnosticWrapper;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.common.util.Debouncer;
@@ -8,6 +13,7 @@ import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.kotlin_completion.completion.Completions;
 import com.tyron.kotlin_completion.diagnostic.ConvertDiagnosticKt;
+import com.tyron.kotlin_completion.index.SymbolIndex;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
 import com.tyron.kotlin_completion.util.StringUtilsKt;
 
@@ -53,7 +59,23 @@ public class CompletionEngine {
     private CompletionEngine(AndroidModule project) {
         mProject = project;
         classPath = new CompilerClassPath(project);
-        sp = new SourcePath(classPath);
+        sp = new SourcePath(classPath, getIndexDirectory(project));
+    }
+
+    /**
+     * @return The directory where the symbol index of the module is saved, or null if the
+     * module has not been initialized. It is kept outside of the build directory so cleaning
+     * the project does not delete the database while it is open.
+     */
+    @Nullable
+    private static File getIndexDirectory(AndroidModule module) {
+        Context context = BuildModule.getContext();
+        if (context == null) {
+            return null;
+        }
+        File root = module.getRootFile();
+        String name = root.getName() + "-" + Integer.toHexString(root.getAbsolutePath().hashCode());
+        return new File(context.getCacheDir(), "kotlin-symbol-index/" + name);
     }
 
     private static volatile CompletionEngine INSTANCE = null;
@@ -64,6 +86,7 @@ public class CompletionEngine {
         } else {
             if (project != INSTANCE.mProject) {
                 LOG.debug("Creating new instance");
+                INSTANCE.sp.close();
                 INSTANCE = new CompletionEngine(project);
             }
         }
@@ -71,7 +94,8 @@ public class CompletionEngine {
     }
 
     public boolean isIndexing() {
-        return sp.getIndex().getIndexing();
+        SymbolIndex index = sp.getIndex();
+        return index != null && index.getIndexing();
     }
 
     public SourcePath getSourcePath() {
@@ -2,6 +2,9 @@ package com.tyron.kotlin_completion;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import com.tyron.kotlin_completion.compiler.CompletionKind;
 import com.tyron.kotlin_completion.index.SymbolIndex;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
@@ -26,9 +29,10 @@ import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -43,62 +47,117 @@ public class SourcePath {
     private static final Logger LOG = LoggerFactory.getLogger(SourcePath.class);
 
     private final CompilerClassPath cp;
-    private final Map<URI, SourceFile> files = new HashMap<>();
-    private final FakeLock parsedDataWriteLock = new FakeLock();
-
-    public static class FakeLock {
-        public void lock() {}
-        public void unlock() {}
-    }
+    private final Map<URI, SourceFile> files = new ConcurrentHashMap<>();
 
     private final AsyncExecutor indexAsync = new AsyncExecutor();
-    private final SymbolIndex index = new SymbolIndex();
-    private boolean indexEnabled = false;
-    private boolean indexInitialized;
+    @Nullable
+    private final SymbolIndex index;
+    private final boolean indexEnabled;
+    private volatile boolean indexInitialized;
 
 
     public SourcePath(CompilerClassPath classPath) {
+        this(classPath, null);
+    }
+
+    /**
+     * @param indexDirectory The directory where the symbol index is saved so it can be reused
+     *                       after a restart, if null the symbols are not indexed and no
+     *                       database is opened
+     */
+    public SourcePath(CompilerClassPath classPath, @Nullable File indexDirectory) {
         cp = classPath;
+        indexEnabled = indexDirectory != null;
+        index = indexEnabled ? new SymbolIndex(indexDirectory) : null;
     }
 
     public CompilerClassPath getCompilerClassPath() {
         return cp;
     }
 
+    /**
+     * @return The index of the top level symbols, or null if indexing is disabled
+     */
+    @Nullable
     public SymbolIndex getIndex() {
         return index;
     }
 
+    /**
+     * Closes the symbol index once the pending updates have been written, the source path
+     * should not be used afterwards
+     */
+    public void close() {
+        close(false);
+    }
+
+    /**
+     * @param await Whether to wait until the pending updates have been written and the index
+     *              is closed
+     */
+    @VisibleForTesting
+    void close(boolean await) {
+        if (indexEnabled) {
+            indexAsync.execute(index::close);
+        }
+        indexAsync.shutdown(await);
+    }
+
+    /**
+     * The result of compiling a source file. A new instance is published each time the file
+     * is compiled so readers always see a file, context and container that belong together.
+     */
+    private static class Compiled {
+        private final KtFile file;
+        private final BindingContext context;
+        private final ComponentProvider container;
+
+        private Compiled(KtFile file, BindingContext context, ComponentProvider container) {
+            this.file = file;
+            this.context = context;
+            this.container = container;
+        }
+    }
+
+    /**
+     * A source file tracked by this source path.
+     *
+     * <p>
+     * Each file has its own locks, so different files can be parsed, compiled and completed
+     * at the same time. {@link #parseLock} guards parsing and is never held while acquiring
+     * another lock. {@link #compileLock} keeps two threads from compiling the same file at
+     * once, it is held while the other files are parsed and while the {@link
+     * com.tyron.kotlin_completion.compiler.Compiler} is analyzing. Readers never lock, they
+     * read the volatile {@link #parsed} and {@link #compiled} snapshots.
+     * </p>
+     */
     public class SourceFile {
 
         private final URI uri;
-        private String content;
+        private volatile String content;
         private final Path path;
-        private KtFile parsed;
-        private KtFile compiledFile;
-        public BindingContext compiledContext;
-        private ComponentProvider compiledcontainer;
+        private volatile KtFile parsed;
+        private volatile Compiled compiled;
         private final Language language;
         private final boolean isTemporary;
 
+        private final ReentrantLock parseLock = new ReentrantLock();
+        private final ReentrantLock compileLock = new ReentrantLock();
+
         private final String extension;
         private final CompletionKind kind = CompletionKind.DEFAULT;
 
         public SourceFile(URI uri, String content, Language language, boolean isTemporary) {
-            this(uri, content, Paths.get(uri), null, null, null, null, language, isTemporary);
+            this(uri, content, Paths.get(uri), language, isTemporary);
         }
         public SourceFile(URI uri, String content, Language language) {
-            this(uri, content, Paths.get(uri), null, null, null, null, language, false);
+            this(uri, content, Paths.get(uri), language, false);
         }
 
-        private SourceFile(URI uri, String content, Path path, KtFile parsed, KtFile compiledFile, BindingContext compiledContext, ComponentProvider compiledcontainer, Language language, boolean isTemporary) {
+        private SourceFile(URI uri, String content, Path path, Language language, boolean isTemporary) {
             this.uri = uri;
             this.content = content;
             this.path = path;
-            this.parsed = parsed;
-            this.compiledFile = compiledFile;
-            this.compiledContext = compiledContext;
-            this.compiledcontainer = compiledcontainer;
             this.language = language;
             this.isTemporary = isTemporary;
 
@@ -110,61 +169,102 @@ public class SourcePath {
         }
 
         public void clean() {
-            parsed = null;
-            compiledFile = null;
-            compiledContext = null;
-            compiledcontainer = null;
+            parseLock.lock();
+            try {
+                parsed = null;
+                compiled = null;
+            } finally {
+                parseLock.unlock();
+            }
         }
 
-        public void parse() {
+        public BindingContext getCompiledContext() {
+            Compiled current = compiled;
+            return current == null ? null : current.context;
+        }
+
+        public KtFile parse() {
+            parseLock.lock();
+            try {
+                return doParse(content);
+            } finally {
+                parseLock.unlock();
+            }
+        }
+
+        private KtFile doParse(String text) {
             LOG.debug("Parsing file " + path);
-            parsed = cp.getCompiler().createKtFile(content, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            KtFile file = cp.getCompiler().createKtFile(text, (path == null ? Paths.get("sourceFile.virtual" + extension) : path), kind);
+            parsed = file;
+            return file;
         }
 
-        public void parseIfChanged() {
-            if (parsed == null || !content.equals(parsed.getText())) {
-                LOG.debug("Parse has changed, parsing.");
-                parse();
+        public KtFile parseIfChanged() {
+            KtFile current = parsed;
+            String text = content;
+            if (current != null && text.equals(current.getText())) {
+                return current;
+            }
+
+            parseLock.lock();
+            try {
+                // another thread may have parsed the same content while we were waiting
+                current = parsed;
+                text = content;
+                if (current == null || !text.equals(current.getText())) {
+                    LOG.debug("Parse has changed, parsing.");
+                    current = doParse(text);
+                }
+                return current;
+            } finally {
+                parseLock.unlock();
             }
         }
 
         public void compileIfNull() {
-            if (compiledFile == null) {
-                parseIfChanged();
-                doCompileIfChanged();
+            if (compiled == null) {
+                compileIfChanged();
             }
         }
 
         private void compile() {
-            parse();
-            doCompile();
+            compileLock.lock();
+            try {
+                doCompile(parse());
+            } finally {
+                compileLock.unlock();
+            }
         }
 
         private void compileIfChanged() {
-            parseIfChanged();
-            doCompileIfChanged();
-        }
-
-        private void doCompileIfChanged() {
-            if (parsed == null || compiledFile == null || !parsed.getText().equals(compiledFile.getText())) {
-                doCompile();;
+            compileLock.lock();
+            try {
+                KtFile file = parseIfChanged();
+                Compiled current = compiled;
+                if (current == null || !file.getText().equals(current.file.getText())) {
+                    doCompile(file);
+                }
+            } finally {
+                compileLock.unlock();
             }
         }
 
-        private void doCompile() {
+        private void doCompile(KtFile file) {
+            Compiled result = compiled;
             if (this.path.toFile().getName().endsWith(".kt")) {
-                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(parsed, allIncludingThis());
-                parsedDataWriteLock.lock();
-                try {
-                    compiledContext = pair.getFirst();
-                    compiledcontainer = pair.getSecond();
-                    compiledFile = parsed;
-                } finally {
-                    parsedDataWriteLock.unlock();
-                }
+                Pair<BindingContext, ComponentProvider> pair = cp.getCompiler().compileKtFile(file, allIncluding(file));
+                result = new Compiled(file, pair.getFirst(), pair.getSecond());
+                compiled = result;
+            }
+            if (result == null) {
+                return;
+            }
+            initializeIndexAsyncIfNeeded(result.container);
+            if (!isTemporary) {
+                updateIndexAsync(Collections.singletonList(file), result.context);
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
         }
+
         public CompiledFile prepareCompiledFile() {
             parseIfChanged();
             compileIfNull();
@@ -172,14 +272,21 @@ public class SourcePath {
         }
 
         public CompiledFile doPrepareCompiledFile() {
-            return new CompiledFile(content, compiledFile, compiledContext, compiledcontainer, allIncludingThis(), cp);
+            Compiled current = compiled;
+            if (current == null) {
+                return new CompiledFile(content, null, null, null, allIncludingThis(), cp);
+            }
+            return new CompiledFile(content, current.file, current.context, current.container, allIncludingThis(), cp);
         }
 
         private Collection<KtFile> allIncludingThis() {
-            parseIfChanged();
+            return allIncluding(parseIfChanged());
+        }
+
+        private Collection<KtFile> allIncluding(KtFile file) {
             if (isTemporary) {
                 Set<KtFile> all = all(false);
-                Sequence<KtFile> plus = SequencesKt.plus(SequencesKt.asSequence(all.iterator()), SequencesKt.sequenceOf(parsed));
+                Sequence<KtFile> plus = SequencesKt.plus(SequencesKt.asSequence(all.iterator()), SequencesKt.sequenceOf(file));
                 return SequencesKt.toList(plus);
             } else {
                 return all(false);
@@ -196,11 +303,13 @@ public class SourcePath {
             LOG.debug("Adding temporary file");
         }
 
-        if (files.containsKey(file.toURI())) {
-            sourceFile(file).put(content);
-        } else {
-            files.put(file.toURI(), new SourceFile(file.toURI(), content, KotlinLanguage.INSTANCE, temp));
-        }
+        files.compute(file.toURI(), (uri, existing) -> {
+            if (existing != null) {
+                existing.put(content);
+                return existing;
+            }
+            return new SourceFile(uri, content, KotlinLanguage.INSTANCE, temp);
+        });
     }
 
     public boolean deleteIfTemporary(File uri) {
@@ -213,16 +322,20 @@ public class SourcePath {
     }
 
     public void delete(File file) {
-        files.remove(file.toURI());
+        SourceFile removed = files.remove(file.toURI());
+        if (indexEnabled && removed != null && !removed.isTemporary) {
+            indexAsync.execute(() -> index.removeSources(Collections.singletonList(file)));
+        }
     }
 
     public BindingContext compileFiles(Collection<File> all) {
         Set<SourceFile> sources = all.stream().map(o -> files.get(o.toURI())).collect(Collectors.toSet());
         Set<SourceFile> allChanged = sources.stream().filter(it -> {
-            if (it.compiledFile == null) {
+            Compiled compiled = it.compiled;
+            if (compiled == null) {
                 return true;
             }
-            return !it.content.equals(it.compiledFile.getText());
+            return !it.content.equals(compiled.file.getText());
         })
                 .collect(Collectors.toSet());
         BindingContext sourcesContext = compileAndUpdate(allChanged);
@@ -233,37 +346,54 @@ public class SourcePath {
         indexAsync.execute(() -> {
             if (indexEnabled && !indexInitialized) {
                 ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
+                // only the classpath entries and files that changed since the index was saved
+                // are indexed
+                index.refresh(module, cp.getClassPathFiles(), all(false), false);
                 indexInitialized = true;
             }
         });
     }
 
+    /**
+     * Replaces the symbols of the given files in the index once it has been initialized,
+     * the initial refresh indexes the source files that changed while it was not loaded.
+     */
+    private void updateIndexAsync(Collection<KtFile> changed, BindingContext context) {
+        if (context == null) {
+            return;
+        }
+        indexAsync.execute(() -> {
+            if (indexEnabled && indexInitialized) {
+                index.updateSources(changed, context);
+            }
+        });
+    }
+
 
     private BindingContext compileAndUpdate(Set<SourceFile> changed) {
         if (changed.isEmpty()) return null;
-        Map<SourceFile, KtFile> parse = CollectionsKt.associateWith(changed, sourceFile -> {
-            sourceFile.parseIfChanged();
-            return sourceFile.parsed;
-        });
+        Map<SourceFile, KtFile> parse = CollectionsKt.associateWith(changed, SourceFile::parseIfChanged);
         Set<KtFile> all = all(false);
         Pair<BindingContext, ComponentProvider> pair = cp.getCompiler()
                 .compileKtFiles(parse.values(), all, CompletionKind.DEFAULT);
 
         parse.forEach((f, parsed) -> {
-            parsedDataWriteLock.lock();
+            f.parseLock.lock();
             try {
-                if (f.parsed.equals(parsed)) {
-                    f.compiledFile = parsed;
-                    f.compiledContext = pair.getFirst();
-                    f.compiledcontainer = pair.getSecond();
+                // the file may have been parsed again while it was being compiled
+                if (parsed.equals(f.parsed)) {
+                    f.compiled = new Compiled(parsed, pair.getFirst(), pair.getSecond());
                 }
             } finally {
-                parsedDataWriteLock.unlock();
+                f.parseLock.unlock();
             }
         });
 
         initializeIndexAsyncIfNeeded(pair.getSecond());
+        updateIndexAsync(parse.entrySet().stream()
+                .filter(entry -> !entry.getKey().isTemporary)
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList()), pair.getFirst());
         return pair.getFirst();
     }
 
@@ -278,25 +408,35 @@ public class SourcePath {
         return sourceFile.prepareCompiledFile();
     }
 
+    /**
+     * Parses the latest contents of the file if needed without compiling it.
+     */
+    public KtFile parsedVersion(File file) {
+        return sourceFile(file).parseIfChanged();
+    }
+
     private SourceFile sourceFile(File file) {
-        if (!files.containsKey(file.toURI())) {
-            String string;
-            try {
-                string = FileUtils.readFileToString(file, Charset.defaultCharset());
-            } catch (IOException e) {
-                string = "";
-            }
-            put(file, string, true);
+        SourceFile sourceFile = files.get(file.toURI());
+        if (sourceFile != null) {
+            return sourceFile;
         }
-        return files.get(file.toURI());
+
+        String string;
+        try {
+            string = FileUtils.readFileToString(file, Charset.defaultCharset());
+        } catch (IOException e) {
+            string = "";
+        }
+        // another thread may have put the file while it was being read
+        return files.computeIfAbsent(file.toURI(), uri ->
+                new SourceFile(uri, string, KotlinLanguage.INSTANCE, true));
     }
+
     private Set<KtFile> all(boolean includeHidden) {
         return files.values().stream()
                 .filter(it -> includeHidden || !it.isTemporary)
-                .map(it -> {
-                    it.parseIfChanged();
-                    return it.parsed;
-                }).collect(Collectors.toSet());
+                .map(SourceFile::parseIfChanged)
+                .collect(Collectors.toSet());
     }
 
 }
@@ -42,7 +42,7 @@ const val MAX_COMPLETION_ITEMS = 50
 fun completions(
     file: CompiledFile,
     cursor: Int,
-    index: SymbolIndex,
+    index: SymbolIndex?,
     partial: String
 ): CompletionList {
 
@@ -52,7 +52,7 @@ fun completions(
     val elementItemLabels = elementItemList.mapNotNull { it.label }.toSet()
 //
     val items = (elementItemList.asSequence()
-            + (if (!isExhaustive) indexCompletionItems(
+            + (if (!isExhaustive && index != null) indexCompletionItems(
         file,
         cursor,
         receiver,
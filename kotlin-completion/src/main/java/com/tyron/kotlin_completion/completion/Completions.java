@@ -2,6 +2,8 @@ package com.tyron.kotlin_completion.completion;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.completion.model.CompletionList;
 import com.tyron.kotlin_completion.CompiledFile;
 import com.tyron.kotlin_completion.index.SymbolIndex;
@@ -16,7 +18,7 @@ import kotlin.text.StringsKt;
 
 public class Completions {
 
-    public CompletionList completions(CompiledFile file, int cursor, SymbolIndex index) {
+    public CompletionList completions(CompiledFile file, int cursor, @Nullable SymbolIndex index) {
         String partial = findPartialIdentifier(file, cursor);
         return CompletionUtilsKt.completions(file, cursor, index, partial);
     }
@@ -5,94 +5,247 @@ import com.tyron.kotlin_completion.util.PsiUtils
 import org.jetbrains.exposed.sql.*
 import org.jetbrains.exposed.sql.transactions.transaction
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
+import org.jetbrains.kotlin.descriptors.DeclarationDescriptorWithSource
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
+import org.jetbrains.kotlin.load.java.sources.JavaSourceElement
+import org.jetbrains.kotlin.load.java.structure.impl.VirtualFileBoundJavaClass
+import org.jetbrains.kotlin.load.kotlin.JvmPackagePartSource
+import org.jetbrains.kotlin.load.kotlin.KotlinJvmBinarySourceElement
+import org.jetbrains.kotlin.load.kotlin.VirtualFileKotlinClass
 import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.resolve.DescriptorToSourceUtils
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import org.jetbrains.kotlin.serialization.deserialization.descriptors.DescriptorWithContainerSource
+import java.io.File
 import java.lang.IllegalStateException
-import java.time.Duration
-import java.time.Instant
+import java.util.concurrent.atomic.AtomicLong
 import kotlin.sequences.Sequence
 
 private const val MAX_FQNAME_LENGTH = 255
 private const val MAX_SHORT_NAME_LENGTH = 80
+private const val MAX_ORIGIN_LENGTH = 1024
+
+/**
+ * Increment this when the tables below change so indexes saved by older versions are dropped
+ */
+private const val SCHEMA_VERSION = 2
+
+/**
+ * Origin of the symbols whose jar or source file could not be determined, they are rebuilt
+ * together with any changed classpath entry.
+ */
+private const val UNKNOWN_ORIGIN = ""
+
+private const val BATCH_SIZE = 1000
 
 private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
+    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
+    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
     val kind = integer("kind")
     val visibility = integer("visibility")
     val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
+    val origin = varchar("origin", length = MAX_ORIGIN_LENGTH)
 
-    override val primaryKey = PrimaryKey(fqName)
+    init {
+        index(false, shortName)
+        index(false, origin)
+    }
 }
 
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
+/**
+ * The classpath entries and source files that have been indexed, along with the length and
+ * modification time they had at that moment.
+ */
+private object Origins : Table() {
+    val path = varchar("path", length = MAX_ORIGIN_LENGTH)
+    val length = long("length")
+    val lastModified = long("lastmodified")
 
-    override val primaryKey = PrimaryKey(fqName)
+    override val primaryKey = PrimaryKey(path)
 }
-class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
 
-    var indexing: Boolean = false
+private object SchemaVersion : Table() {
+    val version = integer("version")
+}
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
+/**
+ * Index of the top level declarations visible to a module, used to suggest symbols that
+ * are not imported yet.
+ *
+ * When an index directory is given, the index is stored in an H2 database file inside it
+ * so it survives restarts. Symbols are stored along with the classpath entry or source file
+ * they were declared in, so only the entries whose length or modification time changed are
+ * indexed again by [refresh], and [updateSources] only rewrites the given files.
+ */
+class SymbolIndex @JvmOverloads constructor(indexDirectory: File? = null) {
+
+    /**
+     * The database is opened on first use, so an index that is never used does not create
+     * or lock its file
+     */
+    private val database = lazy {
+        Database.connect(url(indexDirectory), "org.h2.Driver").also {
+            transaction(it) {
+                createSchema()
+            }
+        }
     }
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
-        val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+    private val db by database
+
+    @Volatile
+    var indexing: Boolean = false
+
+    val statistics = Statistics()
+
+    /**
+     * Indexes the classpath entries and source files that changed since they were last
+     * indexed. Symbols of entries and files that are no longer given are removed.
+     *
+     * The packages of the whole module are only walked when a classpath entry changed,
+     * otherwise only the packages of the changed source files are.
+     *
+     * @param classPath The jars the module is compiled against
+     * @param sources The source files of the module
+     * @param forced Whether to index every entry again even if it did not change
+     */
+    @JvmOverloads
+    fun refresh(
+        module: ModuleDescriptor,
+        classPath: Collection<File> = emptyList(),
+        sources: Collection<KtFile> = emptyList(),
+        forced: Boolean = true
+    ) {
+        val started = System.nanoTime()
+        Log.d("SymbolIndex", "Updating symbol index...")
 
         indexing = true
         try {
+            val libraries = classPath.associateBy { it.absolutePath }
+            val sourceFiles = sources.mapNotNull { file -> sourcePath(file)?.let { it to file } }.toMap()
+            val current = libraries + sourceFiles.keys.associateWith { File(it) }
+            val stale = transaction(db) {
+                val stored = Origins.selectAll().associate {
+                    it[Origins.path] to (it[Origins.length] to it[Origins.lastModified])
+                }
+                val removed = stored.keys - current.keys
+                if (removed.isNotEmpty()) {
+                    Origins.deleteWhere { Origins.path inList removed }
+                }
+                current.filter { (path, file) ->
+                    forced || stored[path] != (file.length() to file.lastModified())
+                }.keys
+            }
+            val staleLibraries = stale.filter { it in libraries }.toSet()
+            val staleSources = stale.filter { it in sourceFiles }.toSet()
+
+            val reindexLibraries = forced || staleLibraries.isNotEmpty()
+            val descriptors = if (reindexLibraries) {
+                allDescriptors(module)
+            } else {
+                descriptorsOf(module, staleSources.map { sourceFiles.getValue(it).packageFqName }.distinct().asSequence())
+            }
+            val rows = descriptors.mapNotNull { descriptor ->
+                val origin = originOf(descriptor)
+                when {
+                    origin is Origin.Source && origin.path in staleSources -> createRow(descriptor, origin.path)
+                    origin is Origin.Library && origin.path in staleLibraries -> createRow(descriptor, origin.path)
+                    // a jar that is not in the classpath given, android.jar for example
+                    origin is Origin.Library && origin.path !in libraries && reindexLibraries ->
+                        createRow(descriptor, UNKNOWN_ORIGIN)
+                    origin == null && reindexLibraries -> createRow(descriptor, UNKNOWN_ORIGIN)
+                    else -> null
+                }
+            }
+
             transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
+                Symbols.deleteWhere { Symbols.origin inList stale }
+                if (reindexLibraries) {
+                    Symbols.deleteWhere { Symbols.origin eq UNKNOWN_ORIGIN }
                 }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
-                    }
+                Symbols.deleteWhere { (Symbols.origin notInList current.keys) and (Symbols.origin neq UNKNOWN_ORIGIN) }
+
+                val inserted = insert(rows)
+
+                Origins.deleteWhere { Origins.path inList stale }
+                Origins.batchInsert(stale.map { current.getValue(it) }, shouldReturnGeneratedValues = false) {
+                    this[Origins.path] = it.absolutePath
+                    this[Origins.length] = it.length()
+                    this[Origins.lastModified] = it.lastModified()
                 }
 
-                indexing = false
+                Log.d("SymbolIndex", "Indexed $inserted symbols, ${staleLibraries.size} of " +
+                        "${libraries.size} classpath entries and ${staleSources.size} of " +
+                        "${sourceFiles.size} source files changed")
             }
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e("SymbolIndex", "Error while updating symbol index", e)
+        } finally {
+            indexing = false
+            statistics.recordRefresh(System.nanoTime() - started)
+        }
+    }
+
+    /**
+     * Replaces the symbols declared in the given source files with the top level declarations
+     * they currently contain.
+     *
+     * @param context The binding context the files were analyzed with
+     */
+    fun updateSources(files: Collection<KtFile>, context: BindingContext) {
+        val started = System.nanoTime()
+        try {
+            val paths = files.mapNotNull { sourcePath(it) }
+            val rows = files.asSequence().flatMap { file ->
+                val path = sourcePath(file) ?: return@flatMap emptySequence<SymbolRow>()
+                file.declarations.asSequence()
+                    .mapNotNull { context[BindingContext.DECLARATION_TO_DESCRIPTOR, it] }
+                    .mapNotNull { createRow(it, path) }
+            }
+            replaceSymbols(paths, rows)
+        } catch (e: Exception) {
+            Log.e("SymbolIndex", "Error while updating source symbols", e)
+        } finally {
+            statistics.recordRefresh(System.nanoTime() - started)
+        }
+    }
+
+    /**
+     * Removes the symbols declared in the given source files, called when they are deleted.
+     */
+    fun removeSources(files: Collection<File>) {
+        val paths = files.map { it.absolutePath }
+        try {
+            transaction(db) {
+                Symbols.deleteWhere { Symbols.origin inList paths }
+            }
+        } catch (e: Exception) {
+            Log.e("SymbolIndex", "Error while removing source symbols", e)
+        }
+    }
+
+    /**
+     * Replaces the symbols of the given origins with the given rows in a single transaction.
+     */
+    internal fun replaceSymbols(origins: Collection<String>, rows: Sequence<SymbolRow>) {
+        transaction(db) {
+            Symbols.deleteWhere { Symbols.origin inList origins }
+            insert(rows)
         }
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
-        val start = Instant.now()
+        val start = System.nanoTime()
         try {
             return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
+                Symbols
+                    .slice(Symbols.fqName, Symbols.kind, Symbols.visibility, Symbols.extensionReceiverType)
+                    .select { Symbols.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
+                    // the same symbol may be declared in more than one jar
+                    .withDistinct()
                     .limit(limit)
                     .map {
                         Symbol(
@@ -104,15 +257,124 @@ class SymbolIndex {
                     }
             }
         } finally {
-            Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
+            val nanos = System.nanoTime() - start
+            statistics.recordQuery(nanos)
+            Log.d("SymbolIndex", "Query took " + nanos / 1_000_000 + " ms")
         }
     }
 
+    /**
+     * Closes the database if it has been opened. The connection URL keeps it open until then
+     * so the file is not opened again for every transaction.
+     */
+    fun close() {
+        if (!database.isInitialized()) {
+            return
+        }
+        try {
+            transaction(db) {
+                exec("SHUTDOWN")
+            }
+        } catch (e: Exception) {
+            Log.e("SymbolIndex", "Error while closing symbol index", e)
+        }
+    }
+
+    private fun Transaction.createSchema() {
+        val version = try {
+            if (SchemaVersion.exists()) SchemaVersion.selectAll().firstOrNull()?.get(SchemaVersion.version) else null
+        } catch (e: Exception) {
+            null
+        }
+        if (version != SCHEMA_VERSION) {
+            // FqNames belonged to the first version of the schema, which had no version table
+            exec("DROP TABLE IF EXISTS SYMBOLS, FQNAMES, ORIGINS, SCHEMAVERSION")
+            SchemaUtils.create(Symbols, Origins, SchemaVersion)
+            SchemaVersion.insert {
+                it[SchemaVersion.version] = SCHEMA_VERSION
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows in batches, a single statement per batch instead of one per symbol.
+     *
+     * @return The number of rows inserted
+     */
+    private fun insert(rows: Sequence<SymbolRow>): Int {
+        var count = 0
+        rows.chunked(BATCH_SIZE).forEach { chunk ->
+            Symbols.batchInsert(chunk, shouldReturnGeneratedValues = false) {
+                this[Symbols.fqName] = it.fqName
+                this[Symbols.shortName] = it.shortName
+                this[Symbols.kind] = it.kind
+                this[Symbols.visibility] = it.visibility
+                this[Symbols.extensionReceiverType] = it.extensionReceiverType
+                this[Symbols.origin] = it.origin
+            }
+            count += chunk.size
+        }
+        return count
+    }
+
+    private fun createRow(descriptor: DeclarationDescriptor, origin: String): SymbolRow? {
+        val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
+        val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+
+        if (!canStoreFqName(descriptorFqn) || extensionReceiverFqn?.let { canStoreFqName(it) } == false
+            || origin.length > MAX_ORIGIN_LENGTH) {
+            Log.w("SymbolIndex", "Excluding symbol $descriptorFqn from index since its name is too long")
+            return null
+        }
+
+        return SymbolRow(
+            fqName = descriptorFqn.toString(),
+            shortName = descriptorFqn.shortName().toString(),
+            kind = descriptor.accept(ExtractSymbolKind, Unit).rawValue,
+            visibility = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue,
+            extensionReceiverType = extensionReceiverFqn?.toString(),
+            origin = origin
+        )
+    }
+
     private fun canStoreFqName(fqName: FqName) =
         fqName.toString().length <= MAX_FQNAME_LENGTH
                 && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
 
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
+    private fun sourcePath(file: KtFile): String? =
+        file.virtualFilePath.takeIf { it.isNotEmpty() }?.let { File(it).absolutePath }
+
+    /**
+     * Finds the jar or the source file the descriptor was declared in.
+     */
+    private fun originOf(descriptor: DeclarationDescriptor): Origin? {
+        DescriptorToSourceUtils.getContainingFile(descriptor)?.let { file ->
+            return sourcePath(file)?.let { Origin.Source(it) }
+        }
+
+        val source = (descriptor as? DeclarationDescriptorWithSource)?.source
+        val virtualFile = when (source) {
+            is KotlinJvmBinarySourceElement -> (source.binaryClass as? VirtualFileKotlinClass)?.file
+            is JavaSourceElement -> (source.javaElement as? VirtualFileBoundJavaClass)?.virtualFile
+            else -> null
+        } ?: ((descriptor as? DescriptorWithContainerSource)?.containerSource as? JvmPackagePartSource)
+            ?.knownJvmBinaryClass
+            ?.let { (it as? VirtualFileKotlinClass)?.file }
+            ?: return null
+
+        // entries of a jar have paths such as /path/to/library.jar!/com/example/Foo.class
+        val path = virtualFile.path
+        val separator = path.indexOf("!/")
+        if (separator == -1) {
+            return null
+        }
+        return Origin.Library(File(path.substring(0, separator)).absolutePath)
+    }
+
+    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> =
+        descriptorsOf(module, sequenceOf(FqName.ROOT) + allPackages(module))
+
+    private fun descriptorsOf(module: ModuleDescriptor, packages: Sequence<FqName>) : Sequence<DeclarationDescriptor> = packages
         .map(module::getPackage)
         .flatMap {
             try {
@@ -127,4 +389,75 @@ class SymbolIndex {
         .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
         .asSequence()
         .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+
+    private sealed class Origin {
+        abstract val path: String
+
+        data class Library(override val path: String) : Origin()
+        data class Source(override val path: String) : Origin()
+    }
+
+    internal data class SymbolRow(
+        val fqName: String,
+        val shortName: String,
+        val kind: Int,
+        val visibility: Int,
+        val extensionReceiverType: String?,
+        val origin: String
+    )
+
+    /**
+     * Keeps track of the time spent updating and querying the index.
+     */
+    class Statistics {
+        private val refreshCount = AtomicLong()
+        private val refreshNanos = AtomicLong()
+        private val queryCount = AtomicLong()
+        private val queryNanos = AtomicLong()
+
+        internal fun recordRefresh(nanos: Long) {
+            refreshCount.incrementAndGet()
+            refreshNanos.addAndGet(nanos)
+            Log.d("SymbolIndex", "Refresh took ${nanos / 1_000_000} ms, $this")
+        }
+
+        internal fun recordQuery(nanos: Long) {
+            queryCount.incrementAndGet()
+            queryNanos.addAndGet(nanos)
+        }
+
+        fun getRefreshCount() = refreshCount.get()
+
+        fun getQueryCount() = queryCount.get()
+
+        /**
+         * @return The average time spent in [refresh] and [updateSources] in nanoseconds
+         */
+        fun getAverageRefreshNanos(): Long {
+            val count = refreshCount.get()
+            return if (count == 0L) 0 else refreshNanos.get() / count
+        }
+
+        /**
+         * @return The average latency of [query] in nanoseconds
+         */
+        fun getAverageQueryNanos(): Long {
+            val count = queryCount.get()
+            return if (count == 0L) 0 else queryNanos.get() / count
+        }
+
+        override fun toString(): String =
+            "SymbolIndex.Statistics{refreshes=${getRefreshCount()} (avg ${getAverageRefreshNanos() / 1000} us)" +
+                    ", queries=${getQueryCount()} (avg ${getAverageQueryNanos() / 1000} us)}"
+    }
+
+    companion object {
+        private fun url(indexDirectory: File?): String {
+            if (indexDirectory == null || !(indexDirectory.isDirectory || indexDirectory.mkdirs())) {
+                return "jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1"
+            }
+            // kept open for the lifetime of the process, so the file is not reopened per transaction
+            return "jdbc:h2:file:${File(indexDirectory, "symbols").absolutePath};DB_CLOSE_DELAY=-1"
+        }
+    }
+}
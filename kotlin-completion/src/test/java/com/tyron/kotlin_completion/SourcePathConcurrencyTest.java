@@ -0,0 +1,131 @@
+package com.tyron.kotlin_completion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.kotlin_completion.completion.Completions;
+
+import org.jetbrains.kotlin.psi.KtFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Puts, parses, compiles and completes files of a {@link SourcePath} from several threads at
+ * once, each thread owns a file and all of them also write to a shared one.
+ */
+public class SourcePathConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 50;
+    private static final int COMPILE_ITERATIONS = 10;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SourcePath mSourcePath;
+
+    @Before
+    public void setup() throws Exception {
+        BuildModule.setAndroidJar(mFolder.newFile("android.jar"));
+
+        File root = mFolder.newFolder("project");
+        MockAndroidModule module = new MockAndroidModule(root, new MockFileManager(root));
+        mSourcePath = new SourcePath(new CompilerClassPath(module));
+    }
+
+    @Test
+    public void testConcurrentPutAndParse() throws Exception {
+        File shared = new File(mFolder.getRoot(), "Shared.kt");
+        runConcurrently(ITERATIONS, (id, n) -> {
+            File own = new File(mFolder.getRoot(), "File" + id + ".kt");
+            String content = "class File" + id + "_" + n + " { fun test() = " + n + " }";
+            mSourcePath.put(own, content, false);
+            KtFile parsed = mSourcePath.parsedVersion(own);
+            // only this thread writes to its own file
+            assertEquals(content, parsed.getText());
+
+            mSourcePath.put(shared, "class Shared" + id + "_" + n, false);
+            assertTrue(mSourcePath.parsedVersion(shared).getText().startsWith("class Shared"));
+        });
+
+        mSourcePath.put(shared, "class Shared", false);
+        assertEquals("class Shared", mSourcePath.parsedVersion(shared).getText());
+    }
+
+    @Test
+    public void testConcurrentCompileAndComplete() throws Exception {
+        File shared = new File(mFolder.getRoot(), "Shared.kt");
+        runConcurrently(COMPILE_ITERATIONS, (id, n) -> {
+            File own = new File(mFolder.getRoot(), "File" + id + ".kt");
+            String content = "class File" + id + "_" + n + " { fun test() = " + n + " }\n" +
+                             "fun use" + id + "() = File" + id + "_" + n + "().te";
+            mSourcePath.put(own, content, false);
+            CompiledFile compiled = mSourcePath.currentVersion(own);
+            // only this thread writes to its own file
+            assertEquals(content, compiled.getParse().getText());
+
+            CompletionList completions =
+                    new Completions().completions(compiled, content.length(), null);
+            assertTrue(completions.items.stream().anyMatch(it -> it.label.startsWith("test")));
+
+            mSourcePath.put(shared, "class Shared" + id + "_" + n, false);
+            assertTrue(mSourcePath.currentVersion(shared).getParse().getText()
+                    .startsWith("class Shared"));
+        });
+
+        mSourcePath.put(shared, "class Shared", false);
+        assertEquals("class Shared", mSourcePath.currentVersion(shared).getParse().getText());
+    }
+
+    /**
+     * Runs the operation the given number of times on each thread, all the threads start at
+     * the same time
+     */
+    private void runConcurrently(int iterations, Operation operation) throws Exception {
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int id = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int n = 0; n < iterations; n++) {
+                        operation.run(id, n);
+                    }
+                } catch (Throwable t) {
+                    errors.add(t);
+                }
+            }, "SourcePathConcurrencyTest-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (!errors.isEmpty()) {
+            throw new AssertionError("Concurrent access failed", errors.peek());
+        }
+    }
+
+    private interface Operation {
+        void run(int thread, int iteration) throws Exception;
+    }
+}
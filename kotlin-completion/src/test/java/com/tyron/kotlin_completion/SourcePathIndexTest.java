@@ -0,0 +1,80 @@
+package com.tyron.kotlin_completion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.tyron.builder.BuildModule;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.kotlin_completion.index.SymbolIndex;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that the symbol index is only opened when a directory is given, and that the
+ * compiled sources are saved in it.
+ */
+public class SourcePathIndexTest {
+
+    private static final String CONTENT = "package test\n\nclass Indexed {\n}\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private CompilerClassPath mClassPath;
+    private File mFile;
+
+    @Before
+    public void setup() throws Exception {
+        BuildModule.setAndroidJar(mFolder.newFile("android.jar"));
+
+        File root = mFolder.newFolder("project");
+        MockAndroidModule module = new MockAndroidModule(root, new MockFileManager(root));
+        mClassPath = new CompilerClassPath(module);
+
+        mFile = new File(root, "Indexed.kt");
+        FileUtils.writeStringToFile(mFile, CONTENT, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testIndexIsDisabledWithoutDirectory() {
+        SourcePath sourcePath = new SourcePath(mClassPath);
+        assertNull(sourcePath.getIndex());
+
+        sourcePath.put(mFile, CONTENT, false);
+        assertNotNull(sourcePath.currentVersion(mFile));
+        sourcePath.delete(mFile);
+        sourcePath.close(true);
+    }
+
+    @Test
+    public void testCompiledSourcesAreIndexed() {
+        File directory = new File(mFolder.getRoot(), "index");
+        SourcePath sourcePath = new SourcePath(mClassPath, directory);
+        assertNotNull(sourcePath.getIndex());
+        // nothing has been indexed yet
+        assertFalse(directory.exists());
+
+        sourcePath.put(mFile, CONTENT, false);
+        assertNotNull(sourcePath.currentVersion(mFile));
+        // waits for the index to be updated
+        sourcePath.close(true);
+
+        List<String> symbols = new SymbolIndex(directory).query("Indexed", null, 20).stream()
+                .map(symbol -> symbol.getFqName().toString())
+                .collect(Collectors.toList());
+        assertEquals(1, symbols.size());
+        assertEquals("test.Indexed", symbols.get(0));
+    }
+}
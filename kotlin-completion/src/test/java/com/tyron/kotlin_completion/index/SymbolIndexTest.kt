@@ -0,0 +1,113 @@
+package com.tyron.kotlin_completion.index
+
+import org.jetbrains.kotlin.name.FqName
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.sql.DriverManager
+
+class SymbolIndexTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun testReplaceSymbolsOfASource() {
+        val index = SymbolIndex(folder.newFolder("index"))
+        index.replaceSymbols(listOf("/src/First.kt"), sequenceOf(
+            row("test.First", Symbol.Kind.CLASS, "/src/First.kt"),
+            row("test.firstFunction", Symbol.Kind.FUNCTION, "/src/First.kt")
+        ))
+        index.replaceSymbols(listOf("/src/Second.kt"), sequenceOf(
+            row("test.Second", Symbol.Kind.CLASS, "/src/Second.kt")
+        ))
+        assertEquals(listOf("test.First"), query(index, "First"))
+        assertEquals(listOf("test.firstFunction"), query(index, "first"))
+
+        // the file now declares a different class
+        index.replaceSymbols(listOf("/src/First.kt"), sequenceOf(
+            row("test.Renamed", Symbol.Kind.CLASS, "/src/First.kt")
+        ))
+        assertEquals(emptyList<String>(), query(index, "First"))
+        assertEquals(emptyList<String>(), query(index, "first"))
+        assertEquals(listOf("test.Renamed"), query(index, "Renamed"))
+        assertEquals(listOf("test.Second"), query(index, "Second"))
+    }
+
+    @Test
+    fun testRemoveSources() {
+        val index = SymbolIndex(folder.newFolder("index"))
+        val first = File(folder.root, "First.kt")
+        val second = File(folder.root, "Second.kt")
+        index.replaceSymbols(listOf(first.absolutePath, second.absolutePath), sequenceOf(
+            row("test.First", Symbol.Kind.CLASS, first.absolutePath),
+            row("test.Second", Symbol.Kind.CLASS, second.absolutePath)
+        ))
+
+        index.removeSources(listOf(first))
+        assertEquals(emptyList<String>(), query(index, "First"))
+        assertEquals(listOf("test.Second"), query(index, "Second"))
+    }
+
+    @Test
+    fun testIndexIsKeptUntilTheSchemaChanges() {
+        val directory = folder.newFolder("index")
+        SymbolIndex(directory).replaceSymbols(listOf("/src/First.kt"), sequenceOf(
+            row("test.First", Symbol.Kind.CLASS, "/src/First.kt")
+        ))
+        assertEquals(listOf("test.First"), query(SymbolIndex(directory), "First"))
+
+        // an index saved by an older version of the schema
+        val url = "jdbc:h2:file:${File(directory, "symbols").absolutePath};DB_CLOSE_DELAY=-1"
+        DriverManager.getConnection(url).use {
+            it.createStatement().execute("UPDATE SCHEMAVERSION SET VERSION = VERSION - 1")
+        }
+        val index = SymbolIndex(directory)
+        assertEquals(emptyList<String>(), query(index, "First"))
+
+        // the tables are usable after they have been created again
+        index.replaceSymbols(listOf("/src/First.kt"), sequenceOf(
+            row("test.First", Symbol.Kind.CLASS, "/src/First.kt")
+        ))
+        assertEquals(listOf("test.First"), query(index, "First"))
+    }
+
+    @Test
+    fun testDatabaseIsOpenedOnFirstUse() {
+        val directory = File(folder.root, "index")
+        val index = SymbolIndex(directory)
+        assertFalse(directory.exists())
+
+        index.replaceSymbols(listOf("/src/First.kt"), sequenceOf(
+            row("test.First", Symbol.Kind.CLASS, "/src/First.kt")
+        ))
+        assertTrue(directory.list()!!.isNotEmpty())
+
+        // the symbols are read again from the file after it has been closed
+        index.close()
+        assertEquals(listOf("test.First"), query(SymbolIndex(directory), "First"))
+    }
+
+    @Test
+    fun testCloseBeforeFirstUse() {
+        val directory = File(folder.root, "index")
+        SymbolIndex(directory).close()
+        assertFalse(directory.exists())
+    }
+
+    private fun query(index: SymbolIndex, prefix: String): List<String> =
+        index.query(prefix).map { it.fqName.toString() }.sorted()
+
+    private fun row(fqName: String, kind: Symbol.Kind, origin: String) = SymbolIndex.SymbolRow(
+        fqName = fqName,
+        shortName = FqName(fqName).shortName().toString(),
+        kind = kind.rawValue,
+        visibility = Symbol.Visibility.PUBLIC.rawValue,
+        extensionReceiverType = null,
+        origin = origin
+    )
+}